@@ -0,0 +1,68 @@
+package webserver.benchmarks;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+import webserver.Configuration;
+
+/**
+ * @author Kieran Chin Cheong
+ * @version 1.0
+ * @since 1.0
+ */
+public class BenchmarkContent
+{
+    // Static variables
+
+    // The file every benchmark requests, under a temporary content root
+    public static final String FILE_NAME = "file.html";
+
+    // Static methods
+
+    /**
+     * Creates a temporary content root holding a single file, and configures the server to serve it
+     * <p>
+     * The file is HTML, so that it is a candidate for compression, but the benchmarks' requests do not accept any content coding
+     * @param fileSize the size of the file in bytes
+     * @return the content root
+     * @throws IOException if the content root could not be created
+     */
+    public static Path CreateContentRoot(int fileSize) throws IOException
+    {
+        Path root = Files.createTempDirectory("webserver-benchmarks");
+        byte[] content = new byte[fileSize];
+
+        Arrays.fill(content, (byte) 'x');
+        Files.write(root.resolve(FILE_NAME), content);
+
+        // Log to the content root, so that benchmark runs leave nothing behind in the working directory
+        Configuration config = Configuration.GetConfiguration();
+        config.setRootDirectory(root.toString());
+        config.setLogFile(root.resolve("server_log.txt").toString());
+
+        return root;
+    }
+
+    /**
+     * Deletes a content root created by CreateContentRoot, along with everything in it
+     * @param root the content root
+     * @throws IOException if the content root could not be deleted
+     */
+    public static void DeleteContentRoot(Path root) throws IOException
+    {
+        File[] files = root.toFile().listFiles();
+
+        if (files != null)
+        {
+            for (File file : files)
+            {
+                Files.deleteIfExists(file.toPath());
+            }
+        }
+
+        Files.deleteIfExists(root);
+    }
+}
@@ -0,0 +1,33 @@
+package webserver.benchmarks;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+
+/**
+ * @author Kieran Chin Cheong
+ * @version 1.0
+ * @since 1.0
+ */
+public class BenchmarkMain
+{
+
+    /**
+     * Main method of the benchmarks. Runs JMH with the given arguments, adding the GC profiler unless another profiler is chosen,
+     * so that every result reports the allocation rate of the code being measured alongside its time
+     * @param args JMH command line arguments, such as a regular expression selecting the benchmarks to run
+     * @throws Exception if JMH fails to run
+     */
+    public static void main(String[] args) throws Exception
+    {
+        ArrayList<String> arguments = new ArrayList<String>(Arrays.asList(args));
+
+        if (! arguments.contains("-prof"))
+        {
+            arguments.add(0, "-prof");
+            arguments.add(1, "gc");
+        }
+
+        org.openjdk.jmh.Main.main(arguments.toArray(new String[arguments.size()]));
+    }
+
+}
@@ -0,0 +1,260 @@
+package webserver.benchmarks;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Locale;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * The requests recorded in a server log by Logger.LogConnection, which are written at the CONNECTION logging level as
+ * <p>
+ * {@code <date> : TID <thread> : <client address> <server address> <method> <target> <status code> <user-agent>}
+ * <p>
+ * Every other line of the log is skipped, as are the lines for requests which could not be parsed
+ * @author Kieran Chin Cheong
+ * @version 1.0
+ * @since 1.0
+ */
+public class ConnectionLog
+{
+    /**
+     * A request recorded in the log
+     */
+    public static class Entry
+    {
+        private long time;
+        private String clientAddress;
+        private String method;
+        private String target;
+        private int statusCode;
+        private String userAgent;
+
+        /**
+         * Constructor
+         * @param time when the request was logged, in milliseconds since the epoch
+         * @param clientAddress the client's address and port, which identify the connection the request was made on
+         * @param method the request method
+         * @param target the request target
+         * @param statusCode the status code of the response
+         * @param userAgent the user-agent of the client, which is empty if it sent none
+         */
+        public Entry(long time, String clientAddress, String method, String target, int statusCode, String userAgent)
+        {
+            this.time = time;
+            this.clientAddress = clientAddress;
+            this.method = method;
+            this.target = target;
+            this.statusCode = statusCode;
+            this.userAgent = userAgent;
+        }
+
+        // Simple getters
+
+        /**
+         * @return
+         */
+        public long getTime()
+        {
+            return this.time;
+        }
+
+        /**
+         * @return
+         */
+        public String getClientAddress()
+        {
+            return this.clientAddress;
+        }
+
+        /**
+         * @return
+         */
+        public String getMethod()
+        {
+            return this.method;
+        }
+
+        /**
+         * @return
+         */
+        public String getTarget()
+        {
+            return this.target;
+        }
+
+        /**
+         * @return
+         */
+        public int getStatusCode()
+        {
+            return this.statusCode;
+        }
+
+        /**
+         * @return
+         */
+        public String getUserAgent()
+        {
+            return this.userAgent;
+        }
+    }
+
+    // Static variables
+
+    // The date format of the Logger, and the layout of the lines written by Logger.LogConnection
+    private static final String DATE_FORMAT = "EEE MMM dd HH:mm:ss zzz yyyy";
+    private static final Pattern CONNECTION_LINE = Pattern.compile("^(.+?) : TID \\d+ : (\\S+:\\d+) (\\S+:\\d+) (\\S+) (\\S+) (\\d{3})(?: (.*))?$");
+
+    // Static methods
+
+    /**
+     * Reads every request recorded in a log
+     * @param file the log
+     * @return the log's requests, in order of time
+     * @throws IOException if the log could not be read
+     */
+    public static ConnectionLog Read(Path file) throws IOException
+    {
+        SimpleDateFormat dateFormat = new SimpleDateFormat(DATE_FORMAT, Locale.US);
+        ConnectionLog log = new ConnectionLog();
+
+        // Lines logged in the same second share their date, so each date is only parsed once
+        String lastDate = null;
+        long lastTime = 0;
+
+        try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8))
+        {
+            String line;
+
+            while ((line = reader.readLine()) != null)
+            {
+                Matcher matcher = CONNECTION_LINE.matcher(line);
+
+                // Requests which could not be parsed are logged with - in place of their method and target
+                if (! matcher.matches() || matcher.group(4).equals("-"))
+                {
+                    log.skippedLines++;
+                    continue;
+                }
+
+                if (! matcher.group(1).equals(lastDate))
+                {
+                    try
+                    {
+                        lastTime = dateFormat.parse(matcher.group(1)).getTime();
+                        lastDate = matcher.group(1);
+                    }
+                    catch (ParseException e)
+                    {
+                        log.skippedLines++;
+                        continue;
+                    }
+                }
+
+                String userAgent = matcher.group(7) == null ? "" : matcher.group(7);
+                log.entries.add(new Entry(lastTime, matcher.group(2), matcher.group(4), matcher.group(5), Integer.parseInt(matcher.group(6)), userAgent));
+            }
+        }
+
+        // Lines are written in the order they were logged, which can differ slightly from the order of their times, so the entries
+        // are sorted by time. The sort is stable, so the order of entries logged in the same second is kept
+        Collections.sort(log.entries, new Comparator<Entry>()
+        {
+            @Override
+            public int compare(Entry a, Entry b)
+            {
+                return Long.compare(a.time, b.time);
+            }
+        });
+
+        return log;
+    }
+
+    // Member variables
+
+    private ArrayList<Entry> entries;
+    private long skippedLines;
+
+    /**
+     * Private constructor. Logs are read with ConnectionLog.Read
+     */
+    private ConnectionLog()
+    {
+        this.entries = new ArrayList<Entry>();
+    }
+
+    /**
+     * Returns when each request should be replayed. The log only records times to the second, so the requests logged within
+     * each second are spread evenly across it
+     * @param speed how much faster than recorded to replay, such as 2 for twice as fast
+     * @return the offset of each entry from the start of the replay, in nanoseconds
+     */
+    public long[] getReplayOffsets(double speed)
+    {
+        long[] offsets = new long[this.entries.size()];
+        int secondStart = 0;
+
+        while (secondStart < this.entries.size())
+        {
+            long second = this.entries.get(secondStart).time;
+            int secondEnd = secondStart;
+
+            while (secondEnd < this.entries.size() && this.entries.get(secondEnd).time == second)
+            {
+                secondEnd++;
+            }
+
+            int count = secondEnd - secondStart;
+
+            for (int i = secondStart; i < secondEnd; i++)
+            {
+                double offsetMillis = (second - this.entries.get(0).time) + 1000.0 * (i - secondStart) / count;
+                offsets[i] = (long) (offsetMillis * 1e6 / speed);
+            }
+
+            secondStart = secondEnd;
+        }
+
+        return offsets;
+    }
+
+    /**
+     * @return the number of seconds between the first and the last request recorded, counting both
+     */
+    public long getSpanSeconds()
+    {
+        if (this.entries.isEmpty())
+        {
+            return 0;
+        }
+
+        return (this.entries.get(this.entries.size() - 1).time - this.entries.get(0).time) / 1000 + 1;
+    }
+
+    // Simple getters
+
+    /**
+     * @return
+     */
+    public ArrayList<Entry> getEntries()
+    {
+        return this.entries;
+    }
+
+    /**
+     * @return the number of lines which were not the record of a request
+     */
+    public long getSkippedLines()
+    {
+        return this.skippedLines;
+    }
+}
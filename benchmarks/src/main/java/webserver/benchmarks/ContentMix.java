@@ -0,0 +1,209 @@
+package webserver.benchmarks;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Random;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * A mix of file sizes requested by the load generator, along with the content tree which holds them
+ * <p>
+ * A mix is written as comma separated size:weight pairs, such as 1k:50,16k:30,256k:15,4m:5. Each size is served from its own
+ * directory of equally sized files under /loadgen, and is requested in proportion to its weight
+ * @author Kieran Chin Cheong
+ * @version 1.0
+ * @since 1.0
+ */
+public class ContentMix
+{
+    // Static variables
+
+    // The directory of the content tree, under the server's content root
+    public static final String TREE_DIRECTORY = "loadgen";
+
+    // Static methods
+
+    /**
+     * Parses a size such as 512, 16k or 4m
+     * @param size the size, with an optional k or m suffix
+     * @return the size in bytes
+     */
+    public static int ParseSize(String size)
+    {
+        String lower = size.trim().toLowerCase();
+        int multiplier = 1;
+
+        if (lower.endsWith("k"))
+        {
+            multiplier = 1024;
+        }
+        else if (lower.endsWith("m"))
+        {
+            multiplier = 1024 * 1024;
+        }
+
+        if (multiplier > 1)
+        {
+            lower = lower.substring(0, lower.length() - 1);
+        }
+
+        return Integer.parseInt(lower) * multiplier;
+    }
+
+    // Member variables
+
+    private String[] labels;
+    private int[] sizes;
+    private int[] cumulativeWeights;
+    private int filesPerSize;
+
+    /**
+     * Constructor
+     * @param mix the mix, as comma separated size:weight pairs
+     * @param filesPerSize the number of files of each size in the content tree
+     * @throws IllegalArgumentException if the mix could not be parsed
+     */
+    public ContentMix(String mix, int filesPerSize)
+    {
+        ArrayList<String> entries = new ArrayList<String>();
+
+        for (String entry : mix.split(","))
+        {
+            if (! entry.trim().isEmpty())
+            {
+                entries.add(entry.trim());
+            }
+        }
+
+        if (entries.isEmpty() || filesPerSize < 1)
+        {
+            throw new IllegalArgumentException("Invalid file size mix : " + mix);
+        }
+
+        this.labels = new String[entries.size()];
+        this.sizes = new int[entries.size()];
+        this.cumulativeWeights = new int[entries.size()];
+        this.filesPerSize = filesPerSize;
+
+        int totalWeight = 0;
+
+        try
+        {
+            for (int i = 0; i < entries.size(); i++)
+            {
+                String[] parts = entries.get(i).split(":");
+                int weight = parts.length > 1 ? Integer.parseInt(parts[1].trim()) : 1;
+
+                if (parts.length > 2 || weight < 0)
+                {
+                    throw new IllegalArgumentException("Invalid file size mix entry : " + entries.get(i));
+                }
+
+                this.labels[i] = parts[0].trim().toLowerCase();
+                this.sizes[i] = ContentMix.ParseSize(parts[0]);
+                totalWeight += weight;
+                this.cumulativeWeights[i] = totalWeight;
+            }
+        }
+        catch (NumberFormatException e)
+        {
+            throw new IllegalArgumentException("Invalid file size mix : " + mix);
+        }
+
+        if (totalWeight == 0)
+        {
+            throw new IllegalArgumentException("Invalid file size mix, every weight is 0 : " + mix);
+        }
+    }
+
+    /**
+     * Writes the content tree under a content root. Files which already exist with the right size are left as they are, so that
+     * the server's caches stay valid between runs
+     * @param contentRoot the server's content root
+     * @throws IOException if a file could not be written
+     */
+    public void generate(Path contentRoot) throws IOException
+    {
+        // The content is random, so that it is representative of files which do not compress well
+        Random random = new Random(0);
+
+        for (int i = 0; i < this.sizes.length; i++)
+        {
+            Path directory = contentRoot.resolve(TREE_DIRECTORY).resolve(this.labels[i]);
+            Files.createDirectories(directory);
+
+            for (int j = 0; j < this.filesPerSize; j++)
+            {
+                Path file = directory.resolve(j + ".bin");
+
+                if (! Files.isRegularFile(file) || Files.size(file) != this.sizes[i])
+                {
+                    byte[] content = new byte[this.sizes[i]];
+                    random.nextBytes(content);
+                    Files.write(file, content);
+                }
+            }
+        }
+    }
+
+    /**
+     * Encodes a request for every file of the content tree, so that sending one does not allocate
+     * @param host the value of the host header field
+     * @param isKeepAliveEnabled true to request that the connection is kept alive, false to request that it is closed
+     * @return the encoded requests, indexed as by pickRequest
+     */
+    public byte[][] encodeRequests(String host, boolean isKeepAliveEnabled)
+    {
+        byte[][] requests = new byte[this.sizes.length * this.filesPerSize][];
+
+        for (int i = 0; i < this.sizes.length; i++)
+        {
+            for (int j = 0; j < this.filesPerSize; j++)
+            {
+                String request = String.format("GET /%s/%s/%d.bin HTTP/1.1\r\nHost: %s\r\nUser-Agent: webserver-loadgen\r\nConnection: %s\r\n\r\n",
+                                               TREE_DIRECTORY, this.labels[i], j, host, isKeepAliveEnabled ? "keep-alive" : "close");
+                requests[i * this.filesPerSize + j] = request.getBytes(StandardCharsets.US_ASCII);
+            }
+        }
+
+        return requests;
+    }
+
+    /**
+     * Picks the file to request next, weighted by the mix
+     * @return the index of the file's request, as returned by encodeRequests
+     */
+    public int pickRequest()
+    {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        int target = random.nextInt(this.cumulativeWeights[this.cumulativeWeights.length - 1]);
+        int size = 0;
+
+        while (target >= this.cumulativeWeights[size])
+        {
+            size++;
+        }
+
+        return size * this.filesPerSize + random.nextInt(this.filesPerSize);
+    }
+
+    /**
+     * @return the mix as comma separated size:weight pairs
+     */
+    @Override
+    public String toString()
+    {
+        StringBuilder mix = new StringBuilder();
+
+        for (int i = 0; i < this.labels.length; i++)
+        {
+            int weight = this.cumulativeWeights[i] - (i > 0 ? this.cumulativeWeights[i - 1] : 0);
+            mix.append(i > 0 ? "," : "").append(this.labels[i]).append(':').append(weight);
+        }
+
+        return mix.toString();
+    }
+}
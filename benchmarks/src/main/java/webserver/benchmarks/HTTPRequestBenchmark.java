@@ -0,0 +1,113 @@
+package webserver.benchmarks;
+
+import java.io.ByteArrayInputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import webserver.HTTPRequest;
+import webserver.HTTPRequestParser;
+
+/**
+ * Measures parsing request heads, as captured from real clients
+ * @author Kieran Chin Cheong
+ * @version 1.0
+ * @since 1.0
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+public class HTTPRequestBenchmark
+{
+    // Static variables
+
+    // A minimal request, as sent by curl
+    private static final String CURL_REQUEST =
+        "GET /file.html HTTP/1.1\r\n" +
+        "Host: localhost:8080\r\n" +
+        "User-Agent: curl/8.5.0\r\n" +
+        "Accept: */*\r\n" +
+        "\r\n";
+
+    // A revalidation of a cached stylesheet, as sent by a browser
+    private static final String BROWSER_REQUEST =
+        "GET /css/site.css HTTP/1.1\r\n" +
+        "Host: localhost:8080\r\n" +
+        "Connection: keep-alive\r\n" +
+        "sec-ch-ua: \"Chromium\";v=\"124\", \"Google Chrome\";v=\"124\", \"Not-A.Brand\";v=\"99\"\r\n" +
+        "sec-ch-ua-mobile: ?0\r\n" +
+        "User-Agent: Mozilla/5.0 (X11; Linux x86_64) AppleWebKit/537.36 (KHTML, like Gecko) Chrome/124.0.0.0 Safari/537.36\r\n" +
+        "sec-ch-ua-platform: \"Linux\"\r\n" +
+        "Accept: text/css,*/*;q=0.1\r\n" +
+        "Sec-Fetch-Site: same-origin\r\n" +
+        "Sec-Fetch-Mode: no-cors\r\n" +
+        "Sec-Fetch-Dest: style\r\n" +
+        "Referer: http://localhost:8080/index.html\r\n" +
+        "Accept-Encoding: gzip, deflate, br, zstd\r\n" +
+        "Accept-Language: en-GB,en-US;q=0.9,en;q=0.8\r\n" +
+        "If-None-Match: \"5f3a-18f2c4d9e10\"\r\n" +
+        "If-Modified-Since: Tue, 14 May 2024 09:21:44 GMT\r\n" +
+        "\r\n";
+
+    // Member variables
+
+    @Param({"curl", "browser"})
+    public String client;
+
+    private ByteArrayInputStream stream;
+    private ReadableByteChannel channel;
+    private HTTPRequestParser parser;
+
+    /**
+     * Prepares a stream over the captured request, which each invocation rewinds and parses again
+     */
+    @Setup
+    public void setUp()
+    {
+        String request = "curl".equals(this.client) ? CURL_REQUEST : BROWSER_REQUEST;
+
+        this.stream = new ByteArrayInputStream(request.getBytes(StandardCharsets.US_ASCII));
+        this.channel = Channels.newChannel(this.stream);
+        this.parser = new HTTPRequestParser();
+    }
+
+    /**
+     * Parses a request with a parser of its own, as is done for the first request on a connection
+     * @return the parsed request
+     * @throws Exception if the request could not be parsed
+     */
+    @Benchmark
+    public HTTPRequest parseFromStream() throws Exception
+    {
+        this.stream.reset();
+        return HTTPRequest.BuildHTTPRequestFromInput(this.stream);
+    }
+
+    /**
+     * Parses a request with a parser which is reused, as is done for every request on a keep-alive connection
+     * @return the parsed request
+     * @throws Exception if the request could not be parsed
+     */
+    @Benchmark
+    public HTTPRequest parseWithReusedParser() throws Exception
+    {
+        this.stream.reset();
+        return HTTPRequest.BuildHTTPRequestFromInput(this.parser, this.channel);
+    }
+}
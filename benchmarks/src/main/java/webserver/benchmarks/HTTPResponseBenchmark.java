@@ -0,0 +1,121 @@
+package webserver.benchmarks;
+
+import java.io.ByteArrayInputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import webserver.HTTPRequest;
+import webserver.HTTPResponse;
+import webserver.Status;
+
+/**
+ * Measures building responses, encoding their header fields and sending them, without any network in the way
+ * @author Kieran Chin Cheong
+ * @version 1.0
+ * @since 1.0
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+public class HTTPResponseBenchmark
+{
+    /**
+     * An output stream which discards everything written to it, so that only the cost of sending is measured
+     */
+    public static class NullOutputStream extends OutputStream
+    {
+        @Override
+        public void write(int b)
+        {
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len)
+        {
+        }
+    }
+
+    // Member variables
+
+    // 1 KB files are held by the content cache, 4 MB ones are too big for it and are memory mapped
+    @Param({"1024", "4194304"})
+    public int fileSize;
+
+    private Path contentRoot;
+    private HTTPRequest request;
+    private HTTPResponse notFoundResponse;
+    private OutputStream stream;
+
+    /**
+     * Creates the file to serve, and parses a request for it
+     * @throws Exception if the file could not be created or the request parsed
+     */
+    @Setup
+    public void setUp() throws Exception
+    {
+        this.contentRoot = BenchmarkContent.CreateContentRoot(this.fileSize);
+
+        String request = "GET /" + BenchmarkContent.FILE_NAME + " HTTP/1.1\r\nHost: localhost\r\nConnection: keep-alive\r\n\r\n";
+        this.request = HTTPRequest.BuildHTTPRequestFromInput(new ByteArrayInputStream(request.getBytes(StandardCharsets.US_ASCII)));
+        this.notFoundResponse = HTTPResponse.BuildHTTPResponseWithoutBody(Status.NOT_FOUND, true, 0);
+        this.stream = new NullOutputStream();
+    }
+
+    /**
+     * Deletes the file served
+     * @throws Exception if the file could not be deleted
+     */
+    @TearDown
+    public void tearDown() throws Exception
+    {
+        BenchmarkContent.DeleteContentRoot(this.contentRoot);
+    }
+
+    /**
+     * Builds a response without a message body, which is mostly populating its required header fields
+     * @return the response
+     */
+    @Benchmark
+    public HTTPResponse buildWithoutBody()
+    {
+        return HTTPResponse.BuildHTTPResponseWithoutBody(Status.NOT_FOUND, true, 0);
+    }
+
+    /**
+     * Sends a response without a message body, which is mostly encoding its head
+     * @throws Exception if the response could not be sent
+     */
+    @Benchmark
+    public void sendWithoutBody() throws Exception
+    {
+        this.notFoundResponse.Send(this.stream);
+    }
+
+    /**
+     * Looks up the file, builds a response for it and sends it. The response is built each time, as sending it releases its content
+     * @throws Exception if the response could not be sent
+     */
+    @Benchmark
+    public void serveFile() throws Exception
+    {
+        HTTPResponse.BuildHTTPResponseWithBody(this.request, true, 0).Send(this.stream);
+    }
+}
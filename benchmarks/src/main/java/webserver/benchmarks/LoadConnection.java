@@ -0,0 +1,252 @@
+package webserver.benchmarks;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * One of the load generator's client connections, sending requests for as long as its schedule lasts
+ * <p>
+ * With keep-alive, requests are sent in batches of up to the pipelining depth, and the batch's responses are read before the next
+ * one is sent. A connection closed by the server is opened again, and whichever requests of the batch were not answered are sent
+ * on the new one. Without keep-alive, every request is sent on a new connection
+ * @author Kieran Chin Cheong
+ * @version 1.0
+ * @since 1.0
+ */
+public class LoadConnection implements Runnable
+{
+    // Static variables
+
+    // Number of connections in a row which may fail before the requests of a batch are counted as errors
+    private static final int MAX_ATTEMPTS = 3;
+
+    // Time to wait after a batch failed, so that a server which is down is not hammered with connection attempts
+    private static final long ERROR_BACKOFF = TimeUnit.MILLISECONDS.toNanos(10);
+
+    // Member variables
+
+    private String host;
+    private int port;
+    private boolean keepAliveEnabled;
+    private long measureFrom;
+    private byte[][] requests;
+    private LoadSchedule schedule;
+    private LoadResults results;
+    private ResponseReader reader;
+
+    private Socket socket;
+    private OutputStream output;
+
+    // The requests of the current batch, when each was due to be sent and when each was sent
+    private int[] batchRequests;
+    private long[] intendedAt;
+    private long[] sentAt;
+
+    // Responses the server will still send before closing the connection, as told by its keep-alive max
+    private int remainingResponses;
+
+    // Mean latency of the responses read so far, used as the interval between requests when correcting an unthrottled schedule
+    private long latencySum;
+    private long latencyCount;
+
+    /**
+     * Constructor
+     * @param host the server's host
+     * @param port the server's port
+     * @param keepAliveEnabled true to keep connections alive between requests, false to send each request on a new connection
+     * @param pipelineDepth the largest number of requests sent before reading their responses, with keep-alive
+     * @param measureFrom the time from which responses are recorded, from System.nanoTime()
+     * @param requests the encoded requests the schedule picks from
+     * @param schedule decides which requests are sent and when
+     * @param results the results to record into
+     */
+    public LoadConnection(String host, int port, boolean keepAliveEnabled, int pipelineDepth, long measureFrom, byte[][] requests,
+                          LoadSchedule schedule, LoadResults results)
+    {
+        int depth = keepAliveEnabled ? pipelineDepth : 1;
+
+        this.host = host;
+        this.port = port;
+        this.keepAliveEnabled = keepAliveEnabled;
+        this.measureFrom = measureFrom;
+        this.requests = requests;
+        this.schedule = schedule;
+        this.results = results;
+        this.reader = new ResponseReader();
+        this.batchRequests = new int[depth];
+        this.intendedAt = new long[depth];
+        this.sentAt = new long[depth];
+        this.remainingResponses = Integer.MAX_VALUE;
+    }
+
+    /**
+     * Sends batches of requests until the end of the run
+     */
+    public void run()
+    {
+        try
+        {
+            int batchSize;
+
+            while ((batchSize = this.schedule.nextBatch(this.batchRequests, this.intendedAt, this.batchRequests.length)) > 0)
+            {
+                this.exchange(batchSize, this.schedule.isUnthrottled());
+            }
+        }
+        finally
+        {
+            this.close();
+        }
+    }
+
+    /**
+     * Sends the requests of a batch and reads their responses, opening connections as needed
+     * @param batchSize the number of requests in the batch
+     * @param isUnthrottled true if requests are sent as fast as they are answered rather than at a target rate
+     */
+    private void exchange(int batchSize, boolean isUnthrottled)
+    {
+        int answered = 0;
+        int failures = 0;
+
+        while (answered < batchSize)
+        {
+            try
+            {
+                if (this.socket == null)
+                {
+                    this.connect();
+                }
+
+                // Never send more than the server will answer before it closes the connection
+                int count = Math.min(batchSize - answered, this.remainingResponses);
+                long now = System.nanoTime();
+
+                for (int i = answered; i < answered + count; i++)
+                {
+                    this.output.write(this.requests[this.batchRequests[i]]);
+                    this.sentAt[i] = now;
+
+                    if (isUnthrottled)
+                    {
+                        this.intendedAt[i] = now;
+                    }
+                }
+
+                this.output.flush();
+
+                for (int i = 0; i < count; i++)
+                {
+                    if (! this.reader.read())
+                    {
+                        throw new IOException("Connection closed by the server");
+                    }
+
+                    this.recordResponse(answered, isUnthrottled);
+                    answered++;
+                    failures = 0;
+
+                    if (this.reader.isLastResponse() || ! this.keepAliveEnabled)
+                    {
+                        this.close();
+                        break;
+                    }
+
+                    if (this.reader.getKeepAliveMax() > 0)
+                    {
+                        this.remainingResponses = this.reader.getKeepAliveMax() - 1;
+                    }
+                }
+            }
+            catch (IOException e)
+            {
+                // An idle keep-alive connection may have been closed by the server just as the batch was sent, so the rest of
+                // the batch is tried again on a new connection before giving up on it
+                this.close();
+
+                if (++failures >= MAX_ATTEMPTS)
+                {
+                    for (int i = answered; i < batchSize; i++)
+                    {
+                        this.results.recordError();
+                    }
+
+                    LockSupport.parkNanos(ERROR_BACKOFF);
+                    return;
+                }
+            }
+        }
+    }
+
+    /**
+     * Records the response just read, if its request was made during the measured part of the run
+     * @param index the index of the response's request in the batch
+     * @param isUnthrottled true if requests are sent as fast as they are answered rather than at a target rate
+     */
+    private void recordResponse(int index, boolean isUnthrottled)
+    {
+        long completedAt = System.nanoTime();
+        long uncorrected = completedAt - this.sentAt[index];
+        long expectedInterval = isUnthrottled && this.latencyCount > 0 ? this.latencySum / this.latencyCount : 0;
+
+        this.latencySum += uncorrected;
+        this.latencyCount++;
+
+        if (this.intendedAt[index] >= this.measureFrom)
+        {
+            this.results.recordResponse(this.reader.getStatusCode(), this.reader.getBytesRead(), completedAt - this.intendedAt[index],
+                                        uncorrected, expectedInterval);
+        }
+    }
+
+    /**
+     * Opens a new connection to the server
+     * @throws IOException if the connection could not be opened
+     */
+    private void connect() throws IOException
+    {
+        Socket socket = new Socket();
+
+        try
+        {
+            socket.setTcpNoDelay(true);
+            socket.connect(new InetSocketAddress(this.host, this.port));
+        }
+        catch (IOException e)
+        {
+            socket.close();
+            throw e;
+        }
+
+        this.socket = socket;
+        this.output = new BufferedOutputStream(socket.getOutputStream(), 16 * 1024);
+        this.reader.reset(socket.getInputStream());
+        this.remainingResponses = Integer.MAX_VALUE;
+        this.results.recordConnectionOpened();
+    }
+
+    /**
+     * Closes the connection, if one is open
+     */
+    private void close()
+    {
+        if (this.socket != null)
+        {
+            try
+            {
+                this.socket.close();
+            }
+            catch (IOException e)
+            {
+                // Nothing more can be done with the connection either way
+            }
+
+            this.socket = null;
+        }
+    }
+}
@@ -0,0 +1,254 @@
+package webserver.benchmarks;
+
+import java.nio.file.Paths;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Generates load against a running server over loopback and reports its throughput and latency
+ * <p>
+ * The server is expected to serve the given content root, under which the content tree of the file size mix is generated before
+ * the run starts. Run with -help for a description of the options
+ * @author Kieran Chin Cheong
+ * @version 1.0
+ * @since 1.0
+ */
+public class LoadGenerator
+{
+    // Static variables
+
+    private static final String DEFAULT_MIX = "1k:50,16k:30,256k:15,4m:5";
+
+    private static final String USAGE =
+        "Usage: java -cp benchmarks.jar webserver.benchmarks.LoadGenerator [option value]...\n" +
+        "  -host <name>          server host (default localhost)\n" +
+        "  -port <port>          server port (default 8080)\n" +
+        "  -root <directory>     content root of the server, under which the content tree is generated (default ./content)\n" +
+        "  -connections <n>      number of client connections, each on its own thread (default 16)\n" +
+        "  -duration <seconds>   length of the measured part of the run (default 30)\n" +
+        "  -warmup <seconds>     length of the unmeasured start of the run (default 5)\n" +
+        "  -rate <requests/sec>  total target rate across all connections, or 0 to send as fast as answered (default 0)\n" +
+        "  -keepalive <bool>     keep connections alive between requests (default true)\n" +
+        "  -pipeline <depth>     requests sent on a connection before reading their responses, with keep-alive (default 1)\n" +
+        "  -mix <size:weight,..> file sizes requested and their weights (default " + DEFAULT_MIX + ")\n" +
+        "  -files <n>            files of each size in the content tree (default 16)\n";
+
+    // Static methods
+
+    /**
+     * Main method of the load generator
+     * @param args the options of the run
+     * @throws Exception if the content tree could not be generated or the run was interrupted
+     */
+    public static void main(String[] args) throws Exception
+    {
+        LoadGenerator generator = new LoadGenerator();
+
+        if (args.length == 1 && args[0].equals("-help"))
+        {
+            System.out.print(USAGE);
+            return;
+        }
+
+        try
+        {
+            generator.parseArguments(args);
+        }
+        catch (IllegalArgumentException e)
+        {
+            System.err.println(e.getMessage());
+            System.err.print(USAGE);
+            System.exit(1);
+        }
+
+        generator.mix.generate(Paths.get(generator.rootDirectory));
+        generator.run();
+    }
+
+    /**
+     * @param option the name of the option
+     * @param value the value given for it
+     * @return the value, which is at least 1
+     * @throws IllegalArgumentException if the value is not a positive integer
+     */
+    private static int ParsePositive(String option, String value)
+    {
+        int parsed = LoadGenerator.ParseNonNegative(option, value);
+
+        if (parsed == 0)
+        {
+            throw new IllegalArgumentException("Invalid value for option " + option + " : " + value);
+        }
+
+        return parsed;
+    }
+
+    /**
+     * @param option the name of the option
+     * @param value the value given for it
+     * @return the value, which is at least 0
+     * @throws IllegalArgumentException if the value is not a non-negative integer
+     */
+    private static int ParseNonNegative(String option, String value)
+    {
+        try
+        {
+            int parsed = Integer.parseInt(value);
+
+            if (parsed >= 0)
+            {
+                return parsed;
+            }
+        }
+        catch (NumberFormatException e)
+        {
+            // Reported below
+        }
+
+        throw new IllegalArgumentException("Invalid value for option " + option + " : " + value);
+    }
+
+    // Member variables
+
+    private String host;
+    private int port;
+    private String rootDirectory;
+    private int connections;
+    private int durationSeconds;
+    private int warmupSeconds;
+    private int rate;
+    private boolean keepAliveEnabled;
+    private int pipelineDepth;
+    private String mixSpecification;
+    private int filesPerSize;
+    private ContentMix mix;
+
+    // Timing of the run, from System.nanoTime()
+    private long intervalNanos;
+    private long measureFrom;
+    private long endAt;
+
+    /**
+     * Constructor. Sets the default options
+     */
+    public LoadGenerator()
+    {
+        this.host = "localhost";
+        this.port = 8080;
+        this.rootDirectory = "./content";
+        this.connections = 16;
+        this.durationSeconds = 30;
+        this.warmupSeconds = 5;
+        this.rate = 0;
+        this.keepAliveEnabled = true;
+        this.pipelineDepth = 1;
+        this.mixSpecification = DEFAULT_MIX;
+        this.filesPerSize = 16;
+    }
+
+    /**
+     * Sets the options given on the command line
+     * @param args pairs of option names and values
+     * @throws IllegalArgumentException if an option is unknown or its value is invalid
+     */
+    private void parseArguments(String[] args)
+    {
+        if (args.length % 2 != 0)
+        {
+            throw new IllegalArgumentException("Missing value for option " + args[args.length - 1]);
+        }
+
+        for (int i = 0; i < args.length; i += 2)
+        {
+            String value = args[i + 1];
+
+            switch (args[i])
+            {
+                case "-host":
+                    this.host = value;
+                    break;
+                case "-port":
+                    this.port = LoadGenerator.ParsePositive(args[i], value);
+                    break;
+                case "-root":
+                    this.rootDirectory = value;
+                    break;
+                case "-connections":
+                    this.connections = LoadGenerator.ParsePositive(args[i], value);
+                    break;
+                case "-duration":
+                    this.durationSeconds = LoadGenerator.ParsePositive(args[i], value);
+                    break;
+                case "-warmup":
+                    this.warmupSeconds = LoadGenerator.ParseNonNegative(args[i], value);
+                    break;
+                case "-rate":
+                    this.rate = LoadGenerator.ParseNonNegative(args[i], value);
+                    break;
+                case "-keepalive":
+                    this.keepAliveEnabled = Boolean.parseBoolean(value);
+                    break;
+                case "-pipeline":
+                    this.pipelineDepth = LoadGenerator.ParsePositive(args[i], value);
+                    break;
+                case "-mix":
+                    this.mixSpecification = value;
+                    break;
+                case "-files":
+                    this.filesPerSize = LoadGenerator.ParsePositive(args[i], value);
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unknown option " + args[i]);
+            }
+        }
+
+        this.mix = new ContentMix(this.mixSpecification, this.filesPerSize);
+    }
+
+    /**
+     * Runs every connection until the end of the run, then prints the report
+     * @throws InterruptedException if interrupted while waiting for the connections to finish
+     */
+    private void run() throws InterruptedException
+    {
+        LoadResults results = new LoadResults();
+        byte[][] requests = this.mix.encodeRequests(this.host + ":" + this.port, this.keepAliveEnabled);
+
+        // Each connection sends its share of the target rate, the connections staggered evenly across the interval between requests
+        this.intervalNanos = this.rate > 0 ? TimeUnit.SECONDS.toNanos(this.connections) / this.rate : 0;
+
+        long startAt = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(100);
+        this.measureFrom = startAt + TimeUnit.SECONDS.toNanos(this.warmupSeconds);
+        this.endAt = this.measureFrom + TimeUnit.SECONDS.toNanos(this.durationSeconds);
+
+        System.out.println(String.format("Running %d connections against %s:%d for %d s after a %d s warmup", this.connections, this.host, this.port,
+                                         this.durationSeconds, this.warmupSeconds));
+        System.out.println(String.format("Keep-alive %s, pipelining depth %d, rate %s, file size mix %s", this.keepAliveEnabled ? "on" : "off",
+                                         this.keepAliveEnabled ? this.pipelineDepth : 1, this.rate > 0 ? this.rate + " requests/sec" : "unthrottled", this.mix));
+
+        Thread[] threads = new Thread[this.connections];
+
+        for (int i = 0; i < this.connections; i++)
+        {
+            long firstIntendedAt = startAt + (this.intervalNanos * i) / this.connections;
+            LoadSchedule schedule = new MixSchedule(this.mix, this.intervalNanos, firstIntendedAt, this.endAt);
+            threads[i] = new Thread(new LoadConnection(this.host, this.port, this.keepAliveEnabled, this.pipelineDepth, this.measureFrom, requests, schedule, results),
+                                    "loadgen-" + i);
+            threads[i].start();
+        }
+
+        for (Thread thread : threads)
+        {
+            thread.join();
+        }
+
+        results.report(this.durationSeconds);
+
+        if (this.rate > 0 && results.getTotalResponses() < (long) this.rate * this.durationSeconds * 95 / 100)
+        {
+            System.out.println();
+            System.out.println(String.format("Warning : the target rate of %d requests/sec was not reached, the corrected latencies include the time requests spent overdue",
+                                             this.rate));
+        }
+    }
+
+}
@@ -0,0 +1,210 @@
+package webserver.benchmarks;
+
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+import webserver.LatencyHistogram;
+
+/**
+ * What the load generator's connections measured, recorded by all of them at once
+ * <p>
+ * Latencies are kept twice. The uncorrected histogram holds the time from sending each request to reading the whole response.
+ * The corrected one accounts for coordinated omission: a connection which is stuck waiting on a slow response does not send the
+ * requests it should have sent meanwhile, so their delay would otherwise never be recorded. With a target rate, latencies are
+ * measured from when each request was due to be sent rather than when it was. Without one, each latency longer than the
+ * connection's usual interval between requests is followed by the latencies the requests it held up would have seen
+ * @author Kieran Chin Cheong
+ * @version 1.0
+ * @since 1.0
+ */
+public class LoadResults
+{
+    // Static variables
+
+    private static final int STATUS_CODES = 600;
+
+    // Percentiles reported for each latency histogram
+    private static final double[] PERCENTILES = {50, 90, 99, 99.9};
+
+    // Static methods
+
+    /**
+     * Prints one row of the latency table
+     * @param name the name of the row
+     * @param histogram the latencies
+     */
+    private static void ReportLatency(String name, LatencyHistogram histogram)
+    {
+        StringBuilder row = new StringBuilder(String.format("%-24s", name));
+
+        for (double percentile : PERCENTILES)
+        {
+            row.append(String.format(" %10d", histogram.getPercentile(percentile)));
+        }
+
+        row.append(String.format(" %10d", histogram.getMax()));
+        System.out.println(row);
+    }
+
+    // Member variables
+
+    private LatencyHistogram correctedLatency;
+    private LatencyHistogram uncorrectedLatency;
+    private AtomicLongArray responsesByStatus;
+    private LongAdder bytesRead;
+    private LongAdder connectionsOpened;
+    private LongAdder errors;
+
+    /**
+     * Constructor
+     */
+    public LoadResults()
+    {
+        this.correctedLatency = new LatencyHistogram();
+        this.uncorrectedLatency = new LatencyHistogram();
+        this.responsesByStatus = new AtomicLongArray(STATUS_CODES);
+        this.bytesRead = new LongAdder();
+        this.connectionsOpened = new LongAdder();
+        this.errors = new LongAdder();
+    }
+
+    /**
+     * Records a response to a request made during the measured part of the run
+     * @param statusCode the status code of the response
+     * @param bytes the size of the response, including its head
+     * @param correctedNanos the time from when the request was due to be sent to the response having been read
+     * @param uncorrectedNanos the time from when the request was sent to the response having been read
+     * @param expectedIntervalNanos the connection's usual interval between requests when running without a target rate, used to
+     *                              correct for the requests the response held up, or 0 if the corrected latency already accounts
+     *                              for them
+     */
+    public void recordResponse(int statusCode, long bytes, long correctedNanos, long uncorrectedNanos, long expectedIntervalNanos)
+    {
+        this.responsesByStatus.incrementAndGet(statusCode >= 0 && statusCode < STATUS_CODES ? statusCode : 0);
+        this.bytesRead.add(bytes);
+        this.uncorrectedLatency.record(uncorrectedNanos);
+        this.correctedLatency.record(correctedNanos);
+
+        if (expectedIntervalNanos > 0)
+        {
+            for (long missing = correctedNanos - expectedIntervalNanos; missing >= expectedIntervalNanos; missing -= expectedIntervalNanos)
+            {
+                this.correctedLatency.record(missing);
+            }
+        }
+    }
+
+    /**
+     * Records that a connection to the server was opened
+     */
+    public void recordConnectionOpened()
+    {
+        this.connectionsOpened.increment();
+    }
+
+    /**
+     * Records a request which failed without a response, such as from a connection being refused or reset
+     */
+    public void recordError()
+    {
+        this.errors.increment();
+    }
+
+    /**
+     * Prints the throughput, responses and latencies recorded
+     * @param durationSeconds the length of the measured part of the run
+     */
+    public void report(double durationSeconds)
+    {
+        long responses = this.getTotalResponses();
+
+        System.out.println();
+        System.out.println(String.format(Locale.ROOT, "Requests:    %d (%.1f requests/sec)", responses, responses / durationSeconds));
+        System.out.println(String.format(Locale.ROOT, "Transferred: %.1f MB (%.1f MB/sec)", this.getBytesRead() / 1e6, this.getBytesRead() / 1e6 / durationSeconds));
+
+        StringBuilder statuses = new StringBuilder();
+
+        for (int statusCode = 0; statusCode < STATUS_CODES; statusCode++)
+        {
+            if (this.getResponses(statusCode) > 0)
+            {
+                statuses.append(String.format("  %d: %d", statusCode, this.getResponses(statusCode)));
+            }
+        }
+
+        System.out.println("Responses:  " + statuses);
+        System.out.println(String.format("Errors:      %d, connections opened: %d", this.getErrors(), this.getConnectionsOpened()));
+        System.out.println();
+
+        System.out.println(String.format("%-24s %10s %10s %10s %10s %10s", "Latency (us)", "p50", "p90", "p99", "p99.9", "max"));
+        LoadResults.ReportLatency("corrected", this.correctedLatency);
+        LoadResults.ReportLatency("uncorrected", this.uncorrectedLatency);
+    }
+
+    /**
+     * @param statusCode a status code
+     * @return the number of responses with the status code
+     */
+    public long getResponses(int statusCode)
+    {
+        return this.responsesByStatus.get(statusCode);
+    }
+
+    /**
+     * @return the number of responses of every status
+     */
+    public long getTotalResponses()
+    {
+        long total = 0;
+
+        for (int i = 0; i < STATUS_CODES; i++)
+        {
+            total += this.responsesByStatus.get(i);
+        }
+
+        return total;
+    }
+
+    // Simple getters
+
+    /**
+     * @return
+     */
+    public LatencyHistogram getCorrectedLatency()
+    {
+        return this.correctedLatency;
+    }
+
+    /**
+     * @return
+     */
+    public LatencyHistogram getUncorrectedLatency()
+    {
+        return this.uncorrectedLatency;
+    }
+
+    /**
+     * @return
+     */
+    public long getBytesRead()
+    {
+        return this.bytesRead.sum();
+    }
+
+    /**
+     * @return
+     */
+    public long getConnectionsOpened()
+    {
+        return this.connectionsOpened.sum();
+    }
+
+    /**
+     * @return
+     */
+    public long getErrors()
+    {
+        return this.errors.sum();
+    }
+}
@@ -0,0 +1,25 @@
+package webserver.benchmarks;
+
+/**
+ * Decides which requests a LoadConnection sends and when
+ * @author Kieran Chin Cheong
+ * @version 1.0
+ * @since 1.0
+ */
+public interface LoadSchedule
+{
+    /**
+     * Waits until the next request is due, then fills in the batch of requests to send
+     * @param requests filled in with the index of each request of the batch, as returned by ContentMix.encodeRequests
+     * @param intendedAt filled in with when each request of the batch was due to be sent, from System.nanoTime(), unless the
+     *                   schedule is unthrottled
+     * @param maxBatchSize the largest number of requests the batch may hold
+     * @return the number of requests in the batch, or 0 if the run is over
+     */
+    int nextBatch(int[] requests, long[] intendedAt, int maxBatchSize);
+
+    /**
+     * @return true if requests are sent as fast as they are answered, so that each is due when it is sent
+     */
+    boolean isUnthrottled();
+}
@@ -0,0 +1,458 @@
+package webserver.benchmarks;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Locale;
+import java.util.Random;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Replays the requests recorded in a server log against a running server, at the recorded rate or a multiple of it, and reports
+ * its throughput and latency
+ * <p>
+ * Requests are read from the lines Logger.LogConnection writes at the CONNECTION logging level. Before the replay starts, every
+ * target which was served is created under the given content root, unless it already exists, so that the server sees the same
+ * distribution of files as in production. The log does not record response sizes, so files are sized by their extension, or
+ * after the files of a copy of the production content when one is given. Run with -help for a description of the options
+ * @author Kieran Chin Cheong
+ * @version 1.0
+ * @since 1.0
+ */
+public class LogReplay
+{
+    // Static variables
+
+    private static final String DEFAULT_SIZES = "html:16k,htm:16k,css:32k,js:64k,json:4k,txt:4k,svg:8k,ico:4k,gif:16k,png:64k,jpg:128k,jpeg:128k,woff2:48k,*:8k";
+
+    private static final String USAGE =
+        "Usage: java -cp benchmarks.jar webserver.benchmarks.LogReplay -log <file> [option value]...\n" +
+        "  -log <file>           server log written at loggingLevel 1 (CONNECTION) or above\n" +
+        "  -host <name>          server host (default localhost)\n" +
+        "  -port <port>          server port (default 8080)\n" +
+        "  -root <directory>     content root of the server, under which missing targets are created (default ./content)\n" +
+        "  -sizes <ext:size,..>  sizes of created files by extension, * for any other (default " + DEFAULT_SIZES + ")\n" +
+        "  -sizeFrom <directory> copy of the production content root, whose file sizes are used where a target exists in it\n" +
+        "  -speed <factor>       replay speed relative to the recorded rate, such as 2 for twice as fast (default 1)\n" +
+        "  -connections <n>      number of client connections, each on its own thread (default 64)\n" +
+        "  -keepalive <bool>     keep connections alive between requests (default true)\n" +
+        "  -pipeline <depth>     largest number of overdue requests sent on a connection at once, with keep-alive (default 1)\n" +
+        "  -warmup <seconds>     length of the unmeasured start of the replay (default 0)\n";
+
+    // Status codes of the logged requests for which the target is created, as it existed in production
+    private static final int[] SERVED_STATUS_CODES = {200, 206, 304, 416};
+
+    // Static methods
+
+    /**
+     * Main method of the log replay
+     * @param args the options of the replay
+     * @throws Exception if the log could not be read, the content tree could not be created or the replay was interrupted
+     */
+    public static void main(String[] args) throws Exception
+    {
+        LogReplay replay = new LogReplay();
+
+        if (args.length == 1 && args[0].equals("-help"))
+        {
+            System.out.print(USAGE);
+            return;
+        }
+
+        try
+        {
+            replay.parseArguments(args);
+        }
+        catch (IllegalArgumentException e)
+        {
+            System.err.println(e.getMessage());
+            System.err.print(USAGE);
+            System.exit(1);
+        }
+
+        replay.run();
+    }
+
+    /**
+     * @param statusCode the status code of a logged request
+     * @return true if the request's target existed when it was logged
+     */
+    private static boolean IsServed(int statusCode)
+    {
+        for (int served : SERVED_STATUS_CODES)
+        {
+            if (statusCode == served)
+            {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    /**
+     * Parses file sizes by extension, such as html:16k,png:64k,*:8k
+     * @param sizes the sizes, as comma separated extension:size pairs
+     * @return the size of each extension in bytes, with * for any other extension
+     * @throws IllegalArgumentException if the sizes could not be parsed
+     */
+    private static HashMap<String, Integer> ParseSizes(String sizes)
+    {
+        HashMap<String, Integer> sizesByExtension = new HashMap<String, Integer>();
+
+        try
+        {
+            for (String entry : sizes.split(","))
+            {
+                String[] parts = entry.trim().split(":");
+
+                if (parts.length != 2)
+                {
+                    throw new IllegalArgumentException("Invalid file size entry : " + entry);
+                }
+
+                sizesByExtension.put(parts[0].trim().toLowerCase(), ContentMix.ParseSize(parts[1]));
+            }
+        }
+        catch (NumberFormatException e)
+        {
+            throw new IllegalArgumentException("Invalid file sizes : " + sizes);
+        }
+
+        if (! sizesByExtension.containsKey("*"))
+        {
+            throw new IllegalArgumentException("File sizes must include a size for * : " + sizes);
+        }
+
+        return sizesByExtension;
+    }
+
+    // Member variables
+
+    private String logFile;
+    private String host;
+    private int port;
+    private String rootDirectory;
+    private HashMap<String, Integer> sizesByExtension;
+    private String sizeFromDirectory;
+    private double speed;
+    private int connections;
+    private boolean keepAliveEnabled;
+    private int pipelineDepth;
+    private double warmupSeconds;
+
+    /**
+     * Constructor. Sets the default options
+     */
+    public LogReplay()
+    {
+        this.host = "localhost";
+        this.port = 8080;
+        this.rootDirectory = "./content";
+        this.sizesByExtension = LogReplay.ParseSizes(DEFAULT_SIZES);
+        this.speed = 1;
+        this.connections = 64;
+        this.keepAliveEnabled = true;
+        this.pipelineDepth = 1;
+        this.warmupSeconds = 0;
+    }
+
+    /**
+     * Sets the options given on the command line
+     * @param args pairs of option names and values
+     * @throws IllegalArgumentException if an option is unknown, its value is invalid or no log is given
+     */
+    private void parseArguments(String[] args)
+    {
+        if (args.length % 2 != 0)
+        {
+            throw new IllegalArgumentException("Missing value for option " + args[args.length - 1]);
+        }
+
+        try
+        {
+            for (int i = 0; i < args.length; i += 2)
+            {
+                String value = args[i + 1];
+
+                switch (args[i])
+                {
+                    case "-log":
+                        this.logFile = value;
+                        break;
+                    case "-host":
+                        this.host = value;
+                        break;
+                    case "-port":
+                        this.port = Integer.parseInt(value);
+                        break;
+                    case "-root":
+                        this.rootDirectory = value;
+                        break;
+                    case "-sizes":
+                        this.sizesByExtension = LogReplay.ParseSizes(value);
+                        break;
+                    case "-sizeFrom":
+                        this.sizeFromDirectory = value;
+                        break;
+                    case "-speed":
+                        this.speed = Double.parseDouble(value);
+                        break;
+                    case "-connections":
+                        this.connections = Integer.parseInt(value);
+                        break;
+                    case "-keepalive":
+                        this.keepAliveEnabled = Boolean.parseBoolean(value);
+                        break;
+                    case "-pipeline":
+                        this.pipelineDepth = Integer.parseInt(value);
+                        break;
+                    case "-warmup":
+                        this.warmupSeconds = Double.parseDouble(value);
+                        break;
+                    default:
+                        throw new IllegalArgumentException("Unknown option " + args[i]);
+                }
+            }
+        }
+        catch (NumberFormatException e)
+        {
+            throw new IllegalArgumentException("Invalid option value : " + e.getMessage());
+        }
+
+        if (this.logFile == null)
+        {
+            throw new IllegalArgumentException("No log given");
+        }
+
+        if (this.port < 1 || this.speed <= 0 || this.connections < 1 || this.pipelineDepth < 1 || this.warmupSeconds < 0)
+        {
+            throw new IllegalArgumentException("Invalid option value");
+        }
+    }
+
+    /**
+     * Reads the log, creates the content tree, replays the requests and prints the report
+     * @throws IOException if the log could not be read or the content tree could not be created
+     * @throws InterruptedException if interrupted while waiting for the connections to finish
+     */
+    private void run() throws IOException, InterruptedException
+    {
+        ConnectionLog log = ConnectionLog.Read(Paths.get(this.logFile));
+        ArrayList<ConnectionLog.Entry> entries = log.getEntries();
+
+        if (entries.isEmpty())
+        {
+            System.err.println("No requests found in " + this.logFile + ", was it written at loggingLevel 1 or above?");
+            System.exit(1);
+        }
+
+        this.createContentTree(entries);
+
+        // Encode each distinct request once, and give each logged connection to a single replay connection, so that the
+        // requests a client made one after another on a connection are also replayed one after another
+        HashMap<String, Integer> requestIndexes = new HashMap<String, Integer>();
+        ArrayList<byte[]> requests = new ArrayList<byte[]>();
+        int[] entryRequests = new int[entries.size()];
+        int[] entryConnections = new int[entries.size()];
+        int[] connectionSizes = new int[this.connections];
+        TreeMap<Integer, Long> loggedStatuses = new TreeMap<Integer, Long>();
+
+        for (int i = 0; i < entries.size(); i++)
+        {
+            ConnectionLog.Entry entry = entries.get(i);
+            String request = this.encodeRequest(entry);
+            Integer index = requestIndexes.get(request);
+
+            if (index == null)
+            {
+                index = requests.size();
+                requestIndexes.put(request, index);
+                requests.add(request.getBytes(StandardCharsets.ISO_8859_1));
+            }
+
+            entryRequests[i] = index;
+            entryConnections[i] = Math.floorMod(entry.getClientAddress().hashCode(), this.connections);
+            connectionSizes[entryConnections[i]]++;
+
+            Long logged = loggedStatuses.get(entry.getStatusCode());
+            loggedStatuses.put(entry.getStatusCode(), logged == null ? 1 : logged + 1);
+        }
+
+        long[] offsets = log.getReplayOffsets(this.speed);
+        long startAt = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(500);
+        long measureFrom = startAt + (long) (this.warmupSeconds * 1e9);
+        ReplaySchedule[] schedules = new ReplaySchedule[this.connections];
+
+        for (int i = 0; i < this.connections; i++)
+        {
+            schedules[i] = new ReplaySchedule(connectionSizes[i]);
+        }
+
+        for (int i = 0; i < entries.size(); i++)
+        {
+            schedules[entryConnections[i]].add(entryRequests[i], startAt + offsets[i]);
+        }
+
+        double durationSeconds = log.getSpanSeconds() / this.speed - this.warmupSeconds;
+
+        System.out.println(String.format(Locale.ROOT, "Replaying %d requests logged over %d s (%d other lines skipped) at %.2fx speed, taking %.1f s",
+                                         entries.size(), log.getSpanSeconds(), log.getSkippedLines(), this.speed, log.getSpanSeconds() / this.speed));
+        System.out.println(String.format("Running %d connections against %s:%d, keep-alive %s, pipelining depth %d", this.connections, this.host, this.port,
+                                         this.keepAliveEnabled ? "on" : "off", this.keepAliveEnabled ? this.pipelineDepth : 1));
+
+        LoadResults results = new LoadResults();
+        byte[][] encodedRequests = requests.toArray(new byte[requests.size()][]);
+        Thread[] threads = new Thread[this.connections];
+
+        for (int i = 0; i < this.connections; i++)
+        {
+            threads[i] = new Thread(new LoadConnection(this.host, this.port, this.keepAliveEnabled, this.pipelineDepth, measureFrom, encodedRequests, schedules[i], results),
+                                    "replay-" + i);
+            threads[i].start();
+        }
+
+        for (Thread thread : threads)
+        {
+            thread.join();
+        }
+
+        results.report(Math.max(durationSeconds, 1));
+
+        StringBuilder logged = new StringBuilder();
+
+        for (Integer statusCode : loggedStatuses.keySet())
+        {
+            logged.append(String.format("  %d: %d", statusCode, loggedStatuses.get(statusCode)));
+        }
+
+        System.out.println();
+        System.out.println("Logged responses, including the warmup:" + logged);
+    }
+
+    /**
+     * @param entry a logged request
+     * @return the request, as it is sent to the server
+     */
+    private String encodeRequest(ConnectionLog.Entry entry)
+    {
+        StringBuilder request = new StringBuilder(128);
+
+        request.append(entry.getMethod()).append(' ').append(entry.getTarget()).append(" HTTP/1.1\r\n");
+        request.append("Host: ").append(this.host).append(':').append(this.port).append("\r\n");
+
+        if (! entry.getUserAgent().isEmpty())
+        {
+            request.append("User-Agent: ").append(entry.getUserAgent()).append("\r\n");
+        }
+
+        request.append("Connection: ").append(this.keepAliveEnabled ? "keep-alive" : "close").append("\r\n\r\n");
+
+        return request.toString();
+    }
+
+    /**
+     * Creates a file for every target which was served when it was logged, unless it already exists. Existing files are never
+     * changed, so the content root may also be a copy of the production content
+     * @param entries the logged requests
+     * @throws IOException if the content root could not be resolved
+     */
+    private void createContentTree(ArrayList<ConnectionLog.Entry> entries) throws IOException
+    {
+        Path root = Paths.get(this.rootDirectory).toAbsolutePath().normalize();
+        Path sizeFrom = this.sizeFromDirectory == null ? null : Paths.get(this.sizeFromDirectory).toAbsolutePath().normalize();
+        HashSet<String> targets = new HashSet<String>();
+        Random random = new Random(0);
+        int created = 0;
+        int existing = 0;
+        int skipped = 0;
+
+        for (ConnectionLog.Entry entry : entries)
+        {
+            if (! LogReplay.IsServed(entry.getStatusCode()) || ! targets.add(entry.getTarget()))
+            {
+                continue;
+            }
+
+            // The server maps the target to a path under its content root as it is, so the file is created at the same path,
+            // never outside of the content root
+            String relative = entry.getTarget().startsWith("/") ? entry.getTarget().substring(1) : entry.getTarget();
+            Path file;
+
+            try
+            {
+                file = root.resolve(relative).normalize();
+            }
+            catch (RuntimeException e)
+            {
+                skipped++;
+                continue;
+            }
+
+            if (! file.startsWith(root) || file.equals(root))
+            {
+                skipped++;
+                continue;
+            }
+
+            if (Files.exists(file))
+            {
+                existing++;
+                continue;
+            }
+
+            try
+            {
+                byte[] content = new byte[this.getFileSize(relative, sizeFrom)];
+                random.nextBytes(content);
+                Files.createDirectories(file.getParent());
+                Files.write(file, content);
+                created++;
+            }
+            catch (IOException e)
+            {
+                System.err.println("Could not create " + file + " : " + e.toString());
+                skipped++;
+            }
+        }
+
+        System.out.println(String.format("Content tree under %s : %d files created, %d already present, %d targets skipped", root, created, existing, skipped));
+    }
+
+    /**
+     * @param relative the path of a target relative to the content root
+     * @param sizeFrom a copy of the production content root, or null if there is none
+     * @return the size of the file to create for the target
+     */
+    private int getFileSize(String relative, Path sizeFrom)
+    {
+        if (sizeFrom != null)
+        {
+            try
+            {
+                Path original = sizeFrom.resolve(relative).normalize();
+
+                if (original.startsWith(sizeFrom) && Files.isRegularFile(original))
+                {
+                    return (int) Math.min(Files.size(original), Integer.MAX_VALUE);
+                }
+            }
+            catch (IOException | RuntimeException e)
+            {
+                // Sized by its extension instead
+            }
+        }
+
+        String name = relative.substring(relative.lastIndexOf('/') + 1);
+        int dot = name.lastIndexOf('.');
+        Integer size = dot >= 0 ? this.sizesByExtension.get(name.substring(dot + 1).toLowerCase()) : null;
+
+        return size != null ? size : this.sizesByExtension.get("*");
+    }
+}
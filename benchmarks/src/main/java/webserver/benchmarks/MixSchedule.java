@@ -0,0 +1,84 @@
+package webserver.benchmarks;
+
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Sends requests drawn from a file size mix, either at a fixed interval or as fast as they are answered
+ * @author Kieran Chin Cheong
+ * @version 1.0
+ * @since 1.0
+ */
+public class MixSchedule implements LoadSchedule
+{
+    // Member variables
+
+    private ContentMix mix;
+    private long intervalNanos;
+    private long nextIntendedAt;
+    private long endAt;
+
+    /**
+     * Constructor
+     * @param mix the file size mix to draw requests from
+     * @param intervalNanos the interval between requests, or 0 to send them as fast as they are answered
+     * @param firstIntendedAt when the first request is due to be sent, with an interval
+     * @param endAt when the run ends, from System.nanoTime()
+     */
+    public MixSchedule(ContentMix mix, long intervalNanos, long firstIntendedAt, long endAt)
+    {
+        this.mix = mix;
+        this.intervalNanos = intervalNanos;
+        this.nextIntendedAt = firstIntendedAt;
+        this.endAt = endAt;
+    }
+
+    @Override
+    public int nextBatch(int[] requests, long[] intendedAt, int maxBatchSize)
+    {
+        long now = System.nanoTime();
+        int batchSize = 0;
+
+        if (this.intervalNanos > 0)
+        {
+            if (this.nextIntendedAt >= this.endAt)
+            {
+                return 0;
+            }
+
+            while (now < this.nextIntendedAt)
+            {
+                LockSupport.parkNanos(this.nextIntendedAt - now);
+                now = System.nanoTime();
+            }
+
+            // Send every request which has fallen due, up to the largest batch. Any others stay due, and are sent late
+            while (batchSize < maxBatchSize && this.nextIntendedAt <= now && this.nextIntendedAt < this.endAt)
+            {
+                intendedAt[batchSize++] = this.nextIntendedAt;
+                this.nextIntendedAt += this.intervalNanos;
+            }
+        }
+        else
+        {
+            if (now >= this.endAt)
+            {
+                return 0;
+            }
+
+            batchSize = maxBatchSize;
+        }
+
+        for (int i = 0; i < batchSize; i++)
+        {
+            requests[i] = this.mix.pickRequest();
+        }
+
+        return batchSize;
+    }
+
+    @Override
+    public boolean isUnthrottled()
+    {
+        return this.intervalNanos == 0;
+    }
+}
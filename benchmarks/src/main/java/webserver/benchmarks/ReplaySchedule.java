@@ -0,0 +1,77 @@
+package webserver.benchmarks;
+
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Sends a fixed sequence of requests, each when it falls due
+ * @author Kieran Chin Cheong
+ * @version 1.0
+ * @since 1.0
+ */
+public class ReplaySchedule implements LoadSchedule
+{
+    // Member variables
+
+    private int[] requests;
+    private long[] intendedAt;
+    private int size;
+    private int next;
+
+    /**
+     * Constructor
+     * @param capacity the number of requests the schedule will hold
+     */
+    public ReplaySchedule(int capacity)
+    {
+        this.requests = new int[capacity];
+        this.intendedAt = new long[capacity];
+    }
+
+    /**
+     * Adds a request to the end of the schedule. Requests must be added in the order they are due
+     * @param request the index of the request
+     * @param intendedAt when the request is due to be sent, from System.nanoTime()
+     */
+    public void add(int request, long intendedAt)
+    {
+        this.requests[this.size] = request;
+        this.intendedAt[this.size] = intendedAt;
+        this.size++;
+    }
+
+    @Override
+    public int nextBatch(int[] requests, long[] intendedAt, int maxBatchSize)
+    {
+        if (this.next == this.size)
+        {
+            return 0;
+        }
+
+        long now = System.nanoTime();
+
+        while (now < this.intendedAt[this.next])
+        {
+            LockSupport.parkNanos(this.intendedAt[this.next] - now);
+            now = System.nanoTime();
+        }
+
+        // Send every request which has fallen due, up to the largest batch. Any others stay due, and are sent late
+        int batchSize = 0;
+
+        while (batchSize < maxBatchSize && this.next < this.size && this.intendedAt[this.next] <= now)
+        {
+            requests[batchSize] = this.requests[this.next];
+            intendedAt[batchSize] = this.intendedAt[this.next];
+            batchSize++;
+            this.next++;
+        }
+
+        return batchSize;
+    }
+
+    @Override
+    public boolean isUnthrottled()
+    {
+        return false;
+    }
+}
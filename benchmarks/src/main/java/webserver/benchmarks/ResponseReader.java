@@ -0,0 +1,254 @@
+package webserver.benchmarks;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Reads responses one after another from a connection, keeping only what the load generator reports on. Message bodies are
+ * read and discarded
+ * @author Kieran Chin Cheong
+ * @version 1.0
+ * @since 1.0
+ */
+public class ResponseReader
+{
+    // Static variables
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    // Member variables
+
+    private InputStream input;
+    private byte[] buffer;
+    private int start;
+    private int end;
+
+    // Details of the last response read
+    private int statusCode;
+    private long bytesRead;
+    private int keepAliveMax;
+    private boolean isLastResponse;
+
+    /**
+     * Constructor
+     */
+    public ResponseReader()
+    {
+        this.buffer = new byte[BUFFER_SIZE];
+    }
+
+    /**
+     * Starts reading from a new connection, discarding anything left over from the previous one
+     * @param input the connection's input stream
+     */
+    public void reset(InputStream input)
+    {
+        this.input = input;
+        this.start = 0;
+        this.end = 0;
+    }
+
+    /**
+     * Reads the next response in full
+     * @return true if a response was read, false if the connection was closed before any of it arrived
+     * @throws IOException if the connection failed or was closed part way through the response
+     */
+    public boolean read() throws IOException
+    {
+        // Find the end of the head, reading more of it as needed
+        int headEnd = this.findEndOfHead(this.start);
+
+        while (headEnd < 0)
+        {
+            if (this.start == this.end && this.end > 0)
+            {
+                this.start = 0;
+                this.end = 0;
+            }
+            else if (this.end == this.buffer.length)
+            {
+                if (this.start == 0)
+                {
+                    throw new IOException("Response head is larger than " + BUFFER_SIZE + " bytes");
+                }
+
+                System.arraycopy(this.buffer, this.start, this.buffer, 0, this.end - this.start);
+                this.end -= this.start;
+                this.start = 0;
+            }
+
+            int scanFrom = Math.max(this.start, this.end - 3);
+            int read = this.input.read(this.buffer, this.end, this.buffer.length - this.end);
+
+            if (read < 0)
+            {
+                if (this.start == this.end)
+                {
+                    return false;
+                }
+
+                throw new IOException("Connection closed before the end of the response head");
+            }
+
+            this.end += read;
+            headEnd = this.findEndOfHead(scanFrom);
+        }
+
+        long contentLength = this.parseHead(headEnd);
+        this.bytesRead = headEnd + 4 - this.start;
+        this.start = headEnd + 4;
+
+        // A response without a content length is delimited by the connection closing
+        if (contentLength < 0)
+        {
+            contentLength = this.isLastResponse ? Long.MAX_VALUE : 0;
+        }
+
+        // Skip over the message body, first whatever is already buffered and then the rest as it arrives
+        long buffered = Math.min(contentLength, this.end - this.start);
+        this.start += (int) buffered;
+        this.bytesRead += buffered;
+        long bodyRemaining = contentLength - buffered;
+
+        while (bodyRemaining > 0)
+        {
+            int read = this.input.read(this.buffer, 0, (int) Math.min(bodyRemaining, this.buffer.length));
+
+            if (read < 0)
+            {
+                if (contentLength == Long.MAX_VALUE)
+                {
+                    break;
+                }
+
+                throw new IOException("Connection closed before the end of the response body");
+            }
+
+            bodyRemaining -= read;
+            this.bytesRead += read;
+        }
+
+        if (this.start == this.end)
+        {
+            this.start = 0;
+            this.end = 0;
+        }
+
+        return true;
+    }
+
+    /**
+     * @param from the position to start looking from
+     * @return the position of the blank line ending the head, or -1 if it has not been read yet
+     */
+    private int findEndOfHead(int from)
+    {
+        for (int i = from; i <= this.end - 4; i++)
+        {
+            if (this.buffer[i] == '\r' && this.buffer[i + 1] == '\n' && this.buffer[i + 2] == '\r' && this.buffer[i + 3] == '\n')
+            {
+                return i;
+            }
+        }
+
+        return -1;
+    }
+
+    /**
+     * Parses the status code and the header fields which say how the response is delimited and whether the connection stays open
+     * @param headEnd the position of the blank line ending the head
+     * @return the content length, or -1 if the response has none
+     * @throws IOException if the status line is malformed
+     */
+    private long parseHead(int headEnd) throws IOException
+    {
+        String head = new String(this.buffer, this.start, headEnd - this.start, "ISO-8859-1").toLowerCase();
+        String[] lines = head.split("\r\n");
+
+        if (lines[0].length() < 12 || ! lines[0].startsWith("http/1."))
+        {
+            throw new IOException("Malformed status line : " + lines[0]);
+        }
+
+        try
+        {
+            this.statusCode = Integer.parseInt(lines[0].substring(9, 12));
+        }
+        catch (NumberFormatException e)
+        {
+            throw new IOException("Malformed status line : " + lines[0]);
+        }
+
+        long contentLength = -1;
+        this.keepAliveMax = -1;
+        this.isLastResponse = false;
+
+        for (int i = 1; i < lines.length; i++)
+        {
+            String line = lines[i];
+
+            if (line.startsWith("content-length:"))
+            {
+                contentLength = Long.parseLong(line.substring("content-length:".length()).trim());
+            }
+            else if (line.startsWith("connection:") && line.contains("close"))
+            {
+                this.isLastResponse = true;
+            }
+            else if (line.startsWith("keep-alive:") && line.contains("max="))
+            {
+                int maxStart = line.indexOf("max=") + "max=".length();
+                int maxEnd = maxStart;
+
+                while (maxEnd < line.length() && Character.isDigit(line.charAt(maxEnd)))
+                {
+                    maxEnd++;
+                }
+
+                this.keepAliveMax = maxEnd > maxStart ? Integer.parseInt(line.substring(maxStart, maxEnd)) : -1;
+            }
+        }
+
+        // The server counts its keep-alive max down with each response, and closes the connection after the one at 1
+        if (this.keepAliveMax == 1)
+        {
+            this.isLastResponse = true;
+        }
+
+        return contentLength;
+    }
+
+    // Simple getters
+
+    /**
+     * @return
+     */
+    public int getStatusCode()
+    {
+        return this.statusCode;
+    }
+
+    /**
+     * @return the size of the last response, including its head
+     */
+    public long getBytesRead()
+    {
+        return this.bytesRead;
+    }
+
+    /**
+     * @return the keep-alive max of the last response, or -1 if it had none
+     */
+    public int getKeepAliveMax()
+    {
+        return this.keepAliveMax;
+    }
+
+    /**
+     * @return true if the server closes the connection after the last response
+     */
+    public boolean isLastResponse()
+    {
+        return this.isLastResponse;
+    }
+}
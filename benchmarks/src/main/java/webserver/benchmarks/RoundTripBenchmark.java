@@ -0,0 +1,297 @@
+package webserver.benchmarks;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import webserver.Configuration;
+import webserver.Logger;
+import webserver.Webserver;
+
+/**
+ * Measures whole requests over loopback, from the client writing a request to it having read the entire response
+ * @author Kieran Chin Cheong
+ * @version 1.0
+ * @since 1.0
+ */
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class RoundTripBenchmark
+{
+    /**
+     * A server running in the benchmark's JVM. Only one is started per fork, as the server's configuration is a singleton
+     */
+    @State(Scope.Benchmark)
+    public static class Server
+    {
+        @Param({Webserver.IO_MODE_BLOCKING, Webserver.IO_MODE_NIO})
+        public String ioMode;
+
+        @Param({"1024"})
+        public int fileSize;
+
+        private Path contentRoot;
+        private int port;
+
+        /**
+         * Starts the server on a free port, serving a single file
+         * @throws Exception if the server could not be started
+         */
+        @Setup
+        public void setUp() throws Exception
+        {
+            this.contentRoot = BenchmarkContent.CreateContentRoot(this.fileSize);
+
+            try (ServerSocket socket = new ServerSocket(0))
+            {
+                this.port = socket.getLocalPort();
+            }
+
+            Configuration config = Configuration.GetConfiguration();
+            config.setPort(this.port);
+            config.setIoMode(this.ioMode);
+            config.setEnableHTTPKeepAlive(true);
+
+            Logger.Start();
+
+            final Webserver server = new Webserver();
+            server.initialize();
+
+            Thread serverThread = new Thread(new Runnable()
+            {
+                public void run()
+                {
+                    try
+                    {
+                        server.run();
+                    }
+                    catch (Exception e)
+                    {
+                        System.err.println("Error running Webserver: \"" + e.toString() + "\"");
+                    }
+                }
+            }, "webserver");
+
+            // The server runs until the fork exits
+            serverThread.setDaemon(true);
+            serverThread.start();
+        }
+
+        /**
+         * Deletes the file served
+         * @throws Exception if the file could not be deleted
+         */
+        @TearDown
+        public void tearDown() throws Exception
+        {
+            BenchmarkContent.DeleteContentRoot(this.contentRoot);
+        }
+    }
+
+    /**
+     * A keep-alive connection of a single benchmark thread. It is reopened whenever the server closes it
+     */
+    @State(Scope.Thread)
+    public static class Client
+    {
+        private static final byte[] HEAD_END = {'\r', '\n', '\r', '\n'};
+
+        private byte[] request;
+        private byte[] buffer;
+        private Socket socket;
+        private InputStream input;
+        private OutputStream output;
+
+        /**
+         * Connects to the server
+         * @param server the server, which must have been started first
+         * @throws IOException if the connection could not be opened
+         */
+        @Setup
+        public void setUp(Server server) throws IOException
+        {
+            this.request = ("GET /" + BenchmarkContent.FILE_NAME + " HTTP/1.1\r\nHost: localhost\r\nConnection: keep-alive\r\n\r\n").getBytes(StandardCharsets.US_ASCII);
+            this.buffer = new byte[64 * 1024];
+            this.connect(server.port);
+        }
+
+        /**
+         * Closes the connection
+         * @throws IOException if the connection could not be closed
+         */
+        @TearDown
+        public void tearDown() throws IOException
+        {
+            this.socket.close();
+        }
+
+        /**
+         * Opens a new connection to the server
+         * @param port the port the server is listening on
+         * @throws IOException if the connection could not be opened
+         */
+        private void connect(int port) throws IOException
+        {
+            this.socket = new Socket();
+            this.socket.setTcpNoDelay(true);
+            this.socket.connect(new InetSocketAddress("localhost", port));
+            this.input = this.socket.getInputStream();
+            this.output = this.socket.getOutputStream();
+        }
+
+        /**
+         * Sends the request and reads the whole response to it
+         * @param port the port the server is listening on, in case the connection has to be reopened
+         * @return the size of the response in bytes
+         * @throws IOException if the exchange failed
+         */
+        private int exchange(int port) throws IOException
+        {
+            this.output.write(this.request);
+            this.output.flush();
+
+            // Read until the end of the head, which the first reads almost always include in full
+            int length = 0;
+            int headEnd = -1;
+
+            while (headEnd < 0)
+            {
+                int read;
+
+                try
+                {
+                    read = this.input.read(this.buffer, length, this.buffer.length - length);
+                }
+                catch (SocketException e)
+                {
+                    read = -1;
+                }
+
+                // The server may close an idle connection as its httpKeepAliveTimeout expires, so if nothing of the response
+                // arrived the request is sent again on a new connection, as a browser would
+                if (read < 0 && length == 0)
+                {
+                    this.socket.close();
+                    this.connect(port);
+                    this.output.write(this.request);
+                    this.output.flush();
+                    continue;
+                }
+
+                if (read < 0)
+                {
+                    throw new IOException("Connection closed before the end of the response head");
+                }
+
+                length += read;
+                headEnd = Client.IndexOf(this.buffer, length, HEAD_END);
+            }
+
+            String head = new String(this.buffer, 0, headEnd, StandardCharsets.ISO_8859_1).toLowerCase();
+            int bodyRemaining = Client.ContentLength(head) - (length - headEnd - HEAD_END.length);
+
+            while (bodyRemaining > 0)
+            {
+                int read = this.input.read(this.buffer, 0, Math.min(bodyRemaining, this.buffer.length));
+
+                if (read < 0)
+                {
+                    throw new IOException("Connection closed before the end of the response body");
+                }
+
+                bodyRemaining -= read;
+            }
+
+            // The server closes the connection after a response marked as the last, and also after one whose keep-alive max has counted
+            // down to 1
+            if (head.contains("\r\nconnection: close") || head.contains(",max=1\r\n") || head.endsWith(",max=1"))
+            {
+                this.socket.close();
+                this.connect(port);
+            }
+
+            return length;
+        }
+
+        /**
+         * @param head a lower cased response head
+         * @return the value of its content-length header field, or 0 if it has none
+         */
+        private static int ContentLength(String head)
+        {
+            int start = head.indexOf("\r\ncontent-length:");
+
+            if (start < 0)
+            {
+                return 0;
+            }
+
+            start += "\r\ncontent-length:".length();
+            int end = head.indexOf("\r\n", start);
+
+            return Integer.parseInt(head.substring(start, end < 0 ? head.length() : end).trim());
+        }
+
+        /**
+         * @param buffer the bytes to search
+         * @param length the number of bytes of the buffer in use
+         * @param target the bytes to look for
+         * @return the index of the first occurrence of the target, or -1 if there is none
+         */
+        private static int IndexOf(byte[] buffer, int length, byte[] target)
+        {
+            for (int i = 0; i <= length - target.length; i++)
+            {
+                int j = 0;
+
+                while (j < target.length && buffer[i + j] == target[j])
+                {
+                    j++;
+                }
+
+                if (j == target.length)
+                {
+                    return i;
+                }
+            }
+
+            return -1;
+        }
+    }
+
+    /**
+     * Requests the file and reads the whole response
+     * @param server the server
+     * @param client the benchmark thread's connection
+     * @return the size of the response head and whatever of the body arrived with it
+     * @throws IOException if the request failed
+     */
+    @Benchmark
+    public int roundTrip(Server server, Client client) throws IOException
+    {
+        return client.exchange(server.port);
+    }
+}
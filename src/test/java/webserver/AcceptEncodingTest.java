@@ -0,0 +1,118 @@
+package webserver;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Parses accept-encoding header fields, and chooses the content coding to send from those available
+ * @author Kieran Chin Cheong
+ * @version 1.0
+ * @since 1.0
+ */
+public class AcceptEncodingTest
+{
+    // Static methods
+
+    /**
+     * @param value the value of an accept-encoding header field, may be null
+     * @return the coding chosen when both Brotli and gzip are available
+     */
+    private static String SelectEither(String value)
+    {
+        return AcceptEncoding.Parse(value).select(true, true);
+    }
+
+    /**
+     * @param value the value of an accept-encoding header field, may be null
+     * @return the coding chosen when only gzip is available, as when compressing on the fly
+     */
+    private static String SelectGzip(String value)
+    {
+        return AcceptEncoding.Parse(value).select(false, true);
+    }
+
+    /**
+     * A client which sends no accept-encoding header field is sent the file as it is
+     */
+    @Test
+    public void selectsNothingWithoutHeader()
+    {
+        assertNull(AcceptEncodingTest.SelectEither(null));
+        assertNull(AcceptEncodingTest.SelectEither(""));
+    }
+
+    /**
+     * The coding with the highest quality value is chosen, and Brotli when the two are equal
+     */
+    @Test
+    public void prefersHighestQuality()
+    {
+        assertEquals(AcceptEncoding.BROTLI, AcceptEncodingTest.SelectEither("gzip, br"));
+        assertEquals(AcceptEncoding.GZIP, AcceptEncodingTest.SelectEither("br;q=0.5, gzip"));
+        assertEquals(AcceptEncoding.BROTLI, AcceptEncodingTest.SelectEither("gzip;q=0.8, br;q=0.9"));
+        assertEquals(AcceptEncoding.GZIP, AcceptEncodingTest.SelectEither("deflate, gzip"));
+    }
+
+    /**
+     * Only codings which are available can be chosen
+     */
+    @Test
+    public void selectsOnlyAvailableCodings()
+    {
+        assertEquals(AcceptEncoding.GZIP, AcceptEncodingTest.SelectGzip("gzip, br"));
+        assertNull(AcceptEncodingTest.SelectGzip("br"));
+        assertNull(AcceptEncoding.Parse("gzip, br").select(false, false));
+    }
+
+    /**
+     * A quality value of 0 refuses the coding
+     */
+    @Test
+    public void refusesCodingsOfZeroQuality()
+    {
+        assertNull(AcceptEncodingTest.SelectGzip("gzip;q=0"));
+        assertNull(AcceptEncodingTest.SelectGzip("gzip; Q=0.000"));
+        assertEquals(AcceptEncoding.GZIP, AcceptEncodingTest.SelectEither("br;q=0, gzip"));
+    }
+
+    /**
+     * "*" stands for every coding not named, whichever order it is given in
+     */
+    @Test
+    public void appliesWildcardToOtherCodings()
+    {
+        assertEquals(AcceptEncoding.BROTLI, AcceptEncodingTest.SelectEither("*"));
+        assertEquals(AcceptEncoding.GZIP, AcceptEncodingTest.SelectGzip("*"));
+        assertEquals(AcceptEncoding.GZIP, AcceptEncodingTest.SelectEither("*;q=0, gzip"));
+        assertEquals(AcceptEncoding.GZIP, AcceptEncodingTest.SelectEither("gzip, *;q=0"));
+        assertNull(AcceptEncodingTest.SelectGzip("gzip;q=0, *"));
+        assertEquals(AcceptEncoding.BROTLI, AcceptEncodingTest.SelectEither("gzip;q=0, *"));
+    }
+
+    /**
+     * The identity coding is never chosen from, so refusing it does not stop a coding being chosen, and on its own leaves the file
+     * to be sent as it is
+     */
+    @Test
+    public void ignoresIdentity()
+    {
+        assertEquals(AcceptEncoding.GZIP, AcceptEncodingTest.SelectGzip("identity;q=0, gzip"));
+        assertNull(AcceptEncodingTest.SelectGzip("identity;q=0"));
+        assertNull(AcceptEncodingTest.SelectGzip("identity"));
+    }
+
+    /**
+     * Codings are matched case-insensitively, x-gzip is gzip, and a quality value which is not valid refuses the coding
+     */
+    @Test
+    public void parsesLenientSyntax()
+    {
+        assertEquals(AcceptEncoding.GZIP, AcceptEncodingTest.SelectGzip(" GZIP ;q=1"));
+        assertEquals(AcceptEncoding.GZIP, AcceptEncodingTest.SelectGzip("x-gzip"));
+        assertEquals(AcceptEncoding.GZIP, AcceptEncodingTest.SelectGzip("gzip;level=9"));
+        assertNull(AcceptEncodingTest.SelectGzip("gzip;q=2"));
+        assertNull(AcceptEncodingTest.SelectGzip("gzip;q=high"));
+    }
+}
@@ -0,0 +1,245 @@
+package webserver;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Takes connections from the work queue at chosen times under each overload policy, and turns connections away over real sockets
+ * <p>
+ * The CoDel tests use a target of 5ms and an interval of 100ms, and give every time in milliseconds since the test started
+ * @author Kieran Chin Cheong
+ * @version 1.0
+ * @since 1.0
+ */
+public class AdmissionControlTest
+{
+    // Static variables
+
+    // An arbitrary start for the tests' clock, from which every time is given
+    private static final long START = TimeUnit.SECONDS.toNanos(1000);
+
+    // Static methods
+
+    /**
+     * @param admission the AdmissionControl
+     * @param waited how long the connection waited in the queue, in milliseconds
+     * @param now the time the connection is taken from the queue, in milliseconds
+     * @return true if the connection is served
+     */
+    private static boolean Admit(AdmissionControl admission, long waited, long now)
+    {
+        return admission.admit(START + TimeUnit.MILLISECONDS.toNanos(now - waited), START + TimeUnit.MILLISECONDS.toNanos(now));
+    }
+
+    /**
+     * @return an AdmissionControl using the codel policy
+     */
+    private static AdmissionControl CoDel()
+    {
+        return new AdmissionControl(AdmissionControl.POLICY_CODEL, 1000, 5, 100);
+    }
+
+    // Member variables
+
+    private ServerSocketChannel listener;
+    private SocketChannel client;
+    private SocketChannel server;
+
+    /**
+     * Connects a client to a listener of its own, for the tests which turn the connection away
+     * @throws IOException
+     */
+    @BeforeEach
+    public void connect() throws IOException
+    {
+        this.listener = ServerSocketChannel.open().bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+        this.client = SocketChannel.open(this.listener.getLocalAddress());
+        this.client.socket().setSoTimeout(5000);
+        this.server = this.listener.accept();
+    }
+
+    /**
+     * @throws IOException
+     */
+    @AfterEach
+    public void disconnect() throws IOException
+    {
+        this.client.close();
+        this.server.close();
+        this.listener.close();
+    }
+
+    /**
+     * @return everything the client receives until the connection is closed
+     * @throws IOException
+     */
+    private String receive() throws IOException
+    {
+        ByteArrayOutputStream received = new ByteArrayOutputStream();
+        InputStream in = this.client.socket().getInputStream();
+        byte[] buffer = new byte[1024];
+        int read;
+
+        while ((read = in.read(buffer)) >= 0)
+        {
+            received.write(buffer, 0, read);
+        }
+
+        return new String(received.toByteArray(), StandardCharsets.ISO_8859_1);
+    }
+
+    /**
+     * Every connection which fitted in the queue is served under the reject policy, and under an unknown one
+     */
+    @Test
+    public void admitsEveryQueuedConnectionUnderReject()
+    {
+        assertTrue(AdmissionControlTest.Admit(new AdmissionControl(AdmissionControl.POLICY_REJECT, 1000, 5, 100), 60000, 60000));
+        assertTrue(AdmissionControlTest.Admit(new AdmissionControl("unknown", 1000, 5, 100), 60000, 60000));
+    }
+
+    /**
+     * A connection which waited past the deadline is shed, whatever the connections before it waited
+     */
+    @Test
+    public void shedsPastDeadline()
+    {
+        AdmissionControl admission = new AdmissionControl(AdmissionControl.POLICY_DEADLINE, 1000, 5, 100);
+
+        assertTrue(AdmissionControlTest.Admit(admission, 1000, 1000));
+        assertFalse(AdmissionControlTest.Admit(admission, 1001, 1001));
+        assertTrue(AdmissionControlTest.Admit(admission, 0, 1001));
+    }
+
+    /**
+     * Nothing is shed while connections wait less than the target, however long that goes on
+     */
+    @Test
+    public void admitsBelowTarget()
+    {
+        AdmissionControl admission = AdmissionControlTest.CoDel();
+
+        for (long now = 0; now <= 10000; now += 10)
+        {
+            assertTrue(AdmissionControlTest.Admit(admission, 4, now));
+        }
+    }
+
+    /**
+     * Shedding starts once connections have waited longer than the target for a whole interval, and a single connection below the
+     * target starts the interval over
+     */
+    @Test
+    public void shedsAfterIntervalAboveTarget()
+    {
+        AdmissionControl admission = AdmissionControlTest.CoDel();
+
+        assertTrue(AdmissionControlTest.Admit(admission, 10, 0));
+        assertTrue(AdmissionControlTest.Admit(admission, 10, 50));
+        assertTrue(AdmissionControlTest.Admit(admission, 1, 60));
+        assertTrue(AdmissionControlTest.Admit(admission, 10, 100));
+        assertTrue(AdmissionControlTest.Admit(admission, 10, 199));
+        assertFalse(AdmissionControlTest.Admit(admission, 10, 200));
+    }
+
+    /**
+     * While the queue stays above the target, connections are shed an interval apart at first and then ever more often, at
+     * intervals of interval / sqrt(count)
+     */
+    @Test
+    public void shedsMoreOftenByControlLaw()
+    {
+        AdmissionControl admission = AdmissionControlTest.CoDel();
+
+        AdmissionControlTest.Admit(admission, 10, 0);
+
+        // Shed at 100ms, then at 200ms, 270.7ms, 328.4ms and 378.4ms, and served in between
+        assertTrue(AdmissionControlTest.Admit(admission, 10, 99));
+        assertFalse(AdmissionControlTest.Admit(admission, 10, 100));
+        assertTrue(AdmissionControlTest.Admit(admission, 10, 150));
+        assertTrue(AdmissionControlTest.Admit(admission, 10, 199));
+        assertFalse(AdmissionControlTest.Admit(admission, 10, 200));
+        assertTrue(AdmissionControlTest.Admit(admission, 10, 270));
+        assertFalse(AdmissionControlTest.Admit(admission, 10, 271));
+        assertTrue(AdmissionControlTest.Admit(admission, 10, 328));
+        assertFalse(AdmissionControlTest.Admit(admission, 10, 329));
+        assertTrue(AdmissionControlTest.Admit(admission, 10, 378));
+        assertFalse(AdmissionControlTest.Admit(admission, 10, 379));
+    }
+
+    /**
+     * Shedding stops as soon as a connection waits less than the target. If the queue goes back above the target soon after, shedding
+     * carries on at about the rate it had reached, rather than starting again from an interval apart
+     */
+    @Test
+    public void stopsSheddingBelowTarget()
+    {
+        AdmissionControl admission = AdmissionControlTest.CoDel();
+
+        AdmissionControlTest.Admit(admission, 10, 0);
+        assertFalse(AdmissionControlTest.Admit(admission, 10, 100));
+        assertFalse(AdmissionControlTest.Admit(admission, 10, 200));
+        assertFalse(AdmissionControlTest.Admit(admission, 10, 271));
+
+        assertTrue(AdmissionControlTest.Admit(admission, 1, 300));
+        assertTrue(AdmissionControlTest.Admit(admission, 10, 310));
+        assertTrue(AdmissionControlTest.Admit(admission, 10, 409));
+        assertFalse(AdmissionControlTest.Admit(admission, 10, 410));
+
+        // Having been shed three times before, the next is shed at 410 + 100 / sqrt(2)
+        assertTrue(AdmissionControlTest.Admit(admission, 10, 480));
+        assertFalse(AdmissionControlTest.Admit(admission, 10, 481));
+    }
+
+    /**
+     * A connection turned away is sent 503 Service Unavailable and closed, and counted as rejected if the queue was full
+     * @throws IOException
+     */
+    @Test
+    public void rejectsWithServiceUnavailable() throws IOException
+    {
+        AdmissionControl admission = AdmissionControlTest.CoDel();
+
+        admission.reject(this.server, true);
+
+        String response = this.receive();
+
+        assertTrue(response.startsWith("HTTP/1.1 503 "), response);
+        assertTrue(response.toLowerCase().contains("\r\nretry-after: "), response);
+        assertFalse(this.server.isOpen());
+        assertEquals(1, admission.getRejected());
+        assertEquals(0, admission.getShed());
+    }
+
+    /**
+     * A connection which cannot be sent a plaintext response is closed without one, and counted as shed if it waited in the queue
+     * @throws IOException
+     */
+    @Test
+    public void dropsWithoutResponse() throws IOException
+    {
+        AdmissionControl admission = AdmissionControlTest.CoDel();
+
+        admission.drop(this.server, false);
+
+        assertEquals("", this.receive());
+        assertFalse(this.server.isOpen());
+        assertEquals(0, admission.getRejected());
+        assertEquals(1, admission.getShed());
+    }
+}
@@ -0,0 +1,203 @@
+package webserver;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Leases and releases buffers through pools of its own, with the settings each test needs
+ * @author Kieran Chin Cheong
+ * @version 1.0
+ * @since 1.0
+ */
+public class BufferPoolTest
+{
+    // Static variables
+
+    // Enough for a shared stack of 64 buffers of each size class
+    private static final long POOL_SIZE = 7L * 64 * 65536;
+
+    // Static methods
+
+    /**
+     * @param pool the pool
+     * @param capacity the smallest capacity required
+     * @return the capacity of the buffer leased, which is released straight away
+     */
+    private static int LeasedCapacity(BufferPool pool, int capacity)
+    {
+        ByteBuffer buffer = pool.lease(capacity);
+        pool.release(buffer);
+
+        return buffer.capacity();
+    }
+
+    /**
+     * A released buffer is leased out again, rather than another being allocated
+     */
+    @Test
+    public void reusesReleasedBuffer()
+    {
+        BufferPool pool = new BufferPool(true, false, 0, POOL_SIZE);
+
+        ByteBuffer buffer = pool.lease(1000);
+
+        assertTrue(buffer.isDirect());
+        assertEquals(1, pool.getOutstanding());
+
+        pool.release(buffer);
+
+        assertEquals(0, pool.getOutstanding());
+        assertEquals(1024, pool.getPooledBytes());
+        assertSame(buffer, pool.lease(1000));
+        assertEquals(2, pool.getLeases());
+        assertEquals(1, pool.getAllocations());
+        assertEquals(0, pool.getPooledBytes());
+    }
+
+    /**
+     * A lease is served by the smallest size class at least as large, and one larger than every class is allocated to size and not
+     * pooled
+     */
+    @Test
+    public void selectsSizeClass()
+    {
+        BufferPool pool = new BufferPool(true, false, 0, POOL_SIZE);
+
+        assertEquals(1024, BufferPoolTest.LeasedCapacity(pool, 1));
+        assertEquals(1024, BufferPoolTest.LeasedCapacity(pool, 1024));
+        assertEquals(2048, BufferPoolTest.LeasedCapacity(pool, 1025));
+        assertEquals(16384, BufferPoolTest.LeasedCapacity(pool, 10000));
+        assertEquals(65536, BufferPoolTest.LeasedCapacity(pool, 65536));
+        assertEquals(1024 + 2048 + 16384 + 65536, pool.getPooledBytes());
+
+        assertEquals(65537, BufferPoolTest.LeasedCapacity(pool, 65537));
+        assertEquals(1024 + 2048 + 16384 + 65536, pool.getPooledBytes());
+    }
+
+    /**
+     * A buffer is leased cleared, whatever state it was released in
+     */
+    @Test
+    public void clearsReleasedBuffer()
+    {
+        BufferPool pool = new BufferPool(true, false, 0, POOL_SIZE);
+
+        ByteBuffer buffer = pool.lease(1024);
+        buffer.put(new byte[100]).flip();
+        buffer.get(new byte[10]);
+        pool.release(buffer);
+
+        ByteBuffer reused = pool.lease(1024);
+
+        assertSame(buffer, reused);
+        assertEquals(0, reused.position());
+        assertEquals(1024, reused.limit());
+    }
+
+    /**
+     * The pool size is shared equally between the size classes, and a buffer released to a class which is full is not pooled
+     */
+    @Test
+    public void capsPooledBuffers()
+    {
+        // Room for two buffers of 1KB, one of 2KB, and none larger
+        BufferPool pool = new BufferPool(true, false, 0, 7L * 2048);
+
+        ByteBuffer[] buffers = new ByteBuffer[] {pool.lease(1024), pool.lease(1024), pool.lease(1024), pool.lease(2048), pool.lease(4096)};
+
+        for (ByteBuffer buffer : buffers)
+        {
+            pool.release(buffer);
+        }
+
+        assertEquals(2 * 1024 + 2048, pool.getPooledBytes());
+        assertEquals(0, pool.getOutstanding());
+
+        pool.lease(1024);
+        pool.lease(1024);
+        pool.lease(1024);
+
+        assertEquals(buffers.length + 1, pool.getAllocations());
+    }
+
+    /**
+     * Buffers released by a thread are cached for that thread first, and only pooled for the others once its cache is full
+     * @throws InterruptedException
+     */
+    @Test
+    public void cachesBuffersPerThread() throws InterruptedException
+    {
+        final BufferPool pool = new BufferPool(true, false, 1, POOL_SIZE);
+
+        final ByteBuffer cached = pool.lease(1024);
+        ByteBuffer shared = pool.lease(1024);
+
+        pool.release(cached);
+        pool.release(shared);
+
+        assertEquals(1024, pool.getPooledBytes());
+
+        // Another thread is given the shared buffer, and has to allocate after that
+        final AtomicReference<ByteBuffer> leasedElsewhere = new AtomicReference<ByteBuffer>();
+
+        Thread thread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                leasedElsewhere.set(pool.lease(1024));
+                pool.lease(1024);
+            }
+        });
+
+        thread.start();
+        thread.join();
+
+        assertSame(shared, leasedElsewhere.get());
+        assertEquals(3, pool.getAllocations());
+        assertSame(cached, pool.lease(1024));
+    }
+
+    /**
+     * In debug mode a buffer released twice is pooled only once, so that it cannot be leased to two users at the same time
+     */
+    @Test
+    public void refusesDoubleRelease()
+    {
+        BufferPool pool = new BufferPool(true, true, 0, POOL_SIZE);
+
+        ByteBuffer buffer = pool.lease(1024);
+        pool.release(buffer);
+        pool.release(buffer);
+
+        assertEquals(1024, pool.getPooledBytes());
+        assertSame(buffer, pool.lease(1024));
+        assertNotSame(buffer, pool.lease(1024));
+        assertEquals(0, pool.getLeaks());
+    }
+
+    /**
+     * Without the pool, every lease is allocated on the heap to the exact size asked for
+     */
+    @Test
+    public void allocatesWhenDisabled()
+    {
+        BufferPool pool = new BufferPool(false, false, 0, POOL_SIZE);
+
+        ByteBuffer buffer = pool.lease(1000);
+
+        assertFalse(buffer.isDirect());
+        assertEquals(1000, buffer.capacity());
+
+        pool.release(buffer);
+
+        assertEquals(0, pool.getPooledBytes());
+        assertNotSame(buffer, pool.lease(1000));
+    }
+}
@@ -0,0 +1,161 @@
+package webserver;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+import java.util.ArrayList;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Parses range header fields, and resolves the ranges against the size of a file
+ * @author Kieran Chin Cheong
+ * @version 1.0
+ * @since 1.0
+ */
+public class ByteRangeTest
+{
+    // Static methods
+
+    /**
+     * Checks the positions of a range
+     * @param first the expected first position, or -1 if it is unspecified
+     * @param last the expected last position, or -1 if it is unspecified
+     * @param range the range
+     */
+    private static void AssertRange(long first, long last, ByteRange range)
+    {
+        assertEquals(first, range.getFirst());
+        assertEquals(last, range.getLast());
+    }
+
+    /**
+     * @param value the value of a range header field, holding a single range
+     * @return the range, not yet resolved against a file
+     */
+    private static ByteRange ParseOne(String value)
+    {
+        ArrayList<ByteRange> ranges = ByteRange.ParseRangeHeader(value);
+
+        assertEquals(1, ranges.size());
+        return ranges.get(0);
+    }
+
+    /**
+     * Each of the three forms of range is parsed, in the order given
+     */
+    @Test
+    public void parsesEachFormOfRange()
+    {
+        ArrayList<ByteRange> ranges = ByteRange.ParseRangeHeader("bytes=0-499, 1000-, -200");
+
+        assertEquals(3, ranges.size());
+        ByteRangeTest.AssertRange(0, 499, ranges.get(0));
+        ByteRangeTest.AssertRange(1000, -1, ranges.get(1));
+        ByteRangeTest.AssertRange(-1, 200, ranges.get(2));
+    }
+
+    /**
+     * The unit is matched case-insensitively, and empty list elements are allowed
+     */
+    @Test
+    public void parsesLenientSyntax()
+    {
+        ArrayList<ByteRange> ranges = ByteRange.ParseRangeHeader("Bytes=,5-5,,");
+
+        assertEquals(1, ranges.size());
+        ByteRangeTest.AssertRange(5, 5, ranges.get(0));
+    }
+
+    /**
+     * A header field which is not a valid list of byte ranges is ignored, so the whole file is sent
+     */
+    @Test
+    public void ignoresInvalidHeader()
+    {
+        assertNull(ByteRange.ParseRangeHeader(null));
+        assertNull(ByteRange.ParseRangeHeader("items=0-1"));
+        assertNull(ByteRange.ParseRangeHeader("bytes="));
+        assertNull(ByteRange.ParseRangeHeader("bytes=,"));
+        assertNull(ByteRange.ParseRangeHeader("bytes=5"));
+        assertNull(ByteRange.ParseRangeHeader("bytes=-"));
+        assertNull(ByteRange.ParseRangeHeader("bytes=5-1"));
+        assertNull(ByteRange.ParseRangeHeader("bytes=a-1"));
+        assertNull(ByteRange.ParseRangeHeader("bytes=1-b"));
+        assertNull(ByteRange.ParseRangeHeader("bytes=+1-2"));
+        assertNull(ByteRange.ParseRangeHeader("bytes=0-1, 5"));
+
+        // Positions too large to hold are invalid rather than overflowing
+        assertNull(ByteRange.ParseRangeHeader("bytes=0-9999999999999999999"));
+    }
+
+    /**
+     * A header field asking for more ranges than are honoured is ignored, so the whole file is sent
+     */
+    @Test
+    public void ignoresTooManyRanges()
+    {
+        StringBuilder value = new StringBuilder("bytes=0-0");
+
+        for (int i = 1; i < 16; i++)
+        {
+            value.append(',').append(i).append('-').append(i);
+        }
+
+        assertEquals(16, ByteRange.ParseRangeHeader(value.toString()).size());
+        assertNull(ByteRange.ParseRangeHeader(value.append(",16-16").toString()));
+    }
+
+    /**
+     * A range which runs past the end of the file stops at its last byte
+     */
+    @Test
+    public void resolvesClosedRange()
+    {
+        ByteRange range = ByteRangeTest.ParseOne("bytes=0-499").resolve(10000);
+
+        ByteRangeTest.AssertRange(0, 499, range);
+        assertEquals(500, range.getLength());
+
+        ByteRangeTest.AssertRange(9000, 9999, ByteRangeTest.ParseOne("bytes=9000-20000").resolve(10000));
+    }
+
+    /**
+     * An open range runs to the end of the file
+     */
+    @Test
+    public void resolvesOpenRange()
+    {
+        ByteRange range = ByteRangeTest.ParseOne("bytes=9500-").resolve(10000);
+
+        ByteRangeTest.AssertRange(9500, 9999, range);
+        assertEquals(500, range.getLength());
+    }
+
+    /**
+     * A suffix range is the last bytes of the file, or all of it if the file is shorter
+     */
+    @Test
+    public void resolvesSuffixRange()
+    {
+        ByteRange range = ByteRangeTest.ParseOne("bytes=-200").resolve(10000);
+
+        ByteRangeTest.AssertRange(9800, 9999, range);
+        assertEquals(200, range.getLength());
+
+        ByteRangeTest.AssertRange(0, 99, ByteRangeTest.ParseOne("bytes=-200").resolve(100));
+    }
+
+    /**
+     * A range with none of its bytes within the file is not satisfiable
+     */
+    @Test
+    public void resolvesUnsatisfiableRanges()
+    {
+        assertNull(ByteRangeTest.ParseOne("bytes=10000-").resolve(10000));
+        assertNull(ByteRangeTest.ParseOne("bytes=10000-10001").resolve(10000));
+        assertNull(ByteRangeTest.ParseOne("bytes=-0").resolve(10000));
+        assertNull(ByteRangeTest.ParseOne("bytes=-200").resolve(0));
+        assertNull(ByteRangeTest.ParseOne("bytes=0-").resolve(0));
+    }
+}
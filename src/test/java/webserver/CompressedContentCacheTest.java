@@ -0,0 +1,229 @@
+package webserver;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPInputStream;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Compresses files through the cache at chosen levels, and checks which entries are served while the system is busy and once it is not
+ * @author Kieran Chin Cheong
+ * @version 1.0
+ * @since 1.0
+ */
+public class CompressedContentCacheTest
+{
+    // Static variables
+
+    // Time to wait for a compression handed to the compressor threads, in milliseconds
+    private static final long COMPRESSION_WAIT = 5000;
+
+    // Static methods
+
+    /**
+     * @param content gzip compressed contents
+     * @return the contents once decompressed
+     * @throws IOException
+     */
+    private static byte[] Decompress(ByteBuffer content) throws IOException
+    {
+        byte[] compressed = new byte[content.remaining()];
+        content.get(compressed);
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+        try (GZIPInputStream gzip = new GZIPInputStream(new ByteArrayInputStream(compressed)))
+        {
+            byte[] buffer = new byte[4096];
+            int read;
+
+            while ((read = gzip.read(buffer)) >= 0)
+            {
+                out.write(buffer, 0, read);
+            }
+        }
+
+        return out.toByteArray();
+    }
+
+    // Member variables
+
+    private CompressedContentCache cache = CompressedContentCache.GetCache();
+    private Path file;
+    private byte[] content;
+
+    /**
+     * Creates a compressible file of its own for each test, so that no test finds the entries of another
+     * @throws IOException
+     */
+    @BeforeEach
+    public void createFile() throws IOException
+    {
+        StringBuilder text = new StringBuilder();
+
+        for (int i = 0; i < 200; i++)
+        {
+            text.append("line ").append(i).append(" of a file which is worth compressing\n");
+        }
+
+        this.content = text.toString().getBytes(StandardCharsets.US_ASCII);
+        this.file = Files.createTempFile("compressed", ".txt");
+        Files.write(this.file, this.content);
+    }
+
+    /**
+     * @throws IOException
+     */
+    @AfterEach
+    public void deleteFile() throws IOException
+    {
+        Files.deleteIfExists(this.file);
+    }
+
+    /**
+     * Looks up the compressed file for a caller which must not wait, until it is ready at least at the given level
+     * @param level the lowest level to accept
+     * @return the compressed file
+     * @throws IOException
+     * @throws InterruptedException
+     */
+    private CompressedFile awaitLevel(int level) throws IOException, InterruptedException
+    {
+        long deadline = System.currentTimeMillis() + COMPRESSION_WAIT;
+
+        while (System.currentTimeMillis() < deadline)
+        {
+            CompressedFile compressedFile = this.get(level, false);
+
+            if (compressedFile != null && compressedFile.getLevel() >= level)
+            {
+                return compressedFile;
+            }
+
+            Thread.sleep(10);
+        }
+
+        return fail("File was not compressed at level " + level);
+    }
+
+    /**
+     * @param level the level to compress at on a miss
+     * @param isWaiting whether to wait for a compression
+     * @return the compressed file of the current version of the test file
+     * @throws IOException
+     */
+    private CompressedFile get(int level, boolean isWaiting) throws IOException
+    {
+        return this.cache.get(this.file.toString(), this.content.length, Files.getLastModifiedTime(this.file).toMillis(), null, isWaiting, level);
+    }
+
+    /**
+     * The configured level is used under light load, the fastest under heavy load, and a level scaled between them otherwise
+     */
+    @Test
+    public void selectsLevelForLoad()
+    {
+        assertEquals(6, CompressedContentCache.LevelForLoad(-1, 6));
+        assertEquals(6, CompressedContentCache.LevelForLoad(0.2, 6));
+        assertEquals(6, CompressedContentCache.LevelForLoad(0.49, 6));
+        assertEquals(4, CompressedContentCache.LevelForLoad(0.75, 6));
+        assertEquals(Deflater.BEST_SPEED, CompressedContentCache.LevelForLoad(1.0, 6));
+        assertEquals(Deflater.BEST_SPEED, CompressedContentCache.LevelForLoad(8.0, 6));
+        assertEquals(9, CompressedContentCache.LevelForLoad(0.5, 9));
+    }
+
+    /**
+     * A caller which may wait is given the compressed file straight away, and later callers share the entry
+     * @throws IOException
+     */
+    @Test
+    public void compressesOnMiss() throws IOException
+    {
+        CompressedFile compressedFile = this.get(6, true);
+
+        assertEquals(6, compressedFile.getLevel());
+        assertEquals(this.content.length, compressedFile.getOriginalSize());
+        assertArrayEquals(this.content, CompressedContentCacheTest.Decompress(compressedFile.getContent()));
+        assertSame(compressedFile, this.get(6, true));
+    }
+
+    /**
+     * A caller which must not wait is not given the file until the compressor threads have compressed it
+     * @throws IOException
+     * @throws InterruptedException
+     */
+    @Test
+    public void compressesInBackgroundForNonWaitingCaller() throws IOException, InterruptedException
+    {
+        // An idle compressor thread may finish a file this small before the caller checks on it, so only a compression which is
+        // still running is certain to be missed
+        CompressedFile missed = this.get(6, false);
+
+        CompressedFile compressedFile = this.awaitLevel(6);
+
+        if (missed != null)
+        {
+            assertSame(compressedFile, missed);
+        }
+
+        assertArrayEquals(this.content, CompressedContentCacheTest.Decompress(compressedFile.getContent()));
+    }
+
+    /**
+     * An entry compressed at a reduced level is still served once the load drops, and replaced by one at the higher level in the
+     * background
+     * @throws IOException
+     * @throws InterruptedException
+     */
+    @Test
+    public void servesReducedLevelEntryWhileUpgrading() throws IOException, InterruptedException
+    {
+        CompressedFile reduced = this.get(Deflater.BEST_SPEED, true);
+
+        assertEquals(Deflater.BEST_SPEED, reduced.getLevel());
+        assertSame(reduced, this.get(6, false));
+
+        CompressedFile upgraded = this.awaitLevel(6);
+
+        assertArrayEquals(this.content, CompressedContentCacheTest.Decompress(upgraded.getContent()));
+
+        // Once upgraded, a lower level is not a reason to compress again
+        assertSame(upgraded, this.get(Deflater.BEST_SPEED, true));
+    }
+
+    /**
+     * An entry of an earlier version of the file is never served
+     * @throws IOException
+     */
+    @Test
+    public void recompressesChangedFile() throws IOException
+    {
+        CompressedFile original = this.get(6, true);
+
+        this.content = "a different version of the file, still long enough to be worth compressing".getBytes(StandardCharsets.US_ASCII);
+        Files.write(this.file, this.content);
+        Files.setLastModifiedTime(this.file, FileTime.fromMillis(original.getLastModified() + 1000));
+
+        CompressedFile changed = this.get(6, true);
+
+        assertNotNull(changed);
+        assertEquals(this.content.length, changed.getOriginalSize());
+        assertArrayEquals(this.content, CompressedContentCacheTest.Decompress(changed.getContent()));
+    }
+}
@@ -0,0 +1,211 @@
+package webserver;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.Callable;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Indexes a content root of its own, kept current by a ContentRootWatcher of its own, and changes files under it
+ * <p>
+ * Changes are also reported to the index directly where a test needs them applied at once, which gives the same result as the
+ * watcher reporting them again
+ * @author Kieran Chin Cheong
+ * @version 1.0
+ * @since 1.0
+ */
+public class ContentIndexTest
+{
+    // Member variables
+
+    private Path root;
+    private ContentRootWatcher watcher;
+    private ContentIndex index;
+
+    /**
+     * Creates a root holding a file, and one in a directory
+     * @throws IOException
+     */
+    @BeforeEach
+    public void createRoot() throws IOException
+    {
+        this.root = Files.createTempDirectory("index");
+
+        FileMetadataCacheTest.Write(this.root.resolve("a.txt"), "one");
+        FileMetadataCacheTest.Write(this.root.resolve("sub").resolve("b.txt"), "b");
+
+        this.watcher = new ContentRootWatcher(true, this.root.toString());
+        this.index = new ContentIndex(true, 100, this.root.toString(), this.watcher);
+    }
+
+    /**
+     * @throws IOException
+     */
+    @AfterEach
+    public void deleteRoot() throws IOException
+    {
+        this.watcher.stop();
+        FileMetadataCacheTest.DeleteTree(this.root);
+    }
+
+    /**
+     * @param name the path of a file relative to the root
+     * @return the metadata of the file in the index, or null if it is not in the index
+     */
+    private FileMetadata get(String name)
+    {
+        return this.index.get(FileMetadataCache.Key(this.root.resolve(name).toString()));
+    }
+
+    /**
+     * Every file under the root is indexed once the watcher is watching all of it
+     */
+    @Test
+    public void indexesRoot()
+    {
+        this.index.build();
+
+        assertTrue(this.index.isReady());
+        assertEquals(2, this.index.getEntries());
+        assertEquals(3, this.get("a.txt").getSize());
+        assertEquals(1, this.get("sub/b.txt").getSize());
+        assertNull(this.get("missing.txt"));
+    }
+
+    /**
+     * A file which changed is read again, one which was deleted is removed, and one which was created is added
+     * @throws IOException
+     */
+    @Test
+    public void appliesChangedFiles() throws IOException
+    {
+        this.index.build();
+
+        FileMetadataCacheTest.Write(this.root.resolve("a.txt"), "three");
+        this.index.pathChanged(this.root.resolve("a.txt"), false);
+        assertEquals(5, this.get("a.txt").getSize());
+
+        Files.delete(this.root.resolve("a.txt"));
+        this.index.pathChanged(this.root.resolve("a.txt"), false);
+        assertNull(this.get("a.txt"));
+
+        FileMetadataCacheTest.Write(this.root.resolve("c.txt"), "c");
+        this.index.pathChanged(this.root.resolve("c.txt"), false);
+        assertEquals(1, this.get("c.txt").getSize());
+    }
+
+    /**
+     * A directory which changed is read again along with everything beneath it
+     * @throws IOException
+     */
+    @Test
+    public void appliesChangedDirectory() throws IOException
+    {
+        this.index.build();
+
+        FileMetadataCacheTest.Write(this.root.resolve("sub").resolve("d.txt"), "d");
+        this.index.pathChanged(this.root.resolve("sub"), true);
+        assertEquals(1, this.get("sub/d.txt").getSize());
+
+        FileMetadataCacheTest.DeleteTree(this.root.resolve("sub"));
+        this.index.pathChanged(this.root.resolve("sub"), true);
+        assertNull(this.get("sub/b.txt"));
+        assertNull(this.get("sub/d.txt"));
+        assertEquals(1, this.index.getEntries());
+    }
+
+    /**
+     * Changes made under the root are applied as the watcher reports them
+     * @throws Exception
+     */
+    @Test
+    public void followsWatcher() throws Exception
+    {
+        this.index.build();
+
+        FileMetadataCacheTest.Write(this.root.resolve("a.txt"), "three");
+        FileMetadataCacheTest.Await(new Callable<Boolean>() {
+            @Override
+            public Boolean call() {
+                FileMetadata metadata = get("a.txt");
+                return metadata != null && metadata.getSize() == 5;
+            }
+        }, "a.txt modified");
+
+        Files.delete(this.root.resolve("sub").resolve("b.txt"));
+        FileMetadataCacheTest.Await(new Callable<Boolean>() {
+            @Override
+            public Boolean call() {
+                return get("sub/b.txt") == null;
+            }
+        }, "sub/b.txt deleted");
+
+        FileMetadataCacheTest.Write(this.root.resolve("new").resolve("e.txt"), "e");
+        FileMetadataCacheTest.Await(new Callable<Boolean>() {
+            @Override
+            public Boolean call() {
+                return get("new/e.txt") != null;
+            }
+        }, "new/e.txt created");
+    }
+
+    /**
+     * Every file is read again when changes may have gone unreported
+     * @throws IOException
+     */
+    @Test
+    public void rereadsRootWhenChangesLost() throws IOException
+    {
+        this.index.build();
+
+        FileMetadataCacheTest.Write(this.root.resolve("a.txt"), "three");
+        Files.delete(this.root.resolve("sub").resolve("b.txt"));
+        this.index.changesLost();
+
+        assertEquals(5, this.get("a.txt").getSize());
+        assertNull(this.get("sub/b.txt"));
+    }
+
+    /**
+     * The index is not relied upon once the watcher has stopped, since changes would then go unreported
+     * @throws Exception
+     */
+    @Test
+    public void ignoredWithoutWatcher() throws Exception
+    {
+        this.index.build();
+        this.watcher.stop();
+
+        FileMetadataCacheTest.Await(new Callable<Boolean>() {
+            @Override
+            public Boolean call() {
+                return ! watcher.isComplete();
+            }
+        }, "watcher stopped");
+
+        assertNull(this.get("a.txt"));
+    }
+
+    /**
+     * A root holding more files than the index may is not indexed at all
+     */
+    @Test
+    public void abandonsTooManyFiles()
+    {
+        ContentIndex small = new ContentIndex(true, 1, this.root.toString(), this.watcher);
+        small.build();
+
+        assertFalse(small.isReady());
+        assertEquals(0, small.getEntries());
+        assertNull(small.get(FileMetadataCache.Key(this.root.resolve("a.txt").toString())));
+    }
+}
@@ -0,0 +1,286 @@
+package webserver;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assertions.fail;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.concurrent.Callable;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Looks up files under a content root of its own through a cache of its own, and changes them underneath the cache
+ * <p>
+ * Changes are reported to the cache directly, except by the tests which run a ContentRootWatcher to report them
+ * @author Kieran Chin Cheong
+ * @version 1.0
+ * @since 1.0
+ */
+public class FileMetadataCacheTest
+{
+    // Static variables
+
+    // Time to wait for the watcher to report a change, in milliseconds
+    private static final long CHANGE_WAIT = 10000;
+
+    // Static methods
+
+    /**
+     * Waits until a condition holds, as it will once the watcher has reported a change
+     * @param condition the condition
+     * @param description what the condition is, for the failure message
+     * @throws Exception
+     */
+    static void Await(Callable<Boolean> condition, String description) throws Exception
+    {
+        long deadline = System.currentTimeMillis() + CHANGE_WAIT;
+
+        while (System.currentTimeMillis() < deadline)
+        {
+            if (condition.call())
+            {
+                return;
+            }
+
+            Thread.sleep(20);
+        }
+
+        fail("Change was not reported : " + description);
+    }
+
+    /**
+     * @param path a file
+     * @param content the new contents of the file
+     * @throws IOException
+     */
+    static void Write(Path path, String content) throws IOException
+    {
+        Files.createDirectories(path.getParent());
+        Files.write(path, content.getBytes(StandardCharsets.US_ASCII));
+    }
+
+    /**
+     * Deletes a directory along with everything beneath it
+     * @param directory the directory
+     * @throws IOException
+     */
+    static void DeleteTree(Path directory) throws IOException
+    {
+        Files.walkFileTree(directory, new SimpleFileVisitor<Path>() {
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attributes) throws IOException {
+                Files.delete(file);
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult postVisitDirectory(Path visited, IOException e) throws IOException {
+                Files.delete(visited);
+                return FileVisitResult.CONTINUE;
+            }
+        });
+    }
+
+    // Member variables
+
+    private Path root;
+    private FileMetadataCache cache = new FileMetadataCache(true, 60000, 60000, 100);
+
+    /**
+     * @throws IOException
+     */
+    @BeforeEach
+    public void createRoot() throws IOException
+    {
+        this.root = Files.createTempDirectory("metadata");
+    }
+
+    /**
+     * @throws IOException
+     */
+    @AfterEach
+    public void deleteRoot() throws IOException
+    {
+        FileMetadataCacheTest.DeleteTree(this.root);
+    }
+
+    /**
+     * @param name the path of a file relative to the root
+     * @return the metadata of the file, as the cache has it
+     */
+    private FileMetadata get(String name)
+    {
+        return this.cache.get(this.root.resolve(name).toString());
+    }
+
+    /**
+     * An entry is served until its file is reported to have changed, and then read again
+     * @throws IOException
+     */
+    @Test
+    public void dropsChangedFile() throws IOException
+    {
+        FileMetadataCacheTest.Write(this.root.resolve("a.txt"), "one");
+        assertEquals(3, this.get("a.txt").getSize());
+
+        FileMetadataCacheTest.Write(this.root.resolve("a.txt"), "three");
+        assertEquals(3, this.get("a.txt").getSize());
+
+        this.cache.pathChanged(this.root.resolve("a.txt"), false);
+
+        assertEquals(5, this.get("a.txt").getSize());
+        assertEquals(1, this.cache.getInvalidations());
+    }
+
+    /**
+     * A missing path is cached as missing until it is reported to have been created, and a deleted file as existing until it is
+     * reported to have been deleted
+     * @throws IOException
+     */
+    @Test
+    public void dropsCreatedAndDeletedFiles() throws IOException
+    {
+        assertFalse(this.get("b.txt").exists());
+
+        FileMetadataCacheTest.Write(this.root.resolve("b.txt"), "created");
+        assertFalse(this.get("b.txt").exists());
+
+        this.cache.pathChanged(this.root.resolve("b.txt"), false);
+        assertTrue(this.get("b.txt").isFile());
+
+        Files.delete(this.root.resolve("b.txt"));
+        assertTrue(this.get("b.txt").exists());
+
+        this.cache.pathChanged(this.root.resolve("b.txt"), false);
+        assertFalse(this.get("b.txt").exists());
+    }
+
+    /**
+     * A change to a directory drops the entries of everything beneath it, and only those
+     * @throws IOException
+     */
+    @Test
+    public void dropsEverythingBeneathDirectory() throws IOException
+    {
+        FileMetadataCacheTest.Write(this.root.resolve("dir").resolve("x.txt"), "x");
+        FileMetadataCacheTest.Write(this.root.resolve("dir").resolve("y.txt"), "y");
+        FileMetadataCacheTest.Write(this.root.resolve("dir2").resolve("z.txt"), "z");
+
+        this.get("dir/x.txt");
+        this.get("dir/y.txt");
+        this.get("dir2/z.txt");
+
+        this.cache.pathChanged(this.root.resolve("dir"), true);
+
+        assertEquals(2, this.cache.getInvalidations());
+        assertEquals(1, this.cache.getEntries());
+    }
+
+    /**
+     * Every entry is dropped when changes may have gone unreported
+     * @throws IOException
+     */
+    @Test
+    public void dropsEverythingWhenChangesLost() throws IOException
+    {
+        FileMetadataCacheTest.Write(this.root.resolve("a.txt"), "a");
+
+        this.get("a.txt");
+        this.get("missing.txt");
+        this.cache.changesLost();
+
+        assertEquals(0, this.cache.getEntries());
+        assertEquals(2, this.cache.getInvalidations());
+    }
+
+    /**
+     * Metadata read before a change which is reported while it is being cached is not cached, since it may already be out of date
+     * @throws IOException
+     */
+    @Test
+    public void doesNotCacheReadRacingChange() throws IOException
+    {
+        Path file = this.root.resolve("a.txt");
+        String key = FileMetadataCache.Key(file.toString());
+
+        FileMetadataCacheTest.Write(file, "one");
+
+        long readGeneration = this.cache.getGeneration();
+        FileMetadata stale = FileMetadataCache.Read(key, Long.MAX_VALUE, Long.MAX_VALUE);
+
+        FileMetadataCacheTest.Write(file, "three");
+        this.cache.pathChanged(file, false);
+        this.cache.store(key, stale, readGeneration, System.currentTimeMillis());
+
+        assertEquals(0, this.cache.getEntries());
+        assertEquals(5, this.get("a.txt").getSize());
+
+        // Without a change in between, what was read is cached
+        this.cache.store(key, stale, this.cache.getGeneration(), System.currentTimeMillis());
+        assertEquals(3, this.get("a.txt").getSize());
+    }
+
+    /**
+     * Changes made under the root are reported by the watcher, including those in directories created after it started
+     * @throws Exception
+     */
+    @Test
+    public void followsWatcher() throws Exception
+    {
+        ContentRootWatcher watcher = new ContentRootWatcher(true, this.root.toString());
+
+        try
+        {
+            watcher.addListener(this.cache);
+            watcher.awaitStarted();
+            assertTrue(watcher.isComplete());
+
+            FileMetadataCacheTest.Write(this.root.resolve("a.txt"), "one");
+            assertFalse(this.get("sub/c.txt").exists());
+            FileMetadataCacheTest.Await(new Callable<Boolean>() {
+                @Override
+                public Boolean call() {
+                    return get("a.txt").getSize() == 3;
+                }
+            }, "a.txt created");
+
+            FileMetadataCacheTest.Write(this.root.resolve("a.txt"), "three");
+            FileMetadataCacheTest.Await(new Callable<Boolean>() {
+                @Override
+                public Boolean call() {
+                    return get("a.txt").getSize() == 5;
+                }
+            }, "a.txt modified");
+
+            Files.delete(this.root.resolve("a.txt"));
+            FileMetadataCacheTest.Await(new Callable<Boolean>() {
+                @Override
+                public Boolean call() {
+                    return ! get("a.txt").exists();
+                }
+            }, "a.txt deleted");
+
+            FileMetadataCacheTest.Write(this.root.resolve("sub").resolve("c.txt"), "c");
+            FileMetadataCacheTest.Await(new Callable<Boolean>() {
+                @Override
+                public Boolean call() {
+                    return get("sub/c.txt").isFile();
+                }
+            }, "sub/c.txt created");
+        }
+        finally
+        {
+            watcher.stop();
+        }
+    }
+}
@@ -0,0 +1,159 @@
+package webserver;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.nio.charset.StandardCharsets;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Generates the validators of versions of a file, and evaluates the conditional header fields of requests against them
+ * <p>
+ * Every test uses a path of its own, so that no test finds the validators of another
+ * @author Kieran Chin Cheong
+ * @version 1.0
+ * @since 1.0
+ */
+public class FileValidatorsTest
+{
+    // Static variables
+
+    // Sun, 13 Sep 2020 12:26:40 GMT
+    private static final long LAST_MODIFIED = 1600000000000L;
+    private static final String LAST_MODIFIED_DATE = "Sun, 13 Sep 2020 12:26:40 GMT";
+
+    private static final long SIZE = 4660;
+    private static final String ENTITY_TAG = "\"174876e8000-1234\"";
+
+    // Static methods
+
+    /**
+     * @param path the path of the file
+     * @return the validators of the test's version of the file
+     */
+    private static FileValidators Validators(String path)
+    {
+        return FileValidators.Get("/validators/" + path, SIZE, LAST_MODIFIED);
+    }
+
+    /**
+     * @param validators the validators of the file
+     * @param fields the conditional header fields of the request, each followed by CRLF
+     * @return true if the request's copy of the file is current
+     * @throws IOException
+     * @throws RequestException
+     */
+    private static boolean IsNotModified(FileValidators validators, String fields) throws IOException, RequestException
+    {
+        HTTPRequestParser parser = new HTTPRequestParser();
+
+        try
+        {
+            byte[] head = ("GET /file.txt HTTP/1.1\r\nHost: localhost\r\n" + fields + "\r\n").getBytes(StandardCharsets.ISO_8859_1);
+            parser.fill(Channels.newChannel(new ByteArrayInputStream(head)));
+
+            return validators.isNotModified(parser.parse());
+        }
+        finally
+        {
+            parser.close();
+        }
+    }
+
+    /**
+     * The entity tag is made from the modification time and size of the file, and the last modified date is an HTTP date
+     */
+    @Test
+    public void generatesValidators()
+    {
+        FileValidators validators = FileValidatorsTest.Validators("generates");
+
+        assertEquals(ENTITY_TAG, validators.getEntityTag());
+        assertEquals(LAST_MODIFIED_DATE, validators.getLastModifiedDate());
+
+        // A representation compressed on the fly has different bytes, and so a different entity tag
+        FileValidators encoded = validators.getEncodedValidators(AcceptEncoding.GZIP);
+
+        assertEquals("\"174876e8000-1234-gzip\"", encoded.getEntityTag());
+        assertEquals(LAST_MODIFIED_DATE, encoded.getLastModifiedDate());
+        assertSame(encoded, validators.getEncodedValidators(AcceptEncoding.GZIP));
+    }
+
+    /**
+     * The validators are only generated again once the size or the modification time of the file change
+     */
+    @Test
+    public void regeneratesForChangedFile()
+    {
+        FileValidators validators = FileValidatorsTest.Validators("regenerates");
+
+        assertSame(validators, FileValidatorsTest.Validators("regenerates"));
+        assertNotEquals(ENTITY_TAG, FileValidators.Get("/validators/regenerates", SIZE + 1, LAST_MODIFIED).getEntityTag());
+        assertNotEquals(ENTITY_TAG, FileValidators.Get("/validators/regenerates", SIZE, LAST_MODIFIED + 1).getEntityTag());
+    }
+
+    /**
+     * if-none-match matches the entity tag by the weak comparison, "*" matches any version, and a list matches if any of its
+     * members do
+     * @throws IOException
+     * @throws RequestException
+     */
+    @Test
+    public void matchesIfNoneMatch() throws IOException, RequestException
+    {
+        FileValidators validators = FileValidatorsTest.Validators("matches");
+
+        assertTrue(FileValidatorsTest.IsNotModified(validators, "If-None-Match: " + ENTITY_TAG + "\r\n"));
+        assertTrue(FileValidatorsTest.IsNotModified(validators, "If-None-Match: W/" + ENTITY_TAG + "\r\n"));
+        assertTrue(FileValidatorsTest.IsNotModified(validators, "If-None-Match: *\r\n"));
+        assertTrue(FileValidatorsTest.IsNotModified(validators, "If-None-Match: \"other\", W/\"another\",  " + ENTITY_TAG + " \r\n"));
+
+        assertFalse(FileValidatorsTest.IsNotModified(validators, "If-None-Match: \"other\", W/\"another\"\r\n"));
+        assertFalse(FileValidatorsTest.IsNotModified(validators, "If-None-Match: \"174876e8000-1234-gzip\"\r\n"));
+        assertFalse(FileValidatorsTest.IsNotModified(validators, "If-None-Match: \"174876e8000-123\"\r\n"));
+        assertFalse(FileValidatorsTest.IsNotModified(validators, "If-None-Match: 174876e8000-1234\r\n"));
+    }
+
+    /**
+     * if-modified-since is compared to the second, and a date which is not valid is ignored
+     * @throws IOException
+     * @throws RequestException
+     */
+    @Test
+    public void comparesIfModifiedSince() throws IOException, RequestException
+    {
+        FileValidators validators = FileValidatorsTest.Validators("compares");
+
+        assertTrue(FileValidatorsTest.IsNotModified(validators, "If-Modified-Since: " + LAST_MODIFIED_DATE + "\r\n"));
+        assertTrue(FileValidatorsTest.IsNotModified(validators, "If-Modified-Since: Mon, 14 Sep 2020 00:00:00 GMT\r\n"));
+        assertFalse(FileValidatorsTest.IsNotModified(validators, "If-Modified-Since: Sun, 13 Sep 2020 12:26:39 GMT\r\n"));
+        assertFalse(FileValidatorsTest.IsNotModified(validators, "If-Modified-Since: yesterday\r\n"));
+        assertFalse(FileValidatorsTest.IsNotModified(validators, ""));
+
+        // The file's own modification time may be more precise than a second
+        FileValidators precise = FileValidators.Get("/validators/compares-precisely", SIZE, LAST_MODIFIED + 999);
+
+        assertTrue(FileValidatorsTest.IsNotModified(precise, "If-Modified-Since: " + LAST_MODIFIED_DATE + "\r\n"));
+    }
+
+    /**
+     * if-modified-since is ignored when the request also has if-none-match, whichever way the two would decide
+     * @throws IOException
+     * @throws RequestException
+     */
+    @Test
+    public void prefersIfNoneMatch() throws IOException, RequestException
+    {
+        FileValidators validators = FileValidatorsTest.Validators("prefers");
+
+        assertFalse(FileValidatorsTest.IsNotModified(validators, "If-None-Match: \"other\"\r\nIf-Modified-Since: " + LAST_MODIFIED_DATE + "\r\n"));
+        assertTrue(FileValidatorsTest.IsNotModified(validators, "If-None-Match: " + ENTITY_TAG + "\r\nIf-Modified-Since: Thu, 01 Jan 1970 00:00:00 GMT\r\n"));
+    }
+}
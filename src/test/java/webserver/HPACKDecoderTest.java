@@ -0,0 +1,241 @@
+package webserver;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.fail;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Decodes the examples of RFC 7541 Appendix C, each sequence of header blocks with a single decoder so that the references to the
+ * dynamic table made by the later blocks are checked as well
+ * @author Kieran Chin Cheong
+ * @version 1.0
+ * @since 1.0
+ */
+public class HPACKDecoderTest
+{
+    // Static variables
+
+    // A dynamic table size update to 256 bytes, which the response examples of RFC 7541 are encoded with
+    private static final String SIZE_UPDATE_256 = "3fe101";
+
+    private static final String DATE_21 = "Mon, 21 Oct 2013 20:13:21 GMT";
+    private static final String DATE_22 = "Mon, 21 Oct 2013 20:13:22 GMT";
+    private static final String LOCATION = "https://www.example.com";
+    private static final String COOKIE = "foo=ASDJKHQKBZXOQWEOPIUAXQWEOIU; max-age=3600; version=1";
+
+    // Static methods
+
+    /**
+     * @param hex a header block written in hexadecimal, with any spaces ignored
+     * @return the header block
+     */
+    static ByteBuffer Block(String hex)
+    {
+        hex = hex.replace(" ", "");
+        byte[] bytes = new byte[hex.length() / 2];
+
+        for (int i = 0; i < bytes.length; i++)
+        {
+            bytes[i] = (byte) Integer.parseInt(hex.substring(i * 2, i * 2 + 2), 16);
+        }
+
+        return ByteBuffer.wrap(bytes);
+    }
+
+    /**
+     * Checks that a header block decodes to the expected fields
+     * @param decoder the decoder of the connection
+     * @param hex the header block written in hexadecimal
+     * @param expected the name and value of each field expected, in order
+     * @throws HTTP2Exception
+     */
+    private static void AssertDecodes(HPACKDecoder decoder, String hex, String[]... expected) throws HTTP2Exception
+    {
+        ArrayList<String[]> fields = decoder.decode(HPACKDecoderTest.Block(hex));
+
+        assertEquals(expected.length, fields.size());
+
+        for (int i = 0; i < expected.length; i++)
+        {
+            assertArrayEquals(expected[i], fields.get(i));
+        }
+    }
+
+    /**
+     * Decodes a header block which is expected to be rejected
+     * @param decoder the decoder of the connection
+     * @param hex the header block written in hexadecimal
+     * @return the error code the block was rejected with
+     */
+    private static int DecodeError(HPACKDecoder decoder, String hex)
+    {
+        try
+        {
+            decoder.decode(HPACKDecoderTest.Block(hex));
+        }
+        catch (HTTP2Exception e)
+        {
+            return e.getErrorCode();
+        }
+
+        return fail("Header block " + hex + " was not rejected");
+    }
+
+    /**
+     * @param name the name of a field
+     * @param value the value of the field
+     * @return the field
+     */
+    private static String[] Field(String name, String value)
+    {
+        return new String[] {name, value};
+    }
+
+    /**
+     * RFC 7541 C.3, requests without Huffman coding
+     * @throws HTTP2Exception
+     */
+    @Test
+    public void decodesRequestsWithoutHuffmanCoding() throws HTTP2Exception
+    {
+        HPACKDecoder decoder = new HPACKDecoder();
+
+        HPACKDecoderTest.AssertDecodes(decoder, "8286 8441 0f77 7777 2e65 7861 6d70 6c65 2e63 6f6d",
+                                       Field(":method", "GET"), Field(":scheme", "http"), Field(":path", "/"),
+                                       Field(":authority", "www.example.com"));
+        HPACKDecoderTest.AssertDecodes(decoder, "8286 84be 5808 6e6f 2d63 6163 6865",
+                                       Field(":method", "GET"), Field(":scheme", "http"), Field(":path", "/"),
+                                       Field(":authority", "www.example.com"), Field("cache-control", "no-cache"));
+        HPACKDecoderTest.AssertDecodes(decoder, "8287 85bf 400a 6375 7374 6f6d 2d6b 6579 0c63 7573 746f 6d2d 7661 6c75 65",
+                                       Field(":method", "GET"), Field(":scheme", "https"), Field(":path", "/index.html"),
+                                       Field(":authority", "www.example.com"), Field("custom-key", "custom-value"));
+    }
+
+    /**
+     * RFC 7541 C.4, requests with Huffman coding
+     * @throws HTTP2Exception
+     */
+    @Test
+    public void decodesRequestsWithHuffmanCoding() throws HTTP2Exception
+    {
+        HPACKDecoder decoder = new HPACKDecoder();
+
+        HPACKDecoderTest.AssertDecodes(decoder, "8286 8441 8cf1 e3c2 e5f2 3a6b a0ab 90f4 ff",
+                                       Field(":method", "GET"), Field(":scheme", "http"), Field(":path", "/"),
+                                       Field(":authority", "www.example.com"));
+        HPACKDecoderTest.AssertDecodes(decoder, "8286 84be 5886 a8eb 1064 9cbf",
+                                       Field(":method", "GET"), Field(":scheme", "http"), Field(":path", "/"),
+                                       Field(":authority", "www.example.com"), Field("cache-control", "no-cache"));
+        HPACKDecoderTest.AssertDecodes(decoder, "8287 85bf 4088 25a8 49e9 5ba9 7d7f 8925 a849 e95b b8e8 b4bf",
+                                       Field(":method", "GET"), Field(":scheme", "https"), Field(":path", "/index.html"),
+                                       Field(":authority", "www.example.com"), Field("custom-key", "custom-value"));
+    }
+
+    /**
+     * RFC 7541 C.5, responses without Huffman coding, whose 256 byte table evicts fields as the later responses are added
+     * @throws HTTP2Exception
+     */
+    @Test
+    public void decodesResponsesWithoutHuffmanCoding() throws HTTP2Exception
+    {
+        HPACKDecoder decoder = new HPACKDecoder();
+
+        HPACKDecoderTest.AssertDecodes(decoder, SIZE_UPDATE_256 +
+                                       "4803 3330 3258 0770 7269 7661 7465 611d 4d6f 6e2c 2032 3120 4f63 7420 3230 3133 2032 303a 3133 3a32" +
+                                       "3120 474d 546e 1768 7474 7073 3a2f 2f77 7777 2e65 7861 6d70 6c65 2e63 6f6d",
+                                       Field(":status", "302"), Field("cache-control", "private"), Field("date", DATE_21),
+                                       Field("location", LOCATION));
+        HPACKDecoderTest.AssertDecodes(decoder, "4803 3330 37c1 c0bf",
+                                       Field(":status", "307"), Field("cache-control", "private"), Field("date", DATE_21),
+                                       Field("location", LOCATION));
+        HPACKDecoderTest.AssertDecodes(decoder,
+                                       "88c1 611d 4d6f 6e2c 2032 3120 4f63 7420 3230 3133 2032 303a 3133 3a32 3220 474d 54c0 5a04 677a 6970" +
+                                       "7738 666f 6f3d 4153 444a 4b48 514b 425a 584f 5157 454f 5049 5541 5851 5745 4f49 553b 206d 6178 2d61" +
+                                       "6765 3d33 3630 303b 2076 6572 7369 6f6e 3d31",
+                                       Field(":status", "200"), Field("cache-control", "private"), Field("date", DATE_22),
+                                       Field("location", LOCATION), Field("content-encoding", "gzip"), Field("set-cookie", COOKIE));
+    }
+
+    /**
+     * RFC 7541 C.6, responses with Huffman coding
+     * @throws HTTP2Exception
+     */
+    @Test
+    public void decodesResponsesWithHuffmanCoding() throws HTTP2Exception
+    {
+        HPACKDecoder decoder = new HPACKDecoder();
+
+        HPACKDecoderTest.AssertDecodes(decoder, SIZE_UPDATE_256 +
+                                       "4882 6402 5885 aec3 771a 4b61 96d0 7abe 9410 54d4 44a8 2005 9504 0b81 66e0 82a6 2d1b ff6e 919d 29ad" +
+                                       "1718 63c7 8f0b 97c8 e9ae 82ae 43d3",
+                                       Field(":status", "302"), Field("cache-control", "private"), Field("date", DATE_21),
+                                       Field("location", LOCATION));
+        HPACKDecoderTest.AssertDecodes(decoder, "4883 640e ffc1 c0bf",
+                                       Field(":status", "307"), Field("cache-control", "private"), Field("date", DATE_21),
+                                       Field("location", LOCATION));
+        HPACKDecoderTest.AssertDecodes(decoder,
+                                       "88c1 6196 d07a be94 1054 d444 a820 0595 040b 8166 e084 a62d 1bff c05a 839b d9ab 77ad 94e7 821d d7f2" +
+                                       "e6c7 b335 dfdf cd5b 3960 d5af 2708 7f36 72c1 ab27 0fb5 291f 9587 3160 65c0 03ed 4ee5 b106 3d50 07",
+                                       Field(":status", "200"), Field("cache-control", "private"), Field("date", DATE_22),
+                                       Field("location", LOCATION), Field("content-encoding", "gzip"), Field("set-cookie", COOKIE));
+    }
+
+    /**
+     * A field evicted by a size update can no longer be referred to
+     * @throws HTTP2Exception
+     */
+    @Test
+    public void sizeUpdateEvictsFields() throws HTTP2Exception
+    {
+        HPACKDecoder decoder = new HPACKDecoder();
+
+        HPACKDecoderTest.AssertDecodes(decoder, "400a 6375 7374 6f6d 2d6b 6579 0c63 7573 746f 6d2d 7661 6c75 65",
+                                       Field("custom-key", "custom-value"));
+        HPACKDecoderTest.AssertDecodes(decoder, "be", Field("custom-key", "custom-value"));
+        HPACKDecoderTest.AssertDecodes(decoder, "20");
+
+        assertEquals(HTTP2Exception.COMPRESSION_ERROR, HPACKDecoderTest.DecodeError(decoder, "be"));
+    }
+
+    /**
+     * A size update may not make the table larger than the server allows
+     */
+    @Test
+    public void rejectsSizeUpdateAboveMaximum()
+    {
+        // 4097, one more than HPACKTable.MAX_TABLE_SIZE
+        assertEquals(HTTP2Exception.COMPRESSION_ERROR, HPACKDecoderTest.DecodeError(new HPACKDecoder(), "3fe21f"));
+    }
+
+    /**
+     * A size update may only come before the first field of a block
+     */
+    @Test
+    public void rejectsSizeUpdateAfterField()
+    {
+        assertEquals(HTTP2Exception.COMPRESSION_ERROR, HPACKDecoderTest.DecodeError(new HPACKDecoder(), "8220"));
+    }
+
+    /**
+     * Index 0 is never valid
+     */
+    @Test
+    public void rejectsIndexZero()
+    {
+        assertEquals(HTTP2Exception.COMPRESSION_ERROR, HPACKDecoderTest.DecodeError(new HPACKDecoder(), "80"));
+    }
+
+    /**
+     * A string which runs past the end of the block is an error rather than being cut short
+     */
+    @Test
+    public void rejectsTruncatedBlock()
+    {
+        assertEquals(HTTP2Exception.COMPRESSION_ERROR, HPACKDecoderTest.DecodeError(new HPACKDecoder(), "400a 6375 7374"));
+    }
+}
@@ -0,0 +1,118 @@
+package webserver;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Encodes header blocks and decodes them again, as the client would
+ * @author Kieran Chin Cheong
+ * @version 1.0
+ * @since 1.0
+ */
+public class HPACKEncoderTest
+{
+    // Static methods
+
+    /**
+     * @param encoder the encoder of the connection
+     * @param fields the fields to encode
+     * @return the header block
+     */
+    private static byte[] Encode(HPACKEncoder encoder, List<String[]> fields)
+    {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        encoder.encode(fields, out);
+
+        return out.toByteArray();
+    }
+
+    /**
+     * Checks that a header block decodes to the fields it was encoded from
+     * @param decoder the client's decoder
+     * @param block the header block
+     * @param fields the fields it was encoded from
+     * @throws HTTP2Exception
+     */
+    private static void AssertDecodes(HPACKDecoder decoder, byte[] block, List<String[]> fields) throws HTTP2Exception
+    {
+        ArrayList<String[]> decoded = decoder.decode(ByteBuffer.wrap(block));
+
+        assertEquals(fields.size(), decoded.size());
+
+        for (int i = 0; i < fields.size(); i++)
+        {
+            assertArrayEquals(fields.get(i), decoded.get(i));
+        }
+    }
+
+    /**
+     * Fields which repeat are sent by index once they are in the table, while unindexed fields are sent in full every time
+     * @throws HTTP2Exception
+     */
+    @Test
+    public void roundTripsThroughDecoder() throws HTTP2Exception
+    {
+        HPACKEncoder encoder = new HPACKEncoder();
+        HPACKDecoder decoder = new HPACKDecoder();
+
+        List<String[]> first = Arrays.asList(new String[] {":status", "200"}, new String[] {"content-type", "text/html"},
+                                             new String[] {"content-length", "1234"}, new String[] {"x-custom", "value"});
+        List<String[]> second = Arrays.asList(new String[] {":status", "200"}, new String[] {"content-type", "text/html"},
+                                              new String[] {"content-length", "5678"}, new String[] {"x-custom", "value"});
+
+        byte[] firstBlock = HPACKEncoderTest.Encode(encoder, first);
+        byte[] secondBlock = HPACKEncoderTest.Encode(encoder, second);
+
+        HPACKEncoderTest.AssertDecodes(decoder, firstBlock, first);
+        HPACKEncoderTest.AssertDecodes(decoder, secondBlock, second);
+
+        // :status 200 is in the static table, content-type and x-custom in the dynamic table, and content-length is a literal
+        assertEquals(1 + 1 + (2 + 1 + 4) + 1, secondBlock.length);
+    }
+
+    /**
+     * A change to the size of the table is signalled at the start of the next block, and fields are evicted to fit it
+     * @throws HTTP2Exception
+     */
+    @Test
+    public void signalsSizeUpdate() throws HTTP2Exception
+    {
+        HPACKEncoder encoder = new HPACKEncoder();
+        HPACKDecoder decoder = new HPACKDecoder();
+
+        List<String[]> fields = Collections.singletonList(new String[] {"x-custom", "value"});
+
+        HPACKEncoderTest.AssertDecodes(decoder, HPACKEncoderTest.Encode(encoder, fields), fields);
+
+        encoder.setMaxTableSize(256);
+        byte[] block = HPACKEncoderTest.Encode(encoder, fields);
+
+        assertArrayEquals(new byte[] {0x3f, (byte) 0xe1, 0x01}, Arrays.copyOf(block, 3));
+        HPACKEncoderTest.AssertDecodes(decoder, block, fields);
+
+        // A size of 0 empties both tables, so the field is sent as a literal again
+        encoder.setMaxTableSize(0);
+        block = HPACKEncoderTest.Encode(encoder, fields);
+
+        assertEquals(0x20, block[0]);
+        assertTrue(block.length > 2);
+        HPACKEncoderTest.AssertDecodes(decoder, block, fields);
+
+        // The encoder never uses more than the server's own maximum, however large the client allows
+        encoder.setMaxTableSize(65536);
+        block = HPACKEncoderTest.Encode(encoder, fields);
+
+        assertArrayEquals(new byte[] {0x3f, (byte) 0xe1, 0x1f}, Arrays.copyOf(block, 3));
+        HPACKEncoderTest.AssertDecodes(decoder, block, fields);
+    }
+}
@@ -0,0 +1,103 @@
+package webserver;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.fail;
+
+import java.nio.ByteBuffer;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Decodes the Huffman coded strings of RFC 7541 Appendix C, and strings which are not validly coded
+ * @author Kieran Chin Cheong
+ * @version 1.0
+ * @since 1.0
+ */
+public class HPACKHuffmanTest
+{
+    // Static methods
+
+    /**
+     * @param hex a Huffman coded string written in hexadecimal
+     * @return the decoded string
+     * @throws HTTP2Exception
+     */
+    private static String Decode(String hex) throws HTTP2Exception
+    {
+        ByteBuffer source = HPACKDecoderTest.Block(hex);
+        String decoded = HPACKHuffman.Decode(source, source.remaining());
+
+        assertEquals(0, source.remaining());
+        return decoded;
+    }
+
+    /**
+     * Decodes a string which is expected to be rejected
+     * @param hex a Huffman coded string written in hexadecimal
+     * @return the error code the string was rejected with
+     */
+    private static int DecodeError(String hex)
+    {
+        try
+        {
+            HPACKHuffmanTest.Decode(hex);
+        }
+        catch (HTTP2Exception e)
+        {
+            return e.getErrorCode();
+        }
+
+        return fail("Huffman coded string " + hex + " was not rejected");
+    }
+
+    /**
+     * @throws HTTP2Exception
+     */
+    @Test
+    public void decodesExampleStrings() throws HTTP2Exception
+    {
+        assertEquals("www.example.com", HPACKHuffmanTest.Decode("f1e3 c2e5 f23a 6ba0 ab90 f4ff"));
+        assertEquals("no-cache", HPACKHuffmanTest.Decode("a8eb 1064 9cbf"));
+        assertEquals("custom-key", HPACKHuffmanTest.Decode("25a8 49e9 5ba9 7d7f"));
+        assertEquals("custom-value", HPACKHuffmanTest.Decode("25a8 49e9 5bb8 e8b4 bf"));
+        assertEquals("302", HPACKHuffmanTest.Decode("6402"));
+        assertEquals("private", HPACKHuffmanTest.Decode("aec3 771a 4b"));
+        assertEquals("https://www.example.com", HPACKHuffmanTest.Decode("9d29 ad17 1863 c78f 0b97 c8e9 ae82 ae43 d3"));
+        assertEquals("", HPACKHuffmanTest.Decode(""));
+    }
+
+    /**
+     * Only the bits of a partial symbol at the end of the string may be padding, so a whole byte of padding is rejected
+     */
+    @Test
+    public void rejectsPaddingLongerThanSevenBits()
+    {
+        assertEquals(HTTP2Exception.COMPRESSION_ERROR, HPACKHuffmanTest.DecodeError("f1e3 c2e5 f23a 6ba0 ab90 f4ff ff"));
+    }
+
+    /**
+     * Padding must be the most significant bits of the end of string symbol, which are all 1
+     * @throws HTTP2Exception
+     */
+    @Test
+    public void rejectsPaddingWhichIsNotAllOnes() throws HTTP2Exception
+    {
+        // "a" is 00011, which leaves three bits of padding
+        assertEquals("a", HPACKHuffmanTest.Decode("1f"));
+        assertEquals(HTTP2Exception.COMPRESSION_ERROR, HPACKHuffmanTest.DecodeError("1e"));
+        assertEquals(HTTP2Exception.COMPRESSION_ERROR, HPACKHuffmanTest.DecodeError("1d"));
+    }
+
+    /**
+     * The end of string symbol may not appear in a string, even where it would otherwise fit
+     */
+    @Test
+    public void rejectsEndOfStringSymbol()
+    {
+        // The end of string symbol is 30 bits of 1, which is followed here by two bits of padding
+        assertEquals(HTTP2Exception.COMPRESSION_ERROR, HPACKHuffmanTest.DecodeError("ffff ffff"));
+
+        // And here it follows "a"
+        assertEquals(HTTP2Exception.COMPRESSION_ERROR, HPACKHuffmanTest.DecodeError("1fff ffff ff"));
+    }
+}
@@ -0,0 +1,192 @@
+package webserver;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.fail;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Checks the lookups of the static and dynamic tables, and the eviction of dynamic table fields as it fills or shrinks
+ * <p>
+ * Each field in these tests takes 32 bytes more than its name and value, so a field named "name1" with the value "value1" takes 43
+ * @author Kieran Chin Cheong
+ * @version 1.0
+ * @since 1.0
+ */
+public class HPACKTableTest
+{
+    // Static variables
+
+    // The index of the newest field in the dynamic table, which follows the 61 fields of the static table
+    private static final int FIRST_DYNAMIC_INDEX = 62;
+
+    // Static methods
+
+    /**
+     * Looks up an index which is expected not to hold a field
+     * @param table the table
+     * @param index the index
+     * @return the error code the lookup failed with
+     */
+    private static int GetError(HPACKTable table, int index)
+    {
+        try
+        {
+            table.get(index);
+        }
+        catch (HTTP2Exception e)
+        {
+            return e.getErrorCode();
+        }
+
+        return fail("Index " + index + " held a field");
+    }
+
+    /**
+     * @throws HTTP2Exception
+     */
+    @Test
+    public void looksUpStaticTable() throws HTTP2Exception
+    {
+        HPACKTable table = new HPACKTable();
+
+        assertArrayEquals(new String[] {":authority", ""}, table.get(1));
+        assertArrayEquals(new String[] {":method", "GET"}, table.get(2));
+        assertArrayEquals(new String[] {"www-authenticate", ""}, table.get(61));
+        assertEquals(HTTP2Exception.COMPRESSION_ERROR, HPACKTableTest.GetError(table, 0));
+        assertEquals(HTTP2Exception.COMPRESSION_ERROR, HPACKTableTest.GetError(table, FIRST_DYNAMIC_INDEX));
+    }
+
+    /**
+     * A whole field is found by its index, and a field with only the same name by its negated index
+     */
+    @Test
+    public void findsFields()
+    {
+        HPACKTable table = new HPACKTable();
+        table.add("custom-key", "custom-value");
+
+        assertEquals(2, table.find(":method", "GET"));
+        assertEquals(-2, table.find(":method", "PUT"));
+        assertEquals(FIRST_DYNAMIC_INDEX, table.find("custom-key", "custom-value"));
+        assertEquals(-FIRST_DYNAMIC_INDEX, table.find("custom-key", "other-value"));
+        assertEquals(0, table.find("other-key", "custom-value"));
+    }
+
+    /**
+     * The newest field has the lowest index, and the oldest are evicted first to make room
+     * @throws HTTP2Exception
+     */
+    @Test
+    public void evictsOldestFieldsWhenFull() throws HTTP2Exception
+    {
+        HPACKTable table = new HPACKTable();
+        table.setMaxSize(129);
+
+        table.add("name1", "value1");
+        table.add("name2", "value2");
+        table.add("name3", "value3");
+
+        assertArrayEquals(new String[] {"name3", "value3"}, table.get(FIRST_DYNAMIC_INDEX));
+        assertArrayEquals(new String[] {"name1", "value1"}, table.get(FIRST_DYNAMIC_INDEX + 2));
+
+        // 172 bytes would not fit, so name1 goes
+        table.add("name4", "value4");
+
+        assertArrayEquals(new String[] {"name4", "value4"}, table.get(FIRST_DYNAMIC_INDEX));
+        assertArrayEquals(new String[] {"name2", "value2"}, table.get(FIRST_DYNAMIC_INDEX + 2));
+        assertEquals(HTTP2Exception.COMPRESSION_ERROR, HPACKTableTest.GetError(table, FIRST_DYNAMIC_INDEX + 3));
+    }
+
+    /**
+     * A larger field can evict more than one smaller one
+     * @throws HTTP2Exception
+     */
+    @Test
+    public void evictsAsManyFieldsAsNeeded() throws HTTP2Exception
+    {
+        HPACKTable table = new HPACKTable();
+        table.setMaxSize(129);
+
+        table.add("name1", "value1");
+        table.add("name2", "value2");
+        table.add("name3", "value3");
+        table.add("a-much-longer-name", "a-much-longer-value");
+
+        assertArrayEquals(new String[] {"a-much-longer-name", "a-much-longer-value"}, table.get(FIRST_DYNAMIC_INDEX));
+        assertArrayEquals(new String[] {"name3", "value3"}, table.get(FIRST_DYNAMIC_INDEX + 1));
+        assertEquals(HTTP2Exception.COMPRESSION_ERROR, HPACKTableTest.GetError(table, FIRST_DYNAMIC_INDEX + 2));
+    }
+
+    /**
+     * Shrinking the table evicts the oldest fields until it fits, and a size of 0 empties it
+     * @throws HTTP2Exception
+     */
+    @Test
+    public void evictsWhenMaxSizeIsReduced() throws HTTP2Exception
+    {
+        HPACKTable table = new HPACKTable();
+
+        table.add("name1", "value1");
+        table.add("name2", "value2");
+        table.add("name3", "value3");
+
+        table.setMaxSize(86);
+
+        assertEquals(86, table.getMaxSize());
+        assertArrayEquals(new String[] {"name2", "value2"}, table.get(FIRST_DYNAMIC_INDEX + 1));
+        assertEquals(HTTP2Exception.COMPRESSION_ERROR, HPACKTableTest.GetError(table, FIRST_DYNAMIC_INDEX + 2));
+
+        table.setMaxSize(0);
+
+        assertEquals(HTTP2Exception.COMPRESSION_ERROR, HPACKTableTest.GetError(table, FIRST_DYNAMIC_INDEX));
+        assertEquals(0, table.find("name3", "value3"));
+
+        // Nothing can be added to a table of size 0
+        table.add("name4", "value4");
+
+        assertEquals(HTTP2Exception.COMPRESSION_ERROR, HPACKTableTest.GetError(table, FIRST_DYNAMIC_INDEX));
+    }
+
+    /**
+     * A field larger than the whole table empties it, and is not added
+     * @throws HTTP2Exception
+     */
+    @Test
+    public void oversizedFieldEmptiesTable() throws HTTP2Exception
+    {
+        HPACKTable table = new HPACKTable();
+        table.setMaxSize(64);
+
+        table.add("name1", "value1");
+        table.add("a-much-longer-name", "a-much-longer-value");
+
+        assertEquals(HTTP2Exception.COMPRESSION_ERROR, HPACKTableTest.GetError(table, FIRST_DYNAMIC_INDEX));
+
+        // The table is still usable afterwards
+        table.add("name2", "value2");
+
+        assertArrayEquals(new String[] {"name2", "value2"}, table.get(FIRST_DYNAMIC_INDEX));
+    }
+
+    /**
+     * The table wraps around its ring of slots many times without losing track of its fields
+     * @throws HTTP2Exception
+     */
+    @Test
+    public void keepsFieldsInOrderAcrossManyAdditions() throws HTTP2Exception
+    {
+        HPACKTable table = new HPACKTable();
+
+        for (int i = 0; i < 1000; i++)
+        {
+            table.add("n", String.valueOf(i % 10));
+        }
+
+        // Each field takes 34 bytes, so 120 of them fit in 4096
+        assertArrayEquals(new String[] {"n", "9"}, table.get(FIRST_DYNAMIC_INDEX));
+        assertArrayEquals(new String[] {"n", "0"}, table.get(FIRST_DYNAMIC_INDEX + 119));
+        assertEquals(HTTP2Exception.COMPRESSION_ERROR, HPACKTableTest.GetError(table, FIRST_DYNAMIC_INDEX + 120));
+    }
+}
@@ -0,0 +1,472 @@
+package webserver;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collections;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Drives an HTTP/2 connection over the loopback interface with raw frames, to check how the flow control windows are kept
+ * <p>
+ * The client sends the connection preface as though the parser had already read its request line, and its requests are for the
+ * status page so that they have a message body without needing a content root
+ * @author Kieran Chin Cheong
+ * @version 1.0
+ * @since 1.0
+ */
+public class HTTP2ConnectionTest
+{
+    // Static variables
+
+    private static final byte[] PREFACE_REMAINDER = "SM\r\n\r\n".getBytes(StandardCharsets.US_ASCII);
+
+    private static final int DATA = 0x0;
+    private static final int HEADERS = 0x1;
+    private static final int RST_STREAM = 0x3;
+    private static final int SETTINGS = 0x4;
+    private static final int PING = 0x6;
+    private static final int GOAWAY = 0x7;
+    private static final int WINDOW_UPDATE = 0x8;
+
+    private static final int FLAG_ACK = 0x1;
+    private static final int FLAG_END_STREAM = 0x1;
+    private static final int FLAG_END_HEADERS = 0x4;
+
+    private static final int SETTINGS_INITIAL_WINDOW_SIZE = 0x4;
+
+    private static final int MAX_WINDOW_SIZE = 0x7fffffff;
+
+    // How long the client waits for a frame before the test fails
+    private static final int READ_TIMEOUT = 10000;
+
+    // Static methods
+
+    /**
+     * Adds a frame to the bytes to be sent
+     * @param out the bytes to be sent
+     * @param type the frame type
+     * @param flags the frame flags
+     * @param streamId the stream identifier
+     * @param payload the frame payload
+     */
+    private static void AddFrame(ByteArrayOutputStream out, int type, int flags, int streamId, byte[] payload)
+    {
+        out.write(payload.length >>> 16);
+        out.write(payload.length >>> 8);
+        out.write(payload.length);
+        out.write(type);
+        out.write(flags);
+        out.write(ByteBuffer.allocate(4).putInt(streamId).array(), 0, 4);
+        out.write(payload, 0, payload.length);
+    }
+
+    /**
+     * Adds a SETTINGS frame holding only SETTINGS_INITIAL_WINDOW_SIZE
+     * @param out the bytes to be sent
+     * @param initialWindowSize the value of the setting
+     */
+    private static void InitialWindowSize(ByteArrayOutputStream out, long initialWindowSize)
+    {
+        HTTP2ConnectionTest.AddFrame(out, SETTINGS, 0, 0, ByteBuffer.allocate(6).putShort((short) SETTINGS_INITIAL_WINDOW_SIZE).putInt((int) initialWindowSize).array());
+    }
+
+    /**
+     * Adds a WINDOW_UPDATE frame
+     * @param out the bytes to be sent
+     * @param streamId the stream identifier, or 0 for the connection
+     * @param increment the window size increment
+     */
+    private static void WindowUpdate(ByteArrayOutputStream out, int streamId, int increment)
+    {
+        HTTP2ConnectionTest.AddFrame(out, WINDOW_UPDATE, 0, streamId, ByteBuffer.allocate(4).putInt(increment).array());
+    }
+
+    /**
+     * Adds a HEADERS frame holding a whole request for the status page, which opens a stream
+     * @param out the bytes to be sent
+     * @param streamId the stream identifier
+     */
+    private static void StatusRequest(ByteArrayOutputStream out, int streamId)
+    {
+        HTTP2ConnectionTest.StatusRequest(out, streamId, FLAG_END_STREAM);
+    }
+
+    /**
+     * Adds a HEADERS frame holding a request for the status page, which opens a stream
+     * @param out the bytes to be sent
+     * @param streamId the stream identifier
+     * @param endStream FLAG_END_STREAM if the request is complete, or 0 if the client may still send on the stream
+     */
+    private static void StatusRequest(ByteArrayOutputStream out, int streamId, int endStream)
+    {
+        ByteArrayOutputStream block = new ByteArrayOutputStream();
+        new HPACKEncoder().encode(Arrays.asList(new String[] {":method", "GET"}, new String[] {":scheme", "http"},
+                                                new String[] {":path", Configuration.GetConfiguration().getStatusPath()},
+                                                new String[] {":authority", "localhost"}), block);
+
+        HTTP2ConnectionTest.AddFrame(out, HEADERS, endStream | FLAG_END_HEADERS, streamId, block.toByteArray());
+    }
+
+    /**
+     * Adds a HEADERS frame holding trailing header fields
+     * @param out the bytes to be sent
+     * @param streamId the stream identifier
+     * @param endStream FLAG_END_STREAM, as trailers must have, or 0
+     */
+    private static void Trailers(ByteArrayOutputStream out, int streamId, int endStream)
+    {
+        ByteArrayOutputStream block = new ByteArrayOutputStream();
+        new HPACKEncoder().encode(Collections.singletonList(new String[] {"x-checksum", "0"}), block);
+
+        HTTP2ConnectionTest.AddFrame(out, HEADERS, endStream | FLAG_END_HEADERS, streamId, block.toByteArray());
+    }
+
+    /**
+     * Adds a RST_STREAM frame
+     * @param out the bytes to be sent
+     * @param streamId the stream identifier
+     */
+    private static void ResetStream(ByteArrayOutputStream out, int streamId)
+    {
+        HTTP2ConnectionTest.AddFrame(out, RST_STREAM, 0, streamId, ByteBuffer.allocate(4).putInt(HTTP2Exception.CANCEL).array());
+    }
+
+    // Member variables
+
+    private ServerSocketChannel listener;
+    private Socket client;
+    private DataInputStream in;
+    private Thread server;
+
+    /**
+     * A frame received from the server
+     */
+    private static class Frame
+    {
+        int type;
+        int flags;
+        int streamId;
+        ByteBuffer payload;
+    }
+
+    /**
+     * Accepts a connection from the client on the loopback interface, and serves HTTP/2 on it from another thread
+     * @throws IOException
+     */
+    @BeforeEach
+    public void connect() throws IOException
+    {
+        this.listener = ServerSocketChannel.open();
+        this.listener.bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+
+        this.client = new Socket(InetAddress.getLoopbackAddress(), this.listener.socket().getLocalPort());
+        this.client.setSoTimeout(READ_TIMEOUT);
+        this.in = new DataInputStream(this.client.getInputStream());
+
+        final SocketChannel channel = this.listener.accept();
+
+        this.server = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try
+                {
+                    new HTTP2Connection(channel.socket(), new HTTPRequestParser(), null).run();
+                }
+                finally
+                {
+                    try
+                    {
+                        channel.close();
+                    }
+                    catch (IOException e)
+                    {
+                        // The test has finished with the connection either way
+                    }
+                }
+            }
+        });
+        this.server.start();
+    }
+
+    /**
+     * Closes the connection and waits for the server to finish with it
+     * @throws IOException
+     * @throws InterruptedException
+     */
+    @AfterEach
+    public void disconnect() throws IOException, InterruptedException
+    {
+        this.client.close();
+        this.server.join(READ_TIMEOUT);
+        this.listener.close();
+    }
+
+    /**
+     * Sends the connection preface and an empty SETTINGS frame followed by the given frames, all in one write so that the server
+     * handles them together
+     * @param frames the frames to send after the preface
+     * @throws IOException
+     */
+    private void sendWithPreface(ByteArrayOutputStream frames) throws IOException
+    {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        out.write(PREFACE_REMAINDER, 0, PREFACE_REMAINDER.length);
+        HTTP2ConnectionTest.AddFrame(out, SETTINGS, 0, 0, new byte[0]);
+        frames.writeTo(out);
+
+        this.send(out);
+    }
+
+    /**
+     * @param frames the frames to send
+     * @throws IOException
+     */
+    private void send(ByteArrayOutputStream frames) throws IOException
+    {
+        OutputStream out = this.client.getOutputStream();
+        frames.writeTo(out);
+        out.flush();
+    }
+
+    /**
+     * Reads frames from the server until one of the given type arrives on the given stream
+     * @param type the frame type
+     * @param streamId the stream identifier
+     * @return the frame
+     * @throws IOException if the connection is closed or times out first
+     */
+    private Frame expect(int type, int streamId) throws IOException
+    {
+        while (true)
+        {
+            byte[] header = new byte[9];
+            this.in.readFully(header);
+
+            Frame frame = new Frame();
+            frame.type = header[3] & 0xff;
+            frame.flags = header[4] & 0xff;
+            frame.streamId = ByteBuffer.wrap(header, 5, 4).getInt() & 0x7fffffff;
+
+            byte[] payload = new byte[((header[0] & 0xff) << 16) | ((header[1] & 0xff) << 8) | (header[2] & 0xff)];
+            this.in.readFully(payload);
+            frame.payload = ByteBuffer.wrap(payload);
+
+            if (frame.type == type && frame.streamId == streamId)
+            {
+                return frame;
+            }
+
+            assertTrue(frame.type != GOAWAY, "Unexpected GOAWAY with error code " + (payload.length >= 8 ? frame.payload.getInt(4) : -1));
+        }
+    }
+
+    /**
+     * @return the error code of the GOAWAY frame the server closes the connection with
+     * @throws IOException
+     */
+    private int expectGoAway() throws IOException
+    {
+        return this.expect(GOAWAY, 0).payload.getInt(4);
+    }
+
+    /**
+     * Checks that the connection can still be used, by having the server acknowledge a PING
+     * @throws IOException
+     */
+    private void expectAlive() throws IOException
+    {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        HTTP2ConnectionTest.AddFrame(out, PING, 0, 0, new byte[8]);
+        this.send(out);
+
+        assertEquals(FLAG_ACK, this.expect(PING, 0).flags);
+    }
+
+    /**
+     * The connection window may not grow beyond 2^31-1
+     * @throws IOException
+     */
+    @Test
+    public void connectionWindowOverflowIsConnectionError() throws IOException
+    {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        HTTP2ConnectionTest.WindowUpdate(out, 0, MAX_WINDOW_SIZE);
+        this.sendWithPreface(out);
+
+        assertEquals(HTTP2Exception.FLOW_CONTROL_ERROR, this.expectGoAway());
+    }
+
+    /**
+     * An increment of 0 to the connection window is a protocol error
+     * @throws IOException
+     */
+    @Test
+    public void zeroConnectionIncrementIsConnectionError() throws IOException
+    {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        HTTP2ConnectionTest.WindowUpdate(out, 0, 0);
+        this.sendWithPreface(out);
+
+        assertEquals(HTTP2Exception.PROTOCOL_ERROR, this.expectGoAway());
+    }
+
+    /**
+     * A stream window which grows beyond 2^31-1 resets the stream, but leaves the connection open
+     * @throws IOException
+     */
+    @Test
+    public void streamWindowOverflowResetsStream() throws IOException
+    {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        HTTP2ConnectionTest.InitialWindowSize(out, 1);
+        HTTP2ConnectionTest.StatusRequest(out, 1);
+        HTTP2ConnectionTest.WindowUpdate(out, 1, MAX_WINDOW_SIZE);
+        this.sendWithPreface(out);
+
+        assertEquals(HTTP2Exception.FLOW_CONTROL_ERROR, this.expect(RST_STREAM, 1).payload.getInt(0));
+        this.expectAlive();
+    }
+
+    /**
+     * An increment of 0 to a stream window resets the stream, but leaves the connection open
+     * @throws IOException
+     */
+    @Test
+    public void zeroStreamIncrementResetsStream() throws IOException
+    {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        HTTP2ConnectionTest.InitialWindowSize(out, 0);
+        HTTP2ConnectionTest.StatusRequest(out, 1);
+        HTTP2ConnectionTest.WindowUpdate(out, 1, 0);
+        this.sendWithPreface(out);
+
+        assertEquals(HTTP2Exception.PROTOCOL_ERROR, this.expect(RST_STREAM, 1).payload.getInt(0));
+        this.expectAlive();
+    }
+
+    /**
+     * SETTINGS_INITIAL_WINDOW_SIZE may not be larger than 2^31-1
+     * @throws IOException
+     */
+    @Test
+    public void initialWindowSizeAboveMaximumIsConnectionError() throws IOException
+    {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        HTTP2ConnectionTest.InitialWindowSize(out, MAX_WINDOW_SIZE + 1L);
+        this.sendWithPreface(out);
+
+        assertEquals(HTTP2Exception.FLOW_CONTROL_ERROR, this.expectGoAway());
+    }
+
+    /**
+     * A change to SETTINGS_INITIAL_WINDOW_SIZE applies its difference to the windows of open streams, which may become negative
+     * @throws IOException
+     */
+    @Test
+    public void initialWindowSizeDeltaAppliesToOpenStreams() throws IOException
+    {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        HTTP2ConnectionTest.InitialWindowSize(out, 0);
+        HTTP2ConnectionTest.StatusRequest(out, 1);
+        this.sendWithPreface(out);
+
+        // With a window of 0, the response headers are sent but none of its body
+        assertEquals(0, this.expect(HEADERS, 1).flags & FLAG_END_STREAM);
+
+        out.reset();
+        HTTP2ConnectionTest.InitialWindowSize(out, 10);
+        this.send(out);
+
+        assertEquals(10, this.expect(DATA, 1).payload.remaining());
+
+        // Lowering the setting again takes the window of the stream, which has used all of it, to -10
+        out.reset();
+        HTTP2ConnectionTest.InitialWindowSize(out, 0);
+        HTTP2ConnectionTest.WindowUpdate(out, 1, 15);
+        this.send(out);
+
+        assertEquals(5, this.expect(DATA, 1).payload.remaining());
+        this.expectAlive();
+    }
+
+    /**
+     * A change to SETTINGS_INITIAL_WINDOW_SIZE which takes the window of an open stream beyond 2^31-1 is a connection error
+     * @throws IOException
+     */
+    @Test
+    public void initialWindowSizeDeltaOverflowIsConnectionError() throws IOException
+    {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        HTTP2ConnectionTest.InitialWindowSize(out, 0);
+        HTTP2ConnectionTest.StatusRequest(out, 1);
+        HTTP2ConnectionTest.WindowUpdate(out, 1, MAX_WINDOW_SIZE);
+        HTTP2ConnectionTest.InitialWindowSize(out, 1);
+        this.sendWithPreface(out);
+
+        assertEquals(HTTP2Exception.FLOW_CONTROL_ERROR, this.expectGoAway());
+    }
+
+    /**
+     * Trailers end the stream, so a second header block without END_STREAM resets the stream, but leaves the connection open
+     * @throws IOException
+     */
+    @Test
+    public void trailersWithoutEndStreamResetStream() throws IOException
+    {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        HTTP2ConnectionTest.InitialWindowSize(out, 0);
+        HTTP2ConnectionTest.StatusRequest(out, 1, 0);
+        HTTP2ConnectionTest.Trailers(out, 1, 0);
+        this.sendWithPreface(out);
+
+        assertEquals(HTTP2Exception.PROTOCOL_ERROR, this.expect(RST_STREAM, 1).payload.getInt(0));
+        this.expectAlive();
+
+        // Trailers which do end the stream are accepted, and the response is sent once the window allows
+        out.reset();
+        HTTP2ConnectionTest.StatusRequest(out, 3, 0);
+        HTTP2ConnectionTest.Trailers(out, 3, FLAG_END_STREAM);
+        HTTP2ConnectionTest.InitialWindowSize(out, MAX_WINDOW_SIZE);
+        this.send(out);
+
+        assertEquals(FLAG_END_STREAM, this.expect(DATA, 3).flags & FLAG_END_STREAM);
+    }
+
+    /**
+     * A client which keeps opening streams and resetting them before their response is sent is told to calm down, and disconnected
+     * @throws IOException
+     */
+    @Test
+    public void rapidResetIsConnectionError() throws IOException
+    {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        HTTP2ConnectionTest.InitialWindowSize(out, 0);
+
+        // Every stream stays open, since its window does not let its response be sent
+        for (int i = 0; i <= Configuration.GetConfiguration().getHttp2MaxResetStreams(); i++)
+        {
+            HTTP2ConnectionTest.StatusRequest(out, i * 2 + 1);
+            HTTP2ConnectionTest.ResetStream(out, i * 2 + 1);
+        }
+
+        this.sendWithPreface(out);
+
+        assertEquals(HTTP2Exception.ENHANCE_YOUR_CALM, this.expectGoAway());
+    }
+}
@@ -0,0 +1,346 @@
+package webserver;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assertions.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.nio.charset.StandardCharsets;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Feeds request heads to the parser, whole or in pieces, and checks what it makes of them and which are refused
+ * <p>
+ * The limits are those of the configuration the tests run with
+ * @author Kieran Chin Cheong
+ * @version 1.0
+ * @since 1.0
+ */
+public class HTTPRequestParserTest
+{
+    // Static methods
+
+    /**
+     * @param length the number of characters
+     * @return a string of that many characters
+     */
+    private static String Repeat(int length)
+    {
+        StringBuilder builder = new StringBuilder(length);
+
+        for (int i = 0; i < length; i++)
+        {
+            builder.append('a');
+        }
+
+        return builder.toString();
+    }
+
+    // Member variables
+
+    private HTTPRequestParser parser = new HTTPRequestParser();
+
+    /**
+     * Releases the parser's buffer, as the connection would
+     */
+    @AfterEach
+    public void close()
+    {
+        this.parser.close();
+    }
+
+    /**
+     * Gives the parser more input, as though it had just been received
+     * @param input the input
+     * @throws IOException
+     */
+    private void receive(String input) throws IOException
+    {
+        byte[] bytes = input.getBytes(StandardCharsets.ISO_8859_1);
+
+        assertEquals(bytes.length, this.parser.fill(Channels.newChannel(new ByteArrayInputStream(bytes))));
+    }
+
+    /**
+     * Parses input which is expected to be refused
+     * @return the status the request was refused with
+     */
+    private Status parseError()
+    {
+        try
+        {
+            this.parser.parse();
+        }
+        catch (RequestException e)
+        {
+            return e.getErrorCode();
+        }
+
+        return fail("Request was not refused");
+    }
+
+    /**
+     * @throws IOException
+     * @throws RequestException
+     */
+    @Test
+    public void parsesRequestHead() throws IOException, RequestException
+    {
+        this.receive("GET /a.html HTTP/1.1\r\nHost: localhost\r\nConnection: Keep-Alive\r\nX-Custom:  value \r\nx-custom: other\r\n\r\n");
+
+        HTTPRequest request = this.parser.parse();
+
+        assertEquals("GET", request.getRequestMethod());
+        assertEquals("/a.html", request.getRequestTarget());
+        assertEquals("HTTP/1.1", request.getHttpVersion());
+        assertEquals("localhost", request.getHeaderField("host"));
+        assertTrue(request.isKeepAliveRequested());
+        assertEquals("value,other", request.getHeaderField("x-custom"));
+        assertFalse(this.parser.hasPartialRequest());
+    }
+
+    /**
+     * Lines may end with a bare LF, and empty lines before the request line are ignored
+     * @throws IOException
+     * @throws RequestException
+     */
+    @Test
+    public void acceptsBareLineFeeds() throws IOException, RequestException
+    {
+        this.receive("\r\n\nGET /a.html HTTP/1.1\nHost: localhost\n\n");
+
+        assertEquals("/a.html", this.parser.parse().getRequestTarget());
+    }
+
+    /**
+     * A head received in pieces is only parsed once all of it has arrived
+     * @throws IOException
+     * @throws RequestException
+     */
+    @Test
+    public void waitsForWholeHead() throws IOException, RequestException
+    {
+        this.receive("GET /a.html HT");
+        assertNull(this.parser.parse());
+        assertTrue(this.parser.hasPartialRequest());
+
+        this.receive("TP/1.1\r\nHost: localhost\r\n\r");
+        assertNull(this.parser.parse());
+
+        this.receive("\n");
+        assertEquals("/a.html", this.parser.parse().getRequestTarget());
+        assertFalse(this.parser.hasPartialRequest());
+    }
+
+    /**
+     * Requests pipelined behind one another are parsed in turn from the same input
+     * @throws IOException
+     * @throws RequestException
+     */
+    @Test
+    public void parsesPipelinedRequests() throws IOException, RequestException
+    {
+        this.receive("GET /a.html HTTP/1.1\r\nHost: localhost\r\n\r\nGET /b.html HTTP/1.1\r\nHost: localhost\r\n\r\nGET /c.html HTTP/1.1\r\n");
+
+        assertEquals("/a.html", this.parser.parse().getRequestTarget());
+        assertEquals("/b.html", this.parser.parse().getRequestTarget());
+        assertNull(this.parser.parse());
+        assertTrue(this.parser.hasPartialRequest());
+
+        this.receive("Host: localhost\r\n\r\n");
+
+        assertEquals("/c.html", this.parser.parse().getRequestTarget());
+        assertNull(this.parser.parse());
+    }
+
+    /**
+     * A message body given by content-length is skipped, even when it arrives in pieces, rather than read as the next request
+     * @throws IOException
+     * @throws RequestException
+     */
+    @Test
+    public void skipsMessageBody() throws IOException, RequestException
+    {
+        this.receive("GET /a.html HTTP/1.1\r\nHost: localhost\r\nContent-Length: 27\r\n\r\nGET /evil.html HTTP/1.1\r\n");
+
+        assertEquals("/a.html", this.parser.parse().getRequestTarget());
+        assertTrue(this.parser.hasPartialRequest());
+
+        this.receive("\r\nGET /b.html HTTP/1.1\r\nHost: localhost\r\n\r\n");
+
+        assertEquals("/b.html", this.parser.parse().getRequestTarget());
+        assertFalse(this.parser.hasPartialRequest());
+    }
+
+    /**
+     * A body framed by transfer-encoding cannot be skipped, so the request is not implemented, or bad if content-length is also given
+     * @throws IOException
+     */
+    @Test
+    public void refusesTransferEncoding() throws IOException
+    {
+        this.receive("GET /a.html HTTP/1.1\r\nHost: localhost\r\nTransfer-Encoding: chunked\r\n\r\n");
+        assertEquals(Status.NOT_IMPLEMENTED, this.parseError());
+
+        this.parser.close();
+        this.parser = new HTTPRequestParser();
+
+        this.receive("GET /a.html HTTP/1.1\r\nHost: localhost\r\nContent-Length: 5\r\nTransfer-Encoding: chunked\r\n\r\n");
+        assertEquals(Status.BAD_REQUEST, this.parseError());
+    }
+
+    /**
+     * @throws IOException
+     */
+    @Test
+    public void refusesInvalidContentLength() throws IOException
+    {
+        this.receive("GET /a.html HTTP/1.1\r\nHost: localhost\r\nContent-Length: -1\r\n\r\n");
+        assertEquals(Status.BAD_REQUEST, this.parseError());
+
+        this.parser.close();
+        this.parser = new HTTPRequestParser();
+
+        this.receive("GET /a.html HTTP/1.1\r\nHost: localhost\r\nContent-Length: 1x\r\n\r\n");
+        assertEquals(Status.BAD_REQUEST, this.parseError());
+    }
+
+    /**
+     * A request line longer than allowed is refused as soon as that much of it has been received, without waiting for the rest
+     * @throws IOException
+     * @throws RequestException
+     */
+    @Test
+    public void refusesLongRequestLine() throws IOException, RequestException
+    {
+        int maxLength = Configuration.GetConfiguration().getMaxRequestLineLength();
+        String target = "/" + HTTPRequestParserTest.Repeat(maxLength);
+
+        this.receive("GET " + target.substring(0, maxLength - 4));
+        assertNull(this.parser.parse());
+
+        this.receive(target.substring(maxLength - 4));
+        assertEquals(Status.URI_TOO_LONG, this.parseError());
+    }
+
+    /**
+     * A request line of exactly the largest length allowed is accepted
+     * @throws IOException
+     * @throws RequestException
+     */
+    @Test
+    public void acceptsRequestLineOfMaximumLength() throws IOException, RequestException
+    {
+        int maxLength = Configuration.GetConfiguration().getMaxRequestLineLength();
+        String target = "/" + HTTPRequestParserTest.Repeat(maxLength - "GET / HTTP/1.1".length());
+
+        this.receive("GET " + target + " HTTP/1.1\r\nHost: localhost\r\n\r\n");
+
+        assertEquals(target, this.parser.parse().getRequestTarget());
+    }
+
+    /**
+     * A request head larger than allowed is refused, even when none of its lines are too long
+     * @throws IOException
+     */
+    @Test
+    public void refusesLargeRequestHead() throws IOException
+    {
+        int maxSize = Configuration.GetConfiguration().getMaxRequestHeadSize();
+        StringBuilder head = new StringBuilder("GET /a.html HTTP/1.1\r\nHost: localhost\r\n");
+
+        while (head.length() < maxSize)
+        {
+            head.append("X-Large: ").append(HTTPRequestParserTest.Repeat(1000)).append("\r\n");
+        }
+
+        this.receive(head.substring(0, maxSize));
+        assertEquals(Status.REQUEST_HEADER_FIELDS_TOO_LARGE, this.parseError());
+    }
+
+    /**
+     * More header fields than allowed are refused, even when the head is small enough
+     * @throws IOException
+     * @throws RequestException
+     */
+    @Test
+    public void refusesTooManyHeaderFields() throws IOException, RequestException
+    {
+        int maxCount = Configuration.GetConfiguration().getMaxRequestHeaderCount();
+        StringBuilder head = new StringBuilder("GET /a.html HTTP/1.1\r\nHost: localhost\r\n");
+
+        for (int i = 1; i < maxCount; i++)
+        {
+            head.append("X: y\r\n");
+        }
+
+        this.receive(head + "\r\n");
+        assertEquals("localhost", this.parser.parse().getHeaderField("host"));
+
+        this.receive(head + "X: y\r\n\r\n");
+        assertEquals(Status.REQUEST_HEADER_FIELDS_TOO_LARGE, this.parseError());
+    }
+
+    /**
+     * @throws IOException
+     */
+    @Test
+    public void refusesMalformedRequestLine() throws IOException
+    {
+        this.receive("GET /a.html\r\nHost: localhost\r\n\r\n");
+        assertEquals(Status.BAD_REQUEST, this.parseError());
+
+        this.parser.close();
+        this.parser = new HTTPRequestParser();
+
+        this.receive("GET  /a.html HTTP/1.1\r\nHost: localhost\r\n\r\n");
+        assertEquals(Status.BAD_REQUEST, this.parseError());
+    }
+
+    /**
+     * @throws IOException
+     */
+    @Test
+    public void refusesMalformedHeaderField() throws IOException
+    {
+        this.receive("GET /a.html HTTP/1.1\r\nHost : localhost\r\n\r\n");
+        assertEquals(Status.BAD_REQUEST, this.parseError());
+    }
+
+    /**
+     * @throws IOException
+     */
+    @Test
+    public void refusesMissingHost() throws IOException
+    {
+        this.receive("GET /a.html HTTP/1.1\r\n\r\n");
+        assertEquals(Status.BAD_REQUEST, this.parseError());
+    }
+
+    /**
+     * @throws IOException
+     */
+    @Test
+    public void refusesUnsupportedMethod() throws IOException
+    {
+        this.receive("POST /a.html HTTP/1.1\r\nHost: localhost\r\n\r\n");
+        assertEquals(Status.NOT_IMPLEMENTED, this.parseError());
+    }
+
+    /**
+     * A target which climbs out of the content root is refused
+     * @throws IOException
+     */
+    @Test
+    public void refusesTargetOutsideRoot() throws IOException
+    {
+        this.receive("GET /../config.xml HTTP/1.1\r\nHost: localhost\r\n\r\n");
+        assertEquals(Status.BAD_REQUEST, this.parseError());
+    }
+}
@@ -0,0 +1,237 @@
+package webserver;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Builds responses for files under a content root of its own, and checks their status and header fields
+ * @author Kieran Chin Cheong
+ * @version 1.0
+ * @since 1.0
+ */
+public class HTTPResponseTest
+{
+    // Static variables
+
+    private static Path root;
+    private static String previousRootDirectory;
+
+    // Static methods
+
+    /**
+     * Serves the tests' files from a temporary content root
+     * @throws IOException
+     */
+    @BeforeAll
+    public static void CreateRoot() throws IOException
+    {
+        HTTPResponseTest.root = Files.createTempDirectory("content");
+        HTTPResponseTest.previousRootDirectory = Configuration.GetConfiguration().getRootDirectory();
+        Configuration.GetConfiguration().setRootDirectory(HTTPResponseTest.root.toString());
+
+        StringBuilder text = new StringBuilder();
+
+        for (int i = 0; i < 200; i++)
+        {
+            text.append("line ").append(i).append(" of a file which is worth compressing\n");
+        }
+
+        Files.write(HTTPResponseTest.root.resolve("text.txt"), text.toString().getBytes(StandardCharsets.US_ASCII));
+        Files.write(HTTPResponseTest.root.resolve("image.png"), new byte[4096]);
+    }
+
+    /**
+     * @throws IOException
+     */
+    @AfterAll
+    public static void DeleteRoot() throws IOException
+    {
+        Configuration.GetConfiguration().setRootDirectory(HTTPResponseTest.previousRootDirectory);
+
+        Files.deleteIfExists(HTTPResponseTest.root.resolve("text.txt"));
+        Files.deleteIfExists(HTTPResponseTest.root.resolve("image.png"));
+        Files.deleteIfExists(HTTPResponseTest.root);
+    }
+
+    /**
+     * Builds the response to a GET request, as a blocking Worker would, which must then be sent or released
+     * @param target the request target
+     * @param fields any further header fields, each followed by CRLF
+     * @return the response
+     * @throws IOException
+     * @throws RequestException
+     */
+    private static HTTPResponse Build(String target, String fields) throws IOException, RequestException
+    {
+        HTTPRequestParser parser = new HTTPRequestParser();
+
+        try
+        {
+            byte[] head = ("GET " + target + " HTTP/1.1\r\nHost: localhost\r\n" + fields + "\r\n").getBytes(StandardCharsets.ISO_8859_1);
+            parser.fill(Channels.newChannel(new ByteArrayInputStream(head)));
+
+            return HTTPResponse.BuildHTTPResponseWithBody(parser.parse(), true, 0);
+        }
+        finally
+        {
+            parser.close();
+        }
+    }
+
+    /**
+     * Builds the response to a GET request without sending it
+     * @param target the request target
+     * @param fields any further header fields, each followed by CRLF
+     * @return the response
+     * @throws IOException
+     * @throws RequestException
+     */
+    static HTTPResponse Respond(String target, String fields) throws IOException, RequestException
+    {
+        HTTPResponse response = HTTPResponseTest.Build(target, fields);
+        response.release();
+
+        return response;
+    }
+
+    /**
+     * Builds the response to a GET request and sends it
+     * @param target the request target
+     * @param fields any further header fields, each followed by CRLF
+     * @return everything sent
+     * @throws IOException
+     * @throws RequestException
+     * @throws ResponseException
+     */
+    private static String Send(String target, String fields) throws IOException, RequestException, ResponseException
+    {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        HTTPResponseTest.Build(target, fields).Send(out);
+
+        return new String(out.toByteArray(), StandardCharsets.ISO_8859_1);
+    }
+
+    /**
+     * A compressible file is compressed for a client which accepts gzip, and both representations vary by accept-encoding
+     * @throws IOException
+     * @throws RequestException
+     */
+    @Test
+    public void compressesForClientsWhichAcceptGzip() throws IOException, RequestException
+    {
+        HashMap<String, String> compressed = HTTPResponseTest.Respond("/text.txt", "Accept-Encoding: gzip, br\r\n").getHeaderFields();
+        HashMap<String, String> identity = HTTPResponseTest.Respond("/text.txt", "").getHeaderFields();
+
+        assertEquals("gzip", compressed.get("content-encoding"));
+        assertEquals("accept-encoding", compressed.get("vary"));
+        assertNull(identity.get("content-encoding"));
+        assertEquals("accept-encoding", identity.get("vary"));
+        assertNotEquals(identity.get("content-length"), compressed.get("content-length"));
+
+        // A client which refuses gzip gets the file as it is
+        assertNull(HTTPResponseTest.Respond("/text.txt", "Accept-Encoding: gzip;q=0\r\n").getHeaderFields().get("content-encoding"));
+    }
+
+    /**
+     * The compressed and uncompressed representations have different entity tags, and a client's tag only matches its own
+     * representation
+     * @throws IOException
+     * @throws RequestException
+     */
+    @Test
+    public void givesEachRepresentationItsOwnEntityTag() throws IOException, RequestException
+    {
+        String compressedTag = HTTPResponseTest.Respond("/text.txt", "Accept-Encoding: gzip\r\n").getHeaderFields().get("etag");
+        String identityTag = HTTPResponseTest.Respond("/text.txt", "").getHeaderFields().get("etag");
+
+        assertNotEquals(identityTag, compressedTag);
+
+        assertEquals(Status.NOT_MODIFIED, HTTPResponseTest.Respond("/text.txt", "Accept-Encoding: gzip\r\nIf-None-Match: " + compressedTag + "\r\n").getResponseCode());
+        assertEquals(Status.OK, HTTPResponseTest.Respond("/text.txt", "Accept-Encoding: gzip\r\nIf-None-Match: " + identityTag + "\r\n").getResponseCode());
+        assertEquals(Status.NOT_MODIFIED, HTTPResponseTest.Respond("/text.txt", "If-None-Match: " + identityTag + "\r\n").getResponseCode());
+        assertEquals(Status.OK, HTTPResponseTest.Respond("/text.txt", "If-None-Match: " + compressedTag + "\r\n").getResponseCode());
+    }
+
+    /**
+     * A range request is answered from the file as it is, since ranges of the compressed representation cannot be found
+     * @throws IOException
+     * @throws RequestException
+     */
+    @Test
+    public void sendsRangesUncompressed() throws IOException, RequestException
+    {
+        HTTPResponse response = HTTPResponseTest.Respond("/text.txt", "Accept-Encoding: gzip\r\nRange: bytes=0-9\r\n");
+
+        assertEquals(Status.PARTIAL_CONTENT, response.getResponseCode());
+        assertNull(response.getHeaderFields().get("content-encoding"));
+        assertEquals("10", response.getHeaderFields().get("content-length"));
+    }
+
+    /**
+     * A file which is not worth compressing is sent as it is, and does not vary by accept-encoding
+     * @throws IOException
+     * @throws RequestException
+     */
+    @Test
+    public void sendsIncompressibleFileAsItIs() throws IOException, RequestException
+    {
+        HashMap<String, String> fields = HTTPResponseTest.Respond("/image.png", "Accept-Encoding: gzip\r\n").getHeaderFields();
+
+        assertNull(fields.get("content-encoding"));
+        assertNull(fields.get("vary"));
+        assertEquals("4096", fields.get("content-length"));
+    }
+
+    /**
+     * A client whose copy is current is sent 304 Not Modified, with the validators it was checked against but without a body
+     * @throws IOException
+     * @throws RequestException
+     * @throws ResponseException
+     */
+    @Test
+    public void sendsNotModifiedWithValidators() throws IOException, RequestException, ResponseException
+    {
+        HashMap<String, String> current = HTTPResponseTest.Respond("/image.png", "").getHeaderFields();
+        HTTPResponse response = HTTPResponseTest.Respond("/image.png", "If-None-Match: " + current.get("etag") + "\r\n");
+
+        assertEquals(Status.NOT_MODIFIED, response.getResponseCode());
+        assertEquals(current.get("etag"), response.getHeaderFields().get("etag"));
+        assertEquals(current.get("last-modified"), response.getHeaderFields().get("last-modified"));
+        assertNull(response.getHeaderFields().get("content-length"));
+
+        String sent = HTTPResponseTest.Send("/image.png", "If-None-Match: " + current.get("etag") + "\r\n");
+
+        assertTrue(sent.startsWith("HTTP/1.1 304 "), sent);
+        assertEquals(sent.length() - 4, sent.indexOf("\r\n\r\n"), sent);
+    }
+
+    /**
+     * if-modified-since is evaluated against the file's last modified date, unless the request also has if-none-match
+     * @throws IOException
+     * @throws RequestException
+     */
+    @Test
+    public void evaluatesIfModifiedSince() throws IOException, RequestException
+    {
+        String lastModified = HTTPResponseTest.Respond("/image.png", "").getHeaderFields().get("last-modified");
+
+        assertEquals(Status.NOT_MODIFIED, HTTPResponseTest.Respond("/image.png", "If-Modified-Since: " + lastModified + "\r\n").getResponseCode());
+        assertEquals(Status.OK, HTTPResponseTest.Respond("/image.png", "If-Modified-Since: Thu, 01 Jan 1970 00:00:00 GMT\r\n").getResponseCode());
+        assertEquals(Status.OK, HTTPResponseTest.Respond("/image.png", "If-None-Match: \"other\"\r\nIf-Modified-Since: " + lastModified + "\r\n").getResponseCode());
+    }
+}
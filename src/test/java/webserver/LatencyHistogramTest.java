@@ -0,0 +1,139 @@
+package webserver;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Records latencies either side of the histogram's bucket boundaries, and reads percentiles back out of it
+ * <p>
+ * A percentile is reported as the highest latency of its bucket, so a latency recorded alongside a far higher one shows which
+ * bucket it was counted in
+ * @author Kieran Chin Cheong
+ * @version 1.0
+ * @since 1.0
+ */
+public class LatencyHistogramTest
+{
+    // Static variables
+
+    // A latency far above any bucket under test, in microseconds
+    private static final long FAR_HIGHER = 1000000;
+
+    // Static methods
+
+    /**
+     * @param micros the latency in microseconds
+     * @return the highest latency of the bucket the latency is counted in, in microseconds
+     */
+    private static long BucketHighestValue(long micros)
+    {
+        LatencyHistogram histogram = new LatencyHistogram();
+        histogram.record(micros * 1000);
+        histogram.record(FAR_HIGHER * 1000);
+
+        return histogram.getPercentile(50);
+    }
+
+    /**
+     * Nothing recorded reads as 0 at every percentile
+     */
+    @Test
+    public void readsZeroWhenEmpty()
+    {
+        LatencyHistogram histogram = new LatencyHistogram();
+
+        assertEquals(0, histogram.getPercentile(50));
+        assertEquals(0, histogram.getPercentile(100));
+        assertEquals(0, histogram.getCount());
+        assertEquals(0, histogram.getMax());
+    }
+
+    /**
+     * Latencies below 64 microseconds each have a bucket of their own
+     */
+    @Test
+    public void countsSmallLatenciesExactly()
+    {
+        for (long micros = 0; micros < 64; micros++)
+        {
+            assertEquals(micros, LatencyHistogramTest.BucketHighestValue(micros));
+        }
+    }
+
+    /**
+     * From 64 microseconds buckets double in width with each power of two, 32 of them to each
+     */
+    @Test
+    public void widensBucketsAtBoundaries()
+    {
+        assertEquals(65, LatencyHistogramTest.BucketHighestValue(64));
+        assertEquals(65, LatencyHistogramTest.BucketHighestValue(65));
+        assertEquals(67, LatencyHistogramTest.BucketHighestValue(66));
+        assertEquals(127, LatencyHistogramTest.BucketHighestValue(126));
+        assertEquals(131, LatencyHistogramTest.BucketHighestValue(128));
+        assertEquals(1007, LatencyHistogramTest.BucketHighestValue(1000));
+        assertEquals(1023, LatencyHistogramTest.BucketHighestValue(1008));
+        assertEquals(1055, LatencyHistogramTest.BucketHighestValue(1024));
+    }
+
+    /**
+     * Every bucket is within about 3% of the latencies counted in it, whatever their magnitude
+     */
+    @Test
+    public void boundsRelativeError()
+    {
+        for (long micros = 1; micros < FAR_HIGHER; micros = micros * 3 + 1)
+        {
+            long highest = LatencyHistogramTest.BucketHighestValue(micros);
+
+            assertTrue(highest >= micros && highest <= micros + micros / 32, "Bucket of " + micros + " ends at " + highest);
+        }
+    }
+
+    /**
+     * A percentile is the bucket the given share of latencies is reached in, never reported above the highest latency recorded
+     */
+    @Test
+    public void extractsPercentiles()
+    {
+        LatencyHistogram histogram = new LatencyHistogram();
+
+        for (long micros = 1; micros <= 100; micros++)
+        {
+            histogram.record(micros * 1000);
+        }
+
+        assertEquals(1, histogram.getPercentile(0));
+        assertEquals(50, histogram.getPercentile(50));
+        assertEquals(63, histogram.getPercentile(63));
+        assertEquals(91, histogram.getPercentile(90));
+        assertEquals(99, histogram.getPercentile(99));
+        assertEquals(100, histogram.getPercentile(99.5));
+        assertEquals(100, histogram.getPercentile(100));
+
+        assertEquals(100, histogram.getCount());
+        assertEquals(5050, histogram.getSum());
+        assertEquals(100, histogram.getMax());
+    }
+
+    /**
+     * Latencies are recorded in whole microseconds, negative ones as 0 and those beyond the last bucket as just under 2^37
+     */
+    @Test
+    public void clampsRecordedLatencies()
+    {
+        LatencyHistogram histogram = new LatencyHistogram();
+
+        histogram.record(1999);
+        assertEquals(1, histogram.getMax());
+
+        histogram.record(-5000);
+        assertEquals(0, histogram.getPercentile(50));
+
+        histogram.record(Long.MAX_VALUE);
+        assertEquals((1L << 37) - 1, histogram.getMax());
+        assertEquals((1L << 37) - 1, histogram.getPercentile(100));
+    }
+}
@@ -0,0 +1,235 @@
+package webserver;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Adds lines to the log buffer from one thread and from several at once, and takes them out again as the Logger thread does
+ * <p>
+ * Each producer logs its own index as the thread ID and the number of each of its lines as the line, so that the consumer can tell
+ * whose lines arrive in what order
+ * @author Kieran Chin Cheong
+ * @version 1.0
+ * @since 1.0
+ */
+public class LogRingBufferTest
+{
+    // Static variables
+
+    private static final int PRODUCERS = 4;
+    private static final int LINES_PER_PRODUCER = 20000;
+
+    // Static methods
+
+    /**
+     * Adds a line numbered for its producer
+     * @param buffer the buffer
+     * @param producer the index of the producer
+     * @param line the number of the line
+     * @return true if the line was added, false if the buffer is full
+     */
+    private static boolean Offer(LogRingBuffer buffer, int producer, int line)
+    {
+        return buffer.offer(0, producer, "%d", new Object[] {line});
+    }
+
+    /**
+     * Takes the oldest line out of the buffer
+     * @param buffer the buffer
+     * @return the producer and number of the line, or null if the buffer is empty
+     */
+    private static int[] Take(LogRingBuffer buffer)
+    {
+        LogRecord record = buffer.peek();
+
+        if (record == null)
+        {
+            return null;
+        }
+
+        int[] line = new int[] {(int) record.getThreadId(), Integer.parseInt(record.getLine())};
+        buffer.remove();
+
+        return line;
+    }
+
+    /**
+     * Starts producers which each add their lines in order, waiting for room whenever the buffer is full
+     * @param buffer the buffer
+     * @return the started producer threads
+     */
+    private static ArrayList<Thread> StartProducers(final LogRingBuffer buffer)
+    {
+        ArrayList<Thread> producers = new ArrayList<Thread>();
+
+        for (int i = 0; i < PRODUCERS; i++)
+        {
+            final int producer = i;
+
+            Thread thread = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    for (int line = 0; line < LINES_PER_PRODUCER; line++)
+                    {
+                        while (! LogRingBufferTest.Offer(buffer, producer, line))
+                        {
+                            Thread.yield();
+                        }
+                    }
+                }
+            });
+
+            thread.start();
+            producers.add(thread);
+        }
+
+        return producers;
+    }
+
+    /**
+     * Checks that the next line of a producer is the one after its last, so that none are lost, repeated or reordered
+     * @param nextLines the number of the next line expected from each producer
+     * @param line the producer and number of the line taken
+     */
+    private static void AssertNextLine(int[] nextLines, int[] line)
+    {
+        assertEquals(nextLines[line[0]], line[1], "Line out of order for producer " + line[0]);
+        nextLines[line[0]]++;
+    }
+
+    /**
+     * The capacity is rounded up to a power of two, and lines come out in the order they went in
+     */
+    @Test
+    public void holdsLinesInOrder()
+    {
+        LogRingBuffer buffer = new LogRingBuffer(5);
+
+        assertNull(buffer.peek());
+
+        for (int i = 0; i < 8; i++)
+        {
+            assertTrue(LogRingBufferTest.Offer(buffer, 0, i));
+        }
+
+        for (int i = 0; i < 8; i++)
+        {
+            assertEquals(i, LogRingBufferTest.Take(buffer)[1]);
+        }
+
+        assertNull(buffer.peek());
+    }
+
+    /**
+     * A full buffer refuses lines, without losing those it holds, until the consumer makes room
+     */
+    @Test
+    public void refusesLinesWhenFull()
+    {
+        LogRingBuffer buffer = new LogRingBuffer(4);
+
+        for (int i = 0; i < 4; i++)
+        {
+            assertTrue(LogRingBufferTest.Offer(buffer, 0, i));
+        }
+
+        assertFalse(LogRingBufferTest.Offer(buffer, 0, 4));
+        assertEquals(0, LogRingBufferTest.Take(buffer)[1]);
+
+        // The freed slot is reused on the next lap around the buffer
+        assertTrue(LogRingBufferTest.Offer(buffer, 0, 4));
+        assertFalse(LogRingBufferTest.Offer(buffer, 0, 5));
+
+        for (int i = 1; i <= 4; i++)
+        {
+            assertEquals(i, LogRingBufferTest.Take(buffer)[1]);
+        }
+
+        assertNull(buffer.peek());
+    }
+
+    /**
+     * A line taken out of the buffer no longer holds on to its arguments
+     */
+    @Test
+    public void clearsTakenRecords()
+    {
+        LogRingBuffer buffer = new LogRingBuffer(2);
+        LogRingBufferTest.Offer(buffer, 0, 1);
+
+        LogRecord record = buffer.peek();
+        buffer.remove();
+
+        assertNull(record.getLine());
+    }
+
+    /**
+     * Lines from several producers at once are all kept while there is room for them, each producer's in its own order
+     * @throws InterruptedException
+     */
+    @Test
+    public void keepsEveryLineBelowCapacity() throws InterruptedException
+    {
+        LogRingBuffer buffer = new LogRingBuffer(PRODUCERS * LINES_PER_PRODUCER);
+
+        for (Thread producer : LogRingBufferTest.StartProducers(buffer))
+        {
+            producer.join();
+        }
+
+        int[] nextLines = new int[PRODUCERS];
+        int[] line;
+
+        while ((line = LogRingBufferTest.Take(buffer)) != null)
+        {
+            LogRingBufferTest.AssertNextLine(nextLines, line);
+        }
+
+        for (int i = 0; i < PRODUCERS; i++)
+        {
+            assertEquals(LINES_PER_PRODUCER, nextLines[i]);
+        }
+    }
+
+    /**
+     * Producers which wait for room in a small buffer, while the consumer takes lines out at the same time, lose none of their lines
+     * and keep them in order as the buffer wraps around many times
+     * @throws InterruptedException
+     */
+    @Test
+    public void keepsOrderWhileWrapping() throws InterruptedException
+    {
+        LogRingBuffer buffer = new LogRingBuffer(64);
+        ArrayList<Thread> producers = LogRingBufferTest.StartProducers(buffer);
+
+        int[] nextLines = new int[PRODUCERS];
+        int taken = 0;
+
+        while (taken < PRODUCERS * LINES_PER_PRODUCER)
+        {
+            int[] line = LogRingBufferTest.Take(buffer);
+
+            if (line == null)
+            {
+                Thread.yield();
+                continue;
+            }
+
+            LogRingBufferTest.AssertNextLine(nextLines, line);
+            taken++;
+        }
+
+        for (Thread producer : producers)
+        {
+            producer.join();
+        }
+
+        assertNull(buffer.peek());
+    }
+}
@@ -0,0 +1,193 @@
+package webserver;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assertions.fail;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Schedules timeouts on a small, fast wheel of its own, so that timeouts spanning several rotations expire within a test
+ * <p>
+ * Ticks are only as punctual as the test machine, so a timeout is only ever checked not to expire before its deadline, and to
+ * expire eventually
+ * @author Kieran Chin Cheong
+ * @version 1.0
+ * @since 1.0
+ */
+public class TimeoutWheelTest
+{
+    // Static variables
+
+    // The wheel under test turns once every 80 milliseconds
+    private static final long TICK_DURATION = 10;
+    private static final int WHEEL_SIZE = 8;
+
+    // Time to wait for a timeout which should expire, in milliseconds
+    private static final long EXPIRY_WAIT = 5000;
+
+    // Static methods
+
+    /**
+     * Waits for the given timeouts to expire
+     * @param expired counted down once by each timeout as it expires
+     */
+    private static void AwaitExpiry(CountDownLatch expired) throws InterruptedException
+    {
+        if (! expired.await(EXPIRY_WAIT, TimeUnit.MILLISECONDS))
+        {
+            fail("Timeouts did not expire");
+        }
+    }
+
+    /**
+     * @param started the time the test started, from System.nanoTime()
+     * @return the time since the test started, in milliseconds
+     */
+    private static long ElapsedSince(long started)
+    {
+        return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - started);
+    }
+
+    // Member variables
+
+    private TimeoutWheel wheel = new TimeoutWheel(TICK_DURATION, WHEEL_SIZE);
+
+    /**
+     * Schedules a task which records how long after the start of the test it ran
+     * @param delay the delay in milliseconds
+     * @param started the time the test started, from System.nanoTime()
+     * @param expiredAfter set to the time since the start of the test when the task runs, in milliseconds
+     * @param expired counted down when the task runs
+     * @return the Timeout
+     */
+    private Timeout schedule(long delay, final long started, final AtomicLong expiredAfter, final CountDownLatch expired)
+    {
+        return this.wheel.schedule(new Runnable() {
+            @Override
+            public void run() {
+                expiredAfter.set(TimeoutWheelTest.ElapsedSince(started));
+                expired.countDown();
+            }
+        }, delay);
+    }
+
+    /**
+     * A timeout expires at the end of the tick its deadline falls in, never before it
+     * @throws InterruptedException
+     */
+    @Test
+    public void expiresAfterDeadline() throws InterruptedException
+    {
+        long started = System.nanoTime();
+        AtomicLong expiredAfter = new AtomicLong();
+        CountDownLatch expired = new CountDownLatch(1);
+
+        Timeout timeout = this.schedule(35, started, expiredAfter, expired);
+        TimeoutWheelTest.AwaitExpiry(expired);
+
+        assertTrue(expiredAfter.get() >= 35, "Expired after " + expiredAfter.get() + "ms");
+        assertFalse(timeout.cancel());
+    }
+
+    /**
+     * A timeout whose deadline has already passed expires on the next tick
+     * @throws InterruptedException
+     */
+    @Test
+    public void expiresPassedDeadline() throws InterruptedException
+    {
+        CountDownLatch expired = new CountDownLatch(1);
+
+        this.schedule(-1000, System.nanoTime(), new AtomicLong(), expired);
+        TimeoutWheelTest.AwaitExpiry(expired);
+    }
+
+    /**
+     * A cancelled timeout never runs its task, while one scheduled after it for later still does
+     * @throws InterruptedException
+     */
+    @Test
+    public void doesNotExpireCancelledTimeout() throws InterruptedException
+    {
+        long started = System.nanoTime();
+        CountDownLatch cancelledExpired = new CountDownLatch(1);
+        CountDownLatch laterExpired = new CountDownLatch(1);
+
+        Timeout timeout = this.schedule(20, started, new AtomicLong(), cancelledExpired);
+        this.schedule(100, started, new AtomicLong(), laterExpired);
+
+        assertTrue(timeout.cancel());
+        assertTrue(timeout.isCancelled());
+        assertFalse(timeout.cancel());
+
+        TimeoutWheelTest.AwaitExpiry(laterExpired);
+        assertEquals(1, cancelledExpired.getCount());
+    }
+
+    /**
+     * Timeouts further away than one rotation wait in their bucket for as many rounds as it takes, rather than expiring the first
+     * time the wheel reaches them
+     * @throws InterruptedException
+     */
+    @Test
+    public void waitsRoundsForLongTimeouts() throws InterruptedException
+    {
+        long started = System.nanoTime();
+        long[] delays = new long[] {30, 30 + 80, 30 + 3 * 80, 250};
+        AtomicLong[] expiredAfter = new AtomicLong[delays.length];
+        CountDownLatch expired = new CountDownLatch(delays.length);
+
+        // The first three share a bucket, one, two and four rotations apart
+        for (int i = 0; i < delays.length; i++)
+        {
+            expiredAfter[i] = new AtomicLong();
+            this.schedule(delays[i], started, expiredAfter[i], expired);
+        }
+
+        TimeoutWheelTest.AwaitExpiry(expired);
+
+        for (int i = 0; i < delays.length; i++)
+        {
+            assertTrue(expiredAfter[i].get() >= delays[i], "Timeout of " + delays[i] + "ms expired after " + expiredAfter[i].get() + "ms");
+        }
+    }
+
+    /**
+     * A task may schedule further timeouts on the wheel it is run by, including one to replace itself
+     * @throws InterruptedException
+     */
+    @Test
+    public void reschedulesFromTask() throws InterruptedException
+    {
+        final long started = System.nanoTime();
+        final AtomicInteger runs = new AtomicInteger();
+        final AtomicLong expiredAfter = new AtomicLong();
+        final CountDownLatch expired = new CountDownLatch(1);
+
+        this.wheel.schedule(new Runnable() {
+            @Override
+            public void run() {
+                if (runs.incrementAndGet() < 3)
+                {
+                    wheel.schedule(this, 50);
+                    return;
+                }
+
+                expiredAfter.set(TimeoutWheelTest.ElapsedSince(started));
+                expired.countDown();
+            }
+        }, 50);
+
+        TimeoutWheelTest.AwaitExpiry(expired);
+
+        assertEquals(3, runs.get());
+        assertTrue(expiredAfter.get() >= 150, "Rescheduled three times after " + expiredAfter.get() + "ms");
+    }
+}
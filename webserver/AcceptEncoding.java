@@ -0,0 +1,120 @@
+package webserver;
+
+/**
+ * @author Kieran Chin Cheong
+ * @version 1.0
+ * @since 1.0
+ */
+public class AcceptEncoding
+{
+    // Static variables
+
+    // Content codings the server can send, as named in the content-encoding header field
+    public static final String BROTLI = "br";
+    public static final String GZIP = "gzip";
+
+    // Static methods
+
+    /**
+     * Parses the value of an accept-encoding header field, which looks like this
+     * gzip, deflate;q=0.5, br
+     * @param value the value of the accept-encoding header field, may be null
+     * @return the codings the client accepts
+     */
+    public static AcceptEncoding Parse(String value)
+    {
+        AcceptEncoding acceptEncoding = new AcceptEncoding();
+
+        if (value == null)
+        {
+            return acceptEncoding;
+        }
+
+        // Qualities given for specific codings take precedence over one given for "*", whatever order they appear in
+        float brotliQuality = -1;
+        float gzipQuality = -1;
+        float anyQuality = -1;
+
+        for (String element : value.split(","))
+        {
+            int semicolon = element.indexOf(';');
+            String coding = (semicolon < 0 ? element : element.substring(0, semicolon)).trim();
+            float quality = semicolon < 0 ? 1 : AcceptEncoding.ParseQuality(element.substring(semicolon + 1));
+
+            if (coding.equalsIgnoreCase(BROTLI))
+            {
+                brotliQuality = quality;
+            }
+            else if (coding.equalsIgnoreCase(GZIP) || coding.equalsIgnoreCase("x-gzip"))
+            {
+                gzipQuality = quality;
+            }
+            else if (coding.equals("*"))
+            {
+                anyQuality = quality;
+            }
+        }
+
+        acceptEncoding.brotliQuality = brotliQuality >= 0 ? brotliQuality : Math.max(anyQuality, 0);
+        acceptEncoding.gzipQuality = gzipQuality >= 0 ? gzipQuality : Math.max(anyQuality, 0);
+
+        return acceptEncoding;
+    }
+
+    /**
+     * Parses the parameters of an element of an accept-encoding header field for its quality value
+     * @param parameters the parameters following the coding, such as "q=0.5"
+     * @return the quality value, 1 if none is given, or 0 if it is not valid
+     */
+    private static float ParseQuality(String parameters)
+    {
+        parameters = parameters.trim();
+
+        if (! parameters.regionMatches(true, 0, "q=", 0, 2))
+        {
+            return 1;
+        }
+
+        try
+        {
+            float quality = Float.parseFloat(parameters.substring(2).trim());
+            return quality >= 0 && quality <= 1 ? quality : 0;
+        }
+        catch (NumberFormatException e)
+        {
+            return 0;
+        }
+    }
+
+    // Member variables
+
+    private float brotliQuality;
+    private float gzipQuality;
+
+    /**
+     * Constructor. Only to be used internally
+     */
+    private AcceptEncoding()
+    {
+
+    }
+
+    /**
+     * Chooses the content coding to send from those available, preferring the client's highest quality value, then Brotli
+     * @param brotliAvailable whether a Brotli encoded representation is available
+     * @param gzipAvailable whether a gzip encoded representation is available
+     * @return the content coding to send, or null if the client accepts none of those available
+     */
+    public String select(boolean brotliAvailable, boolean gzipAvailable)
+    {
+        float brotli = brotliAvailable ? this.brotliQuality : 0;
+        float gzip = gzipAvailable ? this.gzipQuality : 0;
+
+        if (brotli <= 0 && gzip <= 0)
+        {
+            return null;
+        }
+
+        return brotli >= gzip ? BROTLI : GZIP;
+    }
+}
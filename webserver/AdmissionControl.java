@@ -0,0 +1,288 @@
+package webserver;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Decides whether connections waiting for a Worker are served, or turned away with 503 Service Unavailable while the server is overloaded
+ * @author Kieran Chin Cheong
+ * @version 1.0
+ * @since 1.0
+ */
+public class AdmissionControl
+{
+    // Static variables
+
+    // Overload policies. A connection is always turned away if the work queue is full when it is accepted, and the policy decides
+    // whether it may also be turned away when a Worker takes it from the queue
+    public static final String POLICY_REJECT = "reject"; // Connections are only turned away when the work queue is full
+    public static final String POLICY_DEADLINE = "deadline"; // Connections which waited in the queue past the deadline are also turned away
+    public static final String POLICY_CODEL = "codel"; // Connections are shed while the queue has stayed above the target delay (RFC 8289)
+
+    // This is the singleton instance
+    private static final AdmissionControl admissionControlSingleton = new AdmissionControl();
+
+    // Static methods
+
+    /**
+     * Static singleton accessor
+     * @return the singleton AdmissionControl
+     */
+    public static AdmissionControl GetAdmissionControl()
+    {
+        return admissionControlSingleton;
+    }
+
+    // Member variables
+
+    private String policy;
+    private long deadline;
+    private long target;
+    private long interval;
+
+    // CoDel state, guarded by this object's monitor
+    // firstAboveTime is when the queue will have stayed above the target for a whole interval, or 0 if it is below the target
+    private long firstAboveTime;
+    private long dropNext;
+    private int dropCount;
+    private int lastDropCount;
+    private boolean isDropping;
+
+    // Counters
+    private LongAdder rejected;
+    private LongAdder shed;
+
+    /**
+     * Private constructor. Reads the overload policy from the configuration
+     */
+    private AdmissionControl()
+    {
+        this(Configuration.GetConfiguration().getOverloadPolicy(), Configuration.GetConfiguration().getQueueDeadline(),
+            Configuration.GetConfiguration().getCodelTarget(), Configuration.GetConfiguration().getCodelInterval());
+    }
+
+    /**
+     * Constructor. Everything but tests should use the shared AdmissionControl
+     * @param policy the overload policy
+     * @param deadline the queue deadline, in milliseconds
+     * @param target the CoDel target, in milliseconds
+     * @param interval the CoDel interval, in milliseconds
+     */
+    AdmissionControl(String policy, int deadline, int target, int interval)
+    {
+        this.policy = policy;
+        this.deadline = TimeUnit.MILLISECONDS.toNanos(deadline);
+        this.target = TimeUnit.MILLISECONDS.toNanos(target);
+        this.interval = TimeUnit.MILLISECONDS.toNanos(interval);
+        this.rejected = new LongAdder();
+        this.shed = new LongAdder();
+
+        if (! POLICY_REJECT.equalsIgnoreCase(this.policy) && ! POLICY_DEADLINE.equalsIgnoreCase(this.policy) && ! POLICY_CODEL.equalsIgnoreCase(this.policy))
+        {
+            Logger.Log(Logger.WARNING, "Warning : unknown overload policy %s, using %s", this.policy, POLICY_REJECT);
+            this.policy = POLICY_REJECT;
+        }
+    }
+
+    /**
+     * Decides whether a connection taken from the work queue is served
+     * @param queuedAt when the connection was queued, from System.nanoTime()
+     * @return true if the connection should be served, false if it should be turned away with reject()
+     */
+    public boolean admit(long queuedAt)
+    {
+        return this.admit(queuedAt, System.nanoTime());
+    }
+
+    /**
+     * Decides whether a connection taken from the work queue is served, as of the given time
+     * @param queuedAt when the connection was queued, from System.nanoTime()
+     * @param now the current time, from System.nanoTime()
+     * @return true if the connection should be served, false if it should be turned away with reject()
+     */
+    boolean admit(long queuedAt, long now)
+    {
+        long waited = now - queuedAt;
+
+        if (POLICY_DEADLINE.equalsIgnoreCase(this.policy))
+        {
+            return waited <= this.deadline;
+        }
+
+        if (POLICY_CODEL.equalsIgnoreCase(this.policy))
+        {
+            return this.admitCoDel(waited, now);
+        }
+
+        return true;
+    }
+
+    /**
+     * Turns a connection away with a 503 Service Unavailable response, telling the client when to retry, and closes it
+     * <p>
+     * The socket is never waited on, so that turning a connection away costs as little as possible. Whatever part of the request
+     * has already been received is read and discarded first, since closing a socket with unread input resets the connection, and
+     * the client could lose the response along with it
+     * @param channel the connection
+     * @param isQueueFull true if the connection is turned away because the work queue was full, false if it waited too long in it
+     */
+    public void reject(SocketChannel channel, boolean isQueueFull)
+    {
+        (isQueueFull ? this.rejected : this.shed).increment();
+
+        HTTPResponse response = HTTPResponse.BuildHTTPResponseWithoutBody(Status.SERVICE_UNAVAILABLE, false, 0);
+        ByteBuffer head = ResponseHeadEncoder.Encode(response, null);
+        ByteBuffer input = null;
+        long bytes = head.remaining();
+
+        try
+        {
+            String remoteAddress = channel.socket().getRemoteSocketAddress().toString();
+            String localAddress = channel.socket().getLocalSocketAddress().toString();
+
+            channel.configureBlocking(false);
+            input = BufferPool.GetPool().lease(Configuration.GetConfiguration().getMaxRequestHeadSize());
+            channel.read(input);
+            channel.write(head);
+
+            Metrics.GetMetrics().responseSent(Status.SERVICE_UNAVAILABLE, bytes, 0);
+            Logger.LogConnection(null, response, remoteAddress, localAddress);
+        }
+        catch (IOException e)
+        {
+            Logger.Log(Logger.INFORMATION, "Could not send 503 response to connection turned away : %s", e.toString());
+        }
+        finally
+        {
+            BufferPool.GetPool().release(head);
+            BufferPool.GetPool().release(input);
+
+            try
+            {
+                channel.close();
+            }
+            catch (IOException e)
+            {
+                Logger.Log(Logger.WARNING, "Warning : could not close connection turned away : %s", e.toString());
+            }
+        }
+    }
+
+    /**
+     * Turns a connection away by closing it without a response, for connections such as TLS ones which cannot be sent a
+     * plaintext 503 Service Unavailable
+     * @param channel the connection to turn away
+     * @param isQueueFull true if the work queue was full when it was accepted, false if it was shed after waiting in the queue
+     */
+    public void drop(SocketChannel channel, boolean isQueueFull)
+    {
+        (isQueueFull ? this.rejected : this.shed).increment();
+
+        try
+        {
+            channel.close();
+        }
+        catch (IOException e)
+        {
+            Logger.Log(Logger.WARNING, "Warning : could not close connection turned away : %s", e.toString());
+        }
+    }
+
+    /**
+     * Decides whether a connection is served under the codel policy
+     * @param waited how long the connection waited in the queue, in nanoseconds
+     * @param now the current time, from System.nanoTime()
+     * @return true if the connection should be served, false if it should be shed
+     */
+    private synchronized boolean admitCoDel(long waited, long now)
+    {
+        boolean isAboveTarget = this.isAboveTargetForInterval(waited, now);
+
+        if (this.isDropping)
+        {
+            // The queue has come back below the target, so stop shedding
+            if (! isAboveTarget)
+            {
+                this.isDropping = false;
+                return true;
+            }
+
+            // Otherwise keep shedding, more often each time
+            if (now - this.dropNext >= 0)
+            {
+                this.dropCount++;
+                this.dropNext = this.controlLaw(this.dropNext);
+                return false;
+            }
+
+            return true;
+        }
+
+        if (! isAboveTarget)
+        {
+            return true;
+        }
+
+        // Start shedding. If shedding stopped only recently, carry on at about the rate it had reached rather than starting over
+        this.isDropping = true;
+        int delta = this.dropCount - this.lastDropCount;
+        this.dropCount = (delta > 1 && now - this.dropNext < 16 * this.interval) ? delta : 1;
+        this.dropNext = this.controlLaw(now);
+        this.lastDropCount = this.dropCount;
+
+        return false;
+    }
+
+    /**
+     * Tracks whether the time connections wait in the queue has stayed above the target for a whole interval
+     * @param waited how long the connection just taken from the queue waited, in nanoseconds
+     * @param now the current time, from System.nanoTime()
+     * @return true if every connection taken from the queue for at least an interval has waited longer than the target
+     */
+    private boolean isAboveTargetForInterval(long waited, long now)
+    {
+        if (waited < this.target)
+        {
+            this.firstAboveTime = 0;
+            return false;
+        }
+
+        if (this.firstAboveTime == 0)
+        {
+            this.firstAboveTime = now + this.interval;
+            return false;
+        }
+
+        return now - this.firstAboveTime >= 0;
+    }
+
+    /**
+     * @param from the time of the last connection shed, from System.nanoTime()
+     * @return when the next connection is shed, which is sooner the longer shedding has gone on
+     */
+    private long controlLaw(long from)
+    {
+        return from + (long) (this.interval / Math.sqrt(this.dropCount));
+    }
+
+    // Simple getters
+
+    /**
+     * @return the number of connections turned away because the work queue was full
+     */
+    public long getRejected()
+    {
+        return this.rejected.sum();
+    }
+
+    /**
+     * @return the number of connections turned away because they waited too long in the work queue
+     */
+    public long getShed()
+    {
+        return this.shed.sum();
+    }
+}
@@ -0,0 +1,483 @@
+package webserver;
+
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.nio.ByteBuffer;
+import java.util.HashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Pool of direct buffers for socket and file I/O, leased out and released back so that they are reused
+ * @author Kieran Chin Cheong
+ * @version 1.0
+ * @since 1.0
+ */
+public class BufferPool
+{
+    // Static variables
+
+    // The smallest and largest size classes, as powers of two. A lease larger than the largest class is allocated to size and is
+    // not pooled
+    private static final int MIN_CLASS_SHIFT = 10;
+    private static final int MAX_CLASS_SHIFT = 16;
+    private static final int CLASS_COUNT = MAX_CLASS_SHIFT - MIN_CLASS_SHIFT + 1;
+
+    // This is the singleton instance
+    private static final BufferPool poolSingleton = new BufferPool();
+
+    // Static methods
+
+    /**
+     * Static singleton accessor
+     * @return the singleton BufferPool
+     */
+    public static BufferPool GetPool()
+    {
+        return poolSingleton;
+    }
+
+    /**
+     * Returns the size class which serves a lease
+     * @param capacity the smallest capacity required
+     * @return the index of the smallest class at least as large, which is CLASS_COUNT or more if no class is large enough
+     */
+    private static int SizeClass(int capacity)
+    {
+        if (capacity <= 1 << MIN_CLASS_SHIFT)
+        {
+            return 0;
+        }
+
+        return 32 - Integer.numberOfLeadingZeros(capacity - 1) - MIN_CLASS_SHIFT;
+    }
+
+    /**
+     * @param sizeClass the index of a size class
+     * @return the capacity of the buffers of the class
+     */
+    private static int ClassCapacity(int sizeClass)
+    {
+        return 1 << (sizeClass + MIN_CLASS_SHIFT);
+    }
+
+    /**
+     * Formats a stack trace captured by the pool, for the log
+     * @param trace the stack trace
+     * @return the stack frames of the pool's caller, one per line
+     */
+    private static String FormatStackTrace(Throwable trace)
+    {
+        StringBuilder text = new StringBuilder(512);
+
+        for (StackTraceElement frame : trace.getStackTrace())
+        {
+            // The pool's own frames are left out
+            if (! frame.getClassName().startsWith(BufferPool.class.getName()))
+            {
+                text.append("\n\tat ").append(frame);
+            }
+        }
+
+        return text.toString();
+    }
+
+    /**
+     * The buffers of each size class cached by a single thread
+     */
+    private static class ThreadCache
+    {
+        private final ByteBuffer[][] buffers;
+        private final int[] counts;
+
+        private ThreadCache(int size)
+        {
+            this.buffers = new ByteBuffer[CLASS_COUNT][size];
+            this.counts = new int[CLASS_COUNT];
+        }
+    }
+
+    /**
+     * A buffer leased in debug mode. The reference is enqueued if the buffer is garbage collected before it has been released
+     */
+    private static class Lease extends WeakReference<ByteBuffer>
+    {
+        private final int identity;
+        private final int capacity;
+        private final Throwable leasedAt;
+        private Lease next;
+
+        private Lease(ByteBuffer buffer, ReferenceQueue<ByteBuffer> queue)
+        {
+            super(buffer, queue);
+            this.identity = System.identityHashCode(buffer);
+            this.capacity = buffer.capacity();
+            this.leasedAt = new Throwable();
+        }
+    }
+
+    // Member variables
+
+    private boolean enabled;
+    private int threadCacheSize;
+
+    // In debug mode every lease is tracked, so that a buffer garbage collected without being released, or released twice, is logged
+    private boolean trackLeases;
+
+    // Buffers of each size class shared by every thread, bounded by the configured pool size, with the stack of each guarded by its
+    // own monitor
+    private ByteBuffer[][] sharedBuffers;
+    private int[] sharedCounts;
+
+    // Buffers cached by each thread, which serve most leases without taking a lock. Virtual threads each serve a single
+    // connection, so they do not cache any
+    private ThreadLocal<ThreadCache> threadCaches;
+
+    // Buffers currently leased in debug mode, by identity hash code, guarded by the map's monitor
+    // Leases which share a hash code are chained together
+    private HashMap<Integer, Lease> leases;
+    private ReferenceQueue<ByteBuffer> leakedLeases;
+
+    // Counters
+    private LongAdder leaseCount;
+    private LongAdder releaseCount;
+    private LongAdder allocations;
+    private LongAdder leaks;
+
+    /**
+     * Private constructor. Reads the pool settings from the configuration
+     */
+    private BufferPool()
+    {
+        this(Configuration.GetConfiguration().isEnableBufferPool(),
+            Configuration.GetConfiguration().isEnableBufferPool() && Configuration.GetConfiguration().isDebugMode(),
+            Webserver.WORKER_THREADS_VIRTUAL.equalsIgnoreCase(Configuration.GetConfiguration().getWorkerThreadMode()) ? 0 : Configuration.GetConfiguration().getBufferPoolThreadCacheSize(),
+            Configuration.GetConfiguration().getBufferPoolMaxSize());
+    }
+
+    /**
+     * Constructor. Everything but tests should use the shared pool
+     * @param enabled whether buffers are pooled at all
+     * @param trackLeases whether every lease is tracked, to log leaks
+     * @param threadCacheSize the number of buffers of each size class cached by each thread
+     * @param maxSize the total capacity of the buffers held in the shared stacks, in bytes
+     */
+    BufferPool(boolean enabled, boolean trackLeases, int threadCacheSize, long maxSize)
+    {
+        this.enabled = enabled;
+        this.trackLeases = trackLeases;
+        this.threadCacheSize = Math.max(0, threadCacheSize);
+        this.sharedBuffers = new ByteBuffer[CLASS_COUNT][];
+        this.sharedCounts = new int[CLASS_COUNT];
+
+        // The pool size is shared equally between the classes, so that large buffers cannot crowd out small ones
+        for (int i = 0; i < CLASS_COUNT; i++)
+        {
+            long classSize = maxSize / CLASS_COUNT / BufferPool.ClassCapacity(i);
+            this.sharedBuffers[i] = new ByteBuffer[(int) Math.max(0, Math.min(classSize, Integer.MAX_VALUE - 8))];
+        }
+
+        final int cacheSize = this.threadCacheSize;
+
+        this.threadCaches = new ThreadLocal<ThreadCache>() {
+            @Override
+            protected ThreadCache initialValue() {
+                return new ThreadCache(cacheSize);
+            }
+        };
+
+        this.leases = new HashMap<Integer, Lease>();
+        this.leakedLeases = new ReferenceQueue<ByteBuffer>();
+        this.leaseCount = new LongAdder();
+        this.releaseCount = new LongAdder();
+        this.allocations = new LongAdder();
+        this.leaks = new LongAdder();
+    }
+
+    /**
+     * Leases a buffer, which must be released once it is no longer used
+     * <p>
+     * The buffer is cleared, but may be larger than requested and may hold the contents it had when it was last released
+     * @param capacity the smallest capacity required
+     * @return a buffer with at least the given capacity
+     */
+    public ByteBuffer lease(int capacity)
+    {
+        // Without the pool every buffer is allocated on the heap and left to the garbage collector, as before the pool existed
+        if (! this.enabled)
+        {
+            return ByteBuffer.allocate(capacity);
+        }
+
+        int sizeClass = BufferPool.SizeClass(capacity);
+        ByteBuffer buffer = sizeClass < CLASS_COUNT ? this.take(sizeClass) : null;
+
+        if (buffer == null)
+        {
+            buffer = ByteBuffer.allocateDirect(sizeClass < CLASS_COUNT ? BufferPool.ClassCapacity(sizeClass) : capacity);
+            this.allocations.increment();
+        }
+
+        this.leaseCount.increment();
+
+        if (this.trackLeases)
+        {
+            this.pollLeaks();
+            this.track(buffer);
+        }
+
+        return buffer;
+    }
+
+    /**
+     * Releases a buffer back to the pool, after which it must not be used again
+     * @param buffer a buffer returned by lease(), may be null
+     */
+    public void release(ByteBuffer buffer)
+    {
+        if (buffer == null || ! this.enabled)
+        {
+            return;
+        }
+
+        if (this.trackLeases && ! this.untrack(buffer))
+        {
+            Logger.Log(Logger.ERROR, "Buffer release error : buffer of %d bytes was released to the pool twice, or was never leased from it%s", buffer.capacity(), BufferPool.FormatStackTrace(new Throwable()));
+            return;
+        }
+
+        this.releaseCount.increment();
+
+        // Buffers larger than the largest class were allocated to size, and are left to the garbage collector
+        int sizeClass = BufferPool.SizeClass(buffer.capacity());
+
+        if (sizeClass >= CLASS_COUNT || buffer.capacity() != BufferPool.ClassCapacity(sizeClass) || ! buffer.isDirect())
+        {
+            return;
+        }
+
+        buffer.clear();
+        this.give(sizeClass, buffer);
+    }
+
+    /**
+     * Takes a pooled buffer of a size class, from the calling thread's cache if it has one, otherwise from the shared stack
+     * @param sizeClass the index of the size class
+     * @return the buffer, or null if none of the class is pooled
+     */
+    private ByteBuffer take(int sizeClass)
+    {
+        if (this.threadCacheSize > 0)
+        {
+            ThreadCache cache = this.threadCaches.get();
+
+            if (cache.counts[sizeClass] > 0)
+            {
+                int index = --cache.counts[sizeClass];
+                ByteBuffer buffer = cache.buffers[sizeClass][index];
+                cache.buffers[sizeClass][index] = null;
+                return buffer;
+            }
+        }
+
+        ByteBuffer[] shared = this.sharedBuffers[sizeClass];
+
+        synchronized (shared)
+        {
+            if (this.sharedCounts[sizeClass] == 0)
+            {
+                return null;
+            }
+
+            int index = --this.sharedCounts[sizeClass];
+            ByteBuffer buffer = shared[index];
+            shared[index] = null;
+            return buffer;
+        }
+    }
+
+    /**
+     * Gives a released buffer to the calling thread's cache if it has room, otherwise to the shared stack. If neither has room
+     * the buffer is left to the garbage collector
+     * @param sizeClass the index of the buffer's size class
+     * @param buffer the buffer
+     */
+    private void give(int sizeClass, ByteBuffer buffer)
+    {
+        if (this.threadCacheSize > 0)
+        {
+            ThreadCache cache = this.threadCaches.get();
+
+            if (cache.counts[sizeClass] < this.threadCacheSize)
+            {
+                cache.buffers[sizeClass][cache.counts[sizeClass]++] = buffer;
+                return;
+            }
+        }
+
+        ByteBuffer[] shared = this.sharedBuffers[sizeClass];
+
+        synchronized (shared)
+        {
+            if (this.sharedCounts[sizeClass] < shared.length)
+            {
+                shared[this.sharedCounts[sizeClass]++] = buffer;
+            }
+        }
+    }
+
+    /**
+     * Records a buffer as leased, along with where it was leased from
+     * @param buffer the buffer
+     */
+    private void track(ByteBuffer buffer)
+    {
+        Lease lease = new Lease(buffer, this.leakedLeases);
+
+        synchronized (this.leases)
+        {
+            lease.next = this.leases.get(lease.identity);
+            this.leases.put(lease.identity, lease);
+        }
+    }
+
+    /**
+     * Records a buffer as released
+     * @param buffer the buffer
+     * @return true if the buffer was leased, false if it was not, such as when it has already been released
+     */
+    private boolean untrack(ByteBuffer buffer)
+    {
+        Lease lease = this.removeLease(System.identityHashCode(buffer), buffer, null);
+
+        if (lease == null)
+        {
+            return false;
+        }
+
+        // A cleared reference is never enqueued, so the buffer will not be reported as leaked once it is pooled again
+        lease.clear();
+        return true;
+    }
+
+    /**
+     * Removes a lease from the leases currently tracked
+     * @param identity the identity hash code of the leased buffer
+     * @param buffer the leased buffer, or null to find the lease itself
+     * @param target the lease to remove, if buffer is null
+     * @return the lease removed, or null if none was found
+     */
+    private Lease removeLease(int identity, ByteBuffer buffer, Lease target)
+    {
+        synchronized (this.leases)
+        {
+            Lease previous = null;
+            Lease lease = this.leases.get(identity);
+
+            while (lease != null && (buffer != null ? lease.get() != buffer : lease != target))
+            {
+                previous = lease;
+                lease = lease.next;
+            }
+
+            if (lease == null)
+            {
+                return null;
+            }
+
+            if (previous != null)
+            {
+                previous.next = lease.next;
+            }
+            else if (lease.next != null)
+            {
+                this.leases.put(identity, lease.next);
+            }
+            else
+            {
+                this.leases.remove(identity);
+            }
+
+            return lease;
+        }
+    }
+
+    /**
+     * Logs every buffer found to have been garbage collected without being released since the last call
+     */
+    private void pollLeaks()
+    {
+        Lease lease;
+
+        while ((lease = (Lease) this.leakedLeases.poll()) != null)
+        {
+            this.removeLease(lease.identity, null, lease);
+            this.leaks.increment();
+            Logger.Log(Logger.ERROR, "Buffer leak : buffer of %d bytes was garbage collected without being released to the pool, it was leased%s", lease.capacity, BufferPool.FormatStackTrace(lease.leasedAt));
+        }
+    }
+
+    /**
+     * @return the number of buffers currently leased and not yet released, not counting those found to have leaked
+     */
+    public long getOutstanding()
+    {
+        return this.leaseCount.sum() - this.releaseCount.sum() - this.leaks.sum();
+    }
+
+    /**
+     * @return the total capacity of the buffers held in the shared stacks, which does not include those cached by each thread
+     */
+    public long getPooledBytes()
+    {
+        long bytes = 0;
+
+        for (int i = 0; i < CLASS_COUNT; i++)
+        {
+            synchronized (this.sharedBuffers[i])
+            {
+                bytes += (long) this.sharedCounts[i] * BufferPool.ClassCapacity(i);
+            }
+        }
+
+        return bytes;
+    }
+
+    /**
+     * @return the number of buffers found to have been garbage collected without being released, which is only tracked in debug mode
+     */
+    public long getLeaks()
+    {
+        if (this.trackLeases)
+        {
+            this.pollLeaks();
+        }
+
+        return this.leaks.sum();
+    }
+
+    // Simple getters
+
+    /**
+     * @return
+     */
+    public boolean isEnabled()
+    {
+        return this.enabled;
+    }
+
+    /**
+     * @return the number of buffers leased
+     */
+    public long getLeases()
+    {
+        return this.leaseCount.sum();
+    }
+
+    /**
+     * @return the number of buffers which had to be allocated because none of their size was pooled
+     */
+    public long getAllocations()
+    {
+        return this.allocations.sum();
+    }
+}
@@ -0,0 +1,177 @@
+package webserver;
+
+import java.util.ArrayList;
+
+/**
+ * @author Kieran Chin Cheong
+ * @version 1.0
+ * @since 1.0
+ */
+public class ByteRange
+{
+    // Static variables
+
+    // Largest number of ranges honoured in one request. A request for more is served in full, so that a client cannot make the server
+    // seek back and forth through a file, or send it many times over, with a single request
+    private static final int MAX_RANGES = 16;
+
+    // Marks an absent position within a range specifier
+    private static final long UNSPECIFIED = -1;
+
+    // Static methods
+
+    /**
+     * Parses the value of a range header field, which looks like this
+     * bytes=0-499, 1000-, -200
+     * <p>
+     * As allowed by RFC 7233, a header field which is not a valid list of byte ranges, or has too many ranges, is ignored
+     * @param value the value of the range header field, may be null
+     * @return the requested ranges, which have not yet been checked against the size of the file, or null if the whole file should be sent
+     */
+    public static ArrayList<ByteRange> ParseRangeHeader(String value)
+    {
+        if (value == null || ! value.regionMatches(true, 0, "bytes=", 0, 6))
+        {
+            return null;
+        }
+
+        ArrayList<ByteRange> ranges = new ArrayList<ByteRange>();
+
+        for (String specifier : value.substring(6).split(","))
+        {
+            specifier = specifier.trim();
+
+            // Empty list elements are allowed
+            if (specifier.isEmpty())
+            {
+                continue;
+            }
+
+            int dash = specifier.indexOf('-');
+
+            if (dash < 0)
+            {
+                return null;
+            }
+
+            long first = ByteRange.ParsePosition(specifier, 0, dash);
+            long last = ByteRange.ParsePosition(specifier, dash + 1, specifier.length());
+
+            // Either first-last, first- or -suffixLength
+            if ((first == UNSPECIFIED && last == UNSPECIFIED) || (dash > 0 && first == UNSPECIFIED) ||
+                (dash < specifier.length() - 1 && last == UNSPECIFIED) || (first != UNSPECIFIED && last != UNSPECIFIED && last < first))
+            {
+                return null;
+            }
+
+            ranges.add(new ByteRange(first, last));
+        }
+
+        if (ranges.isEmpty() || ranges.size() > MAX_RANGES)
+        {
+            return null;
+        }
+
+        return ranges;
+    }
+
+    /**
+     * Parses a position within a range specifier
+     * @param specifier the range specifier
+     * @param from the index of the first character of the position
+     * @param to the index after the last character of the position
+     * @return the position, or UNSPECIFIED if it is empty or not a valid number
+     */
+    private static long ParsePosition(String specifier, int from, int to)
+    {
+        if (from == to || to - from > 18)
+        {
+            return UNSPECIFIED;
+        }
+
+        long position = 0;
+
+        for (int i = from; i < to; i++)
+        {
+            char c = specifier.charAt(i);
+
+            if (c < '0' || c > '9')
+            {
+                return UNSPECIFIED;
+            }
+
+            position = position * 10 + (c - '0');
+        }
+
+        return position;
+    }
+
+    // Member variables
+
+    // For a suffix range, first is UNSPECIFIED and last holds the number of bytes at the end of the file. For an open range, last is UNSPECIFIED
+    private long first;
+    private long last;
+
+    /**
+     * Constructor
+     * @param first the offset of the first byte of the range
+     * @param last the offset of the last byte of the range, inclusive
+     */
+    public ByteRange(long first, long last)
+    {
+        this.first = first;
+        this.last = last;
+    }
+
+    /**
+     * Resolves this range against the size of the file it applies to
+     * @param size the size of the file
+     * @return the range of bytes of the file to send, or null if none of the range lies within the file
+     */
+    public ByteRange resolve(long size)
+    {
+        if (this.first == UNSPECIFIED)
+        {
+            if (this.last == 0 || size == 0)
+            {
+                return null;
+            }
+
+            return new ByteRange(Math.max(0, size - this.last), size - 1);
+        }
+
+        if (this.first >= size)
+        {
+            return null;
+        }
+
+        return new ByteRange(this.first, this.last == UNSPECIFIED ? size - 1 : Math.min(this.last, size - 1));
+    }
+
+    /**
+     * Returns the number of bytes in a resolved range
+     * @return number of bytes
+     */
+    public long getLength()
+    {
+        return this.last - this.first + 1;
+    }
+
+    // Simple getters
+
+    /**
+     * @return
+     */
+    public long getFirst()
+    {
+        return this.first;
+    }
+
+    /**
+     * @return
+     */
+    public long getLast()
+    {
+        return this.last;
+    }
+}
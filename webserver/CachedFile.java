@@ -0,0 +1,119 @@
+package webserver;
+
+import java.nio.ByteBuffer;
+
+/**
+ * @author Kieran Chin Cheong
+ * @version 1.0
+ * @since 1.0
+ */
+public class CachedFile
+{
+    // Member variables
+
+    private String path;
+    private ByteBuffer content;
+    private long size;
+    private long lastModified;
+    private String mimeType;
+    private volatile long validatedAt;
+
+    // Time at which the contents were last served, used to choose which entries to evict
+    private volatile long lastUsed;
+
+    /**
+     * Constructor
+     * @param path the absolute path of the file on the local file system
+     * @param content read-only buffer holding the complete contents of the file
+     * @param lastModified the modification time of the file when its contents were read
+     * @param mimeType the MIME type of the file
+     * @param validatedAt the time at which the contents were known to match the file
+     */
+    public CachedFile(String path, ByteBuffer content, long lastModified, String mimeType, long validatedAt)
+    {
+        this.path = path;
+        this.content = content;
+        this.size = content.remaining();
+        this.lastModified = lastModified;
+        this.mimeType = mimeType;
+        this.validatedAt = validatedAt;
+        this.lastUsed = validatedAt;
+    }
+
+    /**
+     * Returns the contents of the file
+     * <p>
+     * A new view of the cached buffer is returned every time, so that any number of responses can send it at once
+     * @return a read-only buffer positioned at the start of the contents
+     */
+    public ByteBuffer getContent()
+    {
+        return this.content.duplicate();
+    }
+
+    // Simple getters and setters
+
+    /**
+     * @return
+     */
+    public String getPath()
+    {
+        return this.path;
+    }
+
+    /**
+     * @return
+     */
+    public long getSize()
+    {
+        return this.size;
+    }
+
+    /**
+     * @return
+     */
+    public long getLastModified()
+    {
+        return this.lastModified;
+    }
+
+    /**
+     * @return
+     */
+    public String getMimeType()
+    {
+        return this.mimeType;
+    }
+
+    /**
+     * @return
+     */
+    public long getValidatedAt()
+    {
+        return this.validatedAt;
+    }
+
+    /**
+     * @param validatedAt
+     */
+    public void setValidatedAt(long validatedAt)
+    {
+        this.validatedAt = validatedAt;
+    }
+
+    /**
+     * @return
+     */
+    public long getLastUsed()
+    {
+        return this.lastUsed;
+    }
+
+    /**
+     * @param lastUsed
+     */
+    public void setLastUsed(long lastUsed)
+    {
+        this.lastUsed = lastUsed;
+    }
+}
@@ -0,0 +1,502 @@
+package webserver;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * @author Kieran Chin Cheong
+ * @version 1.0
+ * @since 1.0
+ */
+public class CompressedContentCache
+{
+    // Static variables
+
+    // Types of content which are worth compressing, in addition to all text/ types. Most other types are already compressed
+    private static final String[] COMPRESSIBLE_MIME_TYPES = {"application/javascript", "application/x-javascript", "application/json",
+                                                             "application/ld+json", "application/manifest+json", "application/xml",
+                                                             "application/xhtml+xml", "application/rss+xml", "application/atom+xml",
+                                                             "image/svg+xml", "image/x-icon", "font/ttf", "font/otf"};
+
+    // Minimum time between two samples of the system load, in milliseconds
+    private static final long LOAD_SAMPLE_INTERVAL = 1000;
+
+    // System load per processor below which the configured compression level is used, and at or above which the fastest level is used
+    // Between the two the level is scaled down linearly
+    private static final double LIGHT_LOAD = 0.5;
+    private static final double HEAVY_LOAD = 1.0;
+
+    // This is the singleton instance
+    private static final CompressedContentCache cacheSingleton = new CompressedContentCache();
+
+    // Static methods
+
+    /**
+     * Static singleton accessor
+     * @return the singleton CompressedContentCache
+     */
+    public static CompressedContentCache GetCache()
+    {
+        return cacheSingleton;
+    }
+
+    /**
+     * Returns whether content of a given type is worth compressing
+     * @param mimeType the MIME type of the content, may be null
+     * @return true if the content is compressible, false otherwise
+     */
+    private static boolean IsCompressibleType(String mimeType)
+    {
+        if (mimeType == null)
+        {
+            return false;
+        }
+
+        if (mimeType.startsWith("text/"))
+        {
+            return true;
+        }
+
+        // Any parameters of the type, such as its charset, are ignored
+        for (int i = 0; i < COMPRESSIBLE_MIME_TYPES.length; i++)
+        {
+            String type = COMPRESSIBLE_MIME_TYPES[i];
+
+            if (mimeType.startsWith(type) && (mimeType.length() == type.length() || mimeType.charAt(type.length()) == ';'))
+            {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    /**
+     * Returns the compression level to use for a system load
+     * @param load the system load average per processor, negative if it is not available
+     * @param maxLevel the configured compression level
+     * @return the configured level under light load, the fastest level under heavy load, and a level scaled between the two otherwise
+     */
+    static int LevelForLoad(double load, int maxLevel)
+    {
+        if (load < LIGHT_LOAD)
+        {
+            return maxLevel;
+        }
+
+        if (load >= HEAVY_LOAD)
+        {
+            return Deflater.BEST_SPEED;
+        }
+
+        return (int) Math.round(maxLevel - (load - LIGHT_LOAD) / (HEAVY_LOAD - LIGHT_LOAD) * (maxLevel - Deflater.BEST_SPEED));
+    }
+
+    // Member variables
+
+    private boolean enabled;
+    private int maxLevel;
+    private long minFileSize;
+    private long maxFileSize;
+    private long maxSize;
+
+    // Entries in least recently used order, guarded by this object's monitor
+    private LinkedHashMap<String, CompressedFile> entries;
+    private long currentSize;
+
+    // Compressions in progress, keyed by path, so that concurrent misses for a file share a single compression
+    private ConcurrentHashMap<String, FutureTask<CompressedFile>> inFlight;
+
+    // Threads which compress files for callers which must not wait, such as the selector event loops
+    private ExecutorService compressors;
+
+    // Compression level for the current system load
+    private int processors;
+    private volatile int currentLevel;
+    private volatile long loadSampledAt;
+
+    // Statistics
+    private LongAdder hits;
+    private LongAdder misses;
+    private LongAdder evictions;
+
+    /**
+     * Private constructor. Sizes the cache from the configuration
+     */
+    private CompressedContentCache()
+    {
+        Configuration config = Configuration.GetConfiguration();
+
+        this.enabled = config.isEnableDynamicCompression() && config.getCompressionCacheMaxSize() > 0;
+        this.maxLevel = Math.max(Deflater.BEST_SPEED, Math.min(config.getCompressionLevel(), Deflater.BEST_COMPRESSION));
+        this.minFileSize = config.getCompressionMinFileSize();
+        this.maxFileSize = Math.min(config.getCompressionMaxFileSize(), Integer.MAX_VALUE);
+        this.maxSize = config.getCompressionCacheMaxSize();
+        this.entries = new LinkedHashMap<String, CompressedFile>(16, 0.75f, true);
+        this.processors = Runtime.getRuntime().availableProcessors();
+        this.currentLevel = this.maxLevel;
+        this.inFlight = new ConcurrentHashMap<String, FutureTask<CompressedFile>>();
+        this.hits = new LongAdder();
+        this.misses = new LongAdder();
+        this.evictions = new LongAdder();
+
+        if (this.enabled)
+        {
+            this.compressors = Executors.newFixedThreadPool(Math.max(1, this.processors / 2), new ThreadFactory() {
+                private int count;
+
+                @Override
+                public synchronized Thread newThread(Runnable task) {
+                    Thread thread = new Thread(task, "compressor-" + this.count++);
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+        }
+    }
+
+    /**
+     * Returns whether a file should be compressed on the fly for clients which accept gzip
+     * @param mimeType the MIME type of the file, may be null
+     * @param size the size of the file
+     * @return true if the file should be compressed, false if it should be sent as it is
+     */
+    public boolean isCompressible(String mimeType, long size)
+    {
+        // Very small files gain nothing from compression, and very large ones would take too long to compress while the client waits
+        return this.enabled && size >= this.minFileSize && size <= this.maxFileSize && CompressedContentCache.IsCompressibleType(mimeType);
+    }
+
+    /**
+     * Returns the gzip compressed contents of a version of a file, compressing it first if that version is not in the cache
+     * @param path the absolute path of the file on the local file system
+     * @param size the current size of the file
+     * @param lastModified the current modification time of the file
+     * @param cachedFile the contents of the file if they are held in the content cache, so that they are not read again. May be null
+     * @param isWaiting true if the caller may wait for the file to be compressed, false if it must not block
+     * @return the compressed file, or null if it is not ready yet and the caller must not wait, or the compression in progress was of
+     * another version of the file
+     * @throws IOException
+     */
+    public CompressedFile get(String path, long size, long lastModified, CachedFile cachedFile, boolean isWaiting) throws IOException
+    {
+        return this.get(path, size, lastModified, cachedFile, isWaiting, this.selectLevel());
+    }
+
+    /**
+     * Returns the gzip compressed contents of a version of a file, compressing it first at the given level if that version is not in
+     * the cache
+     * <p>
+     * An entry of the right version is always served, even if it was compressed at a lower level while the system was busy. It is then
+     * compressed again at the given level by the compressor threads, to replace it once done.
+     * <p>
+     * Only one compression of a file runs at a time, and every miss for the file while it runs shares its result. A caller which
+     * may wait runs the compression itself, or waits for the one in progress. Otherwise the compression is handed to the compressor
+     * threads, and the caller sends the file as it is until the compressed contents are ready
+     * @param path the absolute path of the file on the local file system
+     * @param size the current size of the file
+     * @param lastModified the current modification time of the file
+     * @param cachedFile the contents of the file if they are held in the content cache, may be null
+     * @param isWaiting true if the caller may wait for the file to be compressed, false if it must not block
+     * @param level the compression level to use
+     * @return the compressed file, or null if it is not ready yet and the caller must not wait, or the compression in progress was of
+     * another version of the file
+     * @throws IOException
+     */
+    CompressedFile get(String path, long size, long lastModified, CachedFile cachedFile, boolean isWaiting, int level) throws IOException
+    {
+        CompressedFile entry;
+
+        synchronized (this)
+        {
+            entry = this.entries.get(path);
+        }
+
+        if (entry != null && entry.getOriginalSize() == size && entry.getLastModified() == lastModified)
+        {
+            this.hits.increment();
+
+            if (entry.getLevel() < level && ! this.inFlight.containsKey(path))
+            {
+                FutureTask<CompressedFile> upgrade = this.newCompression(path, size, lastModified, cachedFile, level);
+
+                if (this.inFlight.putIfAbsent(path, upgrade) == null)
+                {
+                    this.compressors.execute(upgrade);
+                }
+            }
+
+            return entry;
+        }
+
+        FutureTask<CompressedFile> task = this.newCompression(path, size, lastModified, cachedFile, level);
+        FutureTask<CompressedFile> running = this.inFlight.putIfAbsent(path, task);
+
+        if (running == null)
+        {
+            this.misses.increment();
+            running = task;
+
+            if (isWaiting)
+            {
+                task.run();
+            }
+            else
+            {
+                this.compressors.execute(task);
+            }
+        }
+
+        if (! isWaiting && ! running.isDone())
+        {
+            return null;
+        }
+
+        try
+        {
+            entry = running.get();
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while waiting for " + path + " to be compressed");
+        }
+        catch (ExecutionException e)
+        {
+            if (e.getCause() instanceof IOException)
+            {
+                throw (IOException) e.getCause();
+            }
+
+            throw new IOException("Error compressing " + path, e.getCause());
+        }
+
+        // A compression which was already in progress may have been of an earlier version of the file
+        if (entry.getOriginalSize() != size || entry.getLastModified() != lastModified)
+        {
+            return null;
+        }
+
+        return entry;
+    }
+
+    /**
+     * Creates the task which compresses a version of a file, and which removes itself from the compressions in progress once done
+     * @param path the absolute path of the file on the local file system
+     * @param size the size of the file
+     * @param lastModified the modification time of the file
+     * @param cachedFile the contents of the file if they are held in the content cache, may be null
+     * @param level the compression level to use
+     * @return the task, which has not been started
+     */
+    private FutureTask<CompressedFile> newCompression(final String path, final long size, final long lastModified, final CachedFile cachedFile, final int level)
+    {
+        return new FutureTask<CompressedFile>(new Callable<CompressedFile>() {
+            @Override
+            public CompressedFile call() throws IOException {
+                try
+                {
+                    return CompressedContentCache.this.compressAndCache(path, size, lastModified, cachedFile, level);
+                }
+                finally
+                {
+                    CompressedContentCache.this.inFlight.remove(path);
+                }
+            }
+        });
+    }
+
+    /**
+     * Compresses a version of a file and adds it to the cache, evicting the least recently used entries until the cache fits
+     * @param path the absolute path of the file on the local file system
+     * @param size the size of the file
+     * @param lastModified the modification time of the file
+     * @param cachedFile the contents of the file if they are held in the content cache, may be null
+     * @param level the compression level to use
+     * @return the compressed file
+     * @throws IOException
+     */
+    private CompressedFile compressAndCache(String path, long size, long lastModified, CachedFile cachedFile, int level) throws IOException
+    {
+        CompressedFile entry = new CompressedFile(path, this.compress(path, size, cachedFile, level), size, lastModified, level);
+
+        synchronized (this)
+        {
+            CompressedFile previous = this.entries.put(path, entry);
+
+            if (previous != null)
+            {
+                this.currentSize -= previous.getSize();
+            }
+
+            this.currentSize += entry.getSize();
+
+            // Evict from the least recently used end until the cache fits again
+            Iterator<Map.Entry<String, CompressedFile>> iterator = this.entries.entrySet().iterator();
+
+            while (this.currentSize > this.maxSize && iterator.hasNext())
+            {
+                CompressedFile evicted = iterator.next().getValue();
+
+                if (evicted != entry)
+                {
+                    iterator.remove();
+                    this.currentSize -= evicted.getSize();
+                    this.evictions.increment();
+                }
+            }
+        }
+
+        Logger.Log(Logger.INFORMATION, "Compressed %s at level %d (%d bytes to %d bytes)", path, level, size, entry.getSize());
+        return entry;
+    }
+
+    /**
+     * Compresses the contents of a file with gzip
+     * @param path the absolute path of the file on the local file system
+     * @param size the size of the file
+     * @param cachedFile the contents of the file if they are held in the content cache, may be null
+     * @param level the compression level to use
+     * @return a read-only buffer holding the compressed contents
+     * @throws IOException
+     */
+    private ByteBuffer compress(String path, long size, CachedFile cachedFile, final int level) throws IOException
+    {
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream((int) Math.max(64, size / 4));
+
+        // GZIPOutputStream only exposes its level through its Deflater
+        try (GZIPOutputStream gzip = new GZIPOutputStream(compressed, 65536) { { this.def.setLevel(level); } })
+        {
+            WritableByteChannel target = Channels.newChannel(gzip);
+
+            if (cachedFile != null)
+            {
+                ByteBuffer content = cachedFile.getContent();
+
+                while (content.hasRemaining())
+                {
+                    target.write(content);
+                }
+            }
+            else
+            {
+                try (FileChannel file = FileChannel.open(Paths.get(path), StandardOpenOption.READ))
+                {
+                    long position = 0;
+
+                    while (position < size)
+                    {
+                        long transferred = file.transferTo(position, size - position, target);
+
+                        // The file was truncated while being compressed
+                        if (transferred == 0)
+                        {
+                            throw new IOException(String.format("File %s truncated while being compressed", path));
+                        }
+
+                        position += transferred;
+                    }
+                }
+            }
+        }
+
+        // Hold the contents outside of the Java heap, as the content cache does
+        byte[] bytes = compressed.toByteArray();
+        ByteBuffer content = ByteBuffer.allocateDirect(bytes.length);
+        content.put(bytes);
+        content.flip();
+
+        return content.asReadOnlyBuffer();
+    }
+
+    /**
+     * Selects the compression level for the current system load, sampling the load at most once per sample interval
+     * <p>
+     * The load average is used since it is available on every platform through the standard management API. Where it is not
+     * available at all, the configured level is always used
+     * @return the compression level to use
+     */
+    private int selectLevel()
+    {
+        long now = System.currentTimeMillis();
+
+        if (now - this.loadSampledAt < LOAD_SAMPLE_INTERVAL)
+        {
+            return this.currentLevel;
+        }
+
+        this.loadSampledAt = now;
+        double load = ManagementFactory.getOperatingSystemMXBean().getSystemLoadAverage() / this.processors;
+        int level = CompressedContentCache.LevelForLoad(load, this.maxLevel);
+
+        if (level != this.currentLevel)
+        {
+            Logger.Log(Logger.INFORMATION, "System load per processor is %.2f, compressing at level %d", load, level);
+        }
+
+        this.currentLevel = level;
+        return level;
+    }
+
+    // Simple getters
+
+    /**
+     * @return
+     */
+    public long getHits()
+    {
+        return this.hits.sum();
+    }
+
+    /**
+     * @return
+     */
+    public long getMisses()
+    {
+        return this.misses.sum();
+    }
+
+    /**
+     * @return
+     */
+    public long getEvictions()
+    {
+        return this.evictions.sum();
+    }
+
+    /**
+     * @return
+     */
+    public synchronized int getEntryCount()
+    {
+        return this.entries.size();
+    }
+
+    /**
+     * @return
+     */
+    public synchronized long getCurrentSize()
+    {
+        return this.currentSize;
+    }
+}
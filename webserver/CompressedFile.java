@@ -0,0 +1,91 @@
+package webserver;
+
+import java.nio.ByteBuffer;
+
+/**
+ * @author Kieran Chin Cheong
+ * @version 1.0
+ * @since 1.0
+ */
+public class CompressedFile
+{
+    // Member variables
+
+    private String path;
+    private ByteBuffer content;
+    private long size;
+    private long originalSize;
+    private long lastModified;
+    private int level;
+
+    /**
+     * Constructor
+     * @param path the absolute path of the original file on the local file system
+     * @param content read-only buffer holding the gzip compressed contents of the file
+     * @param originalSize the size of the file before it was compressed
+     * @param lastModified the modification time of the file when it was compressed
+     * @param level the compression level used
+     */
+    public CompressedFile(String path, ByteBuffer content, long originalSize, long lastModified, int level)
+    {
+        this.path = path;
+        this.content = content;
+        this.size = content.remaining();
+        this.originalSize = originalSize;
+        this.lastModified = lastModified;
+        this.level = level;
+    }
+
+    /**
+     * Returns the compressed contents of the file
+     * <p>
+     * A new view of the cached buffer is returned every time, so that any number of responses can send it at once
+     * @return a read-only buffer positioned at the start of the compressed contents
+     */
+    public ByteBuffer getContent()
+    {
+        return this.content.duplicate();
+    }
+
+    // Simple getters
+
+    /**
+     * @return
+     */
+    public String getPath()
+    {
+        return this.path;
+    }
+
+    /**
+     * @return
+     */
+    public long getSize()
+    {
+        return this.size;
+    }
+
+    /**
+     * @return
+     */
+    public long getOriginalSize()
+    {
+        return this.originalSize;
+    }
+
+    /**
+     * @return
+     */
+    public long getLastModified()
+    {
+        return this.lastModified;
+    }
+
+    /**
+     * @return
+     */
+    public int getLevel()
+    {
+        return this.level;
+    }
+}
@@ -96,9 +96,14 @@ public class Configuration
     // Listening port
     private int port;
 
+    // I/O mode
+    private String ioMode;
+    private int numSelectorThreads;
+
     // Thread pooling
     private boolean enableThreadPool;
     private int numThreads;
+    private String workerThreadMode;
 
     // Client-side Caching
     private boolean enableClientCaching;
@@ -124,6 +129,102 @@ public class Configuration
     // Debug mode
     private boolean debugMode;
 
+    // Content cache, sizes in bytes and revalidation interval in milliseconds
+    private boolean enableFileCache;
+    private long fileCacheMaxSize;
+    private long fileCacheMaxFileSize;
+    private long fileCacheRevalidateInterval;
+
+    // Memory mapping, size in bytes and idle timeout in milliseconds
+    private boolean enableMemoryMapping;
+    private long mmapMaxFileSize;
+    private long mmapIdleTimeout;
+
+    // Request limits, lengths in bytes
+    private int maxRequestLineLength;
+    private int maxRequestHeadSize;
+    private int maxRequestHeaderCount;
+
+    // Request read and response write deadlines, in seconds. 0 disables them
+    private int requestReadTimeout;
+    private int responseWriteTimeout;
+
+    // Precompressed sidecar files
+    private boolean enablePrecompressedFiles;
+
+    // On the fly compression
+    private boolean enableDynamicCompression;
+    private int compressionLevel;
+    private long compressionMinFileSize;
+    private long compressionMaxFileSize;
+    private long compressionCacheMaxSize;
+
+    // Logging pipeline settings
+    private int logBufferSize;
+    private String logOverflowPolicy;
+    private int logFlushInterval;
+
+    // Status endpoint settings
+    private boolean enableStatusEndpoint;
+    private String statusPath;
+
+    // Buffer pool settings
+    private boolean enableBufferPool;
+    private long bufferPoolMaxSize;
+    private int bufferPoolThreadCacheSize;
+
+    // Admission control settings
+    private int workQueueCapacity;
+    private String overloadPolicy;
+    private int queueDeadline;
+    private int codelTarget;
+    private int codelInterval;
+    private int retryAfter;
+
+    // Connection acceptance and socket settings
+    private int numAcceptorThreads;
+    private boolean enableReusePort;
+    private int acceptBacklog;
+    private boolean tcpNoDelay;
+    private int socketSendBufferSize;
+    private int socketReceiveBufferSize;
+
+    // Metadata cache settings
+    private boolean enableMetadataCache;
+    private long metadataCacheTtl;
+    private long metadataCacheNegativeTtl;
+    private int metadataCacheMaxEntries;
+    private boolean enableContentRootWatcher;
+
+    // Content index settings
+    private boolean enableContentIndex;
+    private int contentIndexMaxFiles;
+    private String prewarmList;
+    private int prewarmCount;
+
+    // MIME type settings
+    private String defaultMimeType;
+    private String defaultCharset;
+    private String mimeTypesFile;
+    private String mimeTypeOverrides;
+
+    // HTTP/2 settings
+    private boolean enableHTTP2;
+    private int http2MaxConcurrentStreams;
+    private int http2MaxResetStreams;
+
+    // TLS settings
+    private boolean enableTLS;
+    private int tlsPort;
+    private String tlsKeyStore;
+    private String tlsKeyStorePassword;
+    private String tlsKeyStoreType;
+    private String tlsProtocols;
+    private String tlsCipherSuites;
+    private int tlsSessionCacheSize;
+    private int tlsSessionTimeout;
+    private boolean enableTLSSessionTickets;
+
     /**
      * Blank constructor required for de/serialization
      */
@@ -137,8 +238,11 @@ public class Configuration
     public void SetDefaultConfiguration()
     {
         this.port = 8080;
+        this.ioMode = Webserver.IO_MODE_BLOCKING;
+        this.numSelectorThreads = 2;
         this.enableThreadPool = true;
         this.numThreads = 10;
+        this.workerThreadMode = Webserver.WORKER_THREADS_PLATFORM;
         this.enableClientCaching = false;
         this.enableHTTPKeepAlive = true;
         this.httpKeepAliveTimeout = 3;
@@ -148,6 +252,70 @@ public class Configuration
         this.rootDirectory = "C:\\webserver\\content";
         this.defaultDocument = "index.html";
         this.debugMode = true;
+        this.enableFileCache = true;
+        this.fileCacheMaxSize = 256L * 1024 * 1024;
+        this.fileCacheMaxFileSize = 1024L * 1024;
+        this.fileCacheRevalidateInterval = 1000L;
+        this.enableMemoryMapping = true;
+        this.mmapMaxFileSize = 256L * 1024 * 1024;
+        this.mmapIdleTimeout = 30000L;
+        this.maxRequestLineLength = 4096;
+        this.maxRequestHeadSize = 8192;
+        this.maxRequestHeaderCount = 100;
+        this.requestReadTimeout = 30;
+        this.responseWriteTimeout = 300;
+        this.enablePrecompressedFiles = true;
+        this.enableDynamicCompression = true;
+        this.compressionLevel = 6;
+        this.compressionMinFileSize = 256L;
+        this.compressionMaxFileSize = 8L * 1024 * 1024;
+        this.compressionCacheMaxSize = 64L * 1024 * 1024;
+        this.logBufferSize = 8192;
+        this.logOverflowPolicy = Logger.OVERFLOW_DROP;
+        this.logFlushInterval = 1000;
+        this.enableStatusEndpoint = true;
+        this.statusPath = "/_status";
+        this.enableBufferPool = true;
+        this.bufferPoolMaxSize = 16777216L;
+        this.bufferPoolThreadCacheSize = 4;
+        this.workQueueCapacity = 1024;
+        this.overloadPolicy = AdmissionControl.POLICY_REJECT;
+        this.queueDeadline = 1000;
+        this.codelTarget = 5;
+        this.codelInterval = 100;
+        this.retryAfter = 1;
+        this.numAcceptorThreads = 1;
+        this.enableReusePort = true;
+        this.acceptBacklog = 1024;
+        this.tcpNoDelay = true;
+        this.socketSendBufferSize = 0;
+        this.socketReceiveBufferSize = 0;
+        this.enableMetadataCache = true;
+        this.metadataCacheTtl = 5000L;
+        this.metadataCacheNegativeTtl = 1000L;
+        this.metadataCacheMaxEntries = 65536;
+        this.enableContentRootWatcher = true;
+        this.enableContentIndex = true;
+        this.contentIndexMaxFiles = 1000000;
+        this.prewarmList = "";
+        this.prewarmCount = 100;
+        this.defaultMimeType = "application/octet-stream";
+        this.defaultCharset = "utf-8";
+        this.mimeTypesFile = "";
+        this.mimeTypeOverrides = "";
+        this.enableHTTP2 = true;
+        this.http2MaxConcurrentStreams = 100;
+        this.http2MaxResetStreams = 200;
+        this.enableTLS = false;
+        this.tlsPort = 8443;
+        this.tlsKeyStore = "";
+        this.tlsKeyStorePassword = "";
+        this.tlsKeyStoreType = "PKCS12";
+        this.tlsProtocols = "TLSv1.3,TLSv1.2";
+        this.tlsCipherSuites = "";
+        this.tlsSessionCacheSize = 20000;
+        this.tlsSessionTimeout = 86400;
+        this.enableTLSSessionTickets = true;
     }
     
     /**
@@ -155,18 +323,85 @@ public class Configuration
      */
     public void LogConfiguration()
     {
-        Logger.Log(Logger.ALWAYS, String.format("CONFIG: port %d", this.port));
-        Logger.Log(Logger.ALWAYS, String.format("CONFIG: enableThreadPool %s", this.enableThreadPool));
-        Logger.Log(Logger.ALWAYS, String.format("CONFIG: numThreads %d", this.numThreads));
-        Logger.Log(Logger.ALWAYS, String.format("CONFIG: enableClientCaching %s", this.enableClientCaching));
-        Logger.Log(Logger.ALWAYS, String.format("CONFIG: enableHTTPKeepAlive %s", this.enableHTTPKeepAlive));
-        Logger.Log(Logger.ALWAYS, String.format("CONFIG: httpKeepAliveTimeout %d", this.httpKeepAliveTimeout));
-        Logger.Log(Logger.ALWAYS, String.format("CONFIG: httpKeepAliveMax %d", this.httpKeepAliveMax));
-        Logger.Log(Logger.ALWAYS, String.format("CONFIG: loggingLevel %d", this.loggingLevel));
-        Logger.Log(Logger.ALWAYS, String.format("CONFIG: logFile %s", this.logFile));
-        Logger.Log(Logger.ALWAYS, String.format("CONFIG: rootDirectory %s", this.rootDirectory));
-        Logger.Log(Logger.ALWAYS, String.format("CONFIG: defaultDocument %s", this.defaultDocument));
-        Logger.Log(Logger.ALWAYS, String.format("CONFIG: debugMode %s", this.debugMode));
+        Logger.Log(Logger.ALWAYS, "CONFIG: port %d", this.port);
+        Logger.Log(Logger.ALWAYS, "CONFIG: ioMode %s", this.ioMode);
+        Logger.Log(Logger.ALWAYS, "CONFIG: numSelectorThreads %d", this.numSelectorThreads);
+        Logger.Log(Logger.ALWAYS, "CONFIG: enableThreadPool %s", this.enableThreadPool);
+        Logger.Log(Logger.ALWAYS, "CONFIG: numThreads %d", this.numThreads);
+        Logger.Log(Logger.ALWAYS, "CONFIG: workerThreadMode %s", this.workerThreadMode);
+        Logger.Log(Logger.ALWAYS, "CONFIG: enableClientCaching %s", this.enableClientCaching);
+        Logger.Log(Logger.ALWAYS, "CONFIG: enableHTTPKeepAlive %s", this.enableHTTPKeepAlive);
+        Logger.Log(Logger.ALWAYS, "CONFIG: httpKeepAliveTimeout %d", this.httpKeepAliveTimeout);
+        Logger.Log(Logger.ALWAYS, "CONFIG: httpKeepAliveMax %d", this.httpKeepAliveMax);
+        Logger.Log(Logger.ALWAYS, "CONFIG: loggingLevel %d", this.loggingLevel);
+        Logger.Log(Logger.ALWAYS, "CONFIG: logFile %s", this.logFile);
+        Logger.Log(Logger.ALWAYS, "CONFIG: rootDirectory %s", this.rootDirectory);
+        Logger.Log(Logger.ALWAYS, "CONFIG: defaultDocument %s", this.defaultDocument);
+        Logger.Log(Logger.ALWAYS, "CONFIG: debugMode %s", this.debugMode);
+        Logger.Log(Logger.ALWAYS, "CONFIG: enableFileCache %s", this.enableFileCache);
+        Logger.Log(Logger.ALWAYS, "CONFIG: fileCacheMaxSize %d", this.fileCacheMaxSize);
+        Logger.Log(Logger.ALWAYS, "CONFIG: fileCacheMaxFileSize %d", this.fileCacheMaxFileSize);
+        Logger.Log(Logger.ALWAYS, "CONFIG: fileCacheRevalidateInterval %d", this.fileCacheRevalidateInterval);
+        Logger.Log(Logger.ALWAYS, "CONFIG: enableMemoryMapping %s", this.enableMemoryMapping);
+        Logger.Log(Logger.ALWAYS, "CONFIG: mmapMaxFileSize %d", this.mmapMaxFileSize);
+        Logger.Log(Logger.ALWAYS, "CONFIG: mmapIdleTimeout %d", this.mmapIdleTimeout);
+        Logger.Log(Logger.ALWAYS, "CONFIG: maxRequestLineLength %d", this.maxRequestLineLength);
+        Logger.Log(Logger.ALWAYS, "CONFIG: maxRequestHeadSize %d", this.maxRequestHeadSize);
+        Logger.Log(Logger.ALWAYS, "CONFIG: maxRequestHeaderCount %d", this.maxRequestHeaderCount);
+        Logger.Log(Logger.ALWAYS, "CONFIG: requestReadTimeout %d", this.requestReadTimeout);
+        Logger.Log(Logger.ALWAYS, "CONFIG: responseWriteTimeout %d", this.responseWriteTimeout);
+        Logger.Log(Logger.ALWAYS, "CONFIG: enablePrecompressedFiles %s", this.enablePrecompressedFiles);
+        Logger.Log(Logger.ALWAYS, "CONFIG: enableDynamicCompression %s", this.enableDynamicCompression);
+        Logger.Log(Logger.ALWAYS, "CONFIG: compressionLevel %d", this.compressionLevel);
+        Logger.Log(Logger.ALWAYS, "CONFIG: compressionMinFileSize %d", this.compressionMinFileSize);
+        Logger.Log(Logger.ALWAYS, "CONFIG: compressionMaxFileSize %d", this.compressionMaxFileSize);
+        Logger.Log(Logger.ALWAYS, "CONFIG: compressionCacheMaxSize %d", this.compressionCacheMaxSize);
+        Logger.Log(Logger.ALWAYS, "CONFIG: logBufferSize %d", this.logBufferSize);
+        Logger.Log(Logger.ALWAYS, "CONFIG: logOverflowPolicy %s", this.logOverflowPolicy);
+        Logger.Log(Logger.ALWAYS, "CONFIG: logFlushInterval %d", this.logFlushInterval);
+        Logger.Log(Logger.ALWAYS, "CONFIG: enableStatusEndpoint %s", this.enableStatusEndpoint);
+        Logger.Log(Logger.ALWAYS, "CONFIG: statusPath %s", this.statusPath);
+        Logger.Log(Logger.ALWAYS, "CONFIG: enableBufferPool %s", this.enableBufferPool);
+        Logger.Log(Logger.ALWAYS, "CONFIG: bufferPoolMaxSize %d", this.bufferPoolMaxSize);
+        Logger.Log(Logger.ALWAYS, "CONFIG: bufferPoolThreadCacheSize %d", this.bufferPoolThreadCacheSize);
+        Logger.Log(Logger.ALWAYS, "CONFIG: workQueueCapacity %d", this.workQueueCapacity);
+        Logger.Log(Logger.ALWAYS, "CONFIG: overloadPolicy %s", this.overloadPolicy);
+        Logger.Log(Logger.ALWAYS, "CONFIG: queueDeadline %d", this.queueDeadline);
+        Logger.Log(Logger.ALWAYS, "CONFIG: codelTarget %d", this.codelTarget);
+        Logger.Log(Logger.ALWAYS, "CONFIG: codelInterval %d", this.codelInterval);
+        Logger.Log(Logger.ALWAYS, "CONFIG: retryAfter %d", this.retryAfter);
+        Logger.Log(Logger.ALWAYS, "CONFIG: numAcceptorThreads %d", this.numAcceptorThreads);
+        Logger.Log(Logger.ALWAYS, "CONFIG: enableReusePort %s", this.enableReusePort);
+        Logger.Log(Logger.ALWAYS, "CONFIG: acceptBacklog %d", this.acceptBacklog);
+        Logger.Log(Logger.ALWAYS, "CONFIG: tcpNoDelay %s", this.tcpNoDelay);
+        Logger.Log(Logger.ALWAYS, "CONFIG: socketSendBufferSize %d", this.socketSendBufferSize);
+        Logger.Log(Logger.ALWAYS, "CONFIG: socketReceiveBufferSize %d", this.socketReceiveBufferSize);
+        Logger.Log(Logger.ALWAYS, "CONFIG: enableMetadataCache %s", this.enableMetadataCache);
+        Logger.Log(Logger.ALWAYS, "CONFIG: metadataCacheTtl %d", this.metadataCacheTtl);
+        Logger.Log(Logger.ALWAYS, "CONFIG: metadataCacheNegativeTtl %d", this.metadataCacheNegativeTtl);
+        Logger.Log(Logger.ALWAYS, "CONFIG: metadataCacheMaxEntries %d", this.metadataCacheMaxEntries);
+        Logger.Log(Logger.ALWAYS, "CONFIG: enableContentRootWatcher %s", this.enableContentRootWatcher);
+        Logger.Log(Logger.ALWAYS, "CONFIG: enableContentIndex %s", this.enableContentIndex);
+        Logger.Log(Logger.ALWAYS, "CONFIG: contentIndexMaxFiles %d", this.contentIndexMaxFiles);
+        Logger.Log(Logger.ALWAYS, "CONFIG: prewarmList %s", this.prewarmList);
+        Logger.Log(Logger.ALWAYS, "CONFIG: prewarmCount %d", this.prewarmCount);
+        Logger.Log(Logger.ALWAYS, "CONFIG: defaultMimeType %s", this.defaultMimeType);
+        Logger.Log(Logger.ALWAYS, "CONFIG: defaultCharset %s", this.defaultCharset);
+        Logger.Log(Logger.ALWAYS, "CONFIG: mimeTypesFile %s", this.mimeTypesFile);
+        Logger.Log(Logger.ALWAYS, "CONFIG: mimeTypeOverrides %s", this.mimeTypeOverrides);
+        Logger.Log(Logger.ALWAYS, "CONFIG: enableHTTP2 %s", this.enableHTTP2);
+        Logger.Log(Logger.ALWAYS, "CONFIG: http2MaxConcurrentStreams %d", this.http2MaxConcurrentStreams);
+        Logger.Log(Logger.ALWAYS, "CONFIG: http2MaxResetStreams %d", this.http2MaxResetStreams);
+        Logger.Log(Logger.ALWAYS, "CONFIG: enableTLS %s", this.enableTLS);
+        Logger.Log(Logger.ALWAYS, "CONFIG: tlsPort %d", this.tlsPort);
+        Logger.Log(Logger.ALWAYS, "CONFIG: tlsKeyStore %s", this.tlsKeyStore);
+        Logger.Log(Logger.ALWAYS, "CONFIG: tlsKeyStorePassword %s", this.tlsKeyStorePassword.isEmpty() ? "" : "********");
+        Logger.Log(Logger.ALWAYS, "CONFIG: tlsKeyStoreType %s", this.tlsKeyStoreType);
+        Logger.Log(Logger.ALWAYS, "CONFIG: tlsProtocols %s", this.tlsProtocols);
+        Logger.Log(Logger.ALWAYS, "CONFIG: tlsCipherSuites %s", this.tlsCipherSuites);
+        Logger.Log(Logger.ALWAYS, "CONFIG: tlsSessionCacheSize %d", this.tlsSessionCacheSize);
+        Logger.Log(Logger.ALWAYS, "CONFIG: tlsSessionTimeout %d", this.tlsSessionTimeout);
+        Logger.Log(Logger.ALWAYS, "CONFIG: enableTLSSessionTickets %s", this.enableTLSSessionTickets);
     }
 
     // Getters and setters
@@ -186,6 +421,38 @@ public class Configuration
         this.port = port;
     }
 
+    /**
+     * @return
+     */
+    public String getIoMode()
+    {
+        return this.ioMode;
+    }
+    
+    /**
+     * @param ioMode
+     */
+    public void setIoMode(String ioMode)
+    {
+        this.ioMode = ioMode;
+    }
+    
+    /**
+     * @return
+     */
+    public int getNumSelectorThreads()
+    {
+        return this.numSelectorThreads;
+    }
+    
+    /**
+     * @param numSelectorThreads
+     */
+    public void setNumSelectorThreads(int numSelectorThreads)
+    {
+        this.numSelectorThreads = numSelectorThreads;
+    }
+
     /**
      * @return
      */
@@ -217,6 +484,22 @@ public class Configuration
     {
         this.numThreads = numThreads;
     }
+    
+    /**
+     * @return
+     */
+    public String getWorkerThreadMode()
+    {
+        return this.workerThreadMode;
+    }
+    
+    /**
+     * @param workerThreadMode
+     */
+    public void setWorkerThreadMode(String workerThreadMode)
+    {
+        this.workerThreadMode = workerThreadMode;
+    }
 
     /**
      * @return
@@ -361,4 +644,1028 @@ public class Configuration
     {
         this.debugMode = debugMode;
     }
+    
+    /**
+     * @return
+     */
+    public boolean isEnableFileCache()
+    {
+        return this.enableFileCache;
+    }
+    
+    /**
+     * @param enableFileCache
+     */
+    public void setEnableFileCache(boolean enableFileCache)
+    {
+        this.enableFileCache = enableFileCache;
+    }
+    
+    /**
+     * @return
+     */
+    public long getFileCacheMaxSize()
+    {
+        return this.fileCacheMaxSize;
+    }
+    
+    /**
+     * @param fileCacheMaxSize
+     */
+    public void setFileCacheMaxSize(long fileCacheMaxSize)
+    {
+        this.fileCacheMaxSize = fileCacheMaxSize;
+    }
+    
+    /**
+     * @return
+     */
+    public long getFileCacheMaxFileSize()
+    {
+        return this.fileCacheMaxFileSize;
+    }
+    
+    /**
+     * @param fileCacheMaxFileSize
+     */
+    public void setFileCacheMaxFileSize(long fileCacheMaxFileSize)
+    {
+        this.fileCacheMaxFileSize = fileCacheMaxFileSize;
+    }
+    
+    /**
+     * @return
+     */
+    public long getFileCacheRevalidateInterval()
+    {
+        return this.fileCacheRevalidateInterval;
+    }
+    
+    /**
+     * @param fileCacheRevalidateInterval
+     */
+    public void setFileCacheRevalidateInterval(long fileCacheRevalidateInterval)
+    {
+        this.fileCacheRevalidateInterval = fileCacheRevalidateInterval;
+    }
+    
+    /**
+     * @return
+     */
+    public boolean isEnableMemoryMapping()
+    {
+        return this.enableMemoryMapping;
+    }
+    
+    /**
+     * @param enableMemoryMapping
+     */
+    public void setEnableMemoryMapping(boolean enableMemoryMapping)
+    {
+        this.enableMemoryMapping = enableMemoryMapping;
+    }
+    
+    /**
+     * @return
+     */
+    public long getMmapMaxFileSize()
+    {
+        return this.mmapMaxFileSize;
+    }
+    
+    /**
+     * @param mmapMaxFileSize
+     */
+    public void setMmapMaxFileSize(long mmapMaxFileSize)
+    {
+        this.mmapMaxFileSize = mmapMaxFileSize;
+    }
+    
+    /**
+     * @return
+     */
+    public long getMmapIdleTimeout()
+    {
+        return this.mmapIdleTimeout;
+    }
+    
+    /**
+     * @param mmapIdleTimeout
+     */
+    public void setMmapIdleTimeout(long mmapIdleTimeout)
+    {
+        this.mmapIdleTimeout = mmapIdleTimeout;
+    }
+    
+    /**
+     * @return
+     */
+    public int getMaxRequestLineLength()
+    {
+        return this.maxRequestLineLength;
+    }
+    
+    /**
+     * @param maxRequestLineLength
+     */
+    public void setMaxRequestLineLength(int maxRequestLineLength)
+    {
+        this.maxRequestLineLength = maxRequestLineLength;
+    }
+    
+    /**
+     * @return
+     */
+    public int getMaxRequestHeadSize()
+    {
+        return this.maxRequestHeadSize;
+    }
+    
+    /**
+     * @param maxRequestHeadSize
+     */
+    public void setMaxRequestHeadSize(int maxRequestHeadSize)
+    {
+        this.maxRequestHeadSize = maxRequestHeadSize;
+    }
+    
+    /**
+     * @return
+     */
+    public int getMaxRequestHeaderCount()
+    {
+        return this.maxRequestHeaderCount;
+    }
+    
+    /**
+     * @param maxRequestHeaderCount
+     */
+    public void setMaxRequestHeaderCount(int maxRequestHeaderCount)
+    {
+        this.maxRequestHeaderCount = maxRequestHeaderCount;
+    }
+    
+    /**
+     * @return
+     */
+    public int getRequestReadTimeout()
+    {
+        return this.requestReadTimeout;
+    }
+    
+    /**
+     * @param requestReadTimeout
+     */
+    public void setRequestReadTimeout(int requestReadTimeout)
+    {
+        this.requestReadTimeout = requestReadTimeout;
+    }
+    
+    /**
+     * @return
+     */
+    public int getResponseWriteTimeout()
+    {
+        return this.responseWriteTimeout;
+    }
+    
+    /**
+     * @param responseWriteTimeout
+     */
+    public void setResponseWriteTimeout(int responseWriteTimeout)
+    {
+        this.responseWriteTimeout = responseWriteTimeout;
+    }
+    
+    /**
+     * @return
+     */
+    public boolean isEnablePrecompressedFiles()
+    {
+        return this.enablePrecompressedFiles;
+    }
+    
+    /**
+     * @param enablePrecompressedFiles
+     */
+    public void setEnablePrecompressedFiles(boolean enablePrecompressedFiles)
+    {
+        this.enablePrecompressedFiles = enablePrecompressedFiles;
+    }
+    
+    /**
+     * @return
+     */
+    public boolean isEnableDynamicCompression()
+    {
+        return this.enableDynamicCompression;
+    }
+    
+    /**
+     * @param enableDynamicCompression
+     */
+    public void setEnableDynamicCompression(boolean enableDynamicCompression)
+    {
+        this.enableDynamicCompression = enableDynamicCompression;
+    }
+    
+    /**
+     * @return
+     */
+    public int getCompressionLevel()
+    {
+        return this.compressionLevel;
+    }
+    
+    /**
+     * @param compressionLevel
+     */
+    public void setCompressionLevel(int compressionLevel)
+    {
+        this.compressionLevel = compressionLevel;
+    }
+    
+    /**
+     * @return
+     */
+    public long getCompressionMinFileSize()
+    {
+        return this.compressionMinFileSize;
+    }
+    
+    /**
+     * @param compressionMinFileSize
+     */
+    public void setCompressionMinFileSize(long compressionMinFileSize)
+    {
+        this.compressionMinFileSize = compressionMinFileSize;
+    }
+    
+    /**
+     * @return
+     */
+    public long getCompressionMaxFileSize()
+    {
+        return this.compressionMaxFileSize;
+    }
+    
+    /**
+     * @param compressionMaxFileSize
+     */
+    public void setCompressionMaxFileSize(long compressionMaxFileSize)
+    {
+        this.compressionMaxFileSize = compressionMaxFileSize;
+    }
+    
+    /**
+     * @return
+     */
+    public long getCompressionCacheMaxSize()
+    {
+        return this.compressionCacheMaxSize;
+    }
+    
+    /**
+     * @param compressionCacheMaxSize
+     */
+    public void setCompressionCacheMaxSize(long compressionCacheMaxSize)
+    {
+        this.compressionCacheMaxSize = compressionCacheMaxSize;
+    }
+    
+    /**
+     * @return
+     */
+    public int getLogBufferSize()
+    {
+        return this.logBufferSize;
+    }
+    
+    /**
+     * @param logBufferSize
+     */
+    public void setLogBufferSize(int logBufferSize)
+    {
+        this.logBufferSize = logBufferSize;
+    }
+    
+    /**
+     * @return
+     */
+    public String getLogOverflowPolicy()
+    {
+        return this.logOverflowPolicy;
+    }
+    
+    /**
+     * @param logOverflowPolicy
+     */
+    public void setLogOverflowPolicy(String logOverflowPolicy)
+    {
+        this.logOverflowPolicy = logOverflowPolicy;
+    }
+    
+    /**
+     * @return
+     */
+    public int getLogFlushInterval()
+    {
+        return this.logFlushInterval;
+    }
+    
+    /**
+     * @param logFlushInterval
+     */
+    public void setLogFlushInterval(int logFlushInterval)
+    {
+        this.logFlushInterval = logFlushInterval;
+    }
+    
+    /**
+     * @return
+     */
+    public boolean isEnableStatusEndpoint()
+    {
+        return this.enableStatusEndpoint;
+    }
+    
+    /**
+     * @param enableStatusEndpoint
+     */
+    public void setEnableStatusEndpoint(boolean enableStatusEndpoint)
+    {
+        this.enableStatusEndpoint = enableStatusEndpoint;
+    }
+    
+    /**
+     * @return
+     */
+    public String getStatusPath()
+    {
+        return this.statusPath;
+    }
+    
+    /**
+     * @param statusPath
+     */
+    public void setStatusPath(String statusPath)
+    {
+        this.statusPath = statusPath;
+    }
+    
+    /**
+     * @return
+     */
+    public boolean isEnableBufferPool()
+    {
+        return this.enableBufferPool;
+    }
+    
+    /**
+     * @param enableBufferPool
+     */
+    public void setEnableBufferPool(boolean enableBufferPool)
+    {
+        this.enableBufferPool = enableBufferPool;
+    }
+    
+    /**
+     * @return
+     */
+    public long getBufferPoolMaxSize()
+    {
+        return this.bufferPoolMaxSize;
+    }
+    
+    /**
+     * @param bufferPoolMaxSize
+     */
+    public void setBufferPoolMaxSize(long bufferPoolMaxSize)
+    {
+        this.bufferPoolMaxSize = bufferPoolMaxSize;
+    }
+    
+    /**
+     * @return
+     */
+    public int getBufferPoolThreadCacheSize()
+    {
+        return this.bufferPoolThreadCacheSize;
+    }
+    
+    /**
+     * @param bufferPoolThreadCacheSize
+     */
+    public void setBufferPoolThreadCacheSize(int bufferPoolThreadCacheSize)
+    {
+        this.bufferPoolThreadCacheSize = bufferPoolThreadCacheSize;
+    }
+    
+    /**
+     * @return
+     */
+    public int getWorkQueueCapacity()
+    {
+        return this.workQueueCapacity;
+    }
+    
+    /**
+     * @param workQueueCapacity
+     */
+    public void setWorkQueueCapacity(int workQueueCapacity)
+    {
+        this.workQueueCapacity = workQueueCapacity;
+    }
+    
+    /**
+     * @return
+     */
+    public String getOverloadPolicy()
+    {
+        return this.overloadPolicy;
+    }
+    
+    /**
+     * @param overloadPolicy
+     */
+    public void setOverloadPolicy(String overloadPolicy)
+    {
+        this.overloadPolicy = overloadPolicy;
+    }
+    
+    /**
+     * @return
+     */
+    public int getQueueDeadline()
+    {
+        return this.queueDeadline;
+    }
+    
+    /**
+     * @param queueDeadline
+     */
+    public void setQueueDeadline(int queueDeadline)
+    {
+        this.queueDeadline = queueDeadline;
+    }
+    
+    /**
+     * @return
+     */
+    public int getCodelTarget()
+    {
+        return this.codelTarget;
+    }
+    
+    /**
+     * @param codelTarget
+     */
+    public void setCodelTarget(int codelTarget)
+    {
+        this.codelTarget = codelTarget;
+    }
+    
+    /**
+     * @return
+     */
+    public int getCodelInterval()
+    {
+        return this.codelInterval;
+    }
+    
+    /**
+     * @param codelInterval
+     */
+    public void setCodelInterval(int codelInterval)
+    {
+        this.codelInterval = codelInterval;
+    }
+    
+    /**
+     * @return
+     */
+    public int getRetryAfter()
+    {
+        return this.retryAfter;
+    }
+    
+    /**
+     * @param retryAfter
+     */
+    public void setRetryAfter(int retryAfter)
+    {
+        this.retryAfter = retryAfter;
+    }
+    
+    /**
+     * @return
+     */
+    public int getNumAcceptorThreads()
+    {
+        return this.numAcceptorThreads;
+    }
+    
+    /**
+     * @param numAcceptorThreads
+     */
+    public void setNumAcceptorThreads(int numAcceptorThreads)
+    {
+        this.numAcceptorThreads = numAcceptorThreads;
+    }
+    
+    /**
+     * @return
+     */
+    public boolean isEnableReusePort()
+    {
+        return this.enableReusePort;
+    }
+    
+    /**
+     * @param enableReusePort
+     */
+    public void setEnableReusePort(boolean enableReusePort)
+    {
+        this.enableReusePort = enableReusePort;
+    }
+    
+    /**
+     * @return
+     */
+    public int getAcceptBacklog()
+    {
+        return this.acceptBacklog;
+    }
+    
+    /**
+     * @param acceptBacklog
+     */
+    public void setAcceptBacklog(int acceptBacklog)
+    {
+        this.acceptBacklog = acceptBacklog;
+    }
+    
+    /**
+     * @return
+     */
+    public boolean isTcpNoDelay()
+    {
+        return this.tcpNoDelay;
+    }
+    
+    /**
+     * @param tcpNoDelay
+     */
+    public void setTcpNoDelay(boolean tcpNoDelay)
+    {
+        this.tcpNoDelay = tcpNoDelay;
+    }
+    
+    /**
+     * @return
+     */
+    public int getSocketSendBufferSize()
+    {
+        return this.socketSendBufferSize;
+    }
+    
+    /**
+     * @param socketSendBufferSize
+     */
+    public void setSocketSendBufferSize(int socketSendBufferSize)
+    {
+        this.socketSendBufferSize = socketSendBufferSize;
+    }
+    
+    /**
+     * @return
+     */
+    public int getSocketReceiveBufferSize()
+    {
+        return this.socketReceiveBufferSize;
+    }
+    
+    /**
+     * @param socketReceiveBufferSize
+     */
+    public void setSocketReceiveBufferSize(int socketReceiveBufferSize)
+    {
+        this.socketReceiveBufferSize = socketReceiveBufferSize;
+    }
+    
+    /**
+     * @return
+     */
+    public boolean isEnableMetadataCache()
+    {
+        return this.enableMetadataCache;
+    }
+    
+    /**
+     * @param enableMetadataCache
+     */
+    public void setEnableMetadataCache(boolean enableMetadataCache)
+    {
+        this.enableMetadataCache = enableMetadataCache;
+    }
+    
+    /**
+     * @return
+     */
+    public long getMetadataCacheTtl()
+    {
+        return this.metadataCacheTtl;
+    }
+    
+    /**
+     * @param metadataCacheTtl
+     */
+    public void setMetadataCacheTtl(long metadataCacheTtl)
+    {
+        this.metadataCacheTtl = metadataCacheTtl;
+    }
+    
+    /**
+     * @return
+     */
+    public long getMetadataCacheNegativeTtl()
+    {
+        return this.metadataCacheNegativeTtl;
+    }
+    
+    /**
+     * @param metadataCacheNegativeTtl
+     */
+    public void setMetadataCacheNegativeTtl(long metadataCacheNegativeTtl)
+    {
+        this.metadataCacheNegativeTtl = metadataCacheNegativeTtl;
+    }
+    
+    /**
+     * @return
+     */
+    public int getMetadataCacheMaxEntries()
+    {
+        return this.metadataCacheMaxEntries;
+    }
+    
+    /**
+     * @param metadataCacheMaxEntries
+     */
+    public void setMetadataCacheMaxEntries(int metadataCacheMaxEntries)
+    {
+        this.metadataCacheMaxEntries = metadataCacheMaxEntries;
+    }
+    
+    /**
+     * @return
+     */
+    public boolean isEnableContentRootWatcher()
+    {
+        return this.enableContentRootWatcher;
+    }
+    
+    /**
+     * @param enableContentRootWatcher
+     */
+    public void setEnableContentRootWatcher(boolean enableContentRootWatcher)
+    {
+        this.enableContentRootWatcher = enableContentRootWatcher;
+    }
+    
+    /**
+     * @return
+     */
+    public boolean isEnableContentIndex()
+    {
+        return this.enableContentIndex;
+    }
+    
+    /**
+     * @param enableContentIndex
+     */
+    public void setEnableContentIndex(boolean enableContentIndex)
+    {
+        this.enableContentIndex = enableContentIndex;
+    }
+    
+    /**
+     * @return
+     */
+    public int getContentIndexMaxFiles()
+    {
+        return this.contentIndexMaxFiles;
+    }
+    
+    /**
+     * @param contentIndexMaxFiles
+     */
+    public void setContentIndexMaxFiles(int contentIndexMaxFiles)
+    {
+        this.contentIndexMaxFiles = contentIndexMaxFiles;
+    }
+    
+    /**
+     * @return
+     */
+    public String getPrewarmList()
+    {
+        return this.prewarmList;
+    }
+    
+    /**
+     * @param prewarmList
+     */
+    public void setPrewarmList(String prewarmList)
+    {
+        this.prewarmList = prewarmList;
+    }
+    
+    /**
+     * @return
+     */
+    public int getPrewarmCount()
+    {
+        return this.prewarmCount;
+    }
+    
+    /**
+     * @param prewarmCount
+     */
+    public void setPrewarmCount(int prewarmCount)
+    {
+        this.prewarmCount = prewarmCount;
+    }
+    
+    /**
+     * @return
+     */
+    public String getDefaultMimeType()
+    {
+        return this.defaultMimeType;
+    }
+    
+    /**
+     * @param defaultMimeType
+     */
+    public void setDefaultMimeType(String defaultMimeType)
+    {
+        this.defaultMimeType = defaultMimeType;
+    }
+    
+    /**
+     * @return
+     */
+    public String getDefaultCharset()
+    {
+        return this.defaultCharset;
+    }
+    
+    /**
+     * @param defaultCharset
+     */
+    public void setDefaultCharset(String defaultCharset)
+    {
+        this.defaultCharset = defaultCharset;
+    }
+    
+    /**
+     * @return
+     */
+    public String getMimeTypesFile()
+    {
+        return this.mimeTypesFile;
+    }
+    
+    /**
+     * @param mimeTypesFile
+     */
+    public void setMimeTypesFile(String mimeTypesFile)
+    {
+        this.mimeTypesFile = mimeTypesFile;
+    }
+    
+    /**
+     * @return
+     */
+    public String getMimeTypeOverrides()
+    {
+        return this.mimeTypeOverrides;
+    }
+    
+    /**
+     * @param mimeTypeOverrides
+     */
+    public void setMimeTypeOverrides(String mimeTypeOverrides)
+    {
+        this.mimeTypeOverrides = mimeTypeOverrides;
+    }
+    
+    /**
+     * @return
+     */
+    public boolean isEnableHTTP2()
+    {
+        return this.enableHTTP2;
+    }
+    
+    /**
+     * @param enableHTTP2
+     */
+    public void setEnableHTTP2(boolean enableHTTP2)
+    {
+        this.enableHTTP2 = enableHTTP2;
+    }
+    
+    /**
+     * @return
+     */
+    public int getHttp2MaxConcurrentStreams()
+    {
+        return this.http2MaxConcurrentStreams;
+    }
+    
+    /**
+     * @param http2MaxConcurrentStreams
+     */
+    public void setHttp2MaxConcurrentStreams(int http2MaxConcurrentStreams)
+    {
+        this.http2MaxConcurrentStreams = http2MaxConcurrentStreams;
+    }
+    
+    /**
+     * @return
+     */
+    public int getHttp2MaxResetStreams()
+    {
+        return this.http2MaxResetStreams;
+    }
+    
+    /**
+     * @param http2MaxResetStreams
+     */
+    public void setHttp2MaxResetStreams(int http2MaxResetStreams)
+    {
+        this.http2MaxResetStreams = http2MaxResetStreams;
+    }
+    
+    /**
+     * @return
+     */
+    public boolean isEnableTLS()
+    {
+        return this.enableTLS;
+    }
+    
+    /**
+     * @param enableTLS
+     */
+    public void setEnableTLS(boolean enableTLS)
+    {
+        this.enableTLS = enableTLS;
+    }
+    
+    /**
+     * @return
+     */
+    public int getTlsPort()
+    {
+        return this.tlsPort;
+    }
+    
+    /**
+     * @param tlsPort
+     */
+    public void setTlsPort(int tlsPort)
+    {
+        this.tlsPort = tlsPort;
+    }
+    
+    /**
+     * @return
+     */
+    public String getTlsKeyStore()
+    {
+        return this.tlsKeyStore;
+    }
+    
+    /**
+     * @param tlsKeyStore
+     */
+    public void setTlsKeyStore(String tlsKeyStore)
+    {
+        this.tlsKeyStore = tlsKeyStore;
+    }
+    
+    /**
+     * @return
+     */
+    public String getTlsKeyStorePassword()
+    {
+        return this.tlsKeyStorePassword;
+    }
+    
+    /**
+     * @param tlsKeyStorePassword
+     */
+    public void setTlsKeyStorePassword(String tlsKeyStorePassword)
+    {
+        this.tlsKeyStorePassword = tlsKeyStorePassword;
+    }
+    
+    /**
+     * @return
+     */
+    public String getTlsKeyStoreType()
+    {
+        return this.tlsKeyStoreType;
+    }
+    
+    /**
+     * @param tlsKeyStoreType
+     */
+    public void setTlsKeyStoreType(String tlsKeyStoreType)
+    {
+        this.tlsKeyStoreType = tlsKeyStoreType;
+    }
+    
+    /**
+     * @return
+     */
+    public String getTlsProtocols()
+    {
+        return this.tlsProtocols;
+    }
+    
+    /**
+     * @param tlsProtocols
+     */
+    public void setTlsProtocols(String tlsProtocols)
+    {
+        this.tlsProtocols = tlsProtocols;
+    }
+    
+    /**
+     * @return
+     */
+    public String getTlsCipherSuites()
+    {
+        return this.tlsCipherSuites;
+    }
+    
+    /**
+     * @param tlsCipherSuites
+     */
+    public void setTlsCipherSuites(String tlsCipherSuites)
+    {
+        this.tlsCipherSuites = tlsCipherSuites;
+    }
+    
+    /**
+     * @return
+     */
+    public int getTlsSessionCacheSize()
+    {
+        return this.tlsSessionCacheSize;
+    }
+    
+    /**
+     * @param tlsSessionCacheSize
+     */
+    public void setTlsSessionCacheSize(int tlsSessionCacheSize)
+    {
+        this.tlsSessionCacheSize = tlsSessionCacheSize;
+    }
+    
+    /**
+     * @return
+     */
+    public int getTlsSessionTimeout()
+    {
+        return this.tlsSessionTimeout;
+    }
+    
+    /**
+     * @param tlsSessionTimeout
+     */
+    public void setTlsSessionTimeout(int tlsSessionTimeout)
+    {
+        this.tlsSessionTimeout = tlsSessionTimeout;
+    }
+    
+    /**
+     * @return
+     */
+    public boolean isEnableTLSSessionTickets()
+    {
+        return this.enableTLSSessionTickets;
+    }
+    
+    /**
+     * @param enableTLSSessionTickets
+     */
+    public void setEnableTLSSessionTickets(boolean enableTLSSessionTickets)
+    {
+        this.enableTLSSessionTickets = enableTLSSessionTickets;
+    }
 }
@@ -0,0 +1,402 @@
+package webserver;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Holds the metadata of every file under the content root, read once when the server starts and then kept current from the changes
+ * reported by the ContentRootWatcher rather than by reading it again
+ * <p>
+ * The index is only used while every directory under the root is being watched, since a change which goes unreported would
+ * otherwise leave it out of date for good. Files which are not in the index are looked up through the FileMetadataCache as usual
+ * <p>
+ * Before the server starts accepting connections, the most requested files can also be loaded into the content cache, ranked by
+ * how often they appear in the prewarm list. The list holds either one request target per line, or the connection log of a
+ * previous run of the server
+ * @author Kieran Chin Cheong
+ * @version 1.0
+ * @since 1.0
+ */
+public class ContentIndex implements ContentRootListener
+{
+    // Static variables
+
+    // The layout of the lines written by Logger.LogConnection, of which the method, target and status code are used
+    private static final Pattern CONNECTION_LINE = Pattern.compile("^.+? : TID \\d+ : \\S+ \\S+ (\\S+) (\\S+) (\\d{3})(?: .*)?$");
+
+    // This is the singleton instance
+    private static final ContentIndex indexSingleton = new ContentIndex();
+
+    // Static methods
+
+    /**
+     * Static singleton accessor
+     * @return the singleton ContentIndex
+     */
+    public static ContentIndex GetIndex()
+    {
+        return indexSingleton;
+    }
+
+    /**
+     * @param line a line of the prewarm list
+     * @return the request target of the line, or null if the line does not name a file which was served
+     */
+    private static String ParseTarget(String line)
+    {
+        String target = line.trim();
+
+        if (! target.startsWith("/") || target.indexOf(' ') >= 0)
+        {
+            Matcher matcher = CONNECTION_LINE.matcher(line);
+
+            // Only successful requests for files are counted, so that requests for missing files are never loaded
+            if (! matcher.matches() || ! (matcher.group(1).equals("GET") || matcher.group(1).equals("HEAD")) ||
+                ! (matcher.group(3).equals("200") || matcher.group(3).equals("206") || matcher.group(3).equals("304")))
+            {
+                return null;
+            }
+
+            target = matcher.group(2);
+        }
+
+        if (target.contains(".."))
+        {
+            return null;
+        }
+
+        if (target.equals("/"))
+        {
+            target += Configuration.GetConfiguration().getDefaultDocument();
+        }
+
+        return target;
+    }
+
+    // Member variables
+
+    private boolean enabled;
+    private int maxFiles;
+    private String rootDirectory;
+    private Path root;
+    private ContentRootWatcher watcher;
+
+    // Metadata of each regular file, keyed by normalized path. Changes are applied under this object's monitor
+    private ConcurrentHashMap<String, FileMetadata> entries;
+    private volatile boolean isReady;
+    private boolean isAbandoned;
+
+    /**
+     * Private constructor. Reads the settings from the configuration
+     */
+    private ContentIndex()
+    {
+        this(Configuration.GetConfiguration().isEnableContentIndex(), Configuration.GetConfiguration().getContentIndexMaxFiles(),
+            Configuration.GetConfiguration().getRootDirectory(), ContentRootWatcher.GetWatcher());
+    }
+
+    /**
+     * Constructor. Everything but tests should use the shared index
+     * @param enabled whether the root is indexed at all
+     * @param maxFiles the number of files above which the index is abandoned
+     * @param rootDirectory the directory to index, along with everything beneath it
+     * @param watcher the watcher of the same directory, which keeps the index current
+     */
+    ContentIndex(boolean enabled, int maxFiles, String rootDirectory, ContentRootWatcher watcher)
+    {
+        this.enabled = enabled && maxFiles > 0;
+        this.maxFiles = maxFiles;
+        this.rootDirectory = rootDirectory;
+        this.root = Paths.get(this.rootDirectory).normalize();
+        this.watcher = watcher;
+        this.entries = new ConcurrentHashMap<String, FileMetadata>();
+    }
+
+    /**
+     * Reads the metadata of every file under the content root into the index, once the ContentRootWatcher is watching all of it
+     * <p>
+     * Changes made while the index is built are applied once it has been built, so none of them are missed
+     */
+    public void build()
+    {
+        if (! this.enabled)
+        {
+            return;
+        }
+
+        if (! this.watcher.isEnabled())
+        {
+            Logger.Log(Logger.WARNING, "Warning : the content index can only be kept current by the content root watcher, which is disabled, so it is not built");
+            return;
+        }
+
+        this.watcher.addListener(this);
+
+        try
+        {
+            this.watcher.awaitStarted();
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+            return;
+        }
+
+        if (! this.watcher.isComplete())
+        {
+            Logger.Log(Logger.WARNING, "Warning : not every directory under the content root could be watched, so the content index is not built");
+            return;
+        }
+
+        long startedAt = System.currentTimeMillis();
+
+        synchronized (this)
+        {
+            if (this.scan(this.root))
+            {
+                this.isReady = true;
+                Logger.Log(Logger.INFORMATION, "Indexed %d files under the content root in %d ms", this.entries.size(), System.currentTimeMillis() - startedAt);
+            }
+        }
+    }
+
+    /**
+     * Loads the most requested files of the prewarm list into the content cache
+     */
+    public void prewarm()
+    {
+        Configuration config = Configuration.GetConfiguration();
+        String list = config.getPrewarmList();
+
+        if (list == null || list.isEmpty() || config.getPrewarmCount() <= 0)
+        {
+            return;
+        }
+
+        long startedAt = System.currentTimeMillis();
+        LinkedHashMap<String, Integer> requests = new LinkedHashMap<String, Integer>();
+
+        try (BufferedReader reader = Files.newBufferedReader(Paths.get(list), StandardCharsets.UTF_8))
+        {
+            String line;
+
+            while ((line = reader.readLine()) != null)
+            {
+                String target = ContentIndex.ParseTarget(line);
+
+                if (target != null)
+                {
+                    Integer count = requests.get(target);
+                    requests.put(target, count == null ? 1 : count + 1);
+                }
+            }
+        }
+        catch (Exception e)
+        {
+            Logger.Log(Logger.WARNING, "Warning : could not read the prewarm list %s : %s", list, e.toString());
+            return;
+        }
+
+        // The sort is stable, so targets requested equally often stay in the order they were first listed
+        ArrayList<Map.Entry<String, Integer>> ranked = new ArrayList<Map.Entry<String, Integer>>(requests.entrySet());
+        Collections.sort(ranked, new Comparator<Map.Entry<String, Integer>>() {
+            @Override
+            public int compare(Map.Entry<String, Integer> first, Map.Entry<String, Integer> second) {
+                return second.getValue().compareTo(first.getValue());
+            }
+        });
+
+        int loaded = 0;
+        long loadedBytes = 0;
+
+        for (int i = 0; i < ranked.size() && i < config.getPrewarmCount(); i++)
+        {
+            // The path is built the same way as for a request, so that requests find the file in the content cache
+            String path = this.rootDirectory + ranked.get(i).getKey().replace('/', File.separatorChar);
+            FileMetadata metadata = FileMetadataCache.GetCache().get(path);
+
+            if (! metadata.isFile() || ! metadata.isReadable())
+            {
+                continue;
+            }
+
+            try
+            {
+                if (FileContentCache.GetCache().load(path, metadata.getSize(), metadata.getLastModified(), metadata.getMimeType(), true) != null)
+                {
+                    loaded++;
+                    loadedBytes += metadata.getSize();
+                }
+            }
+            catch (IOException e)
+            {
+                Logger.Log(Logger.WARNING, "Warning : could not prewarm %s : %s", path, e.toString());
+            }
+        }
+
+        Logger.Log(Logger.INFORMATION, "Prewarmed %d of %d requested files (%d bytes) into the content cache in %d ms", loaded, ranked.size(), loadedBytes, System.currentTimeMillis() - startedAt);
+    }
+
+    /**
+     * Looks up a file in the index
+     * @param key the normalized path of the file
+     * @return the metadata of the file, or null if it is not in the index or the index cannot be relied upon
+     */
+    public FileMetadata get(String key)
+    {
+        if (! this.isReady || ! this.watcher.isComplete())
+        {
+            return null;
+        }
+
+        return this.entries.get(key);
+    }
+
+    /**
+     * Reads the metadata of a path which changed again, and of everything beneath it if it is a directory
+     * @see webserver.ContentRootListener#pathChanged(java.nio.file.Path, boolean)
+     */
+    @Override
+    public synchronized void pathChanged(Path path, boolean isDirectory)
+    {
+        if (this.isAbandoned)
+        {
+            return;
+        }
+
+        if (isDirectory)
+        {
+            String prefix = path.toString() + File.separator;
+            Iterator<String> iterator = this.entries.keySet().iterator();
+
+            while (iterator.hasNext())
+            {
+                if (iterator.next().startsWith(prefix))
+                {
+                    iterator.remove();
+                }
+            }
+
+            if (Files.isDirectory(path))
+            {
+                this.scan(path);
+            }
+        }
+
+        this.refresh(path);
+    }
+
+    /**
+     * Reads the whole content root again, since any of it may have changed
+     * @see webserver.ContentRootListener#changesLost()
+     */
+    @Override
+    public synchronized void changesLost()
+    {
+        if (this.isAbandoned)
+        {
+            return;
+        }
+
+        this.entries.clear();
+        this.scan(this.root);
+    }
+
+    /**
+     * Adds every file beneath a directory to the index
+     * @param directory the directory
+     * @return true if the files were added, false if there were too many, in which case the index is abandoned
+     */
+    private boolean scan(Path directory)
+    {
+        try
+        {
+            Files.walkFileTree(directory, new SimpleFileVisitor<Path>() {
+                @Override
+                public FileVisitResult visitFile(Path file, BasicFileAttributes attributes) {
+                    if (attributes.isRegularFile())
+                    {
+                        refresh(file);
+                    }
+                    return isAbandoned ? FileVisitResult.TERMINATE : FileVisitResult.CONTINUE;
+                }
+
+                @Override
+                public FileVisitResult visitFileFailed(Path file, IOException e) {
+                    return FileVisitResult.CONTINUE;
+                }
+            });
+        }
+        catch (IOException e)
+        {
+            Logger.Log(Logger.WARNING, "Warning : could not index %s : %s", directory, e.toString());
+        }
+
+        return ! this.isAbandoned;
+    }
+
+    /**
+     * Reads the metadata of a single path into the index, or removes it from the index if it is no longer a regular file
+     * @param path the normalized path
+     */
+    private void refresh(Path path)
+    {
+        String key = path.toString();
+        FileMetadata metadata = FileMetadataCache.Read(key, Long.MAX_VALUE, 0);
+
+        if (! metadata.isFile())
+        {
+            this.entries.remove(key);
+            return;
+        }
+
+        if (this.entries.size() >= this.maxFiles && ! this.entries.containsKey(key))
+        {
+            Logger.Log(Logger.WARNING, "Warning : there are more than %d files under the content root, so the content index is abandoned", this.maxFiles);
+            this.isAbandoned = true;
+            this.isReady = false;
+            this.entries.clear();
+            return;
+        }
+
+        this.entries.put(key, metadata);
+
+        // The validators are keyed by the path as a request builds it, so that requests find them already computed
+        FileValidators.Get(this.rootDirectory + File.separator + this.root.relativize(path), metadata.getSize(), metadata.getLastModified());
+    }
+
+    // Simple getters
+
+    /**
+     * @return
+     */
+    public boolean isReady()
+    {
+        return this.isReady;
+    }
+
+    /**
+     * @return
+     */
+    public int getEntries()
+    {
+        return this.entries.size();
+    }
+}
@@ -0,0 +1,27 @@
+package webserver;
+
+import java.nio.file.Path;
+
+/**
+ * Receives the changes to the content root reported by the ContentRootWatcher
+ * <p>
+ * The methods are called on the watcher's thread, so they should return quickly
+ * @author Kieran Chin Cheong
+ * @version 1.0
+ * @since 1.0
+ */
+public interface ContentRootListener
+{
+    /**
+     * Called when a path under the content root has been created, deleted or modified
+     * @param path the normalized path which changed
+     * @param isDirectory true if the path is, or was until it was deleted, a directory, in which case anything beneath it may
+     * have changed as well
+     */
+    void pathChanged(Path path, boolean isDirectory);
+
+    /**
+     * Called when the operating system dropped change events, so that anything under the content root may have changed
+     */
+    void changesLost();
+}
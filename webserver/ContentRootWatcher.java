@@ -0,0 +1,275 @@
+package webserver;
+
+import java.io.IOException;
+import java.nio.file.FileSystems;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.HashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+
+/**
+ * Watches every directory under the content root through a WatchService, and reports each change to the listeners added to it,
+ * so that what is cached about the files can be dropped as soon as they change rather than only once it expires
+ * <p>
+ * Directories created under the root are watched as they appear. If a directory cannot be watched, such as when the operating
+ * system's limit on watches has been reached, its changes are not reported and caches fall back on expiring their entries
+ * @author Kieran Chin Cheong
+ * @version 1.0
+ * @since 1.0
+ */
+public class ContentRootWatcher implements Runnable
+{
+    // Static variables
+
+    // This is the singleton instance
+    private static final ContentRootWatcher watcherSingleton = new ContentRootWatcher();
+
+    // Static methods
+
+    /**
+     * Static singleton accessor. The watcher's thread is started the first time this is called, if watching is enabled
+     * @return the singleton ContentRootWatcher
+     */
+    public static ContentRootWatcher GetWatcher()
+    {
+        return watcherSingleton;
+    }
+
+    // Member variables
+
+    private boolean enabled;
+    private Path root;
+    private CopyOnWriteArrayList<ContentRootListener> listeners;
+
+    // Whether every directory under the root is being watched, so that no change can go unreported
+    private volatile boolean isComplete;
+    private CountDownLatch started;
+    private Thread thread;
+
+    // The directory each watch key belongs to and the other way around, only used by the watcher's thread
+    private WatchService watchService;
+    private HashMap<WatchKey, Path> watchedDirectories;
+    private HashMap<Path, WatchKey> watchKeys;
+    private boolean isWatchLimitLogged;
+
+    /**
+     * Private constructor. Starts the watcher's thread if watching is enabled
+     */
+    private ContentRootWatcher()
+    {
+        this(Configuration.GetConfiguration().isEnableContentRootWatcher(), Configuration.GetConfiguration().getRootDirectory());
+    }
+
+    /**
+     * Constructor. Everything but tests should use the shared watcher
+     * @param enabled whether the root is watched at all
+     * @param rootDirectory the directory to watch, along with everything beneath it
+     */
+    ContentRootWatcher(boolean enabled, String rootDirectory)
+    {
+        this.enabled = enabled;
+        this.root = Paths.get(rootDirectory).normalize();
+        this.listeners = new CopyOnWriteArrayList<ContentRootListener>();
+        this.watchedDirectories = new HashMap<WatchKey, Path>();
+        this.watchKeys = new HashMap<Path, WatchKey>();
+        this.started = new CountDownLatch(1);
+
+        if (this.enabled)
+        {
+            this.thread = new Thread(this, "content-root-watcher");
+            this.thread.setDaemon(true);
+            this.thread.start();
+        }
+        else
+        {
+            this.started.countDown();
+        }
+    }
+
+    /**
+     * Adds a listener to be told of every change to the content root from now on
+     * @param listener the listener
+     */
+    public void addListener(ContentRootListener listener)
+    {
+        this.listeners.add(listener);
+    }
+
+    /**
+     * Waits until the directories which were under the root when the watcher started are all being watched, or have failed to be
+     * @throws InterruptedException
+     */
+    public void awaitStarted() throws InterruptedException
+    {
+        this.started.await();
+    }
+
+    /**
+     * Stops the watcher's thread, after which no more changes are reported
+     */
+    void stop()
+    {
+        if (this.thread != null)
+        {
+            this.thread.interrupt();
+        }
+    }
+
+    /**
+     * This is the main execution loop of the watcher, which waits for changes and reports them to the listeners
+     * @see java.lang.Runnable#run()
+     */
+    @Override
+    public void run()
+    {
+        try
+        {
+            this.watchService = FileSystems.getDefault().newWatchService();
+            this.isComplete = true;
+            this.watchTree(this.root);
+            this.started.countDown();
+            Logger.Log(Logger.INFORMATION, "Watching %d directories under the content root for changes", this.watchKeys.size());
+
+            while (true)
+            {
+                WatchKey key = this.watchService.take();
+                Path directory = this.watchedDirectories.get(key);
+
+                for (WatchEvent<?> event : key.pollEvents())
+                {
+                    if (event.kind() == StandardWatchEventKinds.OVERFLOW || directory == null)
+                    {
+                        Logger.Log(Logger.WARNING, "Warning : changes to the content root were lost, everything cached about it is dropped");
+
+                        for (ContentRootListener listener : this.listeners)
+                        {
+                            listener.changesLost();
+                        }
+
+                        continue;
+                    }
+
+                    Path path = directory.resolve((Path) event.context());
+                    boolean isDirectory = this.watchKeys.containsKey(path);
+
+                    // A new directory may already have files in it by the time it is watched, which are reported along with it
+                    if (event.kind() == StandardWatchEventKinds.ENTRY_CREATE && Files.isDirectory(path, LinkOption.NOFOLLOW_LINKS))
+                    {
+                        isDirectory = true;
+                        this.watchTree(path);
+                    }
+
+                    for (ContentRootListener listener : this.listeners)
+                    {
+                        listener.pathChanged(path, isDirectory);
+                    }
+                }
+
+                // A key can no longer be reset once its directory has been deleted
+                if (! key.reset())
+                {
+                    this.watchKeys.remove(this.watchedDirectories.remove(key));
+                }
+            }
+        }
+        catch (InterruptedException e)
+        {
+            Logger.Log(Logger.INFORMATION, "Content root watcher stopped");
+        }
+        catch (Exception e)
+        {
+            Logger.Log(Logger.WARNING, "Warning : could not watch the content root for changes, cached file metadata will only expire : %s", e.toString());
+        }
+        finally
+        {
+            this.isComplete = false;
+            this.started.countDown();
+
+            if (this.watchService != null)
+            {
+                try
+                {
+                    this.watchService.close();
+                }
+                catch (IOException e)
+                {
+                    Logger.Log(Logger.WARNING, "Warning : could not close the content root watch service : %s", e.toString());
+                }
+            }
+        }
+    }
+
+    /**
+     * Watches a directory and every directory beneath it
+     * @param directory the directory
+     * @throws IOException
+     */
+    private void watchTree(Path directory) throws IOException
+    {
+        Files.walkFileTree(directory, new SimpleFileVisitor<Path>() {
+            @Override
+            public FileVisitResult preVisitDirectory(Path visited, BasicFileAttributes attributes) {
+                watchDirectory(visited);
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFileFailed(Path visited, IOException e) {
+                return FileVisitResult.CONTINUE;
+            }
+        });
+    }
+
+    /**
+     * Watches a single directory for files being created, deleted or modified in it
+     * @param directory the directory
+     */
+    private void watchDirectory(Path directory)
+    {
+        try
+        {
+            WatchKey key = directory.register(this.watchService, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_DELETE, StandardWatchEventKinds.ENTRY_MODIFY);
+            this.watchedDirectories.put(key, directory);
+            this.watchKeys.put(directory, key);
+        }
+        catch (IOException e)
+        {
+            this.isComplete = false;
+
+            // Only logged once, since every directory after the operating system's limit on watches has been reached fails alike
+            if (! this.isWatchLimitLogged)
+            {
+                Logger.Log(Logger.WARNING, "Warning : could not watch %s for changes, cached file metadata beneath it will only expire : %s", directory, e.toString());
+                this.isWatchLimitLogged = true;
+            }
+        }
+    }
+
+    // Simple getters
+
+    /**
+     * @return
+     */
+    public boolean isEnabled()
+    {
+        return this.enabled;
+    }
+
+    /**
+     * @return true if every directory under the root is being watched, false if changes to some of them go unreported
+     */
+    public boolean isComplete()
+    {
+        return this.isComplete;
+    }
+}
@@ -0,0 +1,371 @@
+package webserver;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * @author Kieran Chin Cheong
+ * @version 1.0
+ * @since 1.0
+ */
+public class FileContentCache
+{
+    // Static variables
+
+    // Minimum time between two logs of the cache statistics, in milliseconds
+    private static final long STATISTICS_LOG_INTERVAL = 60000;
+
+    // This is the singleton instance
+    private static final FileContentCache cacheSingleton = new FileContentCache();
+
+    // Static methods
+
+    /**
+     * Static singleton accessor
+     * @return the singleton FileContentCache
+     */
+    public static FileContentCache GetCache()
+    {
+        return cacheSingleton;
+    }
+
+    // Member variables
+
+    private boolean enabled;
+    private long maxSize;
+    private long maxFileSize;
+    private long revalidateInterval;
+
+    // Entries are looked up without locking. Adding and removing them, and the current size, are guarded by this object's monitor
+    private ConcurrentHashMap<String, CachedFile> entries;
+    private long currentSize;
+
+    // Loads in progress, keyed by path, so that concurrent misses for a file share a single read
+    private ConcurrentHashMap<String, FutureTask<CachedFile>> inFlight;
+
+    // Statistics
+    private LongAdder hits;
+    private LongAdder misses;
+    private LongAdder evictions;
+    private volatile long lastStatisticsLog;
+
+    /**
+     * Private constructor. Sizes the cache from the configuration
+     */
+    private FileContentCache()
+    {
+        Configuration config = Configuration.GetConfiguration();
+
+        this.enabled = config.isEnableFileCache() && config.getFileCacheMaxSize() > 0;
+        this.maxSize = config.getFileCacheMaxSize();
+        this.maxFileSize = Math.min(config.getFileCacheMaxFileSize(), Integer.MAX_VALUE);
+        this.revalidateInterval = config.getFileCacheRevalidateInterval();
+        this.entries = new ConcurrentHashMap<String, CachedFile>();
+        this.inFlight = new ConcurrentHashMap<String, FutureTask<CachedFile>>();
+        this.hits = new LongAdder();
+        this.misses = new LongAdder();
+        this.evictions = new LongAdder();
+        this.lastStatisticsLog = System.currentTimeMillis();
+    }
+
+    /**
+     * Looks up a file in the cache
+     * <p>
+     * The file system is only consulted if the entry has not been validated within the revalidation interval, in which case
+     * the file's modification time and size are compared against those of the cached contents. An entry which no longer matches
+     * is removed and reported as a miss
+     * @param path the absolute path of the file on the local file system
+     * @return the cached file, or null if it is not cached
+     */
+    public CachedFile get(String path)
+    {
+        if (! this.enabled)
+        {
+            return null;
+        }
+
+        CachedFile entry = this.entries.get(path);
+        long now = System.currentTimeMillis();
+        this.logStatistics(now);
+
+        if (entry == null)
+        {
+            this.misses.increment();
+            return null;
+        }
+
+        if (now - entry.getValidatedAt() >= this.revalidateInterval)
+        {
+            // Note that lastModified() returns 0 for a file which no longer exists, so this also catches deleted files
+            File file = new File(path);
+
+            if (file.lastModified() != entry.getLastModified() || file.length() != entry.getSize())
+            {
+                Logger.Log(Logger.INFORMATION, "Cached file %s has changed, removing it from the cache", path);
+                this.remove(entry);
+                this.misses.increment();
+                return null;
+            }
+
+            entry.setValidatedAt(now);
+        }
+
+        entry.setLastUsed(now);
+        this.hits.increment();
+        return entry;
+    }
+
+    /**
+     * Reads a version of a file into the cache, evicting the entries used least recently as needed to stay within the maximum cache size
+     * <p>
+     * Only one read of a file runs at a time, and every miss for the file while it runs shares its result. A caller which may wait
+     * runs the read itself, or waits for the one in progress. Otherwise the read is handed to the loader threads, and the caller
+     * sends the file from the file system until the contents are cached
+     * @param path the absolute path of the file on the local file system
+     * @param size the size of the file, used to decide whether it should be cached before it is opened
+     * @param lastModified the modification time of the file
+     * @param mimeType the MIME type of the file
+     * @param isWaiting true if the caller may wait for the file to be read, false if it must not block
+     * @return the cached file, or null if it is too large to be cached, is not cached yet and the caller must not wait, or the read
+     * in progress was of another version of the file
+     * @throws IOException
+     */
+    public CachedFile load(final String path, long size, long lastModified, final String mimeType, boolean isWaiting) throws IOException
+    {
+        if (! this.enabled || size > this.maxFileSize || size > this.maxSize)
+        {
+            return null;
+        }
+
+        FutureTask<CachedFile> task = new FutureTask<CachedFile>(new Callable<CachedFile>() {
+            @Override
+            public CachedFile call() throws IOException {
+                try
+                {
+                    return FileContentCache.this.readAndCache(path, mimeType);
+                }
+                finally
+                {
+                    FileContentCache.this.inFlight.remove(path);
+                }
+            }
+        });
+
+        FutureTask<CachedFile> running = this.inFlight.putIfAbsent(path, task);
+
+        if (running == null)
+        {
+            running = task;
+
+            if (isWaiting)
+            {
+                task.run();
+            }
+            else
+            {
+                FileLoaderPool.GetPool().execute(task);
+            }
+        }
+
+        if (! isWaiting && ! running.isDone())
+        {
+            return null;
+        }
+
+        CachedFile entry;
+
+        try
+        {
+            entry = running.get();
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while waiting for " + path + " to be read");
+        }
+        catch (ExecutionException e)
+        {
+            if (e.getCause() instanceof IOException)
+            {
+                throw (IOException) e.getCause();
+            }
+
+            throw new IOException("Error reading " + path, e.getCause());
+        }
+
+        // A read which was already in progress may have been of an earlier version of the file
+        if (entry == null || entry.getSize() != size || entry.getLastModified() != lastModified)
+        {
+            return null;
+        }
+
+        return entry;
+    }
+
+    /**
+     * Reads the current version of a file and adds it to the cache
+     * @param path the absolute path of the file on the local file system
+     * @param mimeType the MIME type of the file
+     * @return the cached file, or null if it has grown too large to be cached
+     * @throws IOException
+     */
+    private CachedFile readAndCache(String path, String mimeType) throws IOException
+    {
+        // Take the modification time before reading, so that a change made while reading is caught by the next revalidation
+        long lastModified = new File(path).lastModified();
+        ByteBuffer content;
+
+        try (FileChannel file = FileChannel.open(Paths.get(path), StandardOpenOption.READ))
+        {
+            // The file may have changed size since it was checked
+            long currentFileSize = file.size();
+
+            if (currentFileSize > this.maxFileSize || currentFileSize > this.maxSize)
+            {
+                return null;
+            }
+
+            // Hold the contents outside of the Java heap, so that a large cache does not add to garbage collection work
+            content = ByteBuffer.allocateDirect((int) currentFileSize);
+
+            while (content.hasRemaining() && file.read(content) >= 0)
+            {
+                // Keep reading until the buffer is full or the end of the file is reached
+            }
+
+            content.flip();
+        }
+
+        CachedFile entry = new CachedFile(path, content.asReadOnlyBuffer(), lastModified, mimeType, System.currentTimeMillis());
+
+        synchronized (this)
+        {
+            CachedFile previous = this.entries.put(path, entry);
+
+            if (previous != null)
+            {
+                this.currentSize -= previous.getSize();
+            }
+
+            this.currentSize += entry.getSize();
+
+            if (this.currentSize > this.maxSize)
+            {
+                this.evict(entry);
+            }
+        }
+
+        Logger.Log(Logger.INFORMATION, "Loaded %s into the content cache (%d bytes)", path, entry.getSize());
+        return entry;
+    }
+
+    /**
+     * Evicts the entries used least recently until the cache fits again. Must be called holding this object's monitor
+     * <p>
+     * Hits only record when the entry was used rather than reordering the entries, so that they need no lock. The order is
+     * only worked out here, when entries must be evicted
+     * @param added the entry just added, which is never evicted
+     */
+    private void evict(CachedFile added)
+    {
+        ArrayList<CachedFile> candidates = new ArrayList<CachedFile>(this.entries.values());
+        Collections.sort(candidates, new Comparator<CachedFile>() {
+            @Override
+            public int compare(CachedFile first, CachedFile second) {
+                return Long.compare(first.getLastUsed(), second.getLastUsed());
+            }
+        });
+
+        for (int i = 0; i < candidates.size() && this.currentSize > this.maxSize; i++)
+        {
+            CachedFile evicted = candidates.get(i);
+
+            if (evicted != added && this.entries.remove(evicted.getPath(), evicted))
+            {
+                this.currentSize -= evicted.getSize();
+                this.evictions.increment();
+            }
+        }
+    }
+
+    /**
+     * Removes an entry from the cache, if it has not already been replaced
+     * @param entry the entry to remove
+     */
+    private synchronized void remove(CachedFile entry)
+    {
+        if (this.entries.remove(entry.getPath(), entry))
+        {
+            this.currentSize -= entry.getSize();
+        }
+    }
+
+    /**
+     * Logs the cache statistics, at most once per statistics interval
+     * @param now the current time in milliseconds
+     */
+    private void logStatistics(long now)
+    {
+        if (now - this.lastStatisticsLog < STATISTICS_LOG_INTERVAL)
+        {
+            return;
+        }
+
+        this.lastStatisticsLog = now;
+        Logger.Log(Logger.ALWAYS, "CACHE: hits %d misses %d evictions %d entries %d bytes %d", this.getHits(), this.getMisses(), this.getEvictions(), this.getEntryCount(), this.getCurrentSize());
+    }
+
+    // Simple getters
+
+    /**
+     * @return
+     */
+    public long getHits()
+    {
+        return this.hits.sum();
+    }
+
+    /**
+     * @return
+     */
+    public long getMisses()
+    {
+        return this.misses.sum();
+    }
+
+    /**
+     * @return
+     */
+    public long getEvictions()
+    {
+        return this.evictions.sum();
+    }
+
+    /**
+     * @return
+     */
+    public int getEntryCount()
+    {
+        return this.entries.size();
+    }
+
+    /**
+     * @return
+     */
+    public synchronized long getCurrentSize()
+    {
+        return this.currentSize;
+    }
+}
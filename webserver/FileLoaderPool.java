@@ -0,0 +1,61 @@
+package webserver;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * @author Kieran Chin Cheong
+ * @version 1.0
+ * @since 1.0
+ */
+public class FileLoaderPool
+{
+    // Static variables
+
+    // This is the singleton instance
+    private static final FileLoaderPool poolSingleton = new FileLoaderPool();
+
+    // Static methods
+
+    /**
+     * Static singleton accessor
+     * @return the singleton FileLoaderPool
+     */
+    public static FileLoaderPool GetPool()
+    {
+        return poolSingleton;
+    }
+
+    // Member variables
+
+    // Threads which read and map files for callers which must not block, such as the selector event loops
+    private ExecutorService loaders;
+
+    /**
+     * Private constructor
+     */
+    private FileLoaderPool()
+    {
+        // Loading is mostly spent waiting on the disk, so there are at least as many threads as processors
+        this.loaders = Executors.newFixedThreadPool(Math.max(2, Runtime.getRuntime().availableProcessors()), new ThreadFactory() {
+            private int count;
+
+            @Override
+            public synchronized Thread newThread(Runnable task) {
+                Thread thread = new Thread(task, "loader-" + this.count++);
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+    }
+
+    /**
+     * Runs a task on one of the loader threads
+     * @param task the task to run
+     */
+    public void execute(Runnable task)
+    {
+        this.loaders.execute(task);
+    }
+}
@@ -0,0 +1,99 @@
+package webserver;
+
+/**
+ * What the FileMetadataCache knows about a path under the content root, including that nothing exists there
+ * @author Kieran Chin Cheong
+ * @version 1.0
+ * @since 1.0
+ */
+public class FileMetadata
+{
+    // Member variables
+
+    private boolean exists;
+    private boolean isFile;
+    private boolean isReadable;
+    private long size;
+    private long lastModified;
+    private String mimeType;
+    private long expiresAt;
+
+    /**
+     * Constructor
+     * @param exists true if anything exists at the path
+     * @param isFile true if the path is a regular file
+     * @param isReadable true if the path can be read by the server
+     * @param size the size of the file in bytes, or 0 if it does not exist
+     * @param lastModified the modification time of the file, or 0 if it does not exist
+     * @param mimeType the MIME type of the file, or null if it does not exist
+     * @param expiresAt the time after which the file system must be consulted again, in milliseconds since the epoch
+     */
+    public FileMetadata(boolean exists, boolean isFile, boolean isReadable, long size, long lastModified, String mimeType, long expiresAt)
+    {
+        this.exists = exists;
+        this.isFile = isFile;
+        this.isReadable = isReadable;
+        this.size = size;
+        this.lastModified = lastModified;
+        this.mimeType = mimeType;
+        this.expiresAt = expiresAt;
+    }
+
+    // Simple getters
+
+    /**
+     * @return
+     */
+    public boolean exists()
+    {
+        return this.exists;
+    }
+
+    /**
+     * @return
+     */
+    public boolean isFile()
+    {
+        return this.isFile;
+    }
+
+    /**
+     * @return
+     */
+    public boolean isReadable()
+    {
+        return this.isReadable;
+    }
+
+    /**
+     * @return
+     */
+    public long getSize()
+    {
+        return this.size;
+    }
+
+    /**
+     * @return
+     */
+    public long getLastModified()
+    {
+        return this.lastModified;
+    }
+
+    /**
+     * @return
+     */
+    public String getMimeType()
+    {
+        return this.mimeType;
+    }
+
+    /**
+     * @return
+     */
+    public long getExpiresAt()
+    {
+        return this.expiresAt;
+    }
+}
@@ -0,0 +1,330 @@
+package webserver;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.InvalidPathException;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Caches the result of looking up files under the content root, so that serving a request does not need a stat of the file
+ * <p>
+ * Paths which do not exist are cached too, for a shorter time, so that requests for missing files are answered with 404 Not Found
+ * from memory rather than by asking the file system each time. Entries expire after their time to live, and are dropped as soon as
+ * the ContentRootWatcher reports that their path has changed
+ * @author Kieran Chin Cheong
+ * @version 1.0
+ * @since 1.0
+ */
+public class FileMetadataCache implements ContentRootListener
+{
+    // Static variables
+
+    // Minimum time between two sweeps of the expired entries once the cache is full, in milliseconds
+    private static final long SWEEP_INTERVAL = 1000;
+
+    // This is the singleton instance
+    private static final FileMetadataCache cacheSingleton = new FileMetadataCache();
+
+    // Static methods
+
+    /**
+     * Static singleton accessor
+     * @return the singleton FileMetadataCache
+     */
+    public static FileMetadataCache GetCache()
+    {
+        return cacheSingleton;
+    }
+
+    /**
+     * Asks the file system about a path
+     * @param path the absolute path on the local file system
+     * @param expiresAt until when the metadata of an existing path may be cached, in milliseconds since the epoch
+     * @param negativeExpiresAt until when the metadata of a missing path may be cached, in milliseconds since the epoch
+     * @return the metadata of the path
+     */
+    public static FileMetadata Read(String path, long expiresAt, long negativeExpiresAt)
+    {
+        try
+        {
+            Path filePath = Paths.get(path);
+            BasicFileAttributes attributes = Files.readAttributes(filePath, BasicFileAttributes.class);
+            String mimeType = MimeTypes.GetMimeTypes().resolve(filePath.normalize().toString());
+
+            return new FileMetadata(true, attributes.isRegularFile(), Files.isReadable(filePath), attributes.size(),
+                                    attributes.lastModifiedTime().toMillis(), mimeType, expiresAt);
+        }
+        catch (NoSuchFileException | InvalidPathException e)
+        {
+            return new FileMetadata(false, false, false, 0, 0, null, negativeExpiresAt);
+        }
+        catch (IOException e)
+        {
+            // Such as a path through a file which is not a directory, which is as good as missing
+            Logger.Log(Logger.INFORMATION, "Could not read the attributes of %s : %s", path, e.toString());
+            return new FileMetadata(false, false, false, 0, 0, null, negativeExpiresAt);
+        }
+    }
+
+    /**
+     * @param path an absolute path on the local file system
+     * @return the normalized form of the path, so that the same file is always found under the same key
+     */
+    public static String Key(String path)
+    {
+        try
+        {
+            return Paths.get(path).normalize().toString();
+        }
+        catch (InvalidPathException e)
+        {
+            return path;
+        }
+    }
+
+    // Member variables
+
+    private boolean enabled;
+    private long ttl;
+    private long negativeTtl;
+    private int maxEntries;
+
+    private ConcurrentHashMap<String, FileMetadata> entries;
+    private volatile long lastSweep;
+
+    // Incremented on every invalidation, so that a lookup racing with a change does not cache what it read before the change
+    private AtomicLong generation;
+
+    // Statistics
+    private LongAdder hits;
+    private LongAdder misses;
+    private LongAdder invalidations;
+
+    /**
+     * Private constructor. Reads the settings from the configuration, and listens for changes to the content root
+     */
+    private FileMetadataCache()
+    {
+        this(Configuration.GetConfiguration().isEnableMetadataCache(), Configuration.GetConfiguration().getMetadataCacheTtl(),
+            Configuration.GetConfiguration().getMetadataCacheNegativeTtl(), Configuration.GetConfiguration().getMetadataCacheMaxEntries());
+
+        if (this.enabled)
+        {
+            ContentRootWatcher.GetWatcher().addListener(this);
+        }
+    }
+
+    /**
+     * Constructor. Everything but tests should use the shared cache, which is the only one told about changes to the content root
+     * @param enabled whether metadata is cached at all
+     * @param ttl the time to live of the entry of an existing path, in milliseconds
+     * @param negativeTtl the time to live of the entry of a missing path, in milliseconds
+     * @param maxEntries the maximum number of entries
+     */
+    FileMetadataCache(boolean enabled, long ttl, long negativeTtl, int maxEntries)
+    {
+        this.enabled = enabled && maxEntries > 0;
+        this.ttl = ttl;
+        this.negativeTtl = negativeTtl;
+        this.maxEntries = maxEntries;
+        this.entries = new ConcurrentHashMap<String, FileMetadata>();
+        this.generation = new AtomicLong();
+        this.hits = new LongAdder();
+        this.misses = new LongAdder();
+        this.invalidations = new LongAdder();
+    }
+
+    /**
+     * Looks up the metadata of a path, only consulting the file system if it is not cached or its entry has expired
+     * @param path the absolute path on the local file system
+     * @return the metadata of the path, which tells whether it exists
+     */
+    public FileMetadata get(String path)
+    {
+        String key = FileMetadataCache.Key(path);
+
+        // Files in the content index never need the file system
+        FileMetadata metadata = ContentIndex.GetIndex().get(key);
+
+        if (metadata != null)
+        {
+            this.hits.increment();
+            return metadata;
+        }
+
+        long now = System.currentTimeMillis();
+
+        if (! this.enabled)
+        {
+            return FileMetadataCache.Read(path, now, now);
+        }
+
+        metadata = this.entries.get(key);
+
+        if (metadata != null && now < metadata.getExpiresAt())
+        {
+            this.hits.increment();
+            return metadata;
+        }
+
+        this.misses.increment();
+
+        long readGeneration = this.generation.get();
+        metadata = FileMetadataCache.Read(path, now + this.ttl, now + this.negativeTtl);
+
+        this.store(key, metadata, readGeneration, now);
+
+        return metadata;
+    }
+
+    /**
+     * Caches the metadata read for a path, unless the path may have changed since it was read
+     * @param key the normalized path
+     * @param metadata the metadata read
+     * @param readGeneration the generation before the metadata was read
+     * @param now the current time
+     */
+    void store(String key, FileMetadata metadata, long readGeneration, long now)
+    {
+        if (this.entries.size() >= this.maxEntries && ! this.entries.containsKey(key))
+        {
+            this.sweep(now);
+        }
+
+        // When the cache is still full the metadata is not cached, rather than evicting entries which may still be in use
+        if (this.entries.size() < this.maxEntries || this.entries.containsKey(key))
+        {
+            this.entries.put(key, metadata);
+
+            // The path may have changed while it was being read, in which case what was read may already be out of date
+            if (this.generation.get() != readGeneration)
+            {
+                this.entries.remove(key, metadata);
+            }
+        }
+    }
+
+    /**
+     * Drops the entry of a path which changed, and of everything beneath it if it is a directory
+     * @see webserver.ContentRootListener#pathChanged(java.nio.file.Path, boolean)
+     */
+    @Override
+    public void pathChanged(Path path, boolean isDirectory)
+    {
+        String key = path.toString();
+        this.generation.incrementAndGet();
+
+        if (this.entries.remove(key) != null)
+        {
+            this.invalidations.increment();
+        }
+
+        if (isDirectory)
+        {
+            String prefix = key + File.separator;
+            Iterator<String> iterator = this.entries.keySet().iterator();
+
+            while (iterator.hasNext())
+            {
+                if (iterator.next().startsWith(prefix))
+                {
+                    iterator.remove();
+                    this.invalidations.increment();
+                }
+            }
+        }
+    }
+
+    /**
+     * Drops every entry, since any of them may be out of date
+     * @see webserver.ContentRootListener#changesLost()
+     */
+    @Override
+    public void changesLost()
+    {
+        this.generation.incrementAndGet();
+        this.invalidations.add(this.entries.size());
+        this.entries.clear();
+    }
+
+    /**
+     * Removes the expired entries, at most once per sweep interval
+     * @param now the current time
+     */
+    private void sweep(long now)
+    {
+        if (now - this.lastSweep < SWEEP_INTERVAL)
+        {
+            return;
+        }
+
+        this.lastSweep = now;
+        Iterator<FileMetadata> iterator = this.entries.values().iterator();
+
+        while (iterator.hasNext())
+        {
+            if (now >= iterator.next().getExpiresAt())
+            {
+                iterator.remove();
+            }
+        }
+    }
+
+    // Simple getters
+
+    /**
+     * @return the number of invalidations so far, to be read before reading the metadata passed to store()
+     */
+    long getGeneration()
+    {
+        return this.generation.get();
+    }
+
+    /**
+     * @return
+     */
+    public boolean isEnabled()
+    {
+        return this.enabled;
+    }
+
+    /**
+     * @return
+     */
+    public long getHits()
+    {
+        return this.hits.sum();
+    }
+
+    /**
+     * @return
+     */
+    public long getMisses()
+    {
+        return this.misses.sum();
+    }
+
+    /**
+     * @return
+     */
+    public long getInvalidations()
+    {
+        return this.invalidations.sum();
+    }
+
+    /**
+     * @return
+     */
+    public int getEntries()
+    {
+        return this.entries.size();
+    }
+}
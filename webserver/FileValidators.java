@@ -0,0 +1,184 @@
+package webserver;
+
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * @author Kieran Chin Cheong
+ * @version 1.0
+ * @since 1.0
+ */
+public class FileValidators
+{
+    // Static variables
+
+    // Validators of the current version of each file served, so that they are only computed when a file changes
+    private static final ConcurrentHashMap<String, FileValidators> currentValidators = new ConcurrentHashMap<String, FileValidators>();
+
+    // Static methods
+
+    /**
+     * Returns the validators of a version of a file, computing them only if that version has not been seen before
+     * @param path the absolute path of the file on the local file system
+     * @param size the size of the file
+     * @param lastModified the modification time of the file
+     * @return the validators
+     */
+    public static FileValidators Get(String path, long size, long lastModified)
+    {
+        FileValidators validators = currentValidators.get(path);
+
+        if (validators == null || validators.size != size || validators.lastModified != lastModified)
+        {
+            validators = new FileValidators(size, lastModified, null);
+            currentValidators.put(path, validators);
+        }
+
+        return validators;
+    }
+
+    // Member variables
+
+    private final long size;
+    private final long lastModified;
+    private final String entityTag;
+    private final String lastModifiedDate;
+    private final String contentCoding;
+
+    // Validators of this version of the file when compressed on the fly
+    private volatile FileValidators encodedValidators;
+
+    /**
+     * Constructor. Only to be used internally
+     * @param size the size of the file
+     * @param lastModified the modification time of the file
+     * @param contentCoding the content coding the file is compressed with on the fly, or null if it is sent as it is
+     */
+    private FileValidators(long size, long lastModified, String contentCoding)
+    {
+        this.size = size;
+        this.lastModified = lastModified;
+        this.contentCoding = contentCoding;
+
+        // A strong entity tag, which changes whenever the size or the modification time of the file do
+        // A compressed representation has different bytes, so it must also have a different entity tag
+        this.entityTag = contentCoding == null ? String.format("\"%x-%x\"", lastModified, size) : String.format("\"%x-%x-%s\"", lastModified, size, contentCoding);
+        this.lastModifiedDate = HTTPDate.Format(lastModified);
+    }
+
+    /**
+     * Returns the validators of this version of the file when it is compressed on the fly
+     * @param contentCoding the content coding the file is compressed with
+     * @return the validators
+     */
+    public FileValidators getEncodedValidators(String contentCoding)
+    {
+        FileValidators validators = this.encodedValidators;
+
+        if (validators == null || ! validators.contentCoding.equals(contentCoding))
+        {
+            validators = new FileValidators(this.size, this.lastModified, contentCoding);
+            this.encodedValidators = validators;
+        }
+
+        return validators;
+    }
+
+    /**
+     * Evaluates the conditional header fields of a request against this version of the file
+     * <p>
+     * As required by RFC 7232, if-modified-since is only evaluated if the request does not have an if-none-match header field
+     * @param request the request
+     * @return true if the client's copy of the file is current, so that a 304 Not Modified response can be sent instead of the file
+     */
+    public boolean isNotModified(HTTPRequest request)
+    {
+        String ifNoneMatch = request.getHeaderField("if-none-match");
+
+        if (ifNoneMatch != null)
+        {
+            return this.matchesAny(ifNoneMatch);
+        }
+
+        String ifModifiedSince = request.getHeaderField("if-modified-since");
+
+        if (ifModifiedSince != null)
+        {
+            long since = HTTPDate.Parse(ifModifiedSince);
+
+            // HTTP dates only have a resolution of one second. An invalid date is ignored
+            return since >= 0 && this.lastModified / 1000 <= since / 1000;
+        }
+
+        return false;
+    }
+
+    /**
+     * Compares the entity tag against a list of entity tags from an if-none-match header field
+     * <p>
+     * The weak comparison function is used, so a weak tag in the list matches if it is otherwise equal
+     * @param entityTags comma separated list of entity tags, or "*"
+     * @return true if any of the entity tags match
+     */
+    private boolean matchesAny(String entityTags)
+    {
+        int length = entityTags.length();
+        int start = 0;
+
+        while (start < length)
+        {
+            int end = entityTags.indexOf(',', start);
+
+            if (end < 0)
+            {
+                end = length;
+            }
+
+            // Trim the surrounding whitespace and any weak indicator
+            int from = start;
+            int to = end;
+
+            while (from < to && entityTags.charAt(from) == ' ')
+            {
+                from++;
+            }
+
+            while (to > from && entityTags.charAt(to - 1) == ' ')
+            {
+                to--;
+            }
+
+            if (entityTags.startsWith("W/", from))
+            {
+                from += 2;
+            }
+
+            if ((to - from == 1 && entityTags.charAt(from) == '*') ||
+                (to - from == this.entityTag.length() && entityTags.startsWith(this.entityTag, from)))
+            {
+                return true;
+            }
+
+            start = end + 1;
+        }
+
+        return false;
+    }
+
+    // Simple getters
+
+    /**
+     * @return
+     */
+    public String getEntityTag()
+    {
+        return this.entityTag;
+    }
+
+    /**
+     * @return
+     */
+    public String getLastModifiedDate()
+    {
+        return this.lastModifiedDate;
+    }
+}
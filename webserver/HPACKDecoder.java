@@ -0,0 +1,171 @@
+package webserver;
+
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+
+/**
+ * Decodes the header blocks received on an HTTP/2 connection, as defined by HPACK (RFC 7541)
+ * <p>
+ * A decoder keeps the dynamic table of the fields its client has asked it to remember, so every header block received on the
+ * connection must be decoded by the same decoder, in the order it was received
+ * @author Kieran Chin Cheong
+ * @version 1.0
+ * @since 1.0
+ */
+public class HPACKDecoder
+{
+    // Member variables
+
+    private HPACKTable table;
+
+    /**
+     * Constructor
+     */
+    public HPACKDecoder()
+    {
+        this.table = new HPACKTable();
+    }
+
+    /**
+     * Decodes a complete header block
+     * @param block the header block, between its position and limit
+     * @return the name and value of each field, in the order they were sent
+     * @throws HTTP2Exception if the block is not validly encoded, in which case the connection can no longer be used
+     */
+    public ArrayList<String[]> decode(ByteBuffer block) throws HTTP2Exception
+    {
+        ArrayList<String[]> fields = new ArrayList<String[]>();
+
+        try
+        {
+            while (block.hasRemaining())
+            {
+                int b = block.get(block.position()) & 0xff;
+
+                // Indexed field
+                if ((b & 0x80) != 0)
+                {
+                    int index = this.readInteger(block, 7);
+
+                    if (index == 0)
+                    {
+                        throw new HTTP2Exception(HTTP2Exception.COMPRESSION_ERROR, "Invalid header table index 0");
+                    }
+
+                    fields.add(this.table.get(index));
+                }
+                // Literal field to be added to the dynamic table
+                else if ((b & 0x40) != 0)
+                {
+                    String[] field = this.readLiteral(block, 6);
+                    this.table.add(field[0], field[1]);
+                    fields.add(field);
+                }
+                // Dynamic table size update, which may only come before the first field
+                else if ((b & 0x20) != 0)
+                {
+                    int maxSize = this.readInteger(block, 5);
+
+                    if (! fields.isEmpty() || maxSize > HPACKTable.MAX_TABLE_SIZE)
+                    {
+                        throw new HTTP2Exception(HTTP2Exception.COMPRESSION_ERROR, "Invalid dynamic table size update");
+                    }
+
+                    this.table.setMaxSize(maxSize);
+                }
+                // Literal field not to be added to the dynamic table, whether or not it may ever be
+                else
+                {
+                    fields.add(this.readLiteral(block, 4));
+                }
+            }
+        }
+        catch (BufferUnderflowException | IndexOutOfBoundsException e)
+        {
+            // A field runs past the end of the block
+            throw new HTTP2Exception(HTTP2Exception.COMPRESSION_ERROR, "Truncated header block");
+        }
+
+        return fields;
+    }
+
+    /**
+     * Reads a literal field, whose name is either indexed or given as a string
+     * @param block the header block
+     * @param prefixBits the number of bits of the name index in the first byte
+     * @return the name and value of the field
+     * @throws HTTP2Exception
+     */
+    private String[] readLiteral(ByteBuffer block, int prefixBits) throws HTTP2Exception
+    {
+        int nameIndex = this.readInteger(block, prefixBits);
+        String name = nameIndex == 0 ? this.readString(block) : this.table.get(nameIndex)[0];
+
+        return new String[] {name, this.readString(block)};
+    }
+
+    /**
+     * Reads a string, which is either sent as it is or Huffman coded
+     * @param block the header block
+     * @return the string, with each byte as a character
+     * @throws HTTP2Exception
+     */
+    private String readString(ByteBuffer block) throws HTTP2Exception
+    {
+        boolean isHuffmanCoded = (block.get(block.position()) & 0x80) != 0;
+        int length = this.readInteger(block, 7);
+
+        if (length > block.remaining())
+        {
+            throw new HTTP2Exception(HTTP2Exception.COMPRESSION_ERROR, "Truncated header block");
+        }
+
+        if (isHuffmanCoded)
+        {
+            return HPACKHuffman.Decode(block, length);
+        }
+
+        byte[] bytes = new byte[length];
+        block.get(bytes);
+
+        return new String(bytes, StandardCharsets.ISO_8859_1);
+    }
+
+    /**
+     * Reads an integer, which starts in the low bits of the current byte and continues in 7 bit groups while they do not fit
+     * @param block the header block
+     * @param prefixBits the number of bits of the integer in the first byte
+     * @return the integer
+     * @throws HTTP2Exception if the integer is too large
+     */
+    private int readInteger(ByteBuffer block, int prefixBits) throws HTTP2Exception
+    {
+        int mask = (1 << prefixBits) - 1;
+        int value = block.get() & mask;
+
+        if (value < mask)
+        {
+            return value;
+        }
+
+        int shift = 0;
+        int b;
+
+        do
+        {
+            if (shift > 21)
+            {
+                throw new HTTP2Exception(HTTP2Exception.COMPRESSION_ERROR, "Integer too large in header block");
+            }
+
+            b = block.get() & 0xff;
+            value += (b & 0x7f) << shift;
+            shift += 7;
+        }
+        while ((b & 0x80) != 0);
+
+        return value;
+    }
+}
@@ -0,0 +1,153 @@
+package webserver;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+/**
+ * Encodes the header blocks sent on an HTTP/2 connection, as defined by HPACK (RFC 7541)
+ * <p>
+ * Fields which repeat from one response to the next, such as the content type, are added to the dynamic table so that later
+ * responses only send their index. Fields which are different for every response are sent as literals without being added, so
+ * that they do not evict the ones worth keeping. Strings are sent as they are rather than Huffman coded
+ * @author Kieran Chin Cheong
+ * @version 1.0
+ * @since 1.0
+ */
+public class HPACKEncoder
+{
+    // Static variables
+
+    // Header fields whose values are rarely repeated, which are never added to the dynamic table
+    private static final String[] UNINDEXED_NAMES = {"content-length", "content-range", "etag", "last-modified", "server-thread-id"};
+
+    // Member variables
+
+    private HPACKTable table;
+
+    // Set when the client has changed the size its table may have, which must be signalled at the start of the next header block
+    private boolean isSizeUpdatePending;
+
+    /**
+     * Constructor
+     */
+    public HPACKEncoder()
+    {
+        this.table = new HPACKTable();
+    }
+
+    /**
+     * Encodes a complete header block
+     * <p>
+     * Header blocks must be sent in the order they are encoded, since each may refer to fields added to the table by the ones before it
+     * @param fields the name and value of each field, with names in lower case and pseudo-header fields first
+     * @param out the stream to write the header block to
+     */
+    public void encode(List<String[]> fields, ByteArrayOutputStream out)
+    {
+        if (this.isSizeUpdatePending)
+        {
+            this.writeInteger(out, 0x20, 5, this.table.getMaxSize());
+            this.isSizeUpdatePending = false;
+        }
+
+        for (String[] field : fields)
+        {
+            int index = this.table.find(field[0], field[1]);
+
+            // The whole field is already in the table
+            if (index > 0)
+            {
+                this.writeInteger(out, 0x80, 7, index);
+                continue;
+            }
+
+            // Otherwise the field is sent as a literal, with its name indexed if the table already has it
+            if (this.isIndexable(field[0]))
+            {
+                this.writeInteger(out, 0x40, 6, -index);
+                this.table.add(field[0], field[1]);
+            }
+            else
+            {
+                this.writeInteger(out, 0x00, 4, -index);
+            }
+
+            if (index == 0)
+            {
+                this.writeString(out, field[0]);
+            }
+
+            this.writeString(out, field[1]);
+        }
+    }
+
+    /**
+     * Changes the size of the dynamic table, following a change to the size the client allows it to have
+     * @param maxSize the size allowed by the client, of which no more than HPACKTable.MAX_TABLE_SIZE is used
+     */
+    public void setMaxTableSize(int maxSize)
+    {
+        this.table.setMaxSize(Math.min(maxSize, HPACKTable.MAX_TABLE_SIZE));
+        this.isSizeUpdatePending = true;
+    }
+
+    /**
+     * @param name the name of a header field
+     * @return true if fields with the name are worth adding to the dynamic table
+     */
+    private boolean isIndexable(String name)
+    {
+        for (int i = 0; i < UNINDEXED_NAMES.length; i++)
+        {
+            if (UNINDEXED_NAMES[i].equals(name))
+            {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * Writes a string as it is, with each character as a byte
+     * @param out the stream to write to
+     * @param value the string
+     */
+    private void writeString(ByteArrayOutputStream out, String value)
+    {
+        byte[] bytes = value.getBytes(StandardCharsets.ISO_8859_1);
+
+        this.writeInteger(out, 0x00, 7, bytes.length);
+        out.write(bytes, 0, bytes.length);
+    }
+
+    /**
+     * Writes an integer, which starts in the low bits of the first byte and continues in 7 bit groups if it does not fit
+     * @param out the stream to write to
+     * @param pattern the bits above the prefix in the first byte
+     * @param prefixBits the number of bits of the integer in the first byte
+     * @param value the integer, which must not be negative
+     */
+    private void writeInteger(ByteArrayOutputStream out, int pattern, int prefixBits, int value)
+    {
+        int mask = (1 << prefixBits) - 1;
+
+        if (value < mask)
+        {
+            out.write(pattern | value);
+            return;
+        }
+
+        out.write(pattern | mask);
+        value -= mask;
+
+        while (value >= 0x80)
+        {
+            out.write((value & 0x7f) | 0x80);
+            value >>>= 7;
+        }
+
+        out.write(value);
+    }
+}
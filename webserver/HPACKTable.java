@@ -0,0 +1,212 @@
+package webserver;
+
+import java.util.HashMap;
+
+/**
+ * The header table of HPACK (RFC 7541), made of the static table shared by every connection followed by a dynamic table of the
+ * header fields most recently added to it, which is kept within a maximum size by evicting the oldest fields
+ * <p>
+ * Each direction of a connection has its own table. Indexes start at 1, and the dynamic table follows the static table with its
+ * newest field first
+ * @author Kieran Chin Cheong
+ * @version 1.0
+ * @since 1.0
+ */
+public class HPACKTable
+{
+    // Static variables
+
+    // Largest size of a dynamic table, which is also the size the server allows clients' tables to have
+    public static final int MAX_TABLE_SIZE = 4096;
+
+    // Overhead of each field in the dynamic table, in addition to the lengths of its name and value
+    private static final int ENTRY_OVERHEAD = 32;
+
+    // The static table, as listed in RFC 7541 Appendix A
+    private static final String[][] STATIC_TABLE = {
+        {":authority", ""}, {":method", "GET"}, {":method", "POST"}, {":path", "/"}, {":path", "/index.html"}, {":scheme", "http"},
+        {":scheme", "https"}, {":status", "200"}, {":status", "204"}, {":status", "206"}, {":status", "304"}, {":status", "400"},
+        {":status", "404"}, {":status", "500"}, {"accept-charset", ""}, {"accept-encoding", "gzip, deflate"}, {"accept-language", ""},
+        {"accept-ranges", ""}, {"accept", ""}, {"access-control-allow-origin", ""}, {"age", ""}, {"allow", ""}, {"authorization", ""},
+        {"cache-control", ""}, {"content-disposition", ""}, {"content-encoding", ""}, {"content-language", ""}, {"content-length", ""},
+        {"content-location", ""}, {"content-range", ""}, {"content-type", ""}, {"cookie", ""}, {"date", ""}, {"etag", ""}, {"expect", ""},
+        {"expires", ""}, {"from", ""}, {"host", ""}, {"if-match", ""}, {"if-modified-since", ""}, {"if-none-match", ""}, {"if-range", ""},
+        {"if-unmodified-since", ""}, {"last-modified", ""}, {"link", ""}, {"location", ""}, {"max-forwards", ""}, {"proxy-authenticate", ""},
+        {"proxy-authorization", ""}, {"range", ""}, {"referer", ""}, {"refresh", ""}, {"retry-after", ""}, {"server", ""}, {"set-cookie", ""},
+        {"strict-transport-security", ""}, {"transfer-encoding", ""}, {"user-agent", ""}, {"vary", ""}, {"via", ""}, {"www-authenticate", ""}
+    };
+
+    // Index of each field and of each name in the static table, for the encoder. A name maps to its first index
+    private static final HashMap<String, Integer> STATIC_FIELD_INDEX = new HashMap<String, Integer>();
+    private static final HashMap<String, Integer> STATIC_NAME_INDEX = new HashMap<String, Integer>();
+
+    static
+    {
+        for (int i = STATIC_TABLE.length - 1; i >= 0; i--)
+        {
+            STATIC_FIELD_INDEX.put(STATIC_TABLE[i][0] + '\0' + STATIC_TABLE[i][1], i + 1);
+            STATIC_NAME_INDEX.put(STATIC_TABLE[i][0], i + 1);
+        }
+    }
+
+    // Member variables
+
+    // The dynamic table, as a ring of names and values with the newest at newest
+    private String[] names;
+    private String[] values;
+    private int newest;
+    private int count;
+    private int size;
+    private int maxSize;
+
+    /**
+     * Constructor. The dynamic table starts empty, with the largest size allowed
+     */
+    public HPACKTable()
+    {
+        int capacity = MAX_TABLE_SIZE / ENTRY_OVERHEAD;
+
+        this.names = new String[capacity];
+        this.values = new String[capacity];
+        this.newest = capacity - 1;
+        this.maxSize = MAX_TABLE_SIZE;
+    }
+
+    /**
+     * @param index the index of a field in the table
+     * @return the name and value of the field
+     * @throws HTTP2Exception if there is no field at the index
+     */
+    public String[] get(int index) throws HTTP2Exception
+    {
+        if (index >= 1 && index <= STATIC_TABLE.length)
+        {
+            return STATIC_TABLE[index - 1];
+        }
+
+        int dynamicIndex = index - STATIC_TABLE.length - 1;
+
+        if (dynamicIndex < 0 || dynamicIndex >= this.count)
+        {
+            throw new HTTP2Exception(HTTP2Exception.COMPRESSION_ERROR, "Invalid header table index " + index);
+        }
+
+        int slot = this.slot(dynamicIndex);
+
+        return new String[] {this.names[slot], this.values[slot]};
+    }
+
+    /**
+     * Finds a field in the table, preferring an exact match over a field which only has the same name
+     * @param name the name of the field
+     * @param value the value of the field
+     * @return the index of a field with the same name and value, or the negated index of a field with the same name, or 0 if neither is found
+     */
+    public int find(String name, String value)
+    {
+        Integer index = STATIC_FIELD_INDEX.get(name + '\0' + value);
+
+        if (index != null)
+        {
+            return index;
+        }
+
+        int nameIndex = 0;
+
+        for (int i = 0; i < this.count; i++)
+        {
+            int slot = this.slot(i);
+
+            if (this.names[slot].equals(name))
+            {
+                if (this.values[slot].equals(value))
+                {
+                    return STATIC_TABLE.length + i + 1;
+                }
+
+                if (nameIndex == 0)
+                {
+                    nameIndex = STATIC_TABLE.length + i + 1;
+                }
+            }
+        }
+
+        index = STATIC_NAME_INDEX.get(name);
+
+        return index != null ? -index : -nameIndex;
+    }
+
+    /**
+     * Adds a field to the dynamic table, evicting the oldest fields as needed to make room for it
+     * <p>
+     * A field larger than the whole table empties it and is not added
+     * @param name the name of the field
+     * @param value the value of the field
+     */
+    public void add(String name, String value)
+    {
+        int entrySize = name.length() + value.length() + ENTRY_OVERHEAD;
+
+        while (this.count > 0 && this.size + entrySize > this.maxSize)
+        {
+            this.evict();
+        }
+
+        if (entrySize > this.maxSize)
+        {
+            return;
+        }
+
+        this.newest = (this.newest + 1) % this.names.length;
+        this.names[this.newest] = name;
+        this.values[this.newest] = value;
+        this.count++;
+        this.size += entrySize;
+    }
+
+    /**
+     * Changes the maximum size of the dynamic table, evicting the oldest fields until it fits
+     * @param maxSize the new maximum size, which must not be larger than MAX_TABLE_SIZE
+     */
+    public void setMaxSize(int maxSize)
+    {
+        this.maxSize = maxSize;
+
+        while (this.count > 0 && this.size > this.maxSize)
+        {
+            this.evict();
+        }
+    }
+
+    /**
+     * Removes the oldest field from the dynamic table
+     */
+    private void evict()
+    {
+        int slot = this.slot(this.count - 1);
+
+        this.size -= this.names[slot].length() + this.values[slot].length() + ENTRY_OVERHEAD;
+        this.names[slot] = null;
+        this.values[slot] = null;
+        this.count--;
+    }
+
+    /**
+     * @param dynamicIndex the position of a field in the dynamic table, from 0 for the newest
+     * @return the slot of the ring holding the field
+     */
+    private int slot(int dynamicIndex)
+    {
+        return (this.newest - dynamicIndex + this.names.length) % this.names.length;
+    }
+
+    // Simple getters
+
+    /**
+     * @return
+     */
+    public int getMaxSize()
+    {
+        return this.maxSize;
+    }
+}
@@ -0,0 +1,1412 @@
+package webserver;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.SocketChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Serves an HTTP/2 connection (RFC 9113), on which many requests and their responses are sent at the same time as streams
+ * <p>
+ * A Worker hands its connection over once the client has either sent the HTTP/2 connection preface, or asked to upgrade its
+ * HTTP/1.1 connection to h2c. The connection is then served by the Worker's thread until it is closed. Each request is answered
+ * as soon as its HEADERS are received, using the same logic as HTTP/1.1 requests, and the responses are sent a frame at a time
+ * from each stream in turn, within the flow control windows the client allows
+ * @author Kieran Chin Cheong
+ * @version 1.0
+ * @since 1.0
+ */
+public class HTTP2Connection
+{
+    // Static variables
+
+    // Frame types
+    private static final int DATA = 0x0;
+    private static final int HEADERS = 0x1;
+    private static final int PRIORITY = 0x2;
+    private static final int RST_STREAM = 0x3;
+    private static final int SETTINGS = 0x4;
+    private static final int PUSH_PROMISE = 0x5;
+    private static final int PING = 0x6;
+    private static final int GOAWAY = 0x7;
+    private static final int WINDOW_UPDATE = 0x8;
+    private static final int CONTINUATION = 0x9;
+
+    // Frame flags
+    private static final int FLAG_END_STREAM = 0x1;
+    private static final int FLAG_ACK = 0x1;
+    private static final int FLAG_END_HEADERS = 0x4;
+    private static final int FLAG_PADDED = 0x8;
+    private static final int FLAG_PRIORITY = 0x20;
+
+    // Settings
+    private static final int SETTINGS_HEADER_TABLE_SIZE = 0x1;
+    private static final int SETTINGS_ENABLE_PUSH = 0x2;
+    private static final int SETTINGS_MAX_CONCURRENT_STREAMS = 0x3;
+    private static final int SETTINGS_INITIAL_WINDOW_SIZE = 0x4;
+    private static final int SETTINGS_MAX_FRAME_SIZE = 0x5;
+    private static final int SETTINGS_MAX_HEADER_LIST_SIZE = 0x6;
+
+    private static final int FRAME_HEADER_SIZE = 9;
+
+    // Largest frame payload either side may send until told otherwise. The server never sends or accepts larger ones
+    private static final int DEFAULT_MAX_FRAME_SIZE = 16384;
+    private static final int MAX_ALLOWED_FRAME_SIZE = 16777215;
+
+    // Flow control windows, in bytes
+    private static final int DEFAULT_WINDOW_SIZE = 65535;
+    private static final long MAX_WINDOW_SIZE = Integer.MAX_VALUE;
+
+    // Size of the buffer frames are gathered in before being written, in bytes
+    private static final int OUTPUT_BUFFER_SIZE = 65536;
+
+    // Number of frames sent before checking whether the client has sent anything, such as a new request
+    private static final int MAX_FRAMES_PER_BURST = 16;
+
+    // The client connection preface, and the part of it which is left once it has been parsed as if it were a request
+    private static final byte[] PREFACE = "PRI * HTTP/2.0\r\n\r\nSM\r\n\r\n".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] PREFACE_REMAINDER = "SM\r\n\r\n".getBytes(StandardCharsets.US_ASCII);
+
+    private static final byte[] SWITCHING_PROTOCOLS = "HTTP/1.1 101 Switching Protocols\r\nconnection: Upgrade\r\nupgrade: h2c\r\n\r\n".getBytes(StandardCharsets.US_ASCII);
+
+    // Header fields which only have meaning for an HTTP/1.1 connection, which must not be sent in either direction
+    private static final String[] CONNECTION_SPECIFIC_HEADERS = {"connection", "keep-alive", "proxy-connection", "transfer-encoding", "upgrade"};
+
+    // Static methods
+
+    /**
+     * Returns whether HTTP/2 is served, which is only by the blocking Workers
+     * @return true if HTTP/2 is enabled
+     */
+    public static boolean IsEnabled()
+    {
+        return Configuration.GetConfiguration().isEnableHTTP2() && ! Webserver.IsNonBlockingIO();
+    }
+
+    /**
+     * Returns whether a request asks to upgrade its connection to HTTP/2 over cleartext, and the upgrade can be made
+     * @param request an HTTP/1.1 request
+     * @return true if the connection should be upgraded
+     */
+    public static boolean IsUpgradeRequest(HTTPRequest request)
+    {
+        String upgrade = request.getHeaderField("upgrade");
+
+        if (upgrade == null || request.getHeaderField("http2-settings") == null || ! HTTP2Connection.IsEnabled())
+        {
+            return false;
+        }
+
+        for (String protocol : upgrade.split(","))
+        {
+            if (protocol.trim().equalsIgnoreCase("h2c"))
+            {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    /**
+     * @param name the name of a header field, in lower case
+     * @return true if the header field only has meaning for an HTTP/1.1 connection
+     */
+    private static boolean IsConnectionSpecific(String name)
+    {
+        for (int i = 0; i < CONNECTION_SPECIFIC_HEADERS.length; i++)
+        {
+            if (CONNECTION_SPECIFIC_HEADERS[i].equals(name))
+            {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    // Member variables
+
+    private Socket connectionSocket;
+    private SocketChannel channel;
+    private HTTPRequestParser parser;
+    private HTTPRequest upgradeRequest;
+    private String remoteAddress;
+    private String localAddress;
+
+    // Received bytes which have not been handled yet are held before the input buffer's position. Frames to send are gathered
+    // in the output buffer until it is written
+    private ByteBuffer input;
+    private ByteBuffer output;
+    private BufferChannel outputChannel;
+
+    private HPACKDecoder decoder;
+    private HPACKEncoder encoder;
+
+    // Streams with a response still to be sent, in the order they take turns to send a frame
+    private LinkedHashMap<Integer, HTTP2Stream> streams;
+
+    // The header block being received, while it is split over CONTINUATION frames
+    private ByteArrayOutputStream headerBlock;
+    private int headerStreamId;
+    private int headerFlags;
+
+    // The header block being sent
+    private ByteArrayOutputStream encodedBlock;
+
+    private int lastStreamId;
+    private int requestCount;
+
+    // Streams the client has cancelled before their response was sent, which are limited so that a client cannot have the server
+    // build responses as fast as it can open streams and reset them
+    private int resetStreamCount;
+    private long connectionSendWindow;
+    private int peerInitialWindowSize;
+    private boolean isGoingAway;
+
+    // Limits
+    private int maxConcurrentStreams;
+    private int maxResetStreams;
+    private int maxHeaderBlockSize;
+    private int maxRequestHeaderCount;
+    private int keepAliveTimeout;
+    private int requestReadTimeout;
+    private int responseWriteTimeout;
+
+    /**
+     * Constructor
+     * @param connectionSocket the Socket object representing a connection to a client, which must have a channel
+     * @param parser the connection's parser, holding any input received beyond the request which started HTTP/2
+     * @param upgradeRequest the HTTP/1.1 request which asked to upgrade the connection, to be answered on stream 1, or null
+     *        if the client sent the connection preface
+     */
+    public HTTP2Connection(Socket connectionSocket, HTTPRequestParser parser, HTTPRequest upgradeRequest)
+    {
+        Configuration config = Configuration.GetConfiguration();
+
+        this.connectionSocket = connectionSocket;
+        this.channel = connectionSocket.getChannel();
+        this.parser = parser;
+        this.upgradeRequest = upgradeRequest;
+        this.remoteAddress = connectionSocket.getRemoteSocketAddress().toString();
+        this.localAddress = connectionSocket.getLocalSocketAddress().toString();
+        this.decoder = new HPACKDecoder();
+        this.encoder = new HPACKEncoder();
+        this.streams = new LinkedHashMap<Integer, HTTP2Stream>();
+        this.headerBlock = new ByteArrayOutputStream();
+        this.encodedBlock = new ByteArrayOutputStream();
+        this.connectionSendWindow = DEFAULT_WINDOW_SIZE;
+        this.peerInitialWindowSize = DEFAULT_WINDOW_SIZE;
+        this.maxConcurrentStreams = config.getHttp2MaxConcurrentStreams();
+        this.maxResetStreams = config.getHttp2MaxResetStreams();
+        this.maxHeaderBlockSize = config.getMaxRequestHeadSize();
+        this.maxRequestHeaderCount = config.getMaxRequestHeaderCount();
+        this.keepAliveTimeout = config.getHttpKeepAliveTimeout();
+        this.requestReadTimeout = config.getRequestReadTimeout();
+        this.responseWriteTimeout = config.getResponseWriteTimeout();
+    }
+
+    /**
+     * Serves the connection until it is closed by the client, times out, or fails. The caller closes the socket afterwards
+     */
+    public void run()
+    {
+        Logger.Log(Logger.INFORMATION, "Serving HTTP/2 to remote address %s", this.remoteAddress);
+
+        try
+        {
+            // The input buffer must hold the largest frame, and whatever the parser received beyond the request
+            this.input = BufferPool.GetPool().lease(Math.max(FRAME_HEADER_SIZE + DEFAULT_MAX_FRAME_SIZE, this.maxHeaderBlockSize));
+            this.output = BufferPool.GetPool().lease(OUTPUT_BUFFER_SIZE);
+            this.outputChannel = new BufferChannel(this.output);
+
+            this.start();
+            this.serve();
+        }
+        catch (HTTP2Exception e)
+        {
+            Logger.Log(Logger.WARNING, "Warning : closing HTTP/2 connection from %s : %s", this.remoteAddress, e.toString());
+            this.goAway(e.getErrorCode());
+        }
+        catch (ClosedChannelException e)
+        {
+            // The connection was closed by a timeout
+            Logger.Log(Logger.INFORMATION, "HTTP/2 connection from %s closed due to timeout", this.remoteAddress);
+        }
+        catch (IOException e)
+        {
+            Logger.Log(Logger.ERROR, "Error reading from or writing to socket %s", e.toString());
+        }
+        finally
+        {
+            for (HTTP2Stream stream : this.streams.values())
+            {
+                stream.close();
+            }
+
+            this.streams.clear();
+            BufferPool.GetPool().release(this.input);
+            BufferPool.GetPool().release(this.output);
+            this.input = null;
+            this.output = null;
+        }
+    }
+
+    /**
+     * Sends the server's connection preface and receives the client's, answering the upgrade request first if there is one
+     * @throws IOException
+     * @throws HTTP2Exception if the client's connection preface is not valid
+     */
+    private void start() throws IOException, HTTP2Exception
+    {
+        // A client upgrading from HTTP/1.1 is told that the server is switching protocols before anything else
+        if (this.upgradeRequest != null)
+        {
+            this.output.put(SWITCHING_PROTOCOLS);
+        }
+
+        // The server's connection preface is its SETTINGS frame, which is sent without waiting for the client's
+        this.startFrame(12, SETTINGS, 0, 0);
+        this.output.putShort((short) SETTINGS_MAX_CONCURRENT_STREAMS).putInt(this.maxConcurrentStreams);
+        this.output.putShort((short) SETTINGS_MAX_HEADER_LIST_SIZE).putInt(this.maxHeaderBlockSize);
+        this.flush();
+
+        // Whatever the parser received beyond the request which started HTTP/2 is the start of the client's frames
+        this.parser.transferTo(this.input);
+
+        if (this.upgradeRequest == null)
+        {
+            this.expectPreface(PREFACE_REMAINDER);
+            this.processFrames();
+            return;
+        }
+
+        // The upgrade request carries the client's settings, which are acknowledged by the upgrade itself, and is answered on stream 1
+        try
+        {
+            this.applySettings(ByteBuffer.wrap(Base64.getUrlDecoder().decode(this.upgradeRequest.getHeaderField("http2-settings").trim())));
+        }
+        catch (IllegalArgumentException e)
+        {
+            throw new HTTP2Exception(HTTP2Exception.PROTOCOL_ERROR, "Invalid HTTP2-Settings header field");
+        }
+
+        this.lastStreamId = 1;
+        this.addStream(1, this.upgradeRequest, null, true);
+        this.expectPreface(PREFACE);
+
+        // Frames may have arrived along with the preface, and are handled before waiting for any more
+        this.processFrames();
+    }
+
+    /**
+     * Receives the client's connection preface, or what is left of it
+     * @param preface the bytes expected
+     * @throws IOException
+     * @throws HTTP2Exception if something else is received
+     */
+    private void expectPreface(byte[] preface) throws IOException, HTTP2Exception
+    {
+        Timeout timeout = this.scheduleClose(this.requestReadTimeout, "Request read timeout hit");
+
+        try
+        {
+            while (this.input.position() < preface.length)
+            {
+                if (this.channel.read(this.input) < 0)
+                {
+                    throw new HTTP2Exception(HTTP2Exception.PROTOCOL_ERROR, "Connection closed before the connection preface was received");
+                }
+            }
+        }
+        finally
+        {
+            this.cancelTimeout(timeout);
+        }
+
+        for (int i = 0; i < preface.length; i++)
+        {
+            if (this.input.get(i) != preface[i])
+            {
+                throw new HTTP2Exception(HTTP2Exception.PROTOCOL_ERROR, "Invalid connection preface");
+            }
+        }
+
+        this.input.flip();
+        this.input.position(preface.length);
+        this.input.compact();
+    }
+
+    /**
+     * The main loop of the connection, which sends frames while any stream can send one, and otherwise waits for the client
+     * @throws IOException
+     * @throws HTTP2Exception
+     */
+    private void serve() throws IOException, HTTP2Exception
+    {
+        while (true)
+        {
+            if (this.nextWritableStream() != null)
+            {
+                // Take in whatever the client has already sent, such as new requests or WINDOW_UPDATE frames, without waiting for more
+                int read;
+                this.channel.configureBlocking(false);
+
+                try
+                {
+                    read = this.channel.read(this.input);
+                }
+                finally
+                {
+                    this.channel.configureBlocking(true);
+                }
+
+                if (read < 0)
+                {
+                    return;
+                }
+
+                this.processFrames();
+                this.writeBurst();
+                continue;
+            }
+
+            this.flush();
+
+            // A client which has said it is going away is served until its last response has been sent
+            if (this.isGoingAway && this.streams.isEmpty())
+            {
+                return;
+            }
+
+            // Nothing can be sent until the client sends more, such as a new request or a WINDOW_UPDATE frame
+            Timeout timeout = this.streams.isEmpty() ? this.scheduleClose(this.keepAliveTimeout, "KeepAlive timeout hit") : this.scheduleClose(this.responseWriteTimeout, "Response write timeout hit");
+            int read;
+
+            try
+            {
+                read = this.channel.read(this.input);
+            }
+            finally
+            {
+                this.cancelTimeout(timeout);
+            }
+
+            if (read < 0)
+            {
+                return;
+            }
+
+            this.processFrames();
+        }
+    }
+
+    /**
+     * Handles every complete frame in the input buffer, leaving any partial frame to be completed by the next read
+     * @throws IOException
+     * @throws HTTP2Exception
+     */
+    private void processFrames() throws IOException, HTTP2Exception
+    {
+        this.input.flip();
+
+        try
+        {
+            while (this.input.remaining() >= FRAME_HEADER_SIZE)
+            {
+                int start = this.input.position();
+                int length = ((this.input.get(start) & 0xff) << 16) | ((this.input.get(start + 1) & 0xff) << 8) | (this.input.get(start + 2) & 0xff);
+
+                if (length > DEFAULT_MAX_FRAME_SIZE)
+                {
+                    throw new HTTP2Exception(HTTP2Exception.FRAME_SIZE_ERROR, "Frame of " + length + " bytes is too large");
+                }
+
+                if (this.input.remaining() < FRAME_HEADER_SIZE + length)
+                {
+                    break;
+                }
+
+                ByteBuffer payload = this.input.duplicate();
+                payload.limit(start + FRAME_HEADER_SIZE + length);
+                payload.position(start + FRAME_HEADER_SIZE);
+                this.input.position(start + FRAME_HEADER_SIZE + length);
+
+                this.handleFrame(this.input.get(start + 3) & 0xff, this.input.get(start + 4) & 0xff, this.input.getInt(start + 5) & 0x7fffffff, payload.slice());
+            }
+        }
+        finally
+        {
+            this.input.compact();
+        }
+    }
+
+    /**
+     * Handles a frame received from the client
+     * @param type the frame type
+     * @param flags the frame flags
+     * @param streamId the stream identifier, or 0 for the connection as a whole
+     * @param payload the frame payload
+     * @throws IOException
+     * @throws HTTP2Exception
+     */
+    private void handleFrame(int type, int flags, int streamId, ByteBuffer payload) throws IOException, HTTP2Exception
+    {
+        // Nothing may come between the frames of a header block
+        if (this.headerStreamId != 0 && (type != CONTINUATION || streamId != this.headerStreamId))
+        {
+            throw new HTTP2Exception(HTTP2Exception.PROTOCOL_ERROR, "Expected a CONTINUATION frame on stream " + this.headerStreamId);
+        }
+
+        switch (type)
+        {
+            case DATA:
+                this.handleData(flags, streamId, payload);
+                break;
+            case HEADERS:
+                this.handleHeaders(flags, streamId, payload);
+                break;
+            case PRIORITY:
+                // Streams take turns to send whatever their priority, so priorities are ignored
+                break;
+            case RST_STREAM:
+                this.handleResetStream(streamId, payload);
+                break;
+            case SETTINGS:
+                this.handleSettings(flags, streamId, payload);
+                break;
+            case PUSH_PROMISE:
+                throw new HTTP2Exception(HTTP2Exception.PROTOCOL_ERROR, "PUSH_PROMISE frame received from a client");
+            case PING:
+                this.handlePing(flags, streamId, payload);
+                break;
+            case GOAWAY:
+                this.handleGoAway(streamId, payload);
+                break;
+            case WINDOW_UPDATE:
+                this.handleWindowUpdate(streamId, payload);
+                break;
+            case CONTINUATION:
+                this.handleContinuation(flags, streamId, payload);
+                break;
+            default:
+                // Frames of unknown types are ignored
+                break;
+        }
+    }
+
+    /**
+     * Handles a DATA frame. Request bodies are not used, but they count against the flow control windows, which are replenished at once
+     * @param flags the frame flags
+     * @param streamId the stream identifier
+     * @param payload the frame payload
+     * @throws IOException
+     * @throws HTTP2Exception
+     */
+    private void handleData(int flags, int streamId, ByteBuffer payload) throws IOException, HTTP2Exception
+    {
+        if (streamId == 0 || streamId > this.lastStreamId)
+        {
+            throw new HTTP2Exception(HTTP2Exception.PROTOCOL_ERROR, "DATA frame on idle stream " + streamId);
+        }
+
+        int length = payload.remaining();
+
+        if (length > 0)
+        {
+            this.writeWindowUpdate(0, length);
+        }
+
+        // Frames on a stream which has been closed are ignored
+        HTTP2Stream stream = this.streams.get(streamId);
+
+        if (stream == null || stream.isRemoteClosed())
+        {
+            return;
+        }
+
+        if ((flags & FLAG_END_STREAM) != 0)
+        {
+            stream.remoteClosed();
+        }
+        else if (length > 0)
+        {
+            this.writeWindowUpdate(streamId, length);
+        }
+    }
+
+    /**
+     * Handles a HEADERS frame, which starts a header block
+     * @param flags the frame flags
+     * @param streamId the stream identifier
+     * @param payload the frame payload
+     * @throws IOException
+     * @throws HTTP2Exception
+     */
+    private void handleHeaders(int flags, int streamId, ByteBuffer payload) throws IOException, HTTP2Exception
+    {
+        if (streamId == 0)
+        {
+            throw new HTTP2Exception(HTTP2Exception.PROTOCOL_ERROR, "HEADERS frame on stream 0");
+        }
+
+        if (payload.remaining() < ((flags & FLAG_PADDED) != 0 ? 1 : 0) + ((flags & FLAG_PRIORITY) != 0 ? 5 : 0))
+        {
+            throw new HTTP2Exception(HTTP2Exception.FRAME_SIZE_ERROR, "HEADERS frame too short");
+        }
+
+        int padLength = (flags & FLAG_PADDED) != 0 ? payload.get() & 0xff : 0;
+
+        if ((flags & FLAG_PRIORITY) != 0)
+        {
+            payload.position(payload.position() + 5);
+        }
+
+        if (padLength > payload.remaining())
+        {
+            throw new HTTP2Exception(HTTP2Exception.PROTOCOL_ERROR, "Padding longer than HEADERS frame");
+        }
+
+        payload.limit(payload.limit() - padLength);
+
+        this.headerBlock.reset();
+        this.headerStreamId = streamId;
+        this.headerFlags = flags;
+        this.appendHeaderFragment(payload);
+
+        if ((flags & FLAG_END_HEADERS) != 0)
+        {
+            this.headerBlockReceived();
+        }
+    }
+
+    /**
+     * Handles a CONTINUATION frame, which continues a header block
+     * @param flags the frame flags
+     * @param streamId the stream identifier
+     * @param payload the frame payload
+     * @throws IOException
+     * @throws HTTP2Exception
+     */
+    private void handleContinuation(int flags, int streamId, ByteBuffer payload) throws IOException, HTTP2Exception
+    {
+        if (this.headerStreamId == 0)
+        {
+            throw new HTTP2Exception(HTTP2Exception.PROTOCOL_ERROR, "CONTINUATION frame without a header block on stream " + streamId);
+        }
+
+        this.appendHeaderFragment(payload);
+
+        if ((flags & FLAG_END_HEADERS) != 0)
+        {
+            this.headerBlockReceived();
+        }
+    }
+
+    /**
+     * Adds part of a header block to what has been received of it
+     * @param payload the part of the header block
+     * @throws HTTP2Exception if the header block is too large
+     */
+    private void appendHeaderFragment(ByteBuffer payload) throws HTTP2Exception
+    {
+        if (this.headerBlock.size() + payload.remaining() > this.maxHeaderBlockSize)
+        {
+            throw new HTTP2Exception(HTTP2Exception.ENHANCE_YOUR_CALM, "Header block too large");
+        }
+
+        byte[] fragment = new byte[payload.remaining()];
+        payload.get(fragment);
+        this.headerBlock.write(fragment, 0, fragment.length);
+    }
+
+    /**
+     * Handles a complete header block, which opens a new stream unless it holds the trailing header fields of a request
+     * @throws IOException
+     * @throws HTTP2Exception
+     */
+    private void headerBlockReceived() throws IOException, HTTP2Exception
+    {
+        int streamId = this.headerStreamId;
+        boolean isEndStream = (this.headerFlags & FLAG_END_STREAM) != 0;
+        this.headerStreamId = 0;
+
+        // The block is decoded whatever happens to the stream, since it may change the decoder's table
+        ArrayList<String[]> fields = this.decoder.decode(ByteBuffer.wrap(this.headerBlock.toByteArray()));
+
+        if (streamId <= this.lastStreamId)
+        {
+            // Frames on a stream which has been closed are ignored
+            HTTP2Stream stream = this.streams.get(streamId);
+
+            if (stream == null || stream.isRemoteClosed())
+            {
+                return;
+            }
+
+            // A second header block on a stream can only hold the trailing header fields of the request, which must end the stream
+            if (! isEndStream)
+            {
+                Logger.Log(Logger.INFORMATION, "Resetting stream %d from remote address %s, its trailers do not end the stream", streamId, this.remoteAddress);
+                this.streams.remove(streamId);
+                stream.close();
+                this.writeResetStream(streamId, HTTP2Exception.PROTOCOL_ERROR);
+                return;
+            }
+
+            // Trailing header fields after a request body are not used
+            stream.remoteClosed();
+            return;
+        }
+
+        if ((streamId & 1) == 0)
+        {
+            throw new HTTP2Exception(HTTP2Exception.PROTOCOL_ERROR, "Stream " + streamId + " opened by the client is not odd");
+        }
+
+        this.lastStreamId = streamId;
+
+        if (this.streams.size() >= this.maxConcurrentStreams)
+        {
+            Logger.Log(Logger.INFORMATION, "Refusing stream %d from remote address %s, too many streams are open", streamId, this.remoteAddress);
+            this.writeResetStream(streamId, HTTP2Exception.REFUSED_STREAM);
+            return;
+        }
+
+        HTTPRequest request = null;
+        HTTPResponse response = null;
+
+        try
+        {
+            request = this.buildRequest(fields);
+
+            if (request == null)
+            {
+                Logger.Log(Logger.INFORMATION, "Resetting stream %d from remote address %s, its request is malformed", streamId, this.remoteAddress);
+                this.writeResetStream(streamId, HTTP2Exception.PROTOCOL_ERROR);
+                return;
+            }
+        }
+        catch (RequestException re)
+        {
+            // A request which is well formed but cannot be handled is answered with the appropriate response, as over HTTP/1.1
+            response = HTTPResponse.BuildHTTPResponseWithoutBody(re.getErrorCode(), true, this.requestCount);
+        }
+
+        this.addStream(streamId, request, response, isEndStream);
+    }
+
+    /**
+     * Builds an HTTPRequest from the header fields of a stream, in the same way as from an HTTP/1.1 request head
+     * @param fields the decoded header fields
+     * @return the HTTPRequest, or null if the header fields are malformed, in which case the stream must be reset
+     * @throws RequestException if the request cannot be handled
+     */
+    private HTTPRequest buildRequest(ArrayList<String[]> fields) throws RequestException
+    {
+        if (fields.size() > this.maxRequestHeaderCount)
+        {
+            throw new RequestException(Status.REQUEST_HEADER_FIELDS_TOO_LARGE, "Too many request header fields");
+        }
+
+        String method = null;
+        String path = null;
+        String scheme = null;
+        String authority = null;
+        HashMap<String, String> headerFields = new HashMap<String, String>();
+
+        for (String[] field : fields)
+        {
+            String name = field[0];
+            String value = field[1];
+
+            // Pseudo-header fields must come before the others, and each may only be given once
+            if (name.startsWith(":"))
+            {
+                if (! headerFields.isEmpty())
+                {
+                    return null;
+                }
+                else if (name.equals(":method") && method == null)
+                {
+                    method = value;
+                }
+                else if (name.equals(":path") && path == null)
+                {
+                    path = value;
+                }
+                else if (name.equals(":scheme") && scheme == null)
+                {
+                    scheme = value;
+                }
+                else if (name.equals(":authority") && authority == null)
+                {
+                    authority = value;
+                }
+                else
+                {
+                    return null;
+                }
+
+                continue;
+            }
+
+            // Field names must be in lower case, and header fields which only have meaning for HTTP/1.1 must not be sent
+            if (! name.equals(name.toLowerCase(Locale.ROOT)) || HTTP2Connection.IsConnectionSpecific(name) || (name.equals("te") && ! value.equals("trailers")))
+            {
+                return null;
+            }
+
+            // Cookies may be split into several fields, which are joined as they would be in a single HTTP/1.1 header field
+            String previousValue = headerFields.get(name);
+            headerFields.put(name, previousValue == null ? value : previousValue + (name.equals("cookie") ? "; " : ",") + value);
+        }
+
+        if (method == null || scheme == null || path == null || path.isEmpty())
+        {
+            return null;
+        }
+
+        // The authority takes the place of the host header field
+        if (authority != null && ! headerFields.containsKey("host"))
+        {
+            headerFields.put("host", authority);
+        }
+
+        return HTTPRequest.BuildHTTPRequestFromHead(method, path, "HTTP/2.0", headerFields);
+    }
+
+    /**
+     * Builds the response to a request and opens a stream to send it on
+     * @param streamId the stream identifier
+     * @param request the request, or null if it could not be built
+     * @param response the response if it has already been built, otherwise null to build it from the request
+     * @param isRemoteClosed true if the client will not send anything more on the stream
+     * @throws IOException
+     */
+    private void addStream(int streamId, HTTPRequest request, HTTPResponse response, boolean isRemoteClosed) throws IOException
+    {
+        if (response == null)
+        {
+            long lookupStarted = System.nanoTime();
+            response = HTTPResponse.BuildHTTPResponseWithBody(request, true, this.requestCount);
+            Metrics.GetMetrics().responseBuilt(System.nanoTime() - lookupStarted);
+        }
+
+        Metrics.GetMetrics().requestReceived(this.requestCount > 0);
+        this.requestCount++;
+
+        HTTP2Stream stream = new HTTP2Stream(streamId, request, response, this.peerInitialWindowSize, isRemoteClosed);
+
+        try
+        {
+            stream.openBody();
+        }
+        catch (IOException e)
+        {
+            Logger.Log(Logger.ERROR, "Error opening response body for stream %d : %s", streamId, e.toString());
+            stream.close();
+            this.writeResetStream(streamId, HTTP2Exception.INTERNAL_ERROR);
+            return;
+        }
+
+        this.streams.put(streamId, stream);
+    }
+
+    /**
+     * Handles a RST_STREAM frame, which cancels a stream
+     * @param streamId the stream identifier
+     * @param payload the frame payload
+     * @throws HTTP2Exception
+     */
+    private void handleResetStream(int streamId, ByteBuffer payload) throws HTTP2Exception
+    {
+        if (payload.remaining() != 4)
+        {
+            throw new HTTP2Exception(HTTP2Exception.FRAME_SIZE_ERROR, "RST_STREAM frame of the wrong size");
+        }
+
+        if (streamId == 0 || streamId > this.lastStreamId)
+        {
+            throw new HTTP2Exception(HTTP2Exception.PROTOCOL_ERROR, "RST_STREAM frame on idle stream " + streamId);
+        }
+
+        HTTP2Stream stream = this.streams.remove(streamId);
+
+        if (stream != null)
+        {
+            Logger.Log(Logger.INFORMATION, "Stream %d reset by remote address %s with error code %d", streamId, this.remoteAddress, payload.getInt());
+            stream.close();
+
+            if (++this.resetStreamCount > this.maxResetStreams)
+            {
+                throw new HTTP2Exception(HTTP2Exception.ENHANCE_YOUR_CALM, "Too many streams reset by the client");
+            }
+        }
+    }
+
+    /**
+     * Handles a SETTINGS frame, which is acknowledged once its settings have been applied
+     * @param flags the frame flags
+     * @param streamId the stream identifier
+     * @param payload the frame payload
+     * @throws IOException
+     * @throws HTTP2Exception
+     */
+    private void handleSettings(int flags, int streamId, ByteBuffer payload) throws IOException, HTTP2Exception
+    {
+        if (streamId != 0)
+        {
+            throw new HTTP2Exception(HTTP2Exception.PROTOCOL_ERROR, "SETTINGS frame on stream " + streamId);
+        }
+
+        if ((flags & FLAG_ACK) != 0)
+        {
+            if (payload.hasRemaining())
+            {
+                throw new HTTP2Exception(HTTP2Exception.FRAME_SIZE_ERROR, "SETTINGS acknowledgement with a payload");
+            }
+
+            return;
+        }
+
+        this.applySettings(payload);
+        this.startFrame(0, SETTINGS, FLAG_ACK, 0);
+    }
+
+    /**
+     * Applies the client's settings
+     * @param payload the settings, as sent in a SETTINGS frame
+     * @throws HTTP2Exception if any setting is not valid
+     */
+    private void applySettings(ByteBuffer payload) throws HTTP2Exception
+    {
+        if (payload.remaining() % 6 != 0)
+        {
+            throw new HTTP2Exception(HTTP2Exception.FRAME_SIZE_ERROR, "SETTINGS frame of the wrong size");
+        }
+
+        while (payload.hasRemaining())
+        {
+            int setting = payload.getShort() & 0xffff;
+            long value = payload.getInt() & 0xffffffffL;
+
+            switch (setting)
+            {
+                case SETTINGS_HEADER_TABLE_SIZE:
+                    this.encoder.setMaxTableSize((int) Math.min(value, HPACKTable.MAX_TABLE_SIZE));
+                    break;
+                case SETTINGS_ENABLE_PUSH:
+                    // The server never pushes, but the setting must still be valid
+                    if (value > 1)
+                    {
+                        throw new HTTP2Exception(HTTP2Exception.PROTOCOL_ERROR, "Invalid SETTINGS_ENABLE_PUSH " + value);
+                    }
+                    break;
+                case SETTINGS_INITIAL_WINDOW_SIZE:
+                    if (value > MAX_WINDOW_SIZE)
+                    {
+                        throw new HTTP2Exception(HTTP2Exception.FLOW_CONTROL_ERROR, "Invalid SETTINGS_INITIAL_WINDOW_SIZE " + value);
+                    }
+
+                    // The change applies to the windows of streams which are already open, which may become negative
+                    for (HTTP2Stream stream : this.streams.values())
+                    {
+                        if (stream.updateSendWindow(value - this.peerInitialWindowSize) > MAX_WINDOW_SIZE)
+                        {
+                            throw new HTTP2Exception(HTTP2Exception.FLOW_CONTROL_ERROR, "Window of stream " + stream.getId() + " too large");
+                        }
+                    }
+
+                    this.peerInitialWindowSize = (int) value;
+                    break;
+                case SETTINGS_MAX_FRAME_SIZE:
+                    // Frames are never sent larger than the smallest maximum allowed, so the setting only needs to be valid
+                    if (value < DEFAULT_MAX_FRAME_SIZE || value > MAX_ALLOWED_FRAME_SIZE)
+                    {
+                        throw new HTTP2Exception(HTTP2Exception.PROTOCOL_ERROR, "Invalid SETTINGS_MAX_FRAME_SIZE " + value);
+                    }
+                    break;
+                default:
+                    // The remaining settings only limit what the server would push or may send, and unknown settings are ignored
+                    break;
+            }
+        }
+    }
+
+    /**
+     * Handles a PING frame, which is sent back as an acknowledgement
+     * @param flags the frame flags
+     * @param streamId the stream identifier
+     * @param payload the frame payload
+     * @throws IOException
+     * @throws HTTP2Exception
+     */
+    private void handlePing(int flags, int streamId, ByteBuffer payload) throws IOException, HTTP2Exception
+    {
+        if (payload.remaining() != 8)
+        {
+            throw new HTTP2Exception(HTTP2Exception.FRAME_SIZE_ERROR, "PING frame of the wrong size");
+        }
+
+        if (streamId != 0)
+        {
+            throw new HTTP2Exception(HTTP2Exception.PROTOCOL_ERROR, "PING frame on stream " + streamId);
+        }
+
+        if ((flags & FLAG_ACK) == 0)
+        {
+            this.startFrame(8, PING, FLAG_ACK, 0);
+            this.output.put(payload);
+        }
+    }
+
+    /**
+     * Handles a GOAWAY frame, after which the client opens no more streams
+     * @param streamId the stream identifier
+     * @param payload the frame payload
+     * @throws HTTP2Exception
+     */
+    private void handleGoAway(int streamId, ByteBuffer payload) throws HTTP2Exception
+    {
+        if (streamId != 0)
+        {
+            throw new HTTP2Exception(HTTP2Exception.PROTOCOL_ERROR, "GOAWAY frame on stream " + streamId);
+        }
+
+        if (payload.remaining() < 8)
+        {
+            throw new HTTP2Exception(HTTP2Exception.FRAME_SIZE_ERROR, "GOAWAY frame too short");
+        }
+
+        Logger.Log(Logger.INFORMATION, "GOAWAY received from remote address %s with error code %d", this.remoteAddress, payload.getInt(4));
+        this.isGoingAway = true;
+    }
+
+    /**
+     * Handles a WINDOW_UPDATE frame, which allows more of the message bodies of responses to be sent
+     * @param streamId the stream identifier, or 0 for the connection as a whole
+     * @param payload the frame payload
+     * @throws IOException
+     * @throws HTTP2Exception
+     */
+    private void handleWindowUpdate(int streamId, ByteBuffer payload) throws IOException, HTTP2Exception
+    {
+        if (payload.remaining() != 4)
+        {
+            throw new HTTP2Exception(HTTP2Exception.FRAME_SIZE_ERROR, "WINDOW_UPDATE frame of the wrong size");
+        }
+
+        int increment = payload.getInt() & 0x7fffffff;
+
+        if (streamId == 0)
+        {
+            if (increment == 0)
+            {
+                throw new HTTP2Exception(HTTP2Exception.PROTOCOL_ERROR, "WINDOW_UPDATE frame with an increment of 0");
+            }
+
+            this.connectionSendWindow += increment;
+
+            if (this.connectionSendWindow > MAX_WINDOW_SIZE)
+            {
+                throw new HTTP2Exception(HTTP2Exception.FLOW_CONTROL_ERROR, "Connection window too large");
+            }
+
+            return;
+        }
+
+        // The stream may already have sent its whole response
+        HTTP2Stream stream = this.streams.get(streamId);
+
+        if (stream == null)
+        {
+            return;
+        }
+
+        if (increment == 0 || stream.updateSendWindow(increment) > MAX_WINDOW_SIZE)
+        {
+            this.streams.remove(streamId);
+            stream.close();
+            this.writeResetStream(streamId, increment == 0 ? HTTP2Exception.PROTOCOL_ERROR : HTTP2Exception.FLOW_CONTROL_ERROR);
+        }
+    }
+
+    /**
+     * Finds the first stream which can send a frame, being either its headers or, within the flow control windows, part of its message body
+     * @return the stream, or null if no stream can send anything
+     */
+    private HTTP2Stream nextWritableStream()
+    {
+        for (HTTP2Stream stream : this.streams.values())
+        {
+            if (! stream.isHeadersSent() || (! stream.isBodyComplete() && stream.getSendWindow() > 0 && this.connectionSendWindow > 0))
+            {
+                return stream;
+            }
+        }
+
+        return null;
+    }
+
+    /**
+     * Sends a number of frames, one from each stream in turn so that a large response does not hold up the others
+     * @throws IOException
+     */
+    private void writeBurst() throws IOException
+    {
+        for (int frames = 0; frames < MAX_FRAMES_PER_BURST; frames++)
+        {
+            HTTP2Stream stream = this.nextWritableStream();
+
+            if (stream == null)
+            {
+                return;
+            }
+
+            if (! stream.isHeadersSent())
+            {
+                this.writeHeaders(stream);
+            }
+            else
+            {
+                this.writeData(stream);
+            }
+
+            // The stream moves to the back of the line, unless its response is complete
+            this.streams.remove(stream.getId());
+
+            if (stream.isHeadersSent() && stream.isBodyComplete())
+            {
+                this.finishStream(stream);
+            }
+            else
+            {
+                this.streams.put(stream.getId(), stream);
+            }
+        }
+    }
+
+    /**
+     * Sends the headers of a response, in a HEADERS frame followed by as many CONTINUATION frames as needed
+     * @param stream the stream of the response
+     * @throws IOException
+     */
+    private void writeHeaders(HTTP2Stream stream) throws IOException
+    {
+        HTTPResponse response = stream.getResponse();
+        ArrayList<String[]> fields = new ArrayList<String[]>();
+
+        fields.add(new String[] {":status", String.valueOf(response.getResponseCode().toCode())});
+        fields.add(new String[] {"date", HTTPDate.GetCurrentDateString()});
+        fields.add(new String[] {"server", Webserver.SERVER_VERSION});
+
+        for (Map.Entry<String, String> field : response.getHeaderFields().entrySet())
+        {
+            if (! HTTP2Connection.IsConnectionSpecific(field.getKey()))
+            {
+                fields.add(new String[] {field.getKey(), field.getValue()});
+            }
+        }
+
+        this.encodedBlock.reset();
+        this.encoder.encode(fields, this.encodedBlock);
+        byte[] block = this.encodedBlock.toByteArray();
+
+        // Only the HEADERS frame carries the end of the stream, and only the last frame the end of the headers
+        int type = HEADERS;
+        int flags = stream.isBodyComplete() ? FLAG_END_STREAM : 0;
+        int offset = 0;
+
+        do
+        {
+            int length = Math.min(block.length - offset, DEFAULT_MAX_FRAME_SIZE);
+
+            this.startFrame(length, type, flags | (offset + length == block.length ? FLAG_END_HEADERS : 0), stream.getId());
+            this.output.put(block, offset, length);
+
+            offset += length;
+            type = CONTINUATION;
+            flags = 0;
+        }
+        while (offset < block.length);
+
+        stream.headersSent();
+    }
+
+    /**
+     * Sends the next part of the message body of a response in a DATA frame, as much as the flow control windows allow
+     * @param stream the stream of the response
+     * @throws IOException
+     */
+    private void writeData(HTTP2Stream stream) throws IOException
+    {
+        int length = (int) Math.min(Math.min(stream.getBodyRemaining(), DEFAULT_MAX_FRAME_SIZE), Math.min(stream.getSendWindow(), this.connectionSendWindow));
+
+        this.reserve(FRAME_HEADER_SIZE + length);
+
+        // The body is written straight into the output buffer, after room for the frame header and up to the length of the frame
+        int frameStart = this.output.position();
+        int dataStart = frameStart + FRAME_HEADER_SIZE;
+        this.output.position(dataStart);
+        this.output.limit(dataStart + length);
+
+        try
+        {
+            stream.getBody().writeTo(this.outputChannel);
+        }
+        finally
+        {
+            this.output.limit(this.output.capacity());
+        }
+
+        int written = this.output.position() - dataStart;
+        stream.bodySent(written);
+        this.connectionSendWindow -= written;
+
+        this.putFrameHeader(frameStart, written, DATA, stream.isBodyComplete() ? FLAG_END_STREAM : 0, stream.getId());
+    }
+
+    /**
+     * Records a response whose last frame has been sent, and releases what it holds
+     * @param stream the stream of the response
+     * @throws IOException
+     */
+    private void finishStream(HTTP2Stream stream) throws IOException
+    {
+        stream.close();
+        Metrics.GetMetrics().responseSent(stream.getResponse().getResponseCode(), stream.getBodySent(), System.nanoTime() - stream.getStartedAt());
+        Logger.LogConnection(stream.getRequest(), stream.getResponse(), this.remoteAddress, this.localAddress);
+
+        // A client still sending its request, which is not needed now that it has been answered, is told that it can stop
+        if (! stream.isRemoteClosed())
+        {
+            this.writeResetStream(stream.getId(), HTTP2Exception.NO_ERROR);
+        }
+    }
+
+    /**
+     * Adds a WINDOW_UPDATE frame to the output buffer
+     * @param streamId the stream identifier, or 0 for the connection as a whole
+     * @param increment the number of bytes to add to the window
+     * @throws IOException
+     */
+    private void writeWindowUpdate(int streamId, int increment) throws IOException
+    {
+        this.startFrame(4, WINDOW_UPDATE, 0, streamId);
+        this.output.putInt(increment);
+    }
+
+    /**
+     * Adds a RST_STREAM frame to the output buffer
+     * @param streamId the stream identifier
+     * @param errorCode the reason the stream is being closed
+     * @throws IOException
+     */
+    private void writeResetStream(int streamId, int errorCode) throws IOException
+    {
+        this.startFrame(4, RST_STREAM, 0, streamId);
+        this.output.putInt(errorCode);
+    }
+
+    /**
+     * Tells the client that the connection is being closed because of an error, if the connection can still be written to
+     * @param errorCode the error code
+     */
+    private void goAway(int errorCode)
+    {
+        try
+        {
+            this.startFrame(8, GOAWAY, 0, 0);
+            this.output.putInt(this.lastStreamId).putInt(errorCode);
+            this.flush();
+        }
+        catch (IOException e)
+        {
+            Logger.Log(Logger.INFORMATION, "Could not send GOAWAY to remote address %s : %s", this.remoteAddress, e.toString());
+        }
+    }
+
+    /**
+     * Adds the header of a frame to the output buffer, after making room for the whole frame. The caller adds the payload
+     * @param length the length of the payload
+     * @param type the frame type
+     * @param flags the frame flags
+     * @param streamId the stream identifier
+     * @throws IOException
+     */
+    private void startFrame(int length, int type, int flags, int streamId) throws IOException
+    {
+        this.reserve(FRAME_HEADER_SIZE + length);
+        this.putFrameHeader(this.output.position(), length, type, flags, streamId);
+        this.output.position(this.output.position() + FRAME_HEADER_SIZE);
+    }
+
+    /**
+     * Writes the header of a frame into the output buffer at the given index
+     * @param index the index of the start of the frame
+     * @param length the length of the payload
+     * @param type the frame type
+     * @param flags the frame flags
+     * @param streamId the stream identifier
+     */
+    private void putFrameHeader(int index, int length, int type, int flags, int streamId)
+    {
+        this.output.put(index, (byte) (length >>> 16));
+        this.output.put(index + 1, (byte) (length >>> 8));
+        this.output.put(index + 2, (byte) length);
+        this.output.put(index + 3, (byte) type);
+        this.output.put(index + 4, (byte) flags);
+        this.output.putInt(index + 5, streamId);
+    }
+
+    /**
+     * Writes out the output buffer if it does not have room for the given number of bytes
+     * @param length the number of bytes needed
+     * @throws IOException
+     */
+    private void reserve(int length) throws IOException
+    {
+        if (this.output.remaining() < length)
+        {
+            this.flush();
+        }
+    }
+
+    /**
+     * Writes out every frame in the output buffer, closing the connection if the client does not accept them in time
+     * @throws IOException
+     */
+    private void flush() throws IOException
+    {
+        this.output.flip();
+
+        if (! this.output.hasRemaining())
+        {
+            this.output.clear();
+            return;
+        }
+
+        Timeout timeout = this.scheduleClose(this.responseWriteTimeout, "Response write timeout hit");
+
+        try
+        {
+            while (this.output.hasRemaining())
+            {
+                this.channel.write(this.output);
+            }
+        }
+        finally
+        {
+            this.cancelTimeout(timeout);
+            this.output.clear();
+        }
+    }
+
+    /**
+     * Schedules the connection socket to be closed after a timeout, which unblocks the connection if it is waiting on the client
+     * @param seconds the timeout in seconds. A value of 0 or less disables it
+     * @param message the message to log if the timeout is hit
+     * @return the scheduled Timeout, or null if it is disabled
+     */
+    private Timeout scheduleClose(int seconds, final String message)
+    {
+        if (seconds <= 0)
+        {
+            return null;
+        }
+
+        final long workerThreadID = Thread.currentThread().getId();
+
+        return TimeoutWheel.GetWheel().schedule(new Runnable() {
+            @Override
+            public void run() {
+                Logger.Log(Logger.INFORMATION, "%s for TID %d", message, workerThreadID);
+
+                try
+                {
+                    connectionSocket.close();
+                }
+                catch (IOException e)
+                {
+                    Logger.Log(Logger.ERROR, "Error closing connected socket due to timeout : %s", e.toString());
+                }
+            }
+        }, seconds * 1000L);
+    }
+
+    /**
+     * Cancels a timeout scheduled by scheduleClose(), if any
+     * @param timeout the timeout to cancel, may be null
+     */
+    private void cancelTimeout(Timeout timeout)
+    {
+        if (timeout != null)
+        {
+            timeout.cancel();
+        }
+    }
+
+    /**
+     * A channel which writes into a buffer, as far as its limit, so that a ResponseBody can be written straight into a DATA frame
+     */
+    private static class BufferChannel implements WritableByteChannel
+    {
+        private ByteBuffer target;
+
+        /**
+         * Constructor
+         * @param target the buffer to write into
+         */
+        public BufferChannel(ByteBuffer target)
+        {
+            this.target = target;
+        }
+
+        /**
+         * Writes as much as the buffer has room for
+         * @see java.nio.channels.WritableByteChannel#write(java.nio.ByteBuffer)
+         */
+        @Override
+        public int write(ByteBuffer source)
+        {
+            int length = Math.min(source.remaining(), this.target.remaining());
+            ByteBuffer part = source.duplicate();
+
+            part.limit(part.position() + length);
+            this.target.put(part);
+            source.position(source.position() + length);
+
+            return length;
+        }
+
+        /**
+         * @see java.nio.channels.Channel#isOpen()
+         */
+        @Override
+        public boolean isOpen()
+        {
+            return true;
+        }
+
+        /**
+         * The buffer belongs to the connection, so closing the channel does nothing
+         * @see java.nio.channels.Channel#close()
+         */
+        @Override
+        public void close()
+        {
+
+        }
+    }
+}
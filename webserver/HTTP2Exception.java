@@ -0,0 +1,61 @@
+package webserver;
+
+/**
+ * A connection error in an HTTP/2 connection, after which the connection is closed with a GOAWAY frame carrying the error code
+ * @author Kieran Chin Cheong
+ * @version 1.0
+ * @since 1.0
+ */
+public class HTTP2Exception extends Exception
+{
+    // Static variables
+
+    // Error codes, as defined by RFC 9113
+    public static final int NO_ERROR = 0x0;
+    public static final int PROTOCOL_ERROR = 0x1;
+    public static final int INTERNAL_ERROR = 0x2;
+    public static final int FLOW_CONTROL_ERROR = 0x3;
+    public static final int STREAM_CLOSED = 0x5;
+    public static final int FRAME_SIZE_ERROR = 0x6;
+    public static final int REFUSED_STREAM = 0x7;
+    public static final int CANCEL = 0x8;
+    public static final int COMPRESSION_ERROR = 0x9;
+    public static final int ENHANCE_YOUR_CALM = 0xb;
+
+    // Member variables
+
+    // Explicitly set serialVersionUID instead of relying on auto generation
+    private static final long serialVersionUID = 4730841657716958339L;
+    private int errorCode;
+
+    /**
+     * Constructor
+     * @param errorCode the HTTP/2 error code to send to the client
+     * @param message A message describing the problem
+     */
+    public HTTP2Exception(int errorCode, String message)
+    {
+        super(message);
+        this.errorCode = errorCode;
+    }
+
+    // Simple getters
+
+    /**
+     * @return
+     */
+    public int getErrorCode()
+    {
+        return this.errorCode;
+    }
+
+    /**
+     * Custom toString() method
+     * @see java.lang.Throwable#toString()
+     */
+    @Override
+    public String toString()
+    {
+        return super.toString() + ", error code: " + this.errorCode;
+    }
+}
@@ -0,0 +1,201 @@
+package webserver;
+
+import java.io.IOException;
+
+/**
+ * A request and its response on an HTTP/2 connection, from the time the request is received until the whole response has been sent
+ * @author Kieran Chin Cheong
+ * @version 1.0
+ * @since 1.0
+ */
+public class HTTP2Stream
+{
+    // Member variables
+
+    private int id;
+    private HTTPRequest request;
+    private HTTPResponse response;
+    private ResponseBody body;
+    private long bodySize;
+    private long bodySent;
+    private long sendWindow;
+    private boolean isHeadersSent;
+    private boolean isRemoteClosed;
+    private long startedAt;
+
+    /**
+     * Constructor
+     * @param id the stream identifier
+     * @param request the request received on the stream, or null if it could not be parsed
+     * @param response the response to send on the stream
+     * @param sendWindow the number of bytes of message body the client is initially willing to receive on the stream
+     * @param isRemoteClosed true if the client will not send anything more on the stream
+     */
+    public HTTP2Stream(int id, HTTPRequest request, HTTPResponse response, long sendWindow, boolean isRemoteClosed)
+    {
+        this.id = id;
+        this.request = request;
+        this.response = response;
+        this.sendWindow = sendWindow;
+        this.isRemoteClosed = isRemoteClosed;
+        this.startedAt = System.nanoTime();
+    }
+
+    /**
+     * Opens the message body of the response, so that it can be sent in DATA frames once the headers have been sent
+     * @throws IOException
+     */
+    public void openBody() throws IOException
+    {
+        this.body = this.response.openBody();
+        this.bodySize = this.response.getMessageBodySize();
+
+        // An empty message body is signalled by the end of the stream on the HEADERS frame
+        if (this.body != null && this.bodySize == 0)
+        {
+            this.body.close();
+            this.body = null;
+        }
+    }
+
+    /**
+     * Records that part of the message body has been sent
+     * @param length the number of bytes sent
+     */
+    public void bodySent(int length)
+    {
+        this.bodySent += length;
+        this.sendWindow -= length;
+    }
+
+    /**
+     * Changes the number of bytes the client is willing to receive on the stream
+     * @param delta the number of bytes to add, which may be negative
+     * @return the new size of the window
+     */
+    public long updateSendWindow(long delta)
+    {
+        this.sendWindow += delta;
+        return this.sendWindow;
+    }
+
+    /**
+     * Releases the message body of the response and anything it holds. This may safely be called more than once
+     */
+    public void close()
+    {
+        if (this.body != null)
+        {
+            this.body.close();
+            this.body = null;
+        }
+
+        this.response.release();
+    }
+
+    /**
+     * @return true if the whole message body has been sent, or there is none
+     */
+    public boolean isBodyComplete()
+    {
+        return this.body == null || this.bodySent >= this.bodySize;
+    }
+
+    /**
+     * @return the number of bytes of the message body still to be sent
+     */
+    public long getBodyRemaining()
+    {
+        return this.bodySize - this.bodySent;
+    }
+
+    /**
+     * Records that the headers have been sent
+     */
+    public void headersSent()
+    {
+        this.isHeadersSent = true;
+    }
+
+    /**
+     * Records that the client will not send anything more on the stream
+     */
+    public void remoteClosed()
+    {
+        this.isRemoteClosed = true;
+    }
+
+    // Simple getters
+
+    /**
+     * @return
+     */
+    public int getId()
+    {
+        return this.id;
+    }
+
+    /**
+     * @return
+     */
+    public HTTPRequest getRequest()
+    {
+        return this.request;
+    }
+
+    /**
+     * @return
+     */
+    public HTTPResponse getResponse()
+    {
+        return this.response;
+    }
+
+    /**
+     * @return
+     */
+    public ResponseBody getBody()
+    {
+        return this.body;
+    }
+
+    /**
+     * @return
+     */
+    public long getBodySent()
+    {
+        return this.bodySent;
+    }
+
+    /**
+     * @return
+     */
+    public long getSendWindow()
+    {
+        return this.sendWindow;
+    }
+
+    /**
+     * @return
+     */
+    public boolean isHeadersSent()
+    {
+        return this.isHeadersSent;
+    }
+
+    /**
+     * @return
+     */
+    public boolean isRemoteClosed()
+    {
+        return this.isRemoteClosed;
+    }
+
+    /**
+     * @return
+     */
+    public long getStartedAt()
+    {
+        return this.startedAt;
+    }
+}
@@ -0,0 +1,124 @@
+package webserver;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.ZonedDateTime;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.Locale;
+
+/**
+ * @author Kieran Chin Cheong
+ * @version 1.0
+ * @since 1.0
+ */
+public class HTTPDate
+{
+    // Static variables
+
+    // The preferred HTTP date format, which looks like this
+    // Sun, 06 Nov 1994 08:49:37 GMT
+    // Unlike SimpleDateFormat, DateTimeFormatter is safe to share between threads
+    private static final DateTimeFormatter FORMATTER = DateTimeFormatter.ofPattern("EEE, dd MMM yyyy HH:mm:ss 'GMT'", Locale.US).withZone(ZoneOffset.UTC);
+
+    // The current date, which only changes once per second so is shared by every response sent within that second
+    private static volatile CurrentDate currentDate = new CurrentDate(0, null, null);
+
+    // Static methods
+
+    /**
+     * Formats a time as an HTTP date
+     * @param millis the time in milliseconds since the epoch
+     * @return the formatted date
+     */
+    public static String Format(long millis)
+    {
+        return FORMATTER.format(Instant.ofEpochMilli(millis));
+    }
+
+    /**
+     * Parses an HTTP date, as sent by a client in the if-modified-since header field
+     * <p>
+     * Only the preferred format is accepted. The obsolete RFC 850 and asctime formats are treated as invalid, as RFC 7232
+     * allows an invalid date to be ignored
+     * @param date the date to parse
+     * @return the time in milliseconds since the epoch, or -1 if the date is not valid
+     */
+    public static long Parse(String date)
+    {
+        try
+        {
+            return ZonedDateTime.parse(date, DateTimeFormatter.RFC_1123_DATE_TIME).toInstant().toEpochMilli();
+        }
+        catch (DateTimeParseException e)
+        {
+            return -1;
+        }
+    }
+
+    /**
+     * Returns the current time as an encoded HTTP date, as sent in the date header field
+     * <p>
+     * The date is formatted at most once per second. The same array is returned until then, so it must not be modified
+     * @return the encoded current date
+     */
+    public static byte[] GetCurrentDateBytes()
+    {
+        return HTTPDate.GetCurrentDate().bytes;
+    }
+
+    /**
+     * Returns the current time as an HTTP date, formatted at most once per second
+     * @return the current date
+     */
+    public static String GetCurrentDateString()
+    {
+        return HTTPDate.GetCurrentDate().text;
+    }
+
+    /**
+     * @return the current date, formatted again only if the second has changed since it was last formatted
+     */
+    private static CurrentDate GetCurrentDate()
+    {
+        long now = System.currentTimeMillis();
+        long second = now / 1000;
+        CurrentDate date = currentDate;
+
+        if (date.second != second)
+        {
+            // Several threads may format the new date at once, which is harmless since they all produce the same value
+            String text = HTTPDate.Format(now);
+            date = new CurrentDate(second, text, text.getBytes(StandardCharsets.US_ASCII));
+            currentDate = date;
+        }
+
+        return date;
+    }
+
+    /**
+     * An immutable pairing of a second and its encoded date, so that both are always read together
+     */
+    private static class CurrentDate
+    {
+        private final long second;
+        private final String text;
+        private final byte[] bytes;
+
+        private CurrentDate(long second, String text, byte[] bytes)
+        {
+            this.second = second;
+            this.text = text;
+            this.bytes = bytes;
+        }
+    }
+
+    /**
+     * Private constructor. This class only has static methods
+     */
+    private HTTPDate()
+    {
+
+    }
+}
@@ -1,14 +1,17 @@
 package webserver;
 
-import java.io.BufferedReader;
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.InputStreamReader;
 import java.net.SocketException;
+import java.nio.channels.Channels;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.file.InvalidPathException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
 import java.util.HashMap;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
 
 /**
  * @author Kieran Chin Cheong
@@ -19,13 +22,13 @@ public class HTTPRequest
 {
     // Static variables
     private static final String[] SUPPORTED_REQUEST_METHODS = {"GET"};
-    private static final String REQUEST_START_LINE_PATTERN = "^(.+)\\s(.+)\\s(.+)$";
-    private static final String HEADER_LINE_PATTERN = "^(.+?):\\s*(.+)\\s*$";
     
     // Static methods
 
     /**
      * Builds an HTTPRequest object based on the input in the provided InputStream
+     * <p>
+     * Any input following the request is discarded, so this should only be used where a single request is expected
      * @param stream InputStream object from accepted client connection
      * @return new HTTPRequest object
      * @throws RequestException
@@ -34,168 +37,213 @@ public class HTTPRequest
      */
     public static HTTPRequest BuildHTTPRequestFromInput(InputStream stream) throws RequestException, HttpKeepAliveTimeoutException, IOException
     {
-        HTTPRequest request = new HTTPRequest();
+        HTTPRequestParser parser = new HTTPRequestParser();
+        
+        try
+        {
+            return HTTPRequest.BuildHTTPRequestFromInput(parser, Channels.newChannel(stream));
+        }
+        finally
+        {
+            parser.close();
+        }
+    }
+    
+    /**
+     * Builds an HTTPRequest object based on the input read from the provided channel by a connection's parser
+     * <p>
+     * If the parser already holds a complete request, for instance one pipelined behind the previous request, no input is read
+     * @param parser the HTTPRequestParser belonging to the client connection
+     * @param channel blocking ReadableByteChannel from accepted client connection
+     * @return new HTTPRequest object
+     * @throws RequestException
+     * @throws HttpKeepAliveTimeoutException
+     * @throws IOException
+     */
+    public static HTTPRequest BuildHTTPRequestFromInput(HTTPRequestParser parser, ReadableByteChannel channel) throws RequestException, HttpKeepAliveTimeoutException, IOException
+    {
         // Attempt to parse the incoming request, throw any encountered exceptions so that
         // an appropriate error code can be returned to the client
         try
         {
-            // NOTE: This reader should not be closed; this will cause the connection to the client to be closed
-            // before any response can be sent back to the client.  Instead, the connection should be closed
-            // after the response is sent, if HTTP KeepAlive is not enabled.  If it is enabled, the connection will be managed
-            // and closed when appropriate
-            BufferedReader reader = new BufferedReader(new InputStreamReader(stream));
-            
-            // Read and parse the first line of the request.  This should be in form of something like
-            // GET /index.html HTTP/1.1
-            // Anything else is invalid
-            // Note that since we are using the readLine() function of our reader, any CR and LF characters will be removed
-            // This is OK because since a line was read, then they were there in the request.  So as long as the preceding
-            // line conforms to the HTTP specification there is no problem
-            String line;
-            
-            try
-            {
-                // This line will block until input is received.  In the case of a KeepAlive connection that does not receive
-                // another request from the client, the thread will block there until timed out, at which point the socket will 
-                // be closed (by another thread)
-                // This isn't really an error since it is expected that this can happen depending on the design of the client
-                // but it needs to be handled
-                line = reader.readLine();
-            }
-            catch (SocketException se)
-            {
-                // The connection was closed, either by the timeout timer, or by the peer itself
-                Logger.Log(Logger.INFORMATION, "Connection socket closed due to timeout or by peer");
-                throw new HttpKeepAliveTimeoutException();
-            }
-            
-            // If the line read was null, the request could have been cancelled
-            if (line == null)
-            {
-                throw new SocketException("Null read from socket");
-            }
-            
-            Logger.Log(Logger.INFORMATION, String.format("HTTP Request received, start-line : %s", line));
-            
-            // Validate the received start-line
-            Pattern compiledStartLinePattern = Pattern.compile(REQUEST_START_LINE_PATTERN);
-            Matcher startLineMatcher = compiledStartLinePattern.matcher(line);
-            
-            // The start-line is valid
-            if (startLineMatcher.find())
-            {
-                request.requestMethod = startLineMatcher.group(1);
-                request.requestTarget = startLineMatcher.group(2);
-                request.httpVersion = startLineMatcher.group(3);
-            }
-            // The start-line is not valid
-            else
-            {
-                throw new RequestException(Status.BAD_REQUEST, "Invalid start line");
-            }
+            HTTPRequest request = parser.parse();
             
-            // Ensure that the request method provided is supported
-            // If it is not supported, we need to send back the appropriate response
-            if (! request.isMethodSupported(request.requestMethod))
+            // Keep reading until a complete request has been received
+            while (request == null)
             {
-                throw new RequestException(Status.NOT_IMPLEMENTED, "Method " + request.requestMethod + " not implemented");
-            }
-            
-            // Check that a specific resource was requested, otherwise apply the default document name if only a directory was requested
-            if (request.requestTarget.equals("/"))
-            {
-                Logger.Log(Logger.INFORMATION, "Specific document not requested, applying default document");
-                request.requestTarget += Configuration.GetConfiguration().getDefaultDocument();
-            }
-            
-            // Next we read and parse any provided request headers. These have a form like
-            // field-name:[optional white space]field-value[optional white space]
-            // The end of the list of headers is denoted by a blank line
-            // Note that the only required header is "host", so if we don't find it by the time
-            // the blank line is reached, this is an invalid request
-            Pattern compiledHeaderLinePattern = Pattern.compile(HEADER_LINE_PATTERN);
-            Matcher headerLineMatcher;
-            line = reader.readLine();
-            
-            // Loop while we have not read in an empty line
-            while (! "".equals(line))
-            {
-                // If a null line is ever encountered within this loop, this is an unexpected end of request
-                if (line == null)
+                int read;
+                
+                try
                 {
-                    throw new RequestException(Status.BAD_REQUEST, "Unexpected end of request");
+                    // This will block until input is received.  In the case of a KeepAlive connection that does not receive
+                    // another request from the client, the thread will block here until timed out, at which point the socket will 
+                    // be closed (by another thread)
+                    // This isn't really an error since it is expected that this can happen depending on the design of the client
+                    // but it needs to be handled
+                    read = parser.fill(channel);
                 }
-                
-                // Attempt to match the read line as a valid request header
-                headerLineMatcher = compiledHeaderLinePattern.matcher(line);
-                
-                // Add the header key/value pair
-                if (headerLineMatcher.find())
+                catch (SocketException | ClosedChannelException se)
                 {
-                    // For simplicity's sake we will convert all field names to lower case
-                    // The HTTP spec states that they are case-insensitive, so this will not cause any issues
-                    String fieldName = headerLineMatcher.group(1).toLowerCase();
-                    String fieldValue = headerLineMatcher.group(2);
-                    
-                    // Handle the special case where if a duplicate file name is encountered, it should be appended to the previous, separated by a comma
-                    if (request.headerFields.containsKey(fieldName))
-                    {
-                        String newValue = request.headerFields.get(fieldName) + "," + fieldValue;
-                        request.headerFields.replace(fieldName, newValue);
-                    }
-                    else
+                    // If a request was part way through being received, this was not the connection being closed while idle
+                    if (parser.hasPartialRequest())
                     {
-                        request.headerFields.put(fieldName, fieldValue);
+                        throw se;
                     }
+                    
+                    // The connection was closed, either by the timeout timer, or by the peer itself
+                    Logger.Log(Logger.INFORMATION, "Connection socket closed due to timeout or by peer");
+                    throw new HttpKeepAliveTimeoutException();
                 }
-                // If the line does not match, it is incorrectly formatted
-                else
+                
+                // If the end of the stream was reached, the request could have been cancelled
+                if (read < 0)
                 {
-                    throw new RequestException(Status.BAD_REQUEST, "Incorrectly formatted request header field/value pair");
+                    if (parser.hasPartialRequest())
+                    {
+                        throw new RequestException(Status.BAD_REQUEST, "Unexpected end of request");
+                    }
+                    
+                    throw new SocketException("Null read from socket");
                 }
                 
-                // Read the next line of the request
-                line = reader.readLine();
+                request = parser.parse();
             }
             
-            // At this point we have finished processing the provided headers.  So we need to check that the host header was provided
-            // If it was not provided, this is a bad request
-            if (! request.headerFields.containsKey("host"))
+            return request;
+        }
+        catch (IOException e)
+        {
+            // Here we failed to read from the socket for an unexpected reason
+            Logger.Log(Logger.ERROR, "Error reading request : %s", e.toString());
+            throw e; // Rethrow so that the caller can best determine how to respond to this error
+        }
+    }
+    
+    /**
+     * Builds an HTTPRequest object from the parts of a syntactically valid request head, and checks that it is a request we can handle
+     * @param requestMethod the method from the request line
+     * @param requestTarget the target from the request line
+     * @param httpVersion the HTTP version from the request line
+     * @param headerFields the request header fields, keyed by lower case field name
+     * @return new HTTPRequest object
+     * @throws RequestException
+     */
+    static HTTPRequest BuildHTTPRequestFromHead(String requestMethod, String requestTarget, String httpVersion, HashMap<String, String> headerFields) throws RequestException
+    {
+        HTTPRequest request = new HTTPRequest();
+        request.requestMethod = requestMethod;
+        request.requestTarget = requestTarget;
+        request.httpVersion = httpVersion;
+        request.headerFields = headerFields;
+        
+        Logger.Log(Logger.INFORMATION, "HTTP Request received, start-line : %s %s %s", requestMethod, requestTarget, httpVersion);
+        
+        // The connection preface of an HTTP/2 client reads as a request line followed by an empty line. The connection is handed
+        // over to HTTP/2 rather than the request being answered
+        if (requestMethod.equals("PRI") && requestTarget.equals("*") && httpVersion.equals("HTTP/2.0") && HTTP2Connection.IsEnabled())
+        {
+            request.isHTTP2Preface = true;
+            return request;
+        }
+        
+        // Ensure that the request method provided is supported
+        // If it is not supported, we need to send back the appropriate response
+        if (! request.isMethodSupported(request.requestMethod))
+        {
+            throw new RequestException(Status.NOT_IMPLEMENTED, "Method " + request.requestMethod + " not implemented");
+        }
+        
+        // Check that a specific resource was requested, otherwise apply the default document name if only a directory was requested
+        if (request.requestTarget.equals("/"))
+        {
+            Logger.Log(Logger.INFORMATION, "Specific document not requested, applying default document");
+            request.requestTarget += Configuration.GetConfiguration().getDefaultDocument();
+        }
+        
+        // The target must name a file within the content root. Anything else, such as a target climbing out of it with "..",
+        // could expose the server's configuration and key store
+        if (! HTTPRequest.IsWithinRootDirectory(request.requestTarget))
+        {
+            throw new RequestException(Status.BAD_REQUEST, "Request target outside of the content root");
+        }
+        
+        // Note that the only required header is "host", so if it was not provided, this is a bad request
+        if (! request.headerFields.containsKey("host"))
+        {
+            throw new RequestException(Status.BAD_REQUEST, "Missing host header");
+        }
+        
+        // Check if the client sent a "connection: keep-alive" header.  If it did, and KeepAlive is enabled on the server, save this information
+        // for later usage by the server
+        String connection = request.headerFields.get("connection");
+        request.keepAliveRequested = connection != null && connection.equalsIgnoreCase("keep-alive");
+        
+        // A message body has no meaning in the context of a GET request, but its length must be known so that it can be skipped
+        // If a content-length was provided, it must be a valid number of bytes
+        String contentLength = request.headerFields.get("content-length");
+
+        // The server does not decode transfer codings, so a body framed by one could not be skipped and would be read as the next
+        // request. The request is refused instead, which also closes the connection. Giving both framings is ambiguous, as in a
+        // request smuggling attempt, so that is a bad request
+        if (request.headerFields.containsKey("transfer-encoding"))
+        {
+            if (contentLength != null)
             {
-                throw new RequestException(Status.BAD_REQUEST, "Missing host header");
+                throw new RequestException(Status.BAD_REQUEST, "Both transfer-encoding and content-length provided");
             }
-            
-            // Check if the client sent a "connection: keep-alive" header.  If it did, and KeepAlive is enabled on the server, save this information
-            // for later usage by the server
-            if (request.headerFields.containsKey("connection") && request.headerFields.get("connection").toLowerCase().equals("keep-alive"))
+
+            throw new RequestException(Status.NOT_IMPLEMENTED, "Transfer-encoding not implemented");
+        }
+
+        if (contentLength != null)
+        {
+            try
             {
-                request.keepAliveRequested = true;
+                request.messageBodyLength = Long.parseLong(contentLength);
             }
-            else
+            catch (NumberFormatException e)
             {
-                request.keepAliveRequested = false;
+                throw new RequestException(Status.BAD_REQUEST, "Invalid content-length");
             }
             
-            // If control has reached this point, the request received is valid.  A message body could follow, but it has no meaning
-            // in the context of a GET request.
-            // However, we must ensure that all of the provided input is read, even if we do not need it.  This is necessary if KeepAlive is enabled
-            // to ensure that the next time we read from this stream, we are really reading the new request.
-            // According to the HTTP specification, a GET request that provides no content-length header has no message body
-            // However, if for some reason a content-length was provided, simply read that number of bytes
-            int messageBodyLength = request.getMessageBodyLength();
-            
-            for (int i = 0; i < messageBodyLength; i++)
+            if (request.messageBodyLength < 0)
             {
-                reader.read(); // read one
+                throw new RequestException(Status.BAD_REQUEST, "Invalid content-length");
             }
+        }
+        
+        // Parse any byte ranges requested. These can only be checked once the size of the requested file is known
+        request.ranges = ByteRange.ParseRangeHeader(request.headerFields.get("range"));
+        
+        return request;
+    }
+    
+    /**
+     * Checks that a request target names a path within the content root once it has been resolved against it
+     * <p>
+     * A target which starts with a slash and has no dot segments or backslashes cannot leave the root, so only other targets are
+     * resolved on the file system
+     * @param requestTarget the target from the request line
+     * @return true if the target lies within the content root, false otherwise
+     */
+    private static boolean IsWithinRootDirectory(String requestTarget)
+    {
+        if (requestTarget.startsWith("/") && requestTarget.indexOf("..") < 0 && requestTarget.indexOf('\\') < 0)
+        {
+            return true;
+        }
+        
+        try
+        {
+            String rootDirectory = Configuration.GetConfiguration().getRootDirectory();
+            Path root = Paths.get(rootDirectory).toAbsolutePath().normalize();
+            Path target = Paths.get(rootDirectory + requestTarget.replace('/', File.separatorChar)).toAbsolutePath().normalize();
             
-            return request;
+            return target.startsWith(root);
         }
-        catch (IOException e)
+        catch (InvalidPathException e)
         {
-            // Here we failed to read from the socket for an unexpected reason
-            Logger.Log(Logger.ERROR, String.format("Error reading request : %s", e.toString()));
-            throw e; // Rethrow so that the caller can best determine how to respond to this error
+            return false;
         }
     }
     
@@ -203,8 +251,11 @@ public class HTTPRequest
     private String requestMethod;
     private String requestTarget;
     private String httpVersion;
-    private HashMap<String, String> headerFields = new HashMap<String, String>();
+    private HashMap<String, String> headerFields;
     private boolean keepAliveRequested;
+    private long messageBodyLength;
+    private ArrayList<ByteRange> ranges;
+    private boolean isHTTP2Preface;
     
     /**
      * Constructor. Only to be used internally
@@ -239,6 +290,25 @@ public class HTTPRequest
         }
     }
     
+    /**
+     * Returns the value of a header field provided by the client
+     * @param name the name of the header field, in lower case
+     * @return the value of the header field, or null if it was not provided
+     */
+    public String getHeaderField(String name)
+    {
+        return this.headerFields.get(name);
+    }
+    
+    /**
+     * Returns the byte ranges requested by the client through the range header field
+     * @return the requested ranges, or null if the whole resource was requested
+     */
+    public ArrayList<ByteRange> getRanges()
+    {
+        return this.ranges;
+    }
+    
     /**
      * Returns whether or not HTTP KeepAlive was requested by the client
      * @return true if requested, false otherwise
@@ -257,7 +327,7 @@ public class HTTPRequest
     {
         for (int i = 0; i < SUPPORTED_REQUEST_METHODS.length; i++)
         {
-            if(SUPPORTED_REQUEST_METHODS[i].toUpperCase().equals(method.toUpperCase()))
+            if (SUPPORTED_REQUEST_METHODS[i].equalsIgnoreCase(method))
             {
                 return true;
             }
@@ -272,16 +342,9 @@ public class HTTPRequest
      * If no content-length header was provided, simply return 0
      * @return length of message body in bytes
      */
-    private int getMessageBodyLength()
+    long getMessageBodyLength()
     {
-        if (this.headerFields.containsKey("content-length"))
-        {
-            return Integer.parseInt(this.headerFields.get("content-length"));
-        }
-        else
-        {
-            return 0;
-        }
+        return this.messageBodyLength;
     }
     
     // Simple getters
@@ -309,4 +372,12 @@ public class HTTPRequest
     {
         return this.httpVersion;
     }
+    
+    /**
+     * @return
+     */
+    public boolean isHTTP2Preface()
+    {
+        return this.isHTTP2Preface;
+    }
 }
@@ -0,0 +1,529 @@
+package webserver;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+
+/**
+ * @author Kieran Chin Cheong
+ * @version 1.0
+ * @since 1.0
+ */
+public class HTTPRequestParser
+{
+    // Static variables
+
+    // Request methods and HTTP versions which are recognized without allocating a new String
+    private static final String[] KNOWN_METHODS = {"GET", "HEAD", "POST", "PUT", "DELETE", "OPTIONS", "TRACE", "CONNECT", "PATCH"};
+    private static final String[] KNOWN_VERSIONS = {"HTTP/1.1", "HTTP/1.0"};
+
+    // Header field names which are recognized without allocating a new String. These are already in lower case, which is how all
+    // field names are stored in an HTTPRequest
+    private static final String[] KNOWN_HEADER_NAMES = {"host", "connection", "user-agent", "accept", "accept-encoding", "accept-language",
+                                                         "accept-charset", "cache-control", "pragma", "content-length", "content-type",
+                                                         "if-none-match", "if-modified-since", "if-match", "if-unmodified-since", "range",
+                                                         "if-range", "upgrade", "referer", "cookie", "origin", "dnt", "te", "transfer-encoding",
+                                                         "upgrade-insecure-requests", "x-forwarded-for", "x-forwarded-proto", "via"};
+
+    // Connection header value which is recognized without allocating a new String
+    private static final String KEEP_ALIVE = "keep-alive";
+
+    private static final byte[][] KNOWN_METHOD_BYTES = EncodeAll(KNOWN_METHODS);
+    private static final byte[][] KNOWN_VERSION_BYTES = EncodeAll(KNOWN_VERSIONS);
+    private static final byte[][] KNOWN_HEADER_NAME_BYTES = EncodeAll(KNOWN_HEADER_NAMES);
+    private static final byte[] KEEP_ALIVE_BYTES = KEEP_ALIVE.getBytes(StandardCharsets.US_ASCII);
+
+    // Static methods
+
+    /**
+     * Encodes each of an array of Strings as US-ASCII bytes
+     * @param strings the Strings to encode
+     * @return an array holding the encoding of each String, in the same order
+     */
+    private static byte[][] EncodeAll(String[] strings)
+    {
+        byte[][] encoded = new byte[strings.length][];
+
+        for (int i = 0; i < strings.length; i++)
+        {
+            encoded[i] = strings[i].getBytes(StandardCharsets.US_ASCII);
+        }
+
+        return encoded;
+    }
+
+    /**
+     * Converts an ASCII letter to lower case, leaving any other byte unchanged
+     * @param b the byte to convert
+     * @return the lower case byte
+     */
+    private static byte ToLowerCase(byte b)
+    {
+        return (b >= 'A' && b <= 'Z') ? (byte) (b + ('a' - 'A')) : b;
+    }
+
+    // Member variables
+
+    // Received bytes which have not been consumed yet are held between start and the buffer's position
+    // The buffer is leased from the BufferPool while input is being received, and released once all of it has been consumed,
+    // so that a connection which is idle between requests does not hold one
+    private ByteBuffer buffer;
+    private int start;
+
+    // Progress of the search for the end of the current request head, so that input is only scanned once however it arrives
+    private int scanPosition;
+    private int lineStart;
+
+    // Number of bytes of the previous request's message body still to be skipped
+    private long bodyRemaining;
+
+    // Limits
+    private int maxRequestHeadSize;
+    private int maxRequestLineLength;
+    private int maxRequestHeaderCount;
+
+    /**
+     * Constructor. The parser should be kept for the lifetime of a connection, and closed along with it
+     */
+    public HTTPRequestParser()
+    {
+        Configuration config = Configuration.GetConfiguration();
+
+        this.maxRequestHeadSize = config.getMaxRequestHeadSize();
+        this.maxRequestLineLength = config.getMaxRequestLineLength();
+        this.maxRequestHeaderCount = config.getMaxRequestHeaderCount();
+    }
+
+    /**
+     * Reads more input from the channel into the parser's buffer
+     * <p>
+     * This blocks if the channel is in blocking mode and no input is available
+     * @param channel the channel to read from
+     * @return the number of bytes read, or -1 if the end of the stream has been reached
+     * @throws IOException
+     */
+    public int fill(ReadableByteChannel channel) throws IOException
+    {
+        // A pooled buffer may be larger than asked for, so its limit keeps the request head within the configured size
+        if (this.buffer == null)
+        {
+            this.buffer = BufferPool.GetPool().lease(this.maxRequestHeadSize);
+            this.buffer.limit(this.maxRequestHeadSize);
+        }
+
+        // Move any unconsumed input to the start of the buffer to make as much room as possible
+        if (this.start > 0)
+        {
+            this.buffer.flip();
+            this.buffer.position(this.start);
+            this.buffer.compact();
+            this.buffer.limit(this.maxRequestHeadSize);
+            this.scanPosition -= this.start;
+            this.lineStart -= this.start;
+            this.start = 0;
+        }
+
+        return channel.read(this.buffer);
+    }
+
+    /**
+     * Releases the parser's buffer, if it holds one. Must be called once the connection is closed
+     * <p>
+     * This may safely be called more than once
+     */
+    public void close()
+    {
+        BufferPool.GetPool().release(this.buffer);
+        this.buffer = null;
+        this.start = 0;
+        this.scanPosition = 0;
+        this.lineStart = 0;
+    }
+
+    /**
+     * Moves the input received beyond the last request out of the parser, for a connection which is switching to another protocol
+     * <p>
+     * The parser's buffer is released afterwards, so the parser must not be used for the connection again
+     * @param target the buffer to put the input in, which must have room for as much as the request head size allows
+     */
+    public void transferTo(ByteBuffer target)
+    {
+        if (this.buffer != null)
+        {
+            this.buffer.flip();
+            this.buffer.position(this.start);
+            target.put(this.buffer);
+        }
+
+        this.close();
+    }
+
+    /**
+     * Returns whether part of a request has been received, but not yet all of it
+     * @return true if the connection is part way through a request, false if it is between requests
+     */
+    public boolean hasPartialRequest()
+    {
+        return (this.buffer != null && this.buffer.position() > this.start) || this.bodyRemaining > 0;
+    }
+
+    /**
+     * Attempts to parse a complete request out of the input received so far
+     * <p>
+     * Any input following the request, such as the next pipelined request, is kept for the next call
+     * @return the parsed HTTPRequest, or null if a complete request has not been received yet
+     * @throws RequestException if the request is malformed or exceeds the configured limits
+     */
+    public HTTPRequest parse() throws RequestException
+    {
+        // Nothing has been received since the last request was consumed
+        if (this.buffer == null)
+        {
+            return null;
+        }
+
+        // Skip over whatever is available of the previous request's message body
+        this.skipBody();
+
+        if (this.bodyRemaining > 0)
+        {
+            this.releaseIfConsumed();
+            return null;
+        }
+
+        long started = System.nanoTime();
+        int headEnd = this.findEndOfHead();
+
+        if (headEnd < 0)
+        {
+            return null;
+        }
+
+        HTTPRequest request = this.parseHead(this.start, headEnd);
+        Metrics.GetMetrics().requestParsed(System.nanoTime() - started);
+
+        // The request has been consumed, so the next one starts straight after it
+        this.start = headEnd;
+        this.scanPosition = headEnd;
+        this.lineStart = headEnd;
+
+        // According to the HTTP specification, a GET request that provides no content-length header has no message body
+        // However, if for some reason a content-length was provided, that number of bytes must be skipped before the next request
+        this.bodyRemaining = request.getMessageBodyLength();
+        this.skipBody();
+        this.releaseIfConsumed();
+
+        return request;
+    }
+
+    /**
+     * Releases the buffer once every byte received has been consumed, as it is until the next request arrives
+     */
+    private void releaseIfConsumed()
+    {
+        if (this.buffer.position() == this.start)
+        {
+            this.close();
+        }
+    }
+
+    /**
+     * Consumes as much as is available of the message body to be skipped
+     */
+    private void skipBody()
+    {
+        int skip = (int) Math.min(this.bodyRemaining, this.buffer.position() - this.start);
+
+        this.start += skip;
+        this.bodyRemaining -= skip;
+
+        if (this.scanPosition < this.start)
+        {
+            this.scanPosition = this.start;
+            this.lineStart = this.start;
+        }
+    }
+
+    /**
+     * Scans newly received input for the empty line which terminates a request head
+     * <p>
+     * Lines may be terminated by CRLF or a bare LF. Empty lines received before a request line are ignored
+     * @return the index just past the end of the head, or -1 if it has not been fully received
+     * @throws RequestException if the request line or head exceeds the configured limits
+     */
+    private int findEndOfHead() throws RequestException
+    {
+        int end = this.buffer.position();
+
+        for (int i = this.scanPosition; i < end; i++)
+        {
+            if (this.buffer.get(i) != '\n')
+            {
+                continue;
+            }
+
+            int lineLength = i - this.lineStart;
+
+            if (lineLength > 0 && this.buffer.get(i - 1) == '\r')
+            {
+                lineLength--;
+            }
+
+            if (lineLength == 0)
+            {
+                // An empty line before the request line is ignored
+                if (this.lineStart == this.start)
+                {
+                    this.start = i + 1;
+                    this.lineStart = i + 1;
+                    continue;
+                }
+
+                // Otherwise it terminates the head
+                this.scanPosition = i + 1;
+                return i + 1;
+            }
+
+            if (this.lineStart == this.start && lineLength > this.maxRequestLineLength)
+            {
+                throw new RequestException(Status.URI_TOO_LONG, "Request line too long");
+            }
+
+            this.lineStart = i + 1;
+        }
+
+        this.scanPosition = end;
+
+        // Check the limits against what has been received so far, so that an oversized request is rejected as early as possible
+        if (this.lineStart == this.start && end - this.start > this.maxRequestLineLength)
+        {
+            throw new RequestException(Status.URI_TOO_LONG, "Request line too long");
+        }
+
+        if (end - this.start >= this.maxRequestHeadSize)
+        {
+            throw new RequestException(Status.REQUEST_HEADER_FIELDS_TOO_LARGE, "Request head too large");
+        }
+
+        return -1;
+    }
+
+    /**
+     * Parses a complete request head
+     * @param from the index of the first byte of the request line
+     * @param to the index just past the empty line terminating the head
+     * @return the parsed HTTPRequest
+     * @throws RequestException if the request is malformed
+     */
+    private HTTPRequest parseHead(int from, int to) throws RequestException
+    {
+        // Parse the request line. This should be in form of something like
+        // GET /index.html HTTP/1.1
+        // Anything else is invalid
+        int lineEnd = this.findLineEnd(from, to);
+        int firstSpace = this.indexOf((byte) ' ', from, lineEnd);
+        int secondSpace = firstSpace < 0 ? -1 : this.indexOf((byte) ' ', firstSpace + 1, lineEnd);
+
+        if (firstSpace <= from || secondSpace <= firstSpace + 1 || secondSpace + 1 >= lineEnd || this.indexOf((byte) ' ', secondSpace + 1, lineEnd) >= 0)
+        {
+            throw new RequestException(Status.BAD_REQUEST, "Invalid start line");
+        }
+
+        String requestMethod = this.toKnownString(from, firstSpace, KNOWN_METHOD_BYTES, KNOWN_METHODS, false);
+        String requestTarget = this.toString(firstSpace + 1, secondSpace);
+        String httpVersion = this.toKnownString(secondSpace + 1, lineEnd, KNOWN_VERSION_BYTES, KNOWN_VERSIONS, false);
+
+        // Next parse any provided request headers. These have a form like
+        // field-name:[optional white space]field-value[optional white space]
+        HashMap<String, String> headerFields = new HashMap<String, String>();
+        int headerCount = 0;
+        int lineStart = this.nextLine(lineEnd, to);
+
+        while (lineStart < to)
+        {
+            lineEnd = this.findLineEnd(lineStart, to);
+
+            // The empty line terminates the headers
+            if (lineEnd == lineStart)
+            {
+                break;
+            }
+
+            if (++headerCount > this.maxRequestHeaderCount)
+            {
+                throw new RequestException(Status.REQUEST_HEADER_FIELDS_TOO_LARGE, "Too many request header fields");
+            }
+
+            int colon = this.indexOf((byte) ':', lineStart, lineEnd);
+
+            // The field name must be present, and may not contain or be followed by white space
+            if (colon <= lineStart || this.indexOf((byte) ' ', lineStart, colon) >= 0 || this.indexOf((byte) '\t', lineStart, colon) >= 0)
+            {
+                throw new RequestException(Status.BAD_REQUEST, "Incorrectly formatted request header field/value pair");
+            }
+
+            // Trim the optional white space around the field value
+            int valueStart = colon + 1;
+            int valueEnd = lineEnd;
+
+            while (valueStart < valueEnd && this.isWhiteSpace(this.buffer.get(valueStart)))
+            {
+                valueStart++;
+            }
+
+            while (valueEnd > valueStart && this.isWhiteSpace(this.buffer.get(valueEnd - 1)))
+            {
+                valueEnd--;
+            }
+
+            // The HTTP spec states that field names are case-insensitive, so they are all stored in lower case
+            String fieldName = this.toKnownString(lineStart, colon, KNOWN_HEADER_NAME_BYTES, KNOWN_HEADER_NAMES, true);
+            String fieldValue = this.regionMatches(valueStart, valueEnd, KEEP_ALIVE_BYTES, true) ? KEEP_ALIVE : this.toString(valueStart, valueEnd);
+
+            // Handle the special case where if a duplicate field name is encountered, it should be appended to the previous, separated by a comma
+            String previousValue = headerFields.get(fieldName);
+            headerFields.put(fieldName, previousValue == null ? fieldValue : previousValue + "," + fieldValue);
+
+            lineStart = this.nextLine(lineEnd, to);
+        }
+
+        return HTTPRequest.BuildHTTPRequestFromHead(requestMethod, requestTarget, httpVersion, headerFields);
+    }
+
+    /**
+     * Finds the end of the line starting at the given index, excluding its CRLF or LF terminator
+     * @param from the index of the start of the line
+     * @param to the index past which the line cannot extend
+     * @return the index of the line's terminator
+     */
+    private int findLineEnd(int from, int to)
+    {
+        int lf = this.indexOf((byte) '\n', from, to);
+
+        if (lf < 0)
+        {
+            return to;
+        }
+
+        return (lf > from && this.buffer.get(lf - 1) == '\r') ? lf - 1 : lf;
+    }
+
+    /**
+     * Returns the index of the start of the line following the one ending at the given index
+     * @param lineEnd the index of the terminator of the current line
+     * @param to the end of the input being parsed
+     * @return the index of the start of the next line
+     */
+    private int nextLine(int lineEnd, int to)
+    {
+        return (lineEnd < to && this.buffer.get(lineEnd) == '\r') ? lineEnd + 2 : lineEnd + 1;
+    }
+
+    /**
+     * Finds the first occurrence of a byte within a region of the buffer
+     * @param b the byte to find
+     * @param from the index to start searching from
+     * @param to the index to stop searching at
+     * @return the index of the byte, or -1 if it does not occur in the region
+     */
+    private int indexOf(byte b, int from, int to)
+    {
+        for (int i = from; i < to; i++)
+        {
+            if (this.buffer.get(i) == b)
+            {
+                return i;
+            }
+        }
+
+        return -1;
+    }
+
+    /**
+     * Returns whether a byte is optional white space, as allowed around header field values
+     * @param b the byte to check
+     * @return true if the byte is a space or horizontal tab
+     */
+    private boolean isWhiteSpace(byte b)
+    {
+        return b == ' ' || b == '\t';
+    }
+
+    /**
+     * Compares a region of the buffer against the given bytes
+     * @param from the index of the start of the region
+     * @param to the index of the end of the region
+     * @param expected the bytes to compare against, which must be in lower case if ignoreCase is set
+     * @param ignoreCase whether ASCII letters should be compared case-insensitively
+     * @return true if the region holds exactly the expected bytes
+     */
+    private boolean regionMatches(int from, int to, byte[] expected, boolean ignoreCase)
+    {
+        if (to - from != expected.length)
+        {
+            return false;
+        }
+
+        for (int i = 0; i < expected.length; i++)
+        {
+            byte b = this.buffer.get(from + i);
+
+            if ((ignoreCase ? HTTPRequestParser.ToLowerCase(b) : b) != expected[i])
+            {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * Returns a region of the buffer as a String, reusing a constant for well known values instead of allocating a new String
+     * @param from the index of the start of the region
+     * @param to the index of the end of the region
+     * @param knownBytes the encodings of the well known values
+     * @param knownStrings the well known values
+     * @param toLowerCase whether the region should be matched case-insensitively and returned in lower case
+     * @return the String held in the region
+     */
+    private String toKnownString(int from, int to, byte[][] knownBytes, String[] knownStrings, boolean toLowerCase)
+    {
+        for (int i = 0; i < knownBytes.length; i++)
+        {
+            if (this.regionMatches(from, to, knownBytes[i], toLowerCase))
+            {
+                return knownStrings[i];
+            }
+        }
+
+        String value = this.toString(from, to);
+        return toLowerCase ? value.toLowerCase() : value;
+    }
+
+    /**
+     * Returns a region of the buffer as a String
+     * <p>
+     * HTTP request heads are ASCII, but any other bytes are decoded as ISO-8859-1 so that decoding can never fail
+     * @param from the index of the start of the region
+     * @param to the index of the end of the region
+     * @return the String held in the region
+     */
+    private String toString(int from, int to)
+    {
+        if (this.buffer.hasArray())
+        {
+            return new String(this.buffer.array(), this.buffer.arrayOffset() + from, to - from, StandardCharsets.ISO_8859_1);
+        }
+
+        byte[] bytes = new byte[to - from];
+
+        for (int i = 0; i < bytes.length; i++)
+        {
+            bytes[i] = this.buffer.get(from + i);
+        }
+
+        return new String(bytes, StandardCharsets.ISO_8859_1);
+    }
+}
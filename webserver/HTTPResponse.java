@@ -1,15 +1,17 @@
 package webserver;
 
-import java.io.DataOutputStream;
-import java.io.File;
+import java.io.IOException;
 import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
 import java.nio.charset.StandardCharsets;
-import java.nio.file.Files;
 import java.nio.file.Paths;
-import java.text.SimpleDateFormat;
-import java.util.Date;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
 import java.util.HashMap;
-import java.util.SimpleTimeZone;
+import java.util.Random;
 
 /**
  * @author Kieran Chin Cheong
@@ -18,6 +20,12 @@ import java.util.SimpleTimeZone;
  */
 public class HTTPResponse
 {
+    // Static variables
+    
+    // Separates the parts of a multipart/byteranges message body. It only needs to be unlikely to appear in any file served
+    private static final String MULTIPART_BOUNDARY = String.format("%016x%016x", new Random().nextLong(), new Random().nextLong());
+    private static final byte[] MULTIPART_END = String.format("\r\n--%s--\r\n", MULTIPART_BOUNDARY).getBytes(StandardCharsets.US_ASCII);
+    
     // Static methods
     
     /**
@@ -29,22 +37,99 @@ public class HTTPResponse
      */
     public static HTTPResponse BuildHTTPResponseWithBody(HTTPRequest request, boolean isKeepAliveEnabled, int responseNumber)
     {
+        // Declared here so that anything it holds can be released if building it fails part way through
+        HTTPResponse response = null;
+        
         try
         {
+            // The status path is reserved for the server's own metrics, which are generated rather than read from the content root
+            if (StatusPage.IsStatusRequest(request.getRequestTarget()))
+            {
+                return HTTPResponse.BuildStatusResponse(request, isKeepAliveEnabled, responseNumber);
+            }
+            
             // Create the new HTTPResponse object
-            HTTPResponse response = new HTTPResponse(isKeepAliveEnabled, responseNumber);
+            response = new HTTPResponse(isKeepAliveEnabled, responseNumber);
             
             // Build the absolute path to the requested resource on the local file system
             response.localAbsolutePath = Configuration.GetConfiguration().getRootDirectory() + request.getRequestTargetLocalPath();
-            File file = new File(response.localAbsolutePath);
+            String originalPath = response.localAbsolutePath;
+            
+            // If the file has precompressed sidecars, send the one the client prefers instead, if it accepts any
+            // The content type is still that of the original file
+            AcceptEncoding acceptEncoding = AcceptEncoding.Parse(request.getHeaderField("accept-encoding"));
+            PrecompressedVariants variants = PrecompressedFileCache.GetCache().get(originalPath);
+            
+            if (variants != null)
+            {
+                response.isVaryingByEncoding = true;
+                response.contentEncoding = acceptEncoding.select(variants.getPath(AcceptEncoding.BROTLI) != null, variants.getPath(AcceptEncoding.GZIP) != null);
+                
+                if (response.contentEncoding != null)
+                {
+                    response.localAbsolutePath = variants.getPath(response.contentEncoding);
+                    response.mimeType = FileMetadataCache.GetCache().get(originalPath).getMimeType();
+                }
+            }
+            
+            // If the file is held in the content cache, it can be served from memory without touching the file system
+            CachedFile cachedFile = FileContentCache.GetCache().get(response.localAbsolutePath);
+            
+            if (cachedFile != null)
+            {
+                if (response.contentEncoding == null)
+                {
+                    response.mimeType = cachedFile.getMimeType();
+                }
+                
+                // Otherwise compressible files are compressed on the fly for clients which accept it
+                response.selectDynamicCompression(request, acceptEncoding, cachedFile.getSize());
+                
+                // If the client already has this version of the file, send back only its validators
+                // Likewise if none of the ranges requested lie within the file, send back only its size
+                if (response.isClientCacheCurrent(request, cachedFile.getSize(), cachedFile.getLastModified()) ||
+                    response.isRangeNotSatisfiable(request, cachedFile.getSize(), cachedFile.getLastModified()))
+                {
+                    return response;
+                }
+                
+                CompressedFile compressedFile = response.findCompressedFile(cachedFile.getSize(), cachedFile.getLastModified(), cachedFile);
+                
+                if (compressedFile != null)
+                {
+                    response.content = compressedFile.getContent();
+                    response.messageBodySize = compressedFile.getSize();
+                }
+                else
+                {
+                    response.content = cachedFile.getContent();
+                    response.messageBodySize = cachedFile.getSize();
+                }
+                
+                response.applyRanges();
+                response.populateRequiredHeaderFields();
+                
+                return response;
+            }
+            
+            // The file's metadata is cached, so that neither finding it nor finding that it is missing needs the file system
+            FileMetadata metadata = FileMetadataCache.GetCache().get(response.localAbsolutePath);
+            
+            // If a sidecar has been removed since the file was last looked up, fall back to the original file
+            if (response.contentEncoding != null && ! metadata.exists())
+            {
+                response.contentEncoding = null;
+                response.localAbsolutePath = originalPath;
+                metadata = FileMetadataCache.GetCache().get(originalPath);
+            }
             
             // If the requested file does not exist, immediately return a 404 Not Found response
-            if (! file.exists())
+            if (! metadata.exists())
             {
                 return HTTPResponse.BuildHTTPResponseWithoutBody(Status.NOT_FOUND, isKeepAliveEnabled, responseNumber);
             }
             // Else if the requested file exists, but can not be read, return a 403 Forbidden response
-            else if (! Files.isReadable(file.toPath()))
+            else if (! metadata.isReadable())
             {
                 return HTTPResponse.BuildHTTPResponseWithoutBody(Status.FORBIDDEN, isKeepAliveEnabled, responseNumber);
             }
@@ -52,13 +137,62 @@ public class HTTPResponse
             else
             {
                 // Determine the size of the file
-                response.messageBodySize = file.length();
+                response.messageBodySize = metadata.getSize();
+                long lastModified = metadata.getLastModified();
                 
-                // Determine (best effort) the type of file. This will determine the MIME type of the response
-                response.mimeType = Files.probeContentType(file.toPath());
+                // Determine (best effort) the type of file. This will determine the MIME type of the response, unless it is a sidecar
+                String fileMimeType = metadata.getMimeType();
                 
-                // Set status to OK
-                response.responseCode = Status.OK;
+                if (response.contentEncoding == null)
+                {
+                    response.mimeType = fileMimeType;
+                }
+                
+                // Otherwise compressible files are compressed on the fly for clients which accept it
+                response.selectDynamicCompression(request, acceptEncoding, response.messageBodySize);
+                
+                // If the client already has this version of the file, send back only its validators without reading the file
+                // Likewise if none of the ranges requested lie within the file, send back only its size
+                if (response.isClientCacheCurrent(request, response.messageBodySize, lastModified) ||
+                    response.isRangeNotSatisfiable(request, response.messageBodySize, lastModified))
+                {
+                    return response;
+                }
+                
+                // A selector event loop does not wait for a file to be read or mapped, since every connection it owns would wait as well.
+                // Until it is ready, the file is sent straight from the file system
+                boolean isWaiting = ! SelectorEventLoop.IsEventLoopThread();
+                
+                // Load small and medium sized files into the content cache, so that following requests for them are served from memory
+                cachedFile = FileContentCache.GetCache().load(response.localAbsolutePath, response.messageBodySize, lastModified, fileMimeType, isWaiting);
+                
+                // Compressed contents are cached separately, and compressed from the content cache if the file is held there
+                CompressedFile compressedFile = response.findCompressedFile(response.messageBodySize, lastModified, cachedFile);
+                
+                if (compressedFile != null)
+                {
+                    response.content = compressedFile.getContent();
+                    response.messageBodySize = compressedFile.getSize();
+                }
+                else if (cachedFile != null)
+                {
+                    response.content = cachedFile.getContent();
+                    response.messageBodySize = cachedFile.getSize();
+                }
+                // Larger files are served from a memory mapping shared by every request for the file, and the largest are sent
+                // directly from the file
+                else if (MappedFileCache.GetCache().isMappable(response.messageBodySize))
+                {
+                    response.mappedFile = MappedFileCache.GetCache().acquire(response.localAbsolutePath, response.messageBodySize, lastModified, isWaiting);
+                    
+                    if (response.mappedFile != null)
+                    {
+                        response.content = response.mappedFile.getContent();
+                    }
+                }
+                
+                // Set status to OK, or to Partial Content if only some ranges of the file were requested
+                response.applyRanges();
                 
                 // Populate required header fields
                 response.populateRequiredHeaderFields();
@@ -70,6 +204,12 @@ public class HTTPResponse
         {
             // Unhandled exception was hit during response generation
             // For simplicity's sake we will call this an internal server error
+            // The partly built response is discarded, so its hold on a memory mapping of the file must be given up
+            if (response != null)
+            {
+                response.release();
+            }
+            
             return HTTPResponse.BuildHTTPResponseWithoutBody(Status.INTERNAL_SERVER_ERROR, isKeepAliveEnabled, responseNumber);
         }
     }
@@ -95,13 +235,48 @@ public class HTTPResponse
         return response;
     }
     
+    /**
+     * Static method that creates an HTTP response object holding the server's status page
+     * @param request the HTTPRequest object for the status page
+     * @param isKeepAliveEnabled specifies whether or not HTTP KeepAlive should be enabled for this HTTPResponse
+     * @param responseNumber the number of this response in the sequence of an HTTP persistent connection
+     * @return the created HTTPResponse object
+     */
+    private static HTTPResponse BuildStatusResponse(HTTPRequest request, boolean isKeepAliveEnabled, int responseNumber)
+    {
+        HTTPResponse response = new HTTPResponse(isKeepAliveEnabled, responseNumber);
+        byte[] page = StatusPage.Render(request.getRequestTarget());
+        
+        response.responseCode = Status.OK;
+        response.content = ByteBuffer.wrap(page);
+        response.messageBodySize = page.length;
+        response.mimeType = StatusPage.IsPrometheusRequest(request.getRequestTarget()) ? StatusPage.PROMETHEUS_MIME_TYPE : StatusPage.JSON_MIME_TYPE;
+        response.populateRequiredHeaderFields();
+        
+        // The page is different every time, so it must not be cached or requested in ranges
+        response.headerFields.put("cache-control", "no-store");
+        response.headerFields.remove("accept-ranges");
+        
+        return response;
+    }
+    
     // Member variables
     
     private Status responseCode;
     private HashMap<String, String> headerFields = new HashMap<String, String>();
     private String localAbsolutePath;
+    private ByteBuffer content;
+    private MappedFile mappedFile;
     private long messageBodySize;
+    private long messageBodyOffset;
+    private long completeLength;
+    private ArrayList<ByteRange> ranges;
+    private byte[][] multipartHeads;
     private String mimeType;
+    private String contentEncoding;
+    private boolean isVaryingByEncoding;
+    private boolean isCompressedOnTheFly;
+    private FileValidators validators;
     private boolean isKeepAliveEnabled;
     private int responseNumber;
     private int remainingResponses;
@@ -133,41 +308,50 @@ public class HTTPResponse
      */
     public void Send(OutputStream stream) throws ResponseException
     {
+        this.Send(Channels.newChannel(stream));
+    }
+    
+    /**
+     * This method sends the HTTP response in the correct format over the network to the client
+     * <p>
+     * If the channel is the client's SocketChannel the message body is sent straight from the file by the operating system,
+     * otherwise it is copied through a fixed size buffer. Either way the file is never read into memory in full
+     * @param channel blocking WritableByteChannel to the client
+     * @throws ResponseException
+     */
+    public void Send(WritableByteChannel channel) throws ResponseException
+    {
+        ByteBuffer head = null;
+        ResponseBody body = null;
+        long started = System.nanoTime();
+        
         try
         {
-            DataOutputStream ostream = new DataOutputStream(stream);
-            
-            // Write the start line of the response, which looks like this
-            // HTTP/1.1 200 OK
-            ostream.write(String.format("%s %s %s\r\n", Webserver.HTTP_VERSION, this.responseCode.toCode(), this.responseCode.toString()).getBytes(StandardCharsets.US_ASCII));
+            // Write the start line, the headers and the blank line that separates them from the message body
+            head = ResponseHeadEncoder.Encode(this, null);
+            long bytes = head.remaining();
             
-            // Write the headers
-            for (String key : this.headerFields.keySet())
+            while (head.hasRemaining())
             {
-                ostream.write(String.format("%s: %s\r\n", key, this.headerFields.get(key)).getBytes(StandardCharsets.US_ASCII));
+                channel.write(head);
             }
             
-            // Write the blank line between the headers and the message body
-            ostream.write("\r\n".getBytes(StandardCharsets.US_ASCII));
-            
             // If the local absolute path is specified, then we should also send the contents of the file
-            if (this.localAbsolutePath != null && !this.localAbsolutePath.equals(""))
+            body = this.openBody();
+            
+            if (body != null)
             {
-                byte[] fileBytes = Files.readAllBytes(Paths.get(this.localAbsolutePath));
-                
-                // Write the bytes to the output stream
-                ostream.write(fileBytes);
-                
-                fileBytes = null; // Ensure that a reference to the byte array is only kept for as little time as possible
+                body.writeTo(channel);
+                bytes += this.messageBodySize;
             }
             
-            ostream.flush();
+            Metrics.GetMetrics().responseSent(this.responseCode, bytes, System.nanoTime() - started);
             
-            // If HTTP KeepAlive is either not enabled or not valid for this response, close the output stream
+            // If HTTP KeepAlive is either not enabled or not valid for this response, close the channel
             // otherwise, do not close it, as this would inadvertently close the connection to the client
             if (! this.isKeepAliveEnabled)
             {
-                ostream.close();
+                channel.close();
             }
         }
         catch (Exception e)
@@ -176,41 +360,328 @@ public class HTTPResponse
             // to be handled by the working thread
             throw new ResponseException(String.format("Could not send response : %s", e.toString()));
         }
+        finally
+        {
+            BufferPool.GetPool().release(head);
+            
+            if (body != null)
+            {
+                body.close();
+            }
+            
+            this.release();
+        }
     }
     
     /**
-     * Method used to generate HTTP response header/value pairs
+     * @return the length of the message body sent by openBody(), if it returns one
+     */
+    long getMessageBodySize()
+    {
+        return this.messageBodySize;
+    }
+    
+    /**
+     * Releases anything held on behalf of this response's message body. Must be called once the response has been sent, or will not be
      * <p>
-     * Different headers are required depending on the HTTP response code
+     * This may safely be called more than once
      */
-    private void populateRequiredHeaderFields()
+    void release()
     {
-        // Add header fields required for all response codes capable of being sent
+        if (this.mappedFile != null)
+        {
+            MappedFileCache.GetCache().release(this.mappedFile);
+            this.mappedFile = null;
+            this.content = null;
+        }
+    }
+    
+    /**
+     * Opens the message body of this response to be sent
+     * @return the ResponseBody to send after the head, or null if this response has no message body
+     * @throws IOException
+     */
+    ResponseBody openBody() throws IOException
+    {
+        // Multiple ranges are sent as the parts of a multipart/byteranges message body
+        if (this.multipartHeads != null)
+        {
+            return this.openMultipartBody();
+        }
         
-        // Add the date header field in the expected format (GMT time zone)
-        SimpleDateFormat gmtDateFormatter = new SimpleDateFormat("EEE, d MMM yyyy HH:mm:ss z");
-        gmtDateFormatter.setTimeZone(new SimpleTimeZone(0, "GMT"));
-        this.headerFields.put("date", gmtDateFormatter.format(new Date()));
+        // Contents served from the content cache or a memory mapping are already in memory
+        if (this.content != null)
+        {
+            return new ResponseBody(this.sliceContent(this.messageBodyOffset, this.messageBodySize));
+        }
         
-        // Add the server header field
-        this.headerFields.put("server", Webserver.SERVER_VERSION);
+        if (this.localAbsolutePath != null && !this.localAbsolutePath.equals(""))
+        {
+            return new ResponseBody(this.localAbsolutePath, this.messageBodyOffset, this.messageBodySize);
+        }
         
-        // Add the connection header field
-        // If HTTP KeepAlive is enabled and this is not the last allowable response, indicate this
-        // and also provide the expected "keep-alive" header values
-        if (this.isKeepAliveEnabled && this.remainingResponses > 0)
+        return null;
+    }
+    
+    /**
+     * Opens a multipart/byteranges message body, with each part sent straight from the contents in memory or from the file
+     * @return the ResponseBody to send after the head
+     * @throws IOException
+     */
+    private ResponseBody openMultipartBody() throws IOException
+    {
+        ResponseBody[] parts = new ResponseBody[this.ranges.size() * 2 + 1];
+        
+        // Every part read from the file shares a single open file
+        FileChannel file = this.content == null ? FileChannel.open(Paths.get(this.localAbsolutePath), StandardOpenOption.READ) : null;
+        
+        for (int i = 0; i < this.ranges.size(); i++)
         {
-            this.headerFields.put("connection", "keep-alive");
+            ByteRange range = this.ranges.get(i);
             
-            // If HTTP 1.1 KeepAlive is enabled, also send that header field
-            this.headerFields.put("keep-alive", String.format("timeout=%d,max=%d", Configuration.GetConfiguration().getHttpKeepAliveTimeout(), this.remainingResponses));
+            parts[i * 2] = new ResponseBody(ByteBuffer.wrap(this.multipartHeads[i]));
+            parts[i * 2 + 1] = file == null ? new ResponseBody(this.sliceContent(range.getFirst(), range.getLength())) : new ResponseBody(file, range.getFirst(), range.getLength());
         }
-        // Otherwise indicate that the connection will be closed after the response has been sent
-        else
+        
+        parts[parts.length - 1] = new ResponseBody(ByteBuffer.wrap(MULTIPART_END));
+        
+        return new ResponseBody(parts);
+    }
+    
+    /**
+     * Returns a new view of part of the contents in memory
+     * @param offset the offset of the first byte of the part
+     * @param length the number of bytes in the part
+     * @return a buffer positioned at the start of the part
+     */
+    private ByteBuffer sliceContent(long offset, long length)
+    {
+        ByteBuffer slice = this.content.duplicate();
+        slice.limit((int) (offset + length));
+        slice.position((int) offset);
+        
+        return slice;
+    }
+    
+    /**
+     * Decides whether to compress the requested file on the fly, for a file with no precompressed sidecar the client accepts
+     * <p>
+     * Range requests are always served from the file as it is, since the ranges of a compressed representation could only be found
+     * by compressing the whole file
+     * @param request the request being responded to
+     * @param acceptEncoding the content codings the client accepts
+     * @param size the size of the file
+     */
+    private void selectDynamicCompression(HTTPRequest request, AcceptEncoding acceptEncoding, long size)
+    {
+        if (this.contentEncoding != null || ! CompressedContentCache.GetCache().isCompressible(this.mimeType, size))
+        {
+            return;
+        }
+        
+        // Whether or not the file ends up being compressed for this client, the response depends on the accept-encoding header field
+        this.isVaryingByEncoding = true;
+        
+        if (request.getRanges() == null && acceptEncoding.select(false, true) != null)
+        {
+            this.contentEncoding = AcceptEncoding.GZIP;
+            this.isCompressedOnTheFly = true;
+        }
+    }
+    
+    /**
+     * Looks up the compressed contents of the requested file, if it is being compressed on the fly
+     * <p>
+     * A selector event loop does not wait for a file to be compressed, since every connection it owns would wait as well. Until the
+     * compressed contents are ready, the file is sent as it is
+     * @param size the size of the file
+     * @param lastModified the modification time of the file
+     * @param cachedFile the contents of the file if they are held in the content cache, may be null
+     * @return the compressed file, or null if the file is to be sent as it is
+     * @throws IOException
+     */
+    private CompressedFile findCompressedFile(long size, long lastModified, CachedFile cachedFile) throws IOException
+    {
+        if (! this.isCompressedOnTheFly)
         {
-            this.headerFields.put("connection", "close");
+            return null;
         }
         
+        CompressedFile compressedFile = CompressedContentCache.GetCache().get(this.localAbsolutePath, size, lastModified, cachedFile, ! SelectorEventLoop.IsEventLoopThread());
+        
+        if (compressedFile == null)
+        {
+            this.contentEncoding = null;
+            this.isCompressedOnTheFly = false;
+            
+            // The validators were those of the compressed representation
+            if (this.validators != null)
+            {
+                this.validators = FileValidators.Get(this.localAbsolutePath, size, lastModified);
+            }
+        }
+        
+        return compressedFile;
+    }
+    
+    /**
+     * Selects the ranges of the requested file to send, if the request has a range header field that applies to this version of the file
+     * <p>
+     * If none of the ranges lie within the file, this response is turned into a 416 Range Not Satisfiable response
+     * @param request the request being responded to
+     * @param size the size of the file
+     * @param lastModified the modification time of the file
+     * @return true if this is now a 416 Range Not Satisfiable response, which is complete and has no message body, false otherwise
+     */
+    private boolean isRangeNotSatisfiable(HTTPRequest request, long size, long lastModified)
+    {
+        this.completeLength = size;
+        
+        if (request.getRanges() == null || ! this.isIfRangeCurrent(request, size, lastModified))
+        {
+            return false;
+        }
+        
+        ArrayList<ByteRange> satisfiableRanges = new ArrayList<ByteRange>();
+        
+        for (ByteRange range : request.getRanges())
+        {
+            ByteRange satisfiableRange = range.resolve(size);
+            
+            if (satisfiableRange != null)
+            {
+                satisfiableRanges.add(satisfiableRange);
+            }
+        }
+        
+        if (! satisfiableRanges.isEmpty())
+        {
+            this.ranges = satisfiableRanges;
+            return false;
+        }
+        
+        this.localAbsolutePath = null;
+        this.responseCode = Status.RANGE_NOT_SATISFIABLE;
+        this.populateRequiredHeaderFields();
+        
+        return true;
+    }
+    
+    /**
+     * Evaluates the if-range header field of a request against this version of the file
+     * <p>
+     * Only a strong entity tag or the exact last modification date are accepted, as required by RFC 7233
+     * @param request the request
+     * @param size the size of the file
+     * @param lastModified the modification time of the file
+     * @return true if the requested ranges should be sent, false if the whole file should be sent instead
+     */
+    private boolean isIfRangeCurrent(HTTPRequest request, long size, long lastModified)
+    {
+        String ifRange = request.getHeaderField("if-range");
+        
+        if (ifRange == null)
+        {
+            return true;
+        }
+        
+        FileValidators validators = FileValidators.Get(this.localAbsolutePath, size, lastModified);
+        
+        if (ifRange.startsWith("\""))
+        {
+            return ifRange.equals(validators.getEntityTag());
+        }
+        
+        return ifRange.equals(validators.getLastModifiedDate());
+    }
+    
+    /**
+     * Sets the response code and message body size of this response according to the ranges selected, if any
+     * <p>
+     * For multiple ranges, the head of each part of the multipart/byteranges message body is encoded here, since the size of the
+     * message body depends on them
+     */
+    private void applyRanges()
+    {
+        if (this.ranges == null)
+        {
+            this.responseCode = Status.OK;
+            return;
+        }
+        
+        this.responseCode = Status.PARTIAL_CONTENT;
+        
+        if (this.ranges.size() == 1)
+        {
+            this.messageBodyOffset = this.ranges.get(0).getFirst();
+            this.messageBodySize = this.ranges.get(0).getLength();
+            return;
+        }
+        
+        this.multipartHeads = new byte[this.ranges.size()][];
+        this.messageBodySize = MULTIPART_END.length;
+        
+        for (int i = 0; i < this.ranges.size(); i++)
+        {
+            ByteRange range = this.ranges.get(i);
+            
+            StringBuilder head = new StringBuilder();
+            head.append(String.format("\r\n--%s\r\n", MULTIPART_BOUNDARY));
+            
+            if (this.mimeType != null)
+            {
+                head.append(String.format("content-type: %s\r\n", this.mimeType));
+            }
+            
+            head.append(String.format("content-range: bytes %d-%d/%d\r\n\r\n", range.getFirst(), range.getLast(), this.completeLength));
+            
+            this.multipartHeads[i] = head.toString().getBytes(StandardCharsets.US_ASCII);
+            this.messageBodySize += this.multipartHeads[i].length + range.getLength();
+        }
+    }
+    
+    /**
+     * Determines the validators of the requested file when client caching is enabled, and turns this response into a 304 Not Modified
+     * response if they show that the client's copy of the file is current
+     * @param request the request being responded to
+     * @param size the size of the file
+     * @param lastModified the modification time of the file
+     * @return true if this is now a 304 Not Modified response, which is complete and has no message body, false otherwise
+     */
+    private boolean isClientCacheCurrent(HTTPRequest request, long size, long lastModified)
+    {
+        if (! Configuration.GetConfiguration().isEnableClientCaching())
+        {
+            return false;
+        }
+        
+        this.validators = FileValidators.Get(this.localAbsolutePath, size, lastModified);
+        
+        if (this.isCompressedOnTheFly)
+        {
+            this.validators = this.validators.getEncodedValidators(this.contentEncoding);
+        }
+        
+        if (! this.validators.isNotModified(request))
+        {
+            return false;
+        }
+        
+        this.localAbsolutePath = null;
+        this.responseCode = Status.NOT_MODIFIED;
+        this.populateRequiredHeaderFields();
+        
+        return true;
+    }
+    
+    /**
+     * Method used to generate HTTP response header/value pairs
+     * <p>
+     * Different headers are required depending on the HTTP response code. The date, server, connection and keep-alive header
+     * fields required for all response codes are added when the head is encoded, by ResponseHeadEncoder
+     */
+    private void populateRequiredHeaderFields()
+    {
         // If the server is running in debug mode, include some extra information in the header fields as custom headers
         if (Configuration.GetConfiguration().isDebugMode())
         {
@@ -222,6 +693,8 @@ public class HTTPResponse
         switch(this.responseCode)
         {
             case BAD_REQUEST:
+                // Content-Length
+                this.headerFields.put("content-length", "0");
                 break;
             case CONTINUE:
                 break;
@@ -230,34 +703,130 @@ public class HTTPResponse
                 this.headerFields.put("content-length", "0");
                 break;
             case HTTP_VERSION_NOT_SUPPORTED:
+                // Content-Length
+                this.headerFields.put("content-length", "0");
                 break;
             case INTERNAL_SERVER_ERROR:
+                // Content-Length
+                this.headerFields.put("content-length", "0");
                 break;
             case NOT_FOUND:
                 // Content-Length
                 this.headerFields.put("content-length", "0");
                 break;
             case NOT_IMPLEMENTED:
+                // Content-Length
+                this.headerFields.put("content-length", "0");
                 break;
             case NOT_MODIFIED:
+                // The validators the client's copy was checked against
+                this.addValidatorHeaderFields();
+                // Vary
+                this.addVaryHeaderField();
                 break;
             case OK:
-                // Content-Type
-                this.headerFields.put("content-type", this.mimeType);
+                // Content-Type, if it could be determined
+                if (this.mimeType != null)
+                {
+                    this.headerFields.put("content-type", this.mimeType);
+                }
                 // Content-Length
                 this.headerFields.put("content-length", String.valueOf(this.messageBodySize));
-                // ETag
-                // TODO Implement this
+                // Accept-Ranges
+                this.headerFields.put("accept-ranges", "bytes");
+                // ETag and Last-Modified
+                this.addValidatorHeaderFields();
+                // Content-Encoding and Vary
+                this.addContentEncodingHeaderField();
+                this.addVaryHeaderField();
+                break;
+            case PARTIAL_CONTENT:
+                // Content-Type and Content-Range, which for multiple ranges are given by each part of the message body instead
+                if (this.multipartHeads != null)
+                {
+                    this.headerFields.put("content-type", "multipart/byteranges; boundary=" + MULTIPART_BOUNDARY);
+                }
+                else
+                {
+                    if (this.mimeType != null)
+                    {
+                        this.headerFields.put("content-type", this.mimeType);
+                    }
+                    this.headerFields.put("content-range", String.format("bytes %d-%d/%d", this.ranges.get(0).getFirst(), this.ranges.get(0).getLast(), this.completeLength));
+                }
+                // Content-Length
+                this.headerFields.put("content-length", String.valueOf(this.messageBodySize));
+                // Accept-Ranges
+                this.headerFields.put("accept-ranges", "bytes");
+                // ETag and Last-Modified
+                this.addValidatorHeaderFields();
+                // Content-Encoding and Vary
+                this.addContentEncodingHeaderField();
+                this.addVaryHeaderField();
+                break;
+            case RANGE_NOT_SATISFIABLE:
+                // Content-Range, giving the size of the file
+                this.headerFields.put("content-range", String.format("bytes */%d", this.completeLength));
+                // Content-Length
+                this.headerFields.put("content-length", "0");
                 break;
             case SERVICE_UNAVAILABLE:
+                // Retry-After, telling the client when it may try again
+                this.headerFields.put("retry-after", String.valueOf(Configuration.GetConfiguration().getRetryAfter()));
+                // Content-Length
+                this.headerFields.put("content-length", "0");
                 break;
             case UNAUTHORIZED:
+                // Content-Length
+                this.headerFields.put("content-length", "0");
+                break;
+            case URI_TOO_LONG:
+                // Content-Length
+                this.headerFields.put("content-length", "0");
+                break;
+            case REQUEST_HEADER_FIELDS_TOO_LARGE:
+                // Content-Length
+                this.headerFields.put("content-length", "0");
                 break;
             default:
                 break;
         }
     }
     
+    /**
+     * Adds the etag and last-modified header fields, if the validators of the file have been determined
+     */
+    private void addValidatorHeaderFields()
+    {
+        if (this.validators != null)
+        {
+            this.headerFields.put("etag", this.validators.getEntityTag());
+            this.headerFields.put("last-modified", this.validators.getLastModifiedDate());
+        }
+    }
+    
+    /**
+     * Adds the content-encoding header field, if a precompressed sidecar or compressed contents are being sent
+     */
+    private void addContentEncodingHeaderField()
+    {
+        if (this.contentEncoding != null)
+        {
+            this.headerFields.put("content-encoding", this.contentEncoding);
+        }
+    }
+    
+    /**
+     * Adds the vary header field, if the file has precompressed sidecars so that responses for it depend on the accept-encoding header field
+     */
+    private void addVaryHeaderField()
+    {
+        if (this.isVaryingByEncoding)
+        {
+            this.headerFields.put("vary", "accept-encoding");
+        }
+    }
+    
     // Simple getters
     
     /**
@@ -267,4 +836,28 @@ public class HTTPResponse
     {
         return this.responseCode;
     }
+    
+    /**
+     * @return
+     */
+    boolean isKeepAliveEnabled()
+    {
+        return this.isKeepAliveEnabled;
+    }
+    
+    /**
+     * @return
+     */
+    int getRemainingResponses()
+    {
+        return this.remainingResponses;
+    }
+    
+    /**
+     * @return
+     */
+    HashMap<String, String> getHeaderFields()
+    {
+        return this.headerFields;
+    }
 }
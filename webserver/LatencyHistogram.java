@@ -0,0 +1,168 @@
+package webserver;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * @author Kieran Chin Cheong
+ * @version 1.0
+ * @since 1.0
+ */
+public class LatencyHistogram
+{
+    // Static variables
+
+    // Latencies are recorded in microseconds into log-linear buckets: each power of two is split into 2^SUB_BUCKET_BITS buckets
+    // of equal width, so every bucket is within about 3% of the latencies recorded in it, whatever their magnitude
+    private static final int SUB_BUCKET_BITS = 5;
+    private static final int SUB_BUCKET_COUNT = 1 << SUB_BUCKET_BITS;
+
+    // Latencies of 2^37 microseconds (about 38 hours) or more are recorded as just under that
+    private static final int MAX_SHIFT = 31;
+    private static final long MAX_VALUE = (2L * SUB_BUCKET_COUNT << MAX_SHIFT) - 1;
+    private static final int BUCKET_COUNT = (MAX_SHIFT + 2) * SUB_BUCKET_COUNT;
+
+    // Static methods
+
+    /**
+     * Returns the bucket a latency is counted in
+     * <p>
+     * Latencies below 2 * SUB_BUCKET_COUNT each have a bucket of their own. Above that, a latency's highest set bit selects the
+     * power of two, and the bits just below it select the bucket within it
+     * @param value the latency in microseconds
+     * @return the index of the bucket
+     */
+    private static int BucketIndex(long value)
+    {
+        if (value < 2 * SUB_BUCKET_COUNT)
+        {
+            return (int) value;
+        }
+
+        int shift = 63 - Long.numberOfLeadingZeros(value) - SUB_BUCKET_BITS;
+        return (shift << SUB_BUCKET_BITS) + (int) (value >>> shift);
+    }
+
+    /**
+     * Returns the highest latency counted in a bucket
+     * @param index the index of the bucket
+     * @return the latency in microseconds
+     */
+    private static long BucketHighestValue(int index)
+    {
+        if (index < 2 * SUB_BUCKET_COUNT)
+        {
+            return index;
+        }
+
+        int shift = (index >>> SUB_BUCKET_BITS) - 1;
+        long lowest = (long) ((index & (SUB_BUCKET_COUNT - 1)) + SUB_BUCKET_COUNT) << shift;
+
+        return lowest + (1L << shift) - 1;
+    }
+
+    // Member variables
+
+    private AtomicLongArray counts;
+    private LongAdder count;
+    private LongAdder sum;
+    private AtomicLong max;
+
+    /**
+     * Constructor. The buckets are allocated up front, so recording a latency never allocates
+     */
+    public LatencyHistogram()
+    {
+        this.counts = new AtomicLongArray(BUCKET_COUNT);
+        this.count = new LongAdder();
+        this.sum = new LongAdder();
+        this.max = new AtomicLong();
+    }
+
+    /**
+     * Records a latency. May be called by any number of threads at once, without locking
+     * @param nanos the latency in nanoseconds, as measured with System.nanoTime()
+     */
+    public void record(long nanos)
+    {
+        long value = Math.min(Math.max(nanos / 1000, 0), MAX_VALUE);
+
+        this.counts.incrementAndGet(LatencyHistogram.BucketIndex(value));
+        this.count.increment();
+        this.sum.add(value);
+
+        // The maximum rarely changes once a histogram has settled, so this almost never retries
+        long currentMax = this.max.get();
+
+        while (value > currentMax && ! this.max.compareAndSet(currentMax, value))
+        {
+            currentMax = this.max.get();
+        }
+    }
+
+    /**
+     * Returns the latency at a given percentile of everything recorded so far
+     * <p>
+     * Recording carries on while the buckets are read, so the result reflects some moment during the call
+     * @param percentile the percentile, between 0 and 100
+     * @return the highest latency of the bucket the percentile falls in, in microseconds, or 0 if nothing has been recorded
+     */
+    public long getPercentile(double percentile)
+    {
+        long[] snapshot = new long[BUCKET_COUNT];
+        long total = 0;
+
+        for (int i = 0; i < BUCKET_COUNT; i++)
+        {
+            snapshot[i] = this.counts.get(i);
+            total += snapshot[i];
+        }
+
+        if (total == 0)
+        {
+            return 0;
+        }
+
+        long target = Math.max(1, (long) Math.ceil(percentile / 100 * total));
+        long seen = 0;
+
+        for (int i = 0; i < BUCKET_COUNT; i++)
+        {
+            seen += snapshot[i];
+
+            if (seen >= target)
+            {
+                return Math.min(LatencyHistogram.BucketHighestValue(i), this.getMax());
+            }
+        }
+
+        return this.getMax();
+    }
+
+    // Simple getters
+
+    /**
+     * @return
+     */
+    public long getCount()
+    {
+        return this.count.sum();
+    }
+
+    /**
+     * @return the sum of every latency recorded, in microseconds
+     */
+    public long getSum()
+    {
+        return this.sum.sum();
+    }
+
+    /**
+     * @return the highest latency recorded, in microseconds
+     */
+    public long getMax()
+    {
+        return this.max.get();
+    }
+}
@@ -0,0 +1,67 @@
+package webserver;
+
+/**
+ * @author Kieran Chin Cheong
+ * @version 1.0
+ * @since 1.0
+ */
+public class LogRecord
+{
+    // Member variables
+
+    private long time;
+    private long threadId;
+    private String format;
+    private Object[] arguments;
+
+    /**
+     * Fills in this record. Records are slots of a LogRingBuffer, reused for line after line
+     * @param time the time the line was logged at, in milliseconds since the epoch
+     * @param threadId the ID of the thread which logged the line
+     * @param format the line, or its format string if there are arguments
+     * @param arguments the arguments of the format string, or null if the line is logged as it is
+     */
+    public void set(long time, long threadId, String format, Object[] arguments)
+    {
+        this.time = time;
+        this.threadId = threadId;
+        this.format = format;
+        this.arguments = arguments;
+    }
+
+    /**
+     * Drops the references held by this record once it has been written, so that they can be collected
+     */
+    public void clear()
+    {
+        this.format = null;
+        this.arguments = null;
+    }
+
+    /**
+     * Returns the text of the line, formatting it if it has arguments
+     * @return the line
+     */
+    public String getLine()
+    {
+        return this.arguments == null ? this.format : String.format(this.format, this.arguments);
+    }
+
+    // Simple getters
+
+    /**
+     * @return
+     */
+    public long getTime()
+    {
+        return this.time;
+    }
+
+    /**
+     * @return
+     */
+    public long getThreadId()
+    {
+        return this.threadId;
+    }
+}
@@ -0,0 +1,111 @@
+package webserver;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * @author Kieran Chin Cheong
+ * @version 1.0
+ * @since 1.0
+ */
+public class LogRingBuffer
+{
+    // Member variables
+
+    private int mask;
+    private LogRecord[] records;
+
+    // The sequence of each slot says whose turn it is. A slot is free for the producer claiming position p when its sequence is p,
+    // and holds a published record for the consumer at position p when its sequence is p + 1
+    private AtomicLongArray sequences;
+
+    // Next position to be claimed by a producer, and next position to be taken by the single consumer
+    private AtomicLong tail;
+    private long head;
+
+    /**
+     * Constructor. Allocates every slot up front, so that logging a line does not allocate a record
+     * @param capacity the minimum number of lines held, which is rounded up to a power of two
+     */
+    public LogRingBuffer(int capacity)
+    {
+        int size = Integer.highestOneBit(Math.max(2, capacity - 1)) << 1;
+
+        this.mask = size - 1;
+        this.records = new LogRecord[size];
+        this.sequences = new AtomicLongArray(size);
+        this.tail = new AtomicLong();
+
+        for (int i = 0; i < size; i++)
+        {
+            this.records[i] = new LogRecord();
+            this.sequences.set(i, i);
+        }
+    }
+
+    /**
+     * Adds a line to the buffer. May be called by any number of threads at once, without locking
+     * @param time the time the line was logged at, in milliseconds since the epoch
+     * @param threadId the ID of the thread which logged the line
+     * @param format the line, or its format string if there are arguments
+     * @param arguments the arguments of the format string, or null
+     * @return true if the line was added, false if the buffer is full
+     */
+    public boolean offer(long time, long threadId, String format, Object[] arguments)
+    {
+        while (true)
+        {
+            long position = this.tail.get();
+            int index = (int) position & this.mask;
+            long available = this.sequences.get(index) - position;
+
+            if (available == 0)
+            {
+                // The slot is free, try to claim it before another producer does
+                if (this.tail.compareAndSet(position, position + 1))
+                {
+                    this.records[index].set(time, threadId, format, arguments);
+
+                    // Publish the record to the consumer
+                    this.sequences.lazySet(index, position + 1);
+                    return true;
+                }
+            }
+            else if (available < 0)
+            {
+                // The consumer has not yet taken the line a whole lap ago
+                return false;
+            }
+
+            // Otherwise another producer claimed the position first, so try the next one
+        }
+    }
+
+    /**
+     * Returns the oldest line in the buffer without removing it. May only be called by the consumer thread
+     * @return the record of the line, or null if the buffer is empty
+     */
+    public LogRecord peek()
+    {
+        int index = (int) this.head & this.mask;
+
+        if (this.sequences.get(index) != this.head + 1)
+        {
+            return null;
+        }
+
+        return this.records[index];
+    }
+
+    /**
+     * Removes the line returned by peek(), handing its slot back to the producers. May only be called by the consumer thread
+     */
+    public void remove()
+    {
+        int index = (int) this.head & this.mask;
+
+        this.records[index].clear();
+        this.sequences.lazySet(index, this.head + this.records.length);
+        this.head++;
+    }
+}
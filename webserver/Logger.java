@@ -1,9 +1,15 @@
 package webserver;
 
+import java.io.BufferedWriter;
+import java.io.FileWriter;
 import java.io.IOException;
 import java.io.PrintWriter;
+import java.text.SimpleDateFormat;
 import java.util.Date;
-import java.util.concurrent.ArrayBlockingQueue;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
 
 /**
  * @author Kieran Chin Cheong
@@ -21,20 +27,183 @@ public class Logger implements Runnable
     public static final int WARNING = 3;
     public static final int INFORMATION = 4;
     
+    // What to do with a line when the log buffer is full
+    public static final String OVERFLOW_DROP = "drop";
+    public static final String OVERFLOW_BLOCK = "block";
+    
+    // Size of the buffer lines are written to the log file through, in bytes
+    private static final int WRITE_BUFFER_SIZE = 65536;
+    
+    // How long the Logger thread sleeps for when there is nothing to write, and how long a blocked thread waits before trying again
+    private static final long IDLE_WAIT = TimeUnit.MILLISECONDS.toNanos(10);
+    private static final long BLOCKED_WAIT = TimeUnit.MICROSECONDS.toNanos(100);
+    
+    // How long the Logger thread is given to write out what is left when the server exits, in milliseconds
+    private static final long SHUTDOWN_WAIT = 5000;
+    
     // This is the singleton instance
     private static Logger loggerSingleton = null;
     
     /**
      * Static method to add a line to be logged to the server log
      * <p>
-     * The line will be logged if the specified log level is below the specified log threshold. Note that this is best-effort only
-     * If for some reason, there is no more room to queue the line to be added, it will be dropped so as to prevent blocking server threads
+     * The line will be logged if the specified log level is below the specified log threshold. If the log buffer is full the line
+     * is dropped or the calling thread waits for room, depending on the configured overflow policy
      * @param logLevel The log level
      * @param line the The line to be logged
      */
     public static void Log(int logLevel, String line)
     {
-        getLogger().log(logLevel, String.format("%s : TID %d : %s", new Date().toString(), Thread.currentThread().getId(), line));
+        getLogger().log(logLevel, line, null);
+    }
+    
+    /**
+     * Static method to add a formatted line to be logged to the server log
+     * <p>
+     * Nothing is formatted unless the line passes the log level threshold, and then only on the Logger thread, so the
+     * arguments must not be changed after being logged
+     * @param logLevel The log level
+     * @param format the format string of the line, as for String.format()
+     * @param argument the argument of the format string
+     */
+    public static void Log(int logLevel, String format, Object argument)
+    {
+        Logger logger = getLogger();
+        
+        if (logLevel <= logger.logLevel)
+        {
+            logger.log(logLevel, format, new Object[] {argument});
+        }
+    }
+    
+    /**
+     * Static method to add a formatted line to be logged to the server log
+     * @param logLevel The log level
+     * @param format the format string of the line, as for String.format()
+     * @param argument1 the first argument of the format string
+     * @param argument2 the second argument of the format string
+     * @see #Log(int, String, Object)
+     */
+    public static void Log(int logLevel, String format, Object argument1, Object argument2)
+    {
+        Logger logger = getLogger();
+        
+        if (logLevel <= logger.logLevel)
+        {
+            logger.log(logLevel, format, new Object[] {argument1, argument2});
+        }
+    }
+    
+    /**
+     * Static method to add a formatted line to be logged to the server log
+     * @param logLevel The log level
+     * @param format the format string of the line, as for String.format()
+     * @param argument1 the first argument of the format string
+     * @param argument2 the second argument of the format string
+     * @param argument3 the third argument of the format string
+     * @see #Log(int, String, Object)
+     */
+    public static void Log(int logLevel, String format, Object argument1, Object argument2, Object argument3)
+    {
+        Logger logger = getLogger();
+        
+        if (logLevel <= logger.logLevel)
+        {
+            logger.log(logLevel, format, new Object[] {argument1, argument2, argument3});
+        }
+    }
+    
+    /**
+     * Static method to add a formatted line to be logged to the server log
+     * @param logLevel The log level
+     * @param format the format string of the line, as for String.format()
+     * @param argument1 the first argument of the format string
+     * @param argument2 the second argument of the format string
+     * @param argument3 the third argument of the format string
+     * @param argument4 the fourth argument of the format string
+     * @see #Log(int, String, Object)
+     */
+    public static void Log(int logLevel, String format, Object argument1, Object argument2, Object argument3, Object argument4)
+    {
+        Logger logger = getLogger();
+        
+        if (logLevel <= logger.logLevel)
+        {
+            logger.log(logLevel, format, new Object[] {argument1, argument2, argument3, argument4});
+        }
+    }
+    
+    /**
+     * Static method to add a formatted line to be logged to the server log
+     * @param logLevel The log level
+     * @param format the format string of the line, as for String.format()
+     * @param argument1 the first argument of the format string
+     * @param argument2 the second argument of the format string
+     * @param argument3 the third argument of the format string
+     * @param argument4 the fourth argument of the format string
+     * @param argument5 the fifth argument of the format string
+     * @see #Log(int, String, Object)
+     */
+    public static void Log(int logLevel, String format, Object argument1, Object argument2, Object argument3, Object argument4, Object argument5)
+    {
+        Logger logger = getLogger();
+        
+        if (logLevel <= logger.logLevel)
+        {
+            logger.log(logLevel, format, new Object[] {argument1, argument2, argument3, argument4, argument5});
+        }
+    }
+    
+    /**
+     * Static method to add a formatted line to be logged to the server log
+     * @param logLevel The log level
+     * @param format the format string of the line, as for String.format()
+     * @param argument1 the first argument of the format string
+     * @param argument2 the second argument of the format string
+     * @param argument3 the third argument of the format string
+     * @param argument4 the fourth argument of the format string
+     * @param argument5 the fifth argument of the format string
+     * @param argument6 the sixth argument of the format string
+     * @see #Log(int, String, Object)
+     */
+    public static void Log(int logLevel, String format, Object argument1, Object argument2, Object argument3, Object argument4, Object argument5, Object argument6)
+    {
+        Logger logger = getLogger();
+        
+        if (logLevel <= logger.logLevel)
+        {
+            logger.log(logLevel, format, new Object[] {argument1, argument2, argument3, argument4, argument5, argument6});
+        }
+    }
+    
+    /**
+     * Static method to add a formatted line to be logged to the server log
+     * <p>
+     * The array of arguments is built by the caller whether or not the line is logged, so this is only for lines with more
+     * arguments than the fixed overloads take
+     * @param logLevel The log level
+     * @param format the format string of the line, as for String.format()
+     * @param arguments the arguments of the format string
+     * @see #Log(int, String, Object)
+     */
+    public static void Log(int logLevel, String format, Object... arguments)
+    {
+        Logger logger = getLogger();
+        
+        if (logLevel <= logger.logLevel)
+        {
+            logger.log(logLevel, format, arguments);
+        }
+    }
+    
+    /**
+     * Static method to check whether lines of a given level are being logged, before doing any work to build one
+     * @param logLevel The log level
+     * @return true if lines of the level are logged, false if they are discarded
+     */
+    public static boolean IsEnabled(int logLevel)
+    {
+        return logLevel <= getLogger().logLevel;
     }
     
     /**
@@ -46,28 +215,70 @@ public class Logger implements Runnable
      */
     public static void LogConnection(HTTPRequest request, HTTPResponse response, String clientRemoteAddress, String serverRemoteAddress)
     {
+        // This is called for every response, so return before the response code is boxed if the line would be discarded
+        if (! Logger.IsEnabled(Logger.CONNECTION))
+        {
+            return;
+        }
+        
         // It is possible to have a null request (for instance, if a bad request was received)
         // So in this case, do not include request details in the log line, since there aren't any
         if (request != null)
         {
-            Log(Logger.CONNECTION, String.format("%s %s %s %s %d %s", clientRemoteAddress, serverRemoteAddress, 
-                                                                                  request.getRequestMethod(), request.getRequestTarget(), 
-                                                                                  response.getResponseCode().toCode(), request.getUserAgent()));
+            Log(Logger.CONNECTION, "%s %s %s %s %d %s", clientRemoteAddress, serverRemoteAddress,
+                                                        request.getRequestMethod(), request.getRequestTarget(),
+                                                        response.getResponseCode().toCode(), request.getUserAgent());
         }
         else
         {
-            Log(Logger.CONNECTION, String.format("%s %s %s %s %d %s", clientRemoteAddress, serverRemoteAddress, 
-                    "-", "-", 
-                    response.getResponseCode().toCode(), "-"));
+            Log(Logger.CONNECTION, "%s %s %s %s %d %s", clientRemoteAddress, serverRemoteAddress,
+                    "-", "-",
+                    response.getResponseCode().toCode(), "-");
         }
     }
     
     /**
      * Static method to start the Logger
+     * <p>
+     * Whatever has been logged but not yet written is written out when the server exits
      */
     public static void Start()
     {
-        new Thread(getLogger()).start();
+        final Thread loggerThread = new Thread(getLogger(), "logger");
+        loggerThread.start();
+        
+        Runtime.getRuntime().addShutdownHook(new Thread() {
+            @Override
+            public void run() {
+                getLogger().isStopping = true;
+                LockSupport.unpark(loggerThread);
+                
+                try
+                {
+                    loggerThread.join(SHUTDOWN_WAIT);
+                }
+                catch (InterruptedException e)
+                {
+                    // Exit without waiting any longer
+                }
+            }
+        });
+    }
+    
+    /**
+     * @return the number of lines dropped because the log buffer was full
+     */
+    public static long GetDroppedLines()
+    {
+        return getLogger().droppedLines.sum();
+    }
+    
+    /**
+     * @return the number of lines which had to wait for room in the log buffer
+     */
+    public static long GetBlockedLines()
+    {
+        return getLogger().blockedLines.sum();
     }
     
     /**
@@ -86,21 +297,46 @@ public class Logger implements Runnable
     
     // Member variables
     
-    private ArrayBlockingQueue<String> lines;
+    private LogRingBuffer lines;
     private PrintWriter logWriter;
     private int logLevel;
+    private boolean isBlockingOnOverflow;
+    private long flushInterval;
+    private volatile boolean isStopping;
+    
+    // Statistics
+    private LongAdder droppedLines;
+    private LongAdder blockedLines;
+    
+    // State of the Logger thread
+    private long lastFlushAt;
+    private boolean isUnflushed;
+    private long reportedDroppedLines;
+    
+    // The date of each line is only formatted again when the second changes
+    private SimpleDateFormat dateFormat;
+    private long formattedSecond;
+    private String formattedDate;
     
     /**
-     * Private constructor.  Initializes the log queue and opens the Writer
+     * Private constructor.  Initializes the log buffer and opens the Writer
      */
     private Logger()
     {
-        this.lines = new ArrayBlockingQueue<String>(100);
+        this.lines = new LogRingBuffer(Configuration.GetConfiguration().getLogBufferSize());
         this.logLevel = Configuration.GetConfiguration().getLoggingLevel();
+        this.isBlockingOnOverflow = OVERFLOW_BLOCK.equals(Configuration.GetConfiguration().getLogOverflowPolicy());
+        this.flushInterval = Configuration.GetConfiguration().getLogFlushInterval();
+        this.droppedLines = new LongAdder();
+        this.blockedLines = new LongAdder();
+        
+        // The same format as Date.toString()
+        this.dateFormat = new SimpleDateFormat("EEE MMM dd HH:mm:ss zzz yyyy", Locale.US);
+        this.formattedSecond = -1;
         
         try
         {
-            this.logWriter = new PrintWriter(Configuration.GetConfiguration().getLogFile());
+            this.logWriter = new PrintWriter(new BufferedWriter(new FileWriter(Configuration.GetConfiguration().getLogFile()), WRITE_BUFFER_SIZE));
         }
         catch (IOException e)
         {
@@ -112,19 +348,45 @@ public class Logger implements Runnable
      * Method to queue a line to log. May only be internally used
      * <p>
      * @param logLevel The log level
-     * @param line The line to queue
+     * @param format The line, or its format string if there are arguments
+     * @param arguments The arguments of the format string, or null
      */
-    private void log(int logLevel, String line)
+    private void log(int logLevel, String format, Object[] arguments)
     {
         // Only queue the line if the log level is less than or equal to the threshold value
-        if (logLevel <= this.logLevel)
+        if (logLevel > this.logLevel)
+        {
+            return;
+        }
+        
+        long time = System.currentTimeMillis();
+        long threadId = Thread.currentThread().getId();
+        
+        if (this.lines.offer(time, threadId, format, arguments))
         {
-            this.lines.offer(line);
+            return;
+        }
+        
+        if (! this.isBlockingOnOverflow)
+        {
+            this.droppedLines.increment();
+            return;
+        }
+        
+        // Wait for the Logger thread to make room, rather than lose the line
+        this.blockedLines.increment();
+        
+        while (! this.lines.offer(time, threadId, format, arguments))
+        {
+            LockSupport.parkNanos(BLOCKED_WAIT);
         }
     }
     
     /**
      * This is the main execution loop of the Logger
+     * <p>
+     * Lines are written in batches through a large buffer, which is flushed to the file once every flush interval rather than
+     * after every line
      * @see java.lang.Runnable#run()
      */
     @Override
@@ -132,28 +394,95 @@ public class Logger implements Runnable
     {
         try
         {
+            this.lastFlushAt = System.currentTimeMillis();
+            
             while (true)
             {
-                try
+                LogRecord record = this.lines.peek();
+                
+                if (record != null)
                 {
-                    // Block on taking work from the queue, and then simply write the line
-                    String line = this.lines.take();
-                    this.logWriter.println(line);
-                    this.logWriter.flush();
+                    this.write(record);
+                    this.lines.remove();
+                    this.isUnflushed = true;
                 }
-                catch (InterruptedException e)
+                
+                long now = System.currentTimeMillis();
+                
+                if (this.isUnflushed && now - this.lastFlushAt >= this.flushInterval)
                 {
-                    // If the thread was interrupted while retrieving work. Simply continue
-                    System.err.println("LOGGER: Caught InterruptedException, continuing...");
-                    continue;
+                    this.flush(now);
                 }
                 
+                if (record == null)
+                {
+                    // Everything has been written, so the server may exit
+                    if (this.isStopping)
+                    {
+                        return;
+                    }
+                    
+                    LockSupport.parkNanos(IDLE_WAIT);
+                }
             }
         }
         finally // Ensure that the writer flushes and properly closes if the program exits
         {
-            this.logWriter.flush();
+            this.flush(System.currentTimeMillis());
             this.logWriter.close();
         }
     }
+    
+    /**
+     * Formats a line and writes it to the log file's buffer
+     * @param record the record of the line
+     */
+    private void write(LogRecord record)
+    {
+        String line;
+        
+        try
+        {
+            line = record.getLine();
+        }
+        catch (RuntimeException e)
+        {
+            // A bad format string must not stop the Logger thread
+            line = String.format("Could not format log line : %s", e.toString());
+        }
+        
+        long second = record.getTime() / 1000;
+        
+        if (second != this.formattedSecond)
+        {
+            this.formattedSecond = second;
+            this.formattedDate = this.dateFormat.format(new Date(record.getTime()));
+        }
+        
+        this.logWriter.print(this.formattedDate);
+        this.logWriter.print(" : TID ");
+        this.logWriter.print(record.getThreadId());
+        this.logWriter.print(" : ");
+        this.logWriter.println(line);
+    }
+    
+    /**
+     * Flushes the lines written so far to the log file, first noting any lines dropped since the last flush
+     * @param now the current time
+     */
+    private void flush(long now)
+    {
+        long dropped = this.droppedLines.sum();
+        
+        if (dropped != this.reportedDroppedLines)
+        {
+            this.logWriter.println(String.format("%s : TID %d : Warning : %d log lines dropped because the log buffer was full",
+                                                 this.dateFormat.format(new Date(now)), Thread.currentThread().getId(), dropped - this.reportedDroppedLines));
+            this.reportedDroppedLines = dropped;
+        }
+        
+        this.logWriter.flush();
+        this.lastFlushAt = now;
+        this.isUnflushed = false;
+    }
 }
@@ -0,0 +1,132 @@
+package webserver;
+
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+
+/**
+ * @author Kieran Chin Cheong
+ * @version 1.0
+ * @since 1.0
+ */
+public class MappedFile
+{
+    // Member variables
+
+    // All of these other than the buffer itself are guarded by the owning MappedFileCache
+    private String path;
+    private MappedByteBuffer buffer;
+    private long size;
+    private long lastModified;
+    private int referenceCount;
+    private long lastReleased;
+    private boolean retired;
+
+    /**
+     * Constructor
+     * @param path the absolute path of the mapped file on the local file system
+     * @param buffer read-only mapping of the whole file
+     * @param lastModified the modification time of the file when it was mapped
+     */
+    public MappedFile(String path, MappedByteBuffer buffer, long lastModified)
+    {
+        this.path = path;
+        this.buffer = buffer;
+        this.size = buffer.capacity();
+        this.lastModified = lastModified;
+        this.lastReleased = System.currentTimeMillis();
+    }
+
+    /**
+     * Returns the contents of the file
+     * <p>
+     * A new view of the mapping is returned every time, so that any number of responses can send it at once. The view must not
+     * be used after the reference it was obtained through has been released
+     * @return a read-only buffer positioned at the start of the contents
+     */
+    public ByteBuffer getContent()
+    {
+        return this.buffer.duplicate();
+    }
+
+    // Simple getters and setters
+
+    /**
+     * @return
+     */
+    public String getPath()
+    {
+        return this.path;
+    }
+
+    /**
+     * @return
+     */
+    MappedByteBuffer getBuffer()
+    {
+        return this.buffer;
+    }
+
+    /**
+     * @return
+     */
+    public long getSize()
+    {
+        return this.size;
+    }
+
+    /**
+     * @return
+     */
+    public long getLastModified()
+    {
+        return this.lastModified;
+    }
+
+    /**
+     * @return
+     */
+    int getReferenceCount()
+    {
+        return this.referenceCount;
+    }
+
+    /**
+     * @param referenceCount
+     */
+    void setReferenceCount(int referenceCount)
+    {
+        this.referenceCount = referenceCount;
+    }
+
+    /**
+     * @return
+     */
+    long getLastReleased()
+    {
+        return this.lastReleased;
+    }
+
+    /**
+     * @param lastReleased
+     */
+    void setLastReleased(long lastReleased)
+    {
+        this.lastReleased = lastReleased;
+    }
+
+    /**
+     * @return
+     */
+    boolean isRetired()
+    {
+        return this.retired;
+    }
+
+    /**
+     * @param retired
+     */
+    void setRetired(boolean retired)
+    {
+        this.retired = retired;
+    }
+}
@@ -0,0 +1,350 @@
+package webserver;
+
+import java.io.IOException;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+
+/**
+ * @author Kieran Chin Cheong
+ * @version 1.0
+ * @since 1.0
+ */
+public class MappedFileCache
+{
+    // Static variables
+
+    // This is the singleton instance
+    private static final MappedFileCache cacheSingleton = new MappedFileCache();
+
+    // Static methods
+
+    /**
+     * Static singleton accessor
+     * @return the singleton MappedFileCache
+     */
+    public static MappedFileCache GetCache()
+    {
+        return cacheSingleton;
+    }
+
+    /**
+     * Releases the memory mapping behind a buffer immediately, rather than whenever the buffer is garbage collected
+     * <p>
+     * There is no public API for this, so the runtime's internal cleaner is invoked reflectively: through Unsafe.invokeCleaner()
+     * on Java 9 and later, or the buffer's own cleaner on Java 8. If neither is available the mapping is left to the garbage collector
+     * @param buffer the mapped buffer to unmap. It must not be accessed afterwards
+     */
+    private static void Unmap(MappedByteBuffer buffer)
+    {
+        try
+        {
+            Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+            Field theUnsafe = unsafeClass.getDeclaredField("theUnsafe");
+            theUnsafe.setAccessible(true);
+            unsafeClass.getMethod("invokeCleaner", ByteBuffer.class).invoke(theUnsafe.get(null), buffer);
+        }
+        catch (NoSuchMethodException e)
+        {
+            // Java 8, where the cleaner is reached through the buffer itself
+            try
+            {
+                Method cleanerMethod = buffer.getClass().getMethod("cleaner");
+                cleanerMethod.setAccessible(true);
+                Object cleaner = cleanerMethod.invoke(buffer);
+                cleaner.getClass().getMethod("clean").invoke(cleaner);
+            }
+            catch (Exception ce)
+            {
+                Logger.Log(Logger.WARNING, "Warning : could not unmap file, leaving it to the garbage collector : %s", ce.toString());
+            }
+        }
+        catch (Exception e)
+        {
+            Logger.Log(Logger.WARNING, "Warning : could not unmap file, leaving it to the garbage collector : %s", e.toString());
+        }
+    }
+
+    // Member variables
+
+    private boolean enabled;
+    private long maxFileSize;
+    private long idleTimeout;
+
+    // Current mapping of each path, guarded by this object's monitor
+    private HashMap<String, MappedFile> mappings;
+    private long lastSweep;
+
+    // Mappings in progress, keyed by path, so that concurrent misses for a file share a single mapping
+    private ConcurrentHashMap<String, FutureTask<MappedFile>> inFlight;
+
+    /**
+     * Private constructor. Reads the mapping thresholds from the configuration
+     */
+    private MappedFileCache()
+    {
+        Configuration config = Configuration.GetConfiguration();
+
+        this.enabled = config.isEnableMemoryMapping();
+
+        // A single MappedByteBuffer cannot be larger than 2GB
+        this.maxFileSize = Math.min(config.getMmapMaxFileSize(), Integer.MAX_VALUE);
+        this.idleTimeout = config.getMmapIdleTimeout();
+        this.mappings = new HashMap<String, MappedFile>();
+        this.inFlight = new ConcurrentHashMap<String, FutureTask<MappedFile>>();
+        this.lastSweep = System.currentTimeMillis();
+        
+        // Also look for idle mappings periodically, so that they are unmapped even if no further requests are made for mapped files
+        if (this.enabled && this.idleTimeout > 0)
+        {
+            this.scheduleSweep();
+        }
+    }
+
+    /**
+     * Schedules the next periodic look for idle mappings on the shared TimeoutWheel
+     */
+    private void scheduleSweep()
+    {
+        TimeoutWheel.GetWheel().schedule(new Runnable() {
+            @Override
+            public void run() {
+                synchronized (MappedFileCache.this)
+                {
+                    MappedFileCache.this.unmapIdle(System.currentTimeMillis());
+                }
+
+                MappedFileCache.this.scheduleSweep();
+            }
+        }, this.idleTimeout);
+    }
+
+    /**
+     * Returns whether files of the given size are served through a memory mapping
+     * <p>
+     * Files small enough for the content cache are served from there instead, and files larger than the mapping threshold are
+     * sent directly from the file
+     * @param size the size of the file in bytes
+     * @return true if the file should be mapped, false otherwise
+     */
+    public boolean isMappable(long size)
+    {
+        return this.enabled && size > 0 && size <= this.maxFileSize;
+    }
+
+    /**
+     * Obtains a reference to the mapping of a file, mapping it first if it is not mapped already
+     * <p>
+     * All concurrent requests for the same version of a file share a single mapping. Every call which returns a mapping must be
+     * matched by a call to release() once the contents are no longer being used. Opening and mapping the file is done outside of
+     * this object's monitor, by the caller if it may wait, or otherwise by the loader threads while the caller sends the file from
+     * the file system
+     * @param path the absolute path of the file on the local file system
+     * @param size the current size of the file
+     * @param lastModified the current modification time of the file
+     * @param isWaiting true if the caller may wait for the file to be mapped, false if it must not block
+     * @return the mapped file, or null if it is not mapped yet and the caller must not wait, or the mapping made was of another
+     * version of the file
+     * @throws IOException
+     */
+    public MappedFile acquire(final String path, final long size, final long lastModified, boolean isWaiting) throws IOException
+    {
+        MappedFile mappedFile = this.acquireCurrent(path, size, lastModified);
+
+        if (mappedFile != null)
+        {
+            return mappedFile;
+        }
+
+        FutureTask<MappedFile> task = new FutureTask<MappedFile>(new Callable<MappedFile>() {
+            @Override
+            public MappedFile call() throws IOException {
+                try
+                {
+                    return MappedFileCache.this.map(path, size, lastModified);
+                }
+                finally
+                {
+                    MappedFileCache.this.inFlight.remove(path);
+                }
+            }
+        });
+
+        FutureTask<MappedFile> running = this.inFlight.putIfAbsent(path, task);
+
+        if (running == null)
+        {
+            running = task;
+
+            if (isWaiting)
+            {
+                task.run();
+            }
+            else
+            {
+                FileLoaderPool.GetPool().execute(task);
+            }
+        }
+
+        if (! isWaiting && ! running.isDone())
+        {
+            return null;
+        }
+
+        try
+        {
+            running.get();
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while waiting for " + path + " to be mapped");
+        }
+        catch (ExecutionException e)
+        {
+            if (e.getCause() instanceof IOException)
+            {
+                throw (IOException) e.getCause();
+            }
+
+            throw new IOException("Error mapping " + path, e.getCause());
+        }
+
+        // A mapping which was already in progress may have been of an earlier version of the file
+        return this.acquireCurrent(path, size, lastModified);
+    }
+
+    /**
+     * Obtains a reference to the current mapping of a version of a file, if it is mapped
+     * @param path the absolute path of the file on the local file system
+     * @param size the current size of the file
+     * @param lastModified the current modification time of the file
+     * @return the mapped file, or null if that version of the file is not mapped
+     */
+    private synchronized MappedFile acquireCurrent(String path, long size, long lastModified)
+    {
+        this.unmapIdle(System.currentTimeMillis());
+
+        MappedFile mappedFile = this.mappings.get(path);
+
+        if (mappedFile == null)
+        {
+            return null;
+        }
+
+        // If the file has changed since it was mapped, stop handing out the old mapping. It is unmapped once its last user releases it
+        if (mappedFile.getSize() != size || mappedFile.getLastModified() != lastModified)
+        {
+            Logger.Log(Logger.INFORMATION, "Mapped file %s has changed, retiring its mapping", path);
+            this.mappings.remove(path);
+            this.retire(mappedFile);
+            return null;
+        }
+
+        mappedFile.setReferenceCount(mappedFile.getReferenceCount() + 1);
+        return mappedFile;
+    }
+
+    /**
+     * Maps a version of a file into memory and makes it the current mapping of the file
+     * @param path the absolute path of the file on the local file system
+     * @param size the size of the file
+     * @param lastModified the modification time of the file
+     * @return the mapped file
+     * @throws IOException
+     */
+    private MappedFile map(String path, long size, long lastModified) throws IOException
+    {
+        MappedFile mappedFile;
+
+        try (FileChannel file = FileChannel.open(Paths.get(path), StandardOpenOption.READ))
+        {
+            mappedFile = new MappedFile(path, file.map(FileChannel.MapMode.READ_ONLY, 0, size), lastModified);
+        }
+
+        synchronized (this)
+        {
+            MappedFile previous = this.mappings.put(path, mappedFile);
+
+            if (previous != null)
+            {
+                this.retire(previous);
+            }
+        }
+
+        Logger.Log(Logger.INFORMATION, "Mapped %s into memory (%d bytes)", path, size);
+        return mappedFile;
+    }
+
+    /**
+     * Releases a reference obtained through acquire()
+     * @param mappedFile the mapped file which is no longer being used
+     */
+    public synchronized void release(MappedFile mappedFile)
+    {
+        long now = System.currentTimeMillis();
+
+        mappedFile.setReferenceCount(mappedFile.getReferenceCount() - 1);
+        mappedFile.setLastReleased(now);
+
+        if (mappedFile.isRetired() && mappedFile.getReferenceCount() == 0)
+        {
+            MappedFileCache.Unmap(mappedFile.getBuffer());
+        }
+
+        this.unmapIdle(now);
+    }
+
+    /**
+     * Marks a mapping as no longer current, unmapping it straight away if nothing is using it
+     * @param mappedFile the mapping to retire
+     */
+    private void retire(MappedFile mappedFile)
+    {
+        mappedFile.setRetired(true);
+
+        if (mappedFile.getReferenceCount() == 0)
+        {
+            MappedFileCache.Unmap(mappedFile.getBuffer());
+        }
+    }
+
+    /**
+     * Unmaps every mapping which has not been used for longer than the idle timeout
+     * <p>
+     * Idle mappings are looked for periodically and whenever a mapping is acquired or released, at most once per idle timeout
+     * @param now the current time in milliseconds
+     */
+    private void unmapIdle(long now)
+    {
+        if (now - this.lastSweep < this.idleTimeout)
+        {
+            return;
+        }
+
+        this.lastSweep = now;
+        Iterator<MappedFile> iterator = this.mappings.values().iterator();
+
+        while (iterator.hasNext())
+        {
+            MappedFile mappedFile = iterator.next();
+
+            if (mappedFile.getReferenceCount() == 0 && now - mappedFile.getLastReleased() >= this.idleTimeout)
+            {
+                Logger.Log(Logger.INFORMATION, "Unmapping idle file %s", mappedFile.getPath());
+                iterator.remove();
+                this.retire(mappedFile);
+            }
+        }
+    }
+}
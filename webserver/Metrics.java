@@ -0,0 +1,267 @@
+package webserver;
+
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * @author Kieran Chin Cheong
+ * @version 1.0
+ * @since 1.0
+ */
+public class Metrics
+{
+    // Static variables
+
+    // This is the singleton instance
+    private static final Metrics metricsSingleton = new Metrics();
+
+    // Static methods
+
+    /**
+     * Static singleton accessor
+     * @return the singleton Metrics
+     */
+    public static Metrics GetMetrics()
+    {
+        return metricsSingleton;
+    }
+
+    // Member variables
+
+    // Every counter is striped, so that threads recording at once do not contend on a single value
+    private LongAdder requests;
+    private LongAdder keepAliveRequests;
+    private LongAdder bytesSent;
+    private LongAdder connectionsOpened;
+    private LongAdder activeConnections;
+    private LongAdder[] responsesByStatus;
+    private LongAdder tlsHandshakes;
+    private LongAdder tlsResumedHandshakes;
+    private LongAdder tlsHandshakeFailures;
+
+    // Latencies of the phases of handling a request
+    private LatencyHistogram parseLatency;
+    private LatencyHistogram lookupLatency;
+    private LatencyHistogram sendLatency;
+
+    // The time the server started, in milliseconds since the epoch
+    private long startedAt;
+
+    /**
+     * Private constructor. Creates every counter up front, so that recording never allocates
+     */
+    private Metrics()
+    {
+        this.requests = new LongAdder();
+        this.keepAliveRequests = new LongAdder();
+        this.bytesSent = new LongAdder();
+        this.connectionsOpened = new LongAdder();
+        this.activeConnections = new LongAdder();
+        this.responsesByStatus = new LongAdder[Status.values().length];
+
+        for (int i = 0; i < this.responsesByStatus.length; i++)
+        {
+            this.responsesByStatus[i] = new LongAdder();
+        }
+
+        this.tlsHandshakes = new LongAdder();
+        this.tlsResumedHandshakes = new LongAdder();
+        this.tlsHandshakeFailures = new LongAdder();
+        this.parseLatency = new LatencyHistogram();
+        this.lookupLatency = new LatencyHistogram();
+        this.sendLatency = new LatencyHistogram();
+        this.startedAt = ManagementFactory.getRuntimeMXBean().getStartTime();
+    }
+
+    /**
+     * Records that a connection from a client has been accepted
+     */
+    public void connectionOpened()
+    {
+        this.connectionsOpened.increment();
+        this.activeConnections.increment();
+    }
+
+    /**
+     * Records that a connection from a client has been closed
+     */
+    public void connectionClosed()
+    {
+        this.activeConnections.decrement();
+    }
+
+    /**
+     * Records the time taken to parse a request head once it had been received
+     * @param nanos the time taken, in nanoseconds
+     */
+    public void requestParsed(long nanos)
+    {
+        this.parseLatency.record(nanos);
+    }
+
+    /**
+     * Records the time taken to look up the file a request is for and build its response
+     * @param nanos the time taken, in nanoseconds
+     */
+    public void responseBuilt(long nanos)
+    {
+        this.lookupLatency.record(nanos);
+    }
+
+    /**
+     * Records that a request has been received, whether or not it could be parsed
+     * @param isKeepAliveRequest true if the request was received on a connection which had already served a request
+     */
+    public void requestReceived(boolean isKeepAliveRequest)
+    {
+        this.requests.increment();
+
+        if (isKeepAliveRequest)
+        {
+            this.keepAliveRequests.increment();
+        }
+    }
+
+    /**
+     * Records that a response has been completely sent
+     * @param status the status of the response
+     * @param bytes the number of bytes sent, including the head
+     * @param sendNanos the time taken to send the response, in nanoseconds
+     */
+    public void responseSent(Status status, long bytes, long sendNanos)
+    {
+        this.responsesByStatus[status.ordinal()].increment();
+        this.bytesSent.add(bytes);
+        this.sendLatency.record(sendNanos);
+    }
+
+    /**
+     * Records that a TLS handshake has completed
+     * @param isResumed true if the client resumed an earlier session rather than negotiating a new one
+     */
+    public void tlsHandshakeCompleted(boolean isResumed)
+    {
+        this.tlsHandshakes.increment();
+
+        if (isResumed)
+        {
+            this.tlsResumedHandshakes.increment();
+        }
+    }
+
+    /**
+     * Records that a TLS handshake has failed, or the client closed the connection before it completed
+     */
+    public void tlsHandshakeFailed()
+    {
+        this.tlsHandshakeFailures.increment();
+    }
+
+    /**
+     * Returns the number of responses sent with a given status
+     * @param status the status
+     * @return the number of responses
+     */
+    public long getResponses(Status status)
+    {
+        return this.responsesByStatus[status.ordinal()].sum();
+    }
+
+    // Simple getters
+
+    /**
+     * @return
+     */
+    public long getRequests()
+    {
+        return this.requests.sum();
+    }
+
+    /**
+     * @return
+     */
+    public long getKeepAliveRequests()
+    {
+        return this.keepAliveRequests.sum();
+    }
+
+    /**
+     * @return
+     */
+    public long getBytesSent()
+    {
+        return this.bytesSent.sum();
+    }
+
+    /**
+     * @return
+     */
+    public long getConnectionsOpened()
+    {
+        return this.connectionsOpened.sum();
+    }
+
+    /**
+     * @return
+     */
+    public long getActiveConnections()
+    {
+        return this.activeConnections.sum();
+    }
+
+    /**
+     * @return
+     */
+    public long getTlsHandshakes()
+    {
+        return this.tlsHandshakes.sum();
+    }
+
+    /**
+     * @return
+     */
+    public long getTlsResumedHandshakes()
+    {
+        return this.tlsResumedHandshakes.sum();
+    }
+
+    /**
+     * @return
+     */
+    public long getTlsHandshakeFailures()
+    {
+        return this.tlsHandshakeFailures.sum();
+    }
+
+    /**
+     * @return
+     */
+    public LatencyHistogram getParseLatency()
+    {
+        return this.parseLatency;
+    }
+
+    /**
+     * @return
+     */
+    public LatencyHistogram getLookupLatency()
+    {
+        return this.lookupLatency;
+    }
+
+    /**
+     * @return
+     */
+    public LatencyHistogram getSendLatency()
+    {
+        return this.sendLatency;
+    }
+
+    /**
+     * @return
+     */
+    public long getStartedAt()
+    {
+        return this.startedAt;
+    }
+}
@@ -0,0 +1,267 @@
+package webserver;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Locale;
+
+/**
+ * Resolves the MIME type of a file from its name alone, without any I/O, from a table of file name extensions
+ * <p>
+ * The built in table can be extended or overridden by a file in the mime.types format, with a MIME type followed by its extensions
+ * on each line. Files and directories under the content root can also be given a MIME type of their own, which applies to everything
+ * beneath a directory. Textual types are given the default charset unless they already specify one. Files whose type is not known
+ * are given the default MIME type, so a type is always resolved
+ * @author Kieran Chin Cheong
+ * @version 1.0
+ * @since 1.0
+ */
+public class MimeTypes
+{
+    // Static variables
+
+    // The built in table, of each MIME type followed by its extensions
+    private static final String[][] DEFAULT_TYPES = {
+        {"text/html", "html", "htm"},
+        {"text/css", "css"},
+        {"text/plain", "txt", "text", "log", "conf", "ini"},
+        {"text/csv", "csv"},
+        {"text/markdown", "md", "markdown"},
+        {"text/xml", "xsl", "xslt"},
+        {"text/calendar", "ics"},
+        {"text/vtt", "vtt"},
+        {"application/javascript", "js", "mjs"},
+        {"application/json", "json", "map"},
+        {"application/ld+json", "jsonld"},
+        {"application/manifest+json", "webmanifest"},
+        {"application/xml", "xml"},
+        {"application/xhtml+xml", "xhtml"},
+        {"application/rss+xml", "rss"},
+        {"application/atom+xml", "atom"},
+        {"application/wasm", "wasm"},
+        {"application/pdf", "pdf"},
+        {"application/zip", "zip"},
+        {"application/gzip", "gz"},
+        {"application/x-tar", "tar"},
+        {"application/x-bzip2", "bz2"},
+        {"application/x-xz", "xz"},
+        {"application/x-7z-compressed", "7z"},
+        {"application/java-archive", "jar"},
+        {"application/msword", "doc"},
+        {"application/vnd.openxmlformats-officedocument.wordprocessingml.document", "docx"},
+        {"application/vnd.ms-excel", "xls"},
+        {"application/vnd.openxmlformats-officedocument.spreadsheetml.sheet", "xlsx"},
+        {"application/vnd.ms-powerpoint", "ppt"},
+        {"application/vnd.openxmlformats-officedocument.presentationml.presentation", "pptx"},
+        {"application/rtf", "rtf"},
+        {"application/epub+zip", "epub"},
+        {"application/octet-stream", "bin", "exe", "dll", "iso", "img", "dmg"},
+        {"image/png", "png"},
+        {"image/jpeg", "jpg", "jpeg", "jpe"},
+        {"image/gif", "gif"},
+        {"image/webp", "webp"},
+        {"image/avif", "avif"},
+        {"image/svg+xml", "svg", "svgz"},
+        {"image/x-icon", "ico"},
+        {"image/bmp", "bmp"},
+        {"image/tiff", "tif", "tiff"},
+        {"font/woff", "woff"},
+        {"font/woff2", "woff2"},
+        {"font/ttf", "ttf"},
+        {"font/otf", "otf"},
+        {"audio/mpeg", "mp3"},
+        {"audio/ogg", "oga", "ogg"},
+        {"audio/wav", "wav"},
+        {"audio/aac", "aac"},
+        {"audio/flac", "flac"},
+        {"audio/webm", "weba"},
+        {"video/mp4", "mp4", "m4v"},
+        {"video/webm", "webm"},
+        {"video/ogg", "ogv"},
+        {"video/quicktime", "mov"},
+        {"video/x-msvideo", "avi"},
+        {"video/mp2t", "ts"},
+        {"application/vnd.apple.mpegurl", "m3u8"},
+        {"application/dash+xml", "mpd"}
+    };
+
+    // Types which are not text/ types but are textual, and so are given the default charset
+    private static final String[] TEXTUAL_TYPES = {"application/javascript", "application/json", "application/ld+json", "application/manifest+json",
+                                                   "application/xml", "application/xhtml+xml", "application/rss+xml", "application/atom+xml",
+                                                   "image/svg+xml"};
+
+    // This is the singleton instance
+    private static final MimeTypes mimeTypesSingleton = new MimeTypes();
+
+    // Static methods
+
+    /**
+     * Static singleton accessor
+     * @return the singleton MimeTypes
+     */
+    public static MimeTypes GetMimeTypes()
+    {
+        return mimeTypesSingleton;
+    }
+
+    // Member variables
+
+    private String defaultMimeType;
+    private String defaultCharset;
+
+    // The MIME type of each extension, in lower case, with the default charset already applied
+    private HashMap<String, String> typesByExtension;
+
+    // Normalized paths given a MIME type of their own, longest first so that the most specific one applies
+    private ArrayList<String[]> overrides;
+
+    /**
+     * Private constructor. Builds the table from the built in types, the MIME types file and the configuration
+     */
+    private MimeTypes()
+    {
+        Configuration config = Configuration.GetConfiguration();
+
+        this.defaultCharset = config.getDefaultCharset();
+        this.defaultMimeType = this.applyCharset(config.getDefaultMimeType());
+        this.typesByExtension = new HashMap<String, String>();
+        this.overrides = new ArrayList<String[]>();
+
+        for (String[] type : DEFAULT_TYPES)
+        {
+            for (int i = 1; i < type.length; i++)
+            {
+                this.typesByExtension.put(type[i], this.applyCharset(type[0]));
+            }
+        }
+
+        if (config.getMimeTypesFile() != null && ! config.getMimeTypesFile().isEmpty())
+        {
+            this.loadMimeTypesFile(config.getMimeTypesFile());
+        }
+
+        if (config.getMimeTypeOverrides() != null && ! config.getMimeTypeOverrides().isEmpty())
+        {
+            this.parseOverrides(config.getRootDirectory(), config.getMimeTypeOverrides());
+        }
+    }
+
+    /**
+     * Resolves the MIME type of a file
+     * @param path the normalized path of the file on the local file system
+     * @return the MIME type of the file, which is the default MIME type if the type of the file is not known
+     */
+    public String resolve(String path)
+    {
+        for (int i = 0; i < this.overrides.size(); i++)
+        {
+            String prefix = this.overrides.get(i)[0];
+
+            if (path.startsWith(prefix) && (path.length() == prefix.length() || path.charAt(prefix.length()) == File.separatorChar))
+            {
+                return this.overrides.get(i)[1];
+            }
+        }
+
+        // The extension only counts if it is in the name of the file itself, and the name is more than the extension
+        int dot = path.lastIndexOf('.');
+
+        if (dot <= path.lastIndexOf(File.separatorChar) + 1 || dot == path.length() - 1)
+        {
+            return this.defaultMimeType;
+        }
+
+        String type = this.typesByExtension.get(path.substring(dot + 1).toLowerCase(Locale.ROOT));
+
+        return type != null ? type : this.defaultMimeType;
+    }
+
+    /**
+     * Adds the types of a file in the mime.types format to the table, replacing any built in types of the same extensions
+     * @param file the path of the file
+     */
+    private void loadMimeTypesFile(String file)
+    {
+        int count = 0;
+
+        try (BufferedReader reader = Files.newBufferedReader(Paths.get(file), StandardCharsets.UTF_8))
+        {
+            String line;
+
+            while ((line = reader.readLine()) != null)
+            {
+                int comment = line.indexOf('#');
+                String[] fields = (comment >= 0 ? line.substring(0, comment) : line).trim().split("\\s+");
+
+                for (int i = 1; i < fields.length; i++)
+                {
+                    this.typesByExtension.put(fields[i].toLowerCase(Locale.ROOT), this.applyCharset(fields[0]));
+                    count++;
+                }
+            }
+
+            Logger.Log(Logger.INFORMATION, "Loaded %d extensions from MIME types file %s", count, file);
+        }
+        catch (Exception e)
+        {
+            Logger.Log(Logger.WARNING, "Warning : could not read MIME types file %s, using the built in types : %s", file, e.toString());
+        }
+    }
+
+    /**
+     * Parses the MIME type overrides, given as a comma separated list of path=type, where each path is relative to the content root
+     * @param rootDirectory the content root
+     * @param overrides the overrides
+     */
+    private void parseOverrides(String rootDirectory, String overrides)
+    {
+        for (String override : overrides.split(","))
+        {
+            int equals = override.indexOf('=');
+
+            if (equals <= 0 || equals == override.length() - 1)
+            {
+                Logger.Log(Logger.WARNING, "Warning : ignoring invalid MIME type override %s", override);
+                continue;
+            }
+
+            String path = override.substring(0, equals).trim().replace('/', File.separatorChar);
+            String prefix = Paths.get(rootDirectory + File.separator + path).normalize().toString();
+            this.overrides.add(new String[] {prefix, this.applyCharset(override.substring(equals + 1).trim())});
+        }
+
+        Collections.sort(this.overrides, new Comparator<String[]>() {
+            @Override
+            public int compare(String[] first, String[] second) {
+                return second[0].length() - first[0].length();
+            }
+        });
+    }
+
+    /**
+     * @param type a MIME type
+     * @return the MIME type with the default charset, if it is textual and does not already specify a charset
+     */
+    private String applyCharset(String type)
+    {
+        if (this.defaultCharset == null || this.defaultCharset.isEmpty() || type.indexOf(';') >= 0)
+        {
+            return type;
+        }
+
+        boolean isTextual = type.startsWith("text/");
+
+        for (int i = 0; i < TEXTUAL_TYPES.length && ! isTextual; i++)
+        {
+            isTextual = TEXTUAL_TYPES[i].equals(type);
+        }
+
+        return isTextual ? type + "; charset=" + this.defaultCharset : type;
+    }
+}
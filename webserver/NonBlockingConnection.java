@@ -0,0 +1,339 @@
+package webserver;
+
+import java.io.IOException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.SocketChannel;
+
+/**
+ * @author Kieran Chin Cheong
+ * @version 1.0
+ * @since 1.0
+ */
+public class NonBlockingConnection
+{
+    // Member variables
+
+    private SocketChannel channel;
+    private SelectorEventLoop eventLoop;
+    private SelectionKey selectionKey;
+    private String remoteAddress;
+    private String localAddress;
+    private int keepAliveTimeout;
+    private int requestReadTimeout;
+    private int responseWriteTimeout;
+    private int keepAliveMax;
+    private int requestCount;
+
+    // The single timeout currently armed for this connection. The generation identifies which timeout an expiry belongs to,
+    // since one may expire just as it is being replaced
+    private Timeout timeout;
+    private int timeoutGeneration;
+
+    // Request state
+    private HTTPRequestParser parser;
+
+    // Response state. Responses are queued so that those of pipelined requests can be written together
+    private ResponseQueue responses;
+    private boolean closeAfterResponse;
+    private boolean isClosed;
+
+    /**
+     * Constructor
+     * @param channel the non-blocking SocketChannel representing a connection to a client
+     * @param eventLoop the event loop which owns the connection
+     * @throws IOException
+     */
+    public NonBlockingConnection(SocketChannel channel, SelectorEventLoop eventLoop) throws IOException
+    {
+        this.channel = channel;
+        this.eventLoop = eventLoop;
+        this.remoteAddress = channel.socket().getRemoteSocketAddress().toString();
+        this.localAddress = channel.socket().getLocalSocketAddress().toString();
+        this.keepAliveTimeout = Configuration.GetConfiguration().getHttpKeepAliveTimeout();
+        this.requestReadTimeout = Configuration.GetConfiguration().getRequestReadTimeout();
+        this.responseWriteTimeout = Configuration.GetConfiguration().getResponseWriteTimeout();
+
+        // Set this value to 1 if HTTP KeepAlive is not enabled, this will ensure only one request will be served in the lifetime of the connection
+        this.keepAliveMax = Configuration.GetConfiguration().isEnableHTTPKeepAlive() ? Configuration.GetConfiguration().getHttpKeepAliveMax() : 1;
+        this.requestCount = 0;
+        this.parser = new HTTPRequestParser();
+        this.responses = new ResponseQueue(this.remoteAddress, this.localAddress);
+    }
+
+    /**
+     * @param selectionKey the key this connection was registered with
+     */
+    public void setSelectionKey(SelectionKey selectionKey)
+    {
+        this.selectionKey = selectionKey;
+
+        // The connection is only counted once it has been registered, since until then it cannot be closed through close()
+        Metrics.GetMetrics().connectionOpened();
+
+        // The client now has the request read timeout to send its first request
+        this.armTimeout(this.requestReadTimeout, "Request read timeout hit for non-blocking connection");
+    }
+
+    /**
+     * Services this connection after the selector has reported it ready
+     * <p>
+     * Errors are handled here by closing the connection, exactly as a Worker would when it exits
+     * @param key the ready SelectionKey for this connection
+     */
+    public void handle(SelectionKey key)
+    {
+        try
+        {
+            if (key.isReadable())
+            {
+                this.onReadable();
+            }
+            else if (key.isWritable())
+            {
+                this.service();
+            }
+        }
+        catch (IOException ioe)
+        {
+            // We could not read from or write to the socket
+            Logger.Log(Logger.ERROR, "Error reading from or writing to socket %s", ioe.toString());
+            this.close();
+        }
+        catch (Exception e)
+        {
+            // We have hit an unhandled exception, log this
+            Logger.Log(Logger.ERROR, "Error responding to request, unhandled exception : %s", e.toString());
+            this.close();
+        }
+    }
+
+    /**
+     * Closes the connection, releasing anything held by an in-progress request or response
+     */
+    public void close()
+    {
+        // The connection may be closed by a timeout and by an error at once
+        if (this.isClosed)
+        {
+            return;
+        }
+
+        this.isClosed = true;
+        Metrics.GetMetrics().connectionClosed();
+        this.cancelTimeout();
+        this.responses.close();
+        this.parser.close();
+
+        if (this.selectionKey != null)
+        {
+            this.selectionKey.cancel();
+        }
+
+        try
+        {
+            this.channel.close();
+        }
+        catch (IOException e)
+        {
+            Logger.Log(Logger.WARNING, "Warning : could not close non-blocking connection : %s", e.toString());
+        }
+    }
+
+    /**
+     * Reads whatever input is available and attempts to process a request from it
+     * @throws IOException
+     */
+    private void onReadable() throws IOException
+    {
+        int read = this.parser.fill(this.channel);
+
+        // The peer has closed its side of the connection
+        if (read < 0)
+        {
+            Logger.Log(Logger.INFORMATION, "Connection socket closed by peer");
+            this.close();
+            return;
+        }
+
+        this.service();
+    }
+
+    /**
+     * Alternates between processing received input and writing responses for as long as progress can be made without blocking
+     * @throws IOException
+     */
+    private void service() throws IOException
+    {
+        while (this.channel.isOpen())
+        {
+            // Build responses for every complete request received so far, so that pipelined requests are answered together
+            while (! this.closeAfterResponse && ! this.responses.isFull())
+            {
+                if (! this.processInput())
+                {
+                    break;
+                }
+            }
+
+            // Nothing to send until the next request has been fully received
+            if (this.responses.isEmpty())
+            {
+                return;
+            }
+
+            // Then write the responses, stopping if the socket will not accept any more right now
+            if (! this.responses.writeTo(this.channel))
+            {
+                this.selectionKey.interestOps(SelectionKey.OP_WRITE);
+                return;
+            }
+
+            if (this.closeAfterResponse)
+            {
+                Logger.Log(Logger.INFORMATION, "Closing connection to client with remote address : %s", this.remoteAddress);
+                this.close();
+                return;
+            }
+
+            // Go back to waiting for input. If part of the next request has already arrived, the client has the request read timeout
+            // to send the rest of it, otherwise it has the KeepAlive timeout to start a new one
+            if (this.parser.hasPartialRequest())
+            {
+                this.armTimeout(this.requestReadTimeout, "Request read timeout hit for non-blocking connection");
+            }
+            else
+            {
+                this.armTimeout(this.keepAliveTimeout, "KeepAlive timeout hit for non-blocking connection");
+            }
+
+            this.selectionKey.interestOps(SelectionKey.OP_READ);
+        }
+    }
+
+    /**
+     * Attempts to parse one complete request out of the input received so far and queue a response for it
+     * <p>
+     * Any further input stays in the parser for the next call
+     * @return true if a response was queued, false if a complete request has not been received yet
+     * @throws IOException
+     */
+    private boolean processInput() throws IOException
+    {
+        HTTPRequest request = null;
+        HTTPResponse response;
+
+        try
+        {
+            request = this.parser.parse();
+
+            // The request has not been fully received yet
+            if (request == null)
+            {
+                return false;
+            }
+
+            Logger.Log(Logger.INFORMATION, "Successfully parsed incoming request");
+
+            // Valid input was received, so cancel the read or KeepAlive timeout
+            this.cancelTimeout();
+
+            // Attempt to build a response to the request
+            Logger.Log(Logger.INFORMATION, "Building response");
+            long lookupStarted = System.nanoTime();
+            response = HTTPResponse.BuildHTTPResponseWithBody(request, request.isKeepAliveRequested() && Configuration.GetConfiguration().isEnableHTTPKeepAlive(), this.requestCount);
+            Metrics.GetMetrics().responseBuilt(System.nanoTime() - lookupStarted);
+            Logger.Log(Logger.INFORMATION, "Response built");
+        }
+        catch (RequestException re)
+        {
+            // A problem was encountered when parsing the request. Send back an appropriate HTTP response
+            // As in the blocking Worker, we do not know if the client requested HTTP KeepAlive so default to it being false
+            response = HTTPResponse.BuildHTTPResponseWithoutBody(re.getErrorCode(), false, this.requestCount);
+        }
+
+        this.queueResponse(request, response);
+        return true;
+    }
+
+    /**
+     * Queues the given response to be written
+     * @param request the request being responded to, may be null if it could not be parsed
+     * @param response the response to send
+     * @throws IOException
+     */
+    private void queueResponse(HTTPRequest request, HTTPResponse response) throws IOException
+    {
+        Metrics.GetMetrics().requestReceived(this.requestCount > 0);
+        this.requestCount++;
+        this.closeAfterResponse = ! response.isKeepAliveEnabled() || this.requestCount >= this.keepAliveMax;
+        this.responses.add(request, response);
+
+        // The client now has the response write timeout to accept the queued responses
+        this.armTimeout(this.responseWriteTimeout, "Response write timeout hit for non-blocking connection");
+
+        Logger.Log(Logger.INFORMATION, "Sending response");
+    }
+
+    /**
+     * Arms a timeout which closes the connection, replacing any timeout already armed
+     * <p>
+     * The timeout expires on the TimeoutWheel's thread, but the connection is only ever touched by its event loop, so the
+     * expiry is handed over to the event loop to act on
+     * @param seconds the timeout in seconds. A value of 0 or less disables it
+     * @param message the message to log if the timeout is hit
+     */
+    private void armTimeout(int seconds, final String message)
+    {
+        this.cancelTimeout();
+
+        if (seconds <= 0)
+        {
+            return;
+        }
+
+        final int generation = this.timeoutGeneration;
+
+        this.timeout = TimeoutWheel.GetWheel().schedule(new Runnable() {
+            @Override
+            public void run() {
+                eventLoop.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        onTimeout(generation, message);
+                    }
+                });
+            }
+        }, seconds * 1000L);
+    }
+
+    /**
+     * Cancels the currently armed timeout, if any
+     */
+    private void cancelTimeout()
+    {
+        // Invalidate any expiry which has already been handed to the event loop
+        this.timeoutGeneration++;
+
+        if (this.timeout != null)
+        {
+            this.timeout.cancel();
+            this.timeout = null;
+        }
+    }
+
+    /**
+     * Closes the connection when its timeout expires, unless that timeout has since been cancelled or replaced
+     * @param generation the generation of the timeout which expired
+     * @param message the message to log
+     */
+    private void onTimeout(int generation, String message)
+    {
+        if (generation != this.timeoutGeneration || ! this.channel.isOpen())
+        {
+            return;
+        }
+
+        Logger.Log(Logger.INFORMATION, message);
+        this.close();
+    }
+}
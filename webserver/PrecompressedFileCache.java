@@ -0,0 +1,108 @@
+package webserver;
+
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * @author Kieran Chin Cheong
+ * @version 1.0
+ * @since 1.0
+ */
+public class PrecompressedFileCache
+{
+    // Static variables
+
+    // File name suffixes of precompressed sidecar files
+    private static final String BROTLI_SUFFIX = ".br";
+    private static final String GZIP_SUFFIX = ".gz";
+
+    // This is the singleton instance
+    private static final PrecompressedFileCache cacheSingleton = new PrecompressedFileCache();
+
+    // Static methods
+
+    /**
+     * Static singleton accessor
+     * @return the singleton PrecompressedFileCache
+     */
+    public static PrecompressedFileCache GetCache()
+    {
+        return cacheSingleton;
+    }
+
+    /**
+     * @param sidecarPath the absolute path of a possible sidecar
+     * @param lastModified the modification time of the original file
+     * @return the path of the sidecar if it exists and is up to date, null otherwise
+     */
+    private static String FindSidecar(String sidecarPath, long lastModified)
+    {
+        FileMetadata sidecar = FileMetadataCache.GetCache().get(sidecarPath);
+
+        if (sidecar.isFile() && sidecar.getLastModified() >= lastModified)
+        {
+            return sidecarPath;
+        }
+
+        return null;
+    }
+
+    // Member variables
+
+    private boolean enabled;
+    private long revalidateInterval;
+
+    // Sidecars of each file which has been requested and exists
+    private ConcurrentHashMap<String, PrecompressedVariants> entries;
+
+    /**
+     * Private constructor. Reads the settings from the configuration
+     */
+    private PrecompressedFileCache()
+    {
+        Configuration config = Configuration.GetConfiguration();
+
+        this.enabled = config.isEnablePrecompressedFiles();
+
+        // Sidecars are looked for again as often as the content cache revalidates its entries
+        this.revalidateInterval = config.getFileCacheRevalidateInterval();
+        this.entries = new ConcurrentHashMap<String, PrecompressedVariants>();
+    }
+
+    /**
+     * Looks up the precompressed sidecars of a file, such as foo.js.br and foo.js.gz for foo.js
+     * <p>
+     * The file system is only consulted if the file has not been looked up within the revalidation interval. A sidecar which
+     * is older than the file itself is out of date, and is not used
+     * @param path the absolute path of the file on the local file system
+     * @return the sidecars of the file, or null if it has none or does not exist
+     */
+    public PrecompressedVariants get(String path)
+    {
+        if (! this.enabled)
+        {
+            return null;
+        }
+
+        long now = System.currentTimeMillis();
+        PrecompressedVariants variants = this.entries.get(path);
+
+        if (variants == null || now - variants.getCheckedAt() >= this.revalidateInterval)
+        {
+            FileMetadata metadata = FileMetadataCache.GetCache().get(path);
+
+            // Only files which exist are remembered, so that requests for arbitrary paths cannot grow the cache
+            if (! metadata.exists())
+            {
+                this.entries.remove(path);
+                return null;
+            }
+
+            long lastModified = metadata.getLastModified();
+            variants = new PrecompressedVariants(path, PrecompressedFileCache.FindSidecar(path + BROTLI_SUFFIX, lastModified),
+                                                 PrecompressedFileCache.FindSidecar(path + GZIP_SUFFIX, lastModified), now);
+            this.entries.put(path, variants);
+        }
+
+        return variants.isNegotiable() ? variants : null;
+    }
+}
@@ -0,0 +1,78 @@
+package webserver;
+
+/**
+ * @author Kieran Chin Cheong
+ * @version 1.0
+ * @since 1.0
+ */
+public class PrecompressedVariants
+{
+    // Member variables
+
+    private String path;
+    private String brotliPath;
+    private String gzipPath;
+    private long checkedAt;
+
+    /**
+     * Constructor
+     * @param path the absolute path of the original file on the local file system
+     * @param brotliPath the absolute path of its current Brotli compressed sidecar, or null if there is none
+     * @param gzipPath the absolute path of its current gzip compressed sidecar, or null if there is none
+     * @param checkedAt the time at which the sidecars were looked for
+     */
+    public PrecompressedVariants(String path, String brotliPath, String gzipPath, long checkedAt)
+    {
+        this.path = path;
+        this.brotliPath = brotliPath;
+        this.gzipPath = gzipPath;
+        this.checkedAt = checkedAt;
+    }
+
+    /**
+     * Returns whether the file has any sidecars, in which case its responses depend on the accept-encoding header field
+     * @return true if there is at least one sidecar, false otherwise
+     */
+    public boolean isNegotiable()
+    {
+        return this.brotliPath != null || this.gzipPath != null;
+    }
+
+    /**
+     * Returns the path of the sidecar for a content coding
+     * @param coding the content coding, as chosen by AcceptEncoding.select()
+     * @return the absolute path of the sidecar, or null if there is none
+     */
+    public String getPath(String coding)
+    {
+        if (AcceptEncoding.BROTLI.equals(coding))
+        {
+            return this.brotliPath;
+        }
+
+        if (AcceptEncoding.GZIP.equals(coding))
+        {
+            return this.gzipPath;
+        }
+
+        return null;
+    }
+
+    // Simple getters
+
+    /**
+     * @return
+     */
+    public String getPath()
+    {
+        return this.path;
+    }
+
+    /**
+     * @return
+     */
+    public long getCheckedAt()
+    {
+        return this.checkedAt;
+    }
+}
@@ -0,0 +1,231 @@
+package webserver;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.SelectableChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * @author Kieran Chin Cheong
+ * @version 1.0
+ * @since 1.0
+ */
+public class ResponseBody
+{
+    // Static variables
+
+    // Size of the buffer used to copy the body when it cannot be transferred directly, in bytes
+    private static final int COPY_BUFFER_SIZE = 65536;
+
+    // Member variables
+
+    private FileChannel file;
+    private long position;
+    private long end;
+    private ByteBuffer copyBuffer;
+    private ByteBuffer content;
+    private ResponseBody[] parts;
+    private int currentPart;
+
+    /**
+     * Constructor. Opens the given region of a file to be sent as a message body
+     * @param path the absolute path of the file
+     * @param offset the offset of the first byte to send
+     * @param length the number of bytes to send
+     * @throws IOException
+     */
+    public ResponseBody(String path, long offset, long length) throws IOException
+    {
+        this(FileChannel.open(Paths.get(path), StandardOpenOption.READ), offset, length);
+    }
+
+    /**
+     * Constructor. Sends the given region of an already open file as a message body
+     * <p>
+     * The file is closed along with the body. Several bodies may share one file, since closing it more than once is harmless
+     * @param file the open file
+     * @param offset the offset of the first byte to send
+     * @param length the number of bytes to send
+     */
+    public ResponseBody(FileChannel file, long offset, long length)
+    {
+        this.file = file;
+        this.position = offset;
+        this.end = offset + length;
+    }
+
+    /**
+     * Constructor. Sends several bodies one after another as a single message body, such as the parts of a multipart response
+     * @param parts the bodies to send, in order
+     */
+    public ResponseBody(ResponseBody[] parts)
+    {
+        this.parts = parts;
+    }
+
+    /**
+     * Constructor. Wraps contents that are already held in memory to be sent as a message body
+     * @param content buffer holding the bytes to send between its position and limit. It must not be shared with another ResponseBody
+     */
+    public ResponseBody(ByteBuffer content)
+    {
+        this.content = content;
+    }
+
+    /**
+     * Writes as much of the body as the target will accept
+     * <p>
+     * If the target is a socket or file channel the bytes are transferred by the operating system without being copied through
+     * the JVM (sendfile on Linux). Otherwise they are copied through a single fixed size buffer, so the memory used is the
+     * same whatever the size of the file. For a blocking target the whole body is written before returning
+     * @param target the channel to write to
+     * @return true if the whole body has been written, false if a non-blocking target would not accept any more for now
+     * @throws IOException
+     */
+    public boolean writeTo(WritableByteChannel target) throws IOException
+    {
+        // Each part is written in turn, picking up where the last call left off
+        if (this.parts != null)
+        {
+            while (this.currentPart < this.parts.length)
+            {
+                if (! this.parts[this.currentPart].writeTo(target))
+                {
+                    return false;
+                }
+
+                this.currentPart++;
+            }
+
+            return true;
+        }
+
+        // Contents held in memory are simply written out
+        if (this.content != null)
+        {
+            while (this.content.hasRemaining())
+            {
+                if (target.write(this.content) == 0)
+                {
+                    return false;
+                }
+            }
+
+            return true;
+        }
+
+        boolean zeroCopy = target instanceof SelectableChannel || target instanceof FileChannel;
+
+        while (this.position < this.end)
+        {
+            long written = zeroCopy ? this.transfer(target) : this.copy(target);
+
+            // A non-blocking target is full, the caller must wait until it is writable again
+            if (written == 0)
+            {
+                return false;
+            }
+
+            this.position += written;
+        }
+
+        return true;
+    }
+
+    /**
+     * Returns the contents of this body if they are held in memory, so that they can be written along with other buffers
+     * @return the buffer holding the unwritten contents, or null if the body is sent from a file
+     */
+    ByteBuffer getContent()
+    {
+        return this.content;
+    }
+
+    /**
+     * Closes the file backing this body, if any, and releases the copy buffer
+     */
+    public void close()
+    {
+        BufferPool.GetPool().release(this.copyBuffer);
+        this.copyBuffer = null;
+
+        if (this.parts != null)
+        {
+            for (ResponseBody part : this.parts)
+            {
+                part.close();
+            }
+        }
+
+        if (this.file == null)
+        {
+            return;
+        }
+
+        try
+        {
+            this.file.close();
+        }
+        catch (IOException e)
+        {
+            Logger.Log(Logger.WARNING, "Warning : could not close response body file : %s", e.toString());
+        }
+    }
+
+    /**
+     * Transfers the next part of the body directly from the file to the target
+     * @param target the channel to write to
+     * @return the number of bytes written, which may be 0 for a non-blocking target
+     * @throws IOException
+     */
+    private long transfer(WritableByteChannel target) throws IOException
+    {
+        long written = this.file.transferTo(this.position, this.end - this.position, target);
+
+        // transferTo() also returns 0 at the end of the file, which means it was truncated since the response was built
+        if (written == 0 && this.position >= this.file.size())
+        {
+            throw new EOFException("File truncated while being sent");
+        }
+
+        return written;
+    }
+
+    /**
+     * Copies the next part of the body from the file to the target through the copy buffer
+     * @param target the channel to write to
+     * @return the number of bytes written, which may be 0 for a non-blocking target
+     * @throws IOException
+     */
+    private long copy(WritableByteChannel target) throws IOException
+    {
+        if (this.copyBuffer == null)
+        {
+            this.copyBuffer = BufferPool.GetPool().lease((int) Math.min(COPY_BUFFER_SIZE, this.end - this.position));
+            this.copyBuffer.flip();
+        }
+
+        // Bytes left in the buffer have been read from the file but not yet written, so only refill once it is empty
+        if (! this.copyBuffer.hasRemaining())
+        {
+            this.copyBuffer.clear();
+            this.copyBuffer.limit((int) Math.min(this.copyBuffer.capacity(), this.end - this.position));
+
+            while (this.copyBuffer.hasRemaining())
+            {
+                if (this.file.read(this.copyBuffer, this.position + this.copyBuffer.position()) < 0)
+                {
+                    throw new EOFException("File truncated while being sent");
+                }
+            }
+
+            this.copyBuffer.flip();
+        }
+
+        return target.write(this.copyBuffer);
+    }
+}
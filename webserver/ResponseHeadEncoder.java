@@ -0,0 +1,178 @@
+package webserver;
+
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+
+/**
+ * @author Kieran Chin Cheong
+ * @version 1.0
+ * @since 1.0
+ */
+public class ResponseHeadEncoder
+{
+    // Static variables
+
+    // Initial size of a head buffer, which is replaced by a larger one if a head does not fit
+    private static final int INITIAL_HEAD_BUFFER_SIZE = 512;
+
+    // Largest number of remaining responses for which the keep-alive header field is encoded up front
+    private static final int MAX_PRE_ENCODED_KEEP_ALIVE = 1024;
+
+    // Header fields which are the same for every response, or only have a few variants, encoded once up front
+    private static final byte[] CRLF = { '\r', '\n' };
+    private static final byte[] DATE_PREFIX = Encode("date: ");
+    private static final byte[] SERVER_HEADER = Encode(String.format("server: %s\r\n", Webserver.SERVER_VERSION));
+    private static final byte[] CONNECTION_CLOSE_HEADER = Encode("connection: close\r\n");
+    private static final byte[] CONNECTION_KEEP_ALIVE_HEADER = Encode("connection: keep-alive\r\n");
+    private static final byte[][] KEEP_ALIVE_HEADERS = BuildKeepAliveHeaders();
+
+    // Static methods
+
+    /**
+     * Encodes the start line and header fields of a response, including the terminating blank line
+     * <p>
+     * The head is assembled in the given buffer without any intermediate strings. If it does not fit, the buffer is released and
+     * a larger one is leased from the BufferPool, which the caller should keep in place of the given one and release in turn
+     * @param response the response to encode the head of
+     * @param buffer the buffer to encode into, may be null to lease a new one
+     * @return the buffer holding the head, ready to be written
+     */
+    public static ByteBuffer Encode(HTTPResponse response, ByteBuffer buffer)
+    {
+        if (buffer == null)
+        {
+            buffer = BufferPool.GetPool().lease(INITIAL_HEAD_BUFFER_SIZE);
+        }
+
+        while (true)
+        {
+            try
+            {
+                buffer.clear();
+                ResponseHeadEncoder.EncodeInto(response, buffer);
+                buffer.flip();
+                return buffer;
+            }
+            catch (BufferOverflowException e)
+            {
+                ByteBuffer larger = BufferPool.GetPool().lease(buffer.capacity() * 2);
+                BufferPool.GetPool().release(buffer);
+                buffer = larger;
+            }
+        }
+    }
+
+    /**
+     * Writes the head of a response into a buffer
+     * @param response the response to encode the head of
+     * @param buffer the buffer to write to
+     * @throws BufferOverflowException if the buffer is too small
+     */
+    private static void EncodeInto(HTTPResponse response, ByteBuffer buffer)
+    {
+        // The start line of the response
+        buffer.put(response.getResponseCode().getStatusLineBytes());
+
+        // The header fields required for all response codes
+        buffer.put(DATE_PREFIX).put(HTTPDate.GetCurrentDateBytes()).put(CRLF);
+        buffer.put(SERVER_HEADER);
+
+        // If HTTP KeepAlive is enabled and this is not the last allowable response, indicate this
+        // and also provide the expected "keep-alive" header values
+        int remainingResponses = response.getRemainingResponses();
+
+        if (response.isKeepAliveEnabled() && remainingResponses > 0)
+        {
+            buffer.put(CONNECTION_KEEP_ALIVE_HEADER);
+
+            if (remainingResponses < KEEP_ALIVE_HEADERS.length)
+            {
+                buffer.put(KEEP_ALIVE_HEADERS[remainingResponses]);
+            }
+            else
+            {
+                ResponseHeadEncoder.PutASCII(buffer, ResponseHeadEncoder.BuildKeepAliveHeader(remainingResponses));
+            }
+        }
+        // Otherwise indicate that the connection will be closed after the response has been sent
+        else
+        {
+            buffer.put(CONNECTION_CLOSE_HEADER);
+        }
+
+        // The header fields specific to this response
+        for (Map.Entry<String, String> headerField : response.getHeaderFields().entrySet())
+        {
+            ResponseHeadEncoder.PutASCII(buffer, headerField.getKey());
+            buffer.put((byte) ':').put((byte) ' ');
+            ResponseHeadEncoder.PutASCII(buffer, headerField.getValue());
+            buffer.put(CRLF);
+        }
+
+        // The blank line between the headers and the message body
+        buffer.put(CRLF);
+    }
+
+    /**
+     * Writes a string into a buffer one character at a time, rather than allocating its encoded bytes first
+     * <p>
+     * Header fields are restricted to ASCII, so each character is written as a single byte
+     * @param buffer the buffer to write to
+     * @param value the string to write
+     */
+    private static void PutASCII(ByteBuffer buffer, String value)
+    {
+        int length = value.length();
+
+        for (int i = 0; i < length; i++)
+        {
+            buffer.put((byte) value.charAt(i));
+        }
+    }
+
+    /**
+     * @param value the string to encode
+     * @return the string encoded as ASCII
+     */
+    private static byte[] Encode(String value)
+    {
+        return value.getBytes(StandardCharsets.US_ASCII);
+    }
+
+    /**
+     * Builds the keep-alive header field for a given number of remaining responses
+     * @param remainingResponses the number of responses that may still be sent on the connection
+     * @return the header field, including its line terminator
+     */
+    private static String BuildKeepAliveHeader(int remainingResponses)
+    {
+        return String.format("keep-alive: timeout=%d,max=%d\r\n", Configuration.GetConfiguration().getHttpKeepAliveTimeout(), remainingResponses);
+    }
+
+    /**
+     * Encodes the keep-alive header field for every number of remaining responses a connection can have, up to a limit
+     * @return the encoded header fields, indexed by the number of remaining responses
+     */
+    private static byte[][] BuildKeepAliveHeaders()
+    {
+        int count = Math.max(0, Math.min(Configuration.GetConfiguration().getHttpKeepAliveMax(), MAX_PRE_ENCODED_KEEP_ALIVE));
+        byte[][] headers = new byte[count + 1][];
+
+        for (int i = 1; i <= count; i++)
+        {
+            headers[i] = ResponseHeadEncoder.Encode(ResponseHeadEncoder.BuildKeepAliveHeader(i));
+        }
+
+        return headers;
+    }
+
+    /**
+     * Private constructor. This class only has static methods
+     */
+    private ResponseHeadEncoder()
+    {
+
+    }
+}
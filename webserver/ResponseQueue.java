@@ -0,0 +1,250 @@
+package webserver;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.GatheringByteChannel;
+
+/**
+ * @author Kieran Chin Cheong
+ * @version 1.0
+ * @since 1.0
+ */
+public class ResponseQueue
+{
+    // Static variables
+
+    // Maximum number of responses queued before they must be written, which bounds the work done ahead for a client that is not reading
+    private static final int MAX_QUEUED_RESPONSES = 16;
+
+    // Member variables
+
+    private String remoteAddress;
+    private String localAddress;
+
+    // Queued responses in the order their requests were received, as a ring starting at first
+    private HTTPRequest[] requests;
+    private HTTPResponse[] responses;
+    private ResponseBody[] bodies;
+    private ByteBuffer[] contents;
+    private long[] sizes;
+    private long[] queuedAt;
+    private int first;
+    private int count;
+
+    // Buffer the head of each response is encoded into, one per slot so that several heads can be written at once
+    // Each is leased from the BufferPool while its response is queued
+    private ByteBuffer[] heads;
+
+    // Buffers passed to a single gathering write
+    private ByteBuffer[] gathered;
+
+    /**
+     * Constructor
+     * @param remoteAddress the remote address of the connection, for the connection log
+     * @param localAddress the local address of the connection, for the connection log
+     */
+    public ResponseQueue(String remoteAddress, String localAddress)
+    {
+        this.remoteAddress = remoteAddress;
+        this.localAddress = localAddress;
+        this.requests = new HTTPRequest[MAX_QUEUED_RESPONSES];
+        this.responses = new HTTPResponse[MAX_QUEUED_RESPONSES];
+        this.bodies = new ResponseBody[MAX_QUEUED_RESPONSES];
+        this.contents = new ByteBuffer[MAX_QUEUED_RESPONSES];
+        this.sizes = new long[MAX_QUEUED_RESPONSES];
+        this.queuedAt = new long[MAX_QUEUED_RESPONSES];
+        this.heads = new ByteBuffer[MAX_QUEUED_RESPONSES];
+        this.gathered = new ByteBuffer[MAX_QUEUED_RESPONSES * 2];
+    }
+
+    /**
+     * Adds a response to the end of the queue, encoding its head and opening its message body ready to be written
+     * @param request the request being responded to, may be null if it could not be parsed
+     * @param response the response
+     * @throws IOException if the message body could not be opened, in which case the response has been released
+     */
+    public void add(HTTPRequest request, HTTPResponse response) throws IOException
+    {
+        int index = (this.first + this.count) % MAX_QUEUED_RESPONSES;
+        ResponseBody body;
+
+        try
+        {
+            body = response.openBody();
+        }
+        catch (IOException e)
+        {
+            response.release();
+            throw e;
+        }
+
+        this.heads[index] = ResponseHeadEncoder.Encode(response, null);
+        this.requests[index] = request;
+        this.responses[index] = response;
+        this.bodies[index] = body;
+
+        // A body held in memory can go out in the same write as the heads around it
+        this.contents[index] = body != null ? body.getContent() : null;
+
+        // Noted for the metrics, which are recorded once the response has been sent
+        this.sizes[index] = this.heads[index].remaining() + (body != null ? response.getMessageBodySize() : 0);
+        this.queuedAt[index] = System.nanoTime();
+        this.count++;
+    }
+
+    /**
+     * Writes as much of the queued responses as the channel will accept, in order
+     * <p>
+     * The heads and in-memory message bodies of consecutive responses are written with a single gathering write, so a batch of
+     * pipelined responses generally costs one system call. A message body sent from a file goes out on its own once its head has
+     * been written, so that it can still be transferred without copying it
+     * @param channel the channel to write to
+     * @return true if every queued response has been completely sent, false if a non-blocking channel would not accept any more for now
+     * @throws IOException
+     */
+    public boolean writeTo(GatheringByteChannel channel) throws IOException
+    {
+        while (this.count > 0)
+        {
+            int gatheredCount = this.gather();
+
+            if (gatheredCount > 0)
+            {
+                long written = channel.write(this.gathered, 0, gatheredCount);
+
+                for (int i = 0; i < gatheredCount; i++)
+                {
+                    this.gathered[i] = null;
+                }
+
+                // The socket send buffer is full, wait to be selected again
+                if (written == 0)
+                {
+                    return false;
+                }
+            }
+
+            // Complete each response at the front of the queue whose head has been written
+            while (this.count > 0 && ! this.heads[this.first].hasRemaining())
+            {
+                ResponseBody body = this.bodies[this.first];
+
+                // An in-memory body has normally gone out along with the head, and a file body is sent now
+                if (body != null && ! body.writeTo(channel))
+                {
+                    return false;
+                }
+
+                this.complete();
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * Releases every queued response without sending it, as when the connection is closed
+     */
+    public void close()
+    {
+        while (this.count > 0)
+        {
+            if (this.bodies[this.first] != null)
+            {
+                this.bodies[this.first].close();
+            }
+
+            this.responses[this.first].release();
+            this.removeFirst();
+        }
+    }
+
+    /**
+     * @return true if no responses are waiting to be sent
+     */
+    public boolean isEmpty()
+    {
+        return this.count == 0;
+    }
+
+    /**
+     * @return true if no more responses can be queued until some have been sent
+     */
+    public boolean isFull()
+    {
+        return this.count == MAX_QUEUED_RESPONSES;
+    }
+
+    /**
+     * Collects the unwritten heads and in-memory bodies at the front of the queue, up to and including the head of the first
+     * response whose body must be sent from a file
+     * @return the number of buffers collected
+     */
+    private int gather()
+    {
+        int gatheredCount = 0;
+
+        for (int i = 0; i < this.count; i++)
+        {
+            int index = (this.first + i) % MAX_QUEUED_RESPONSES;
+
+            if (this.heads[index].hasRemaining())
+            {
+                this.gathered[gatheredCount++] = this.heads[index];
+            }
+
+            if (this.contents[index] != null)
+            {
+                if (this.contents[index].hasRemaining())
+                {
+                    this.gathered[gatheredCount++] = this.contents[index];
+                }
+            }
+            else if (this.bodies[index] != null)
+            {
+                break;
+            }
+        }
+
+        return gatheredCount;
+    }
+
+    /**
+     * Finishes off the response at the front of the queue once it has been completely sent
+     */
+    private void complete()
+    {
+        if (this.bodies[this.first] != null)
+        {
+            this.bodies[this.first].close();
+        }
+
+        this.responses[this.first].release();
+        Logger.Log(Logger.INFORMATION, "Response sent");
+
+        // The time to send a response includes any time spent waiting behind those queued before it
+        Metrics.GetMetrics().responseSent(this.responses[this.first].getResponseCode(), this.sizes[this.first], System.nanoTime() - this.queuedAt[this.first]);
+
+        // Log the request/response connection line
+        Logger.LogConnection(this.requests[this.first], this.responses[this.first], this.remoteAddress, this.localAddress);
+
+        this.removeFirst();
+    }
+
+    /**
+     * Removes the response at the front of the queue, dropping the references to it and releasing its head buffer
+     */
+    private void removeFirst()
+    {
+        int index = this.first;
+
+        BufferPool.GetPool().release(this.heads[index]);
+        this.heads[index] = null;
+        this.requests[index] = null;
+        this.responses[index] = null;
+        this.bodies[index] = null;
+        this.contents[index] = null;
+        this.first = (index + 1) % MAX_QUEUED_RESPONSES;
+        this.count--;
+    }
+}
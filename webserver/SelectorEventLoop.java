@@ -0,0 +1,175 @@
+package webserver;
+
+import java.io.IOException;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * @author Kieran Chin Cheong
+ * @version 1.0
+ * @since 1.0
+ */
+public class SelectorEventLoop implements Runnable
+{
+    // Static variables
+
+    // Set on the threads running an event loop, which must never block
+    private static final ThreadLocal<Boolean> isEventLoopThread = new ThreadLocal<Boolean>();
+
+    // Static methods
+
+    /**
+     * @return true if the calling thread is running a selector event loop, and so must not wait on anything
+     */
+    public static boolean IsEventLoopThread()
+    {
+        return isEventLoopThread.get() != null;
+    }
+
+    // Member variables
+
+    private Selector selector;
+    private ConcurrentLinkedQueue<SocketChannel> pendingChannels;
+    private ConcurrentLinkedQueue<Runnable> pendingTasks;
+
+    /**
+     * Constructor
+     * @throws IOException
+     */
+    public SelectorEventLoop() throws IOException
+    {
+        this.selector = Selector.open();
+        this.pendingChannels = new ConcurrentLinkedQueue<SocketChannel>();
+        this.pendingTasks = new ConcurrentLinkedQueue<Runnable>();
+    }
+
+    /**
+     * Hands a newly accepted connection over to this event loop
+     * <p>
+     * This may be called from any thread. The channel is registered with the selector by the event loop thread itself
+     * since registering from another thread would block while the selector is in select()
+     * @param channel the accepted connection
+     */
+    public void addConnection(SocketChannel channel)
+    {
+        this.pendingChannels.offer(channel);
+        this.selector.wakeup();
+    }
+
+    /**
+     * Runs a task on the event loop thread
+     * <p>
+     * This may be called from any thread. It is used to act on connections, which are only ever touched by their event loop,
+     * from elsewhere, such as when one of their timeouts expires
+     * @param task the task to run
+     */
+    public void execute(Runnable task)
+    {
+        this.pendingTasks.offer(task);
+        this.selector.wakeup();
+    }
+
+    /**
+     * This is the main execution loop of the SelectorEventLoop
+     * <p>
+     * Every connection owned by this loop is serviced here, only when the selector reports it is ready to be read from
+     * or written to. No thread is ever held by a connection that is waiting on its client
+     * @see java.lang.Runnable#run()
+     */
+    @Override
+    public void run()
+    {
+        Logger.Log(Logger.INFORMATION, "Selector event loop started");
+        isEventLoopThread.set(Boolean.TRUE);
+
+        while (true)
+        {
+            try
+            {
+                this.selector.select();
+
+                // Register any connections that were handed to us since the last iteration
+                this.registerPendingConnections();
+
+                // Service every connection that is ready
+                Iterator<SelectionKey> keys = this.selector.selectedKeys().iterator();
+
+                while (keys.hasNext())
+                {
+                    SelectionKey key = keys.next();
+                    keys.remove();
+
+                    NonBlockingConnection connection = (NonBlockingConnection) key.attachment();
+
+                    if (! key.isValid())
+                    {
+                        connection.close();
+                        continue;
+                    }
+
+                    connection.handle(key);
+                }
+
+                // Run any tasks that were handed to us, such as expired connection timeouts
+                this.runPendingTasks();
+            }
+            catch (Exception e)
+            {
+                // Never let a single failure stop the loop, since that would strand every connection it owns
+                Logger.Log(Logger.ERROR, "Error in selector event loop : %s", e.toString());
+            }
+        }
+    }
+
+    /**
+     * Registers all connections queued by addConnection() with the selector
+     */
+    private void registerPendingConnections()
+    {
+        SocketChannel channel;
+
+        while ((channel = this.pendingChannels.poll()) != null)
+        {
+            try
+            {
+                NonBlockingConnection connection = new NonBlockingConnection(channel, this);
+                SelectionKey key = channel.register(this.selector, SelectionKey.OP_READ, connection);
+                connection.setSelectionKey(key);
+            }
+            catch (ClosedChannelException e)
+            {
+                Logger.Log(Logger.WARNING, "Warning : Connection closed before it could be registered");
+            }
+            catch (IOException e)
+            {
+                Logger.Log(Logger.ERROR, "Error registering connection : %s", e.toString());
+                
+                try
+                {
+                    channel.close();
+                }
+                catch (IOException ce)
+                {
+                    Logger.Log(Logger.WARNING, "Warning : could not close connection : %s", ce.toString());
+                }
+            }
+        }
+    }
+
+    /**
+     * Runs all tasks queued by execute()
+     */
+    private void runPendingTasks()
+    {
+        Runnable task;
+
+        while ((task = this.pendingTasks.poll()) != null)
+        {
+            task.run();
+        }
+    }
+}
@@ -1,5 +1,7 @@
 package webserver;
 
+import java.nio.charset.StandardCharsets;
+
 /**
  * @author Kieran Chin Cheong
  * @version 1.0
@@ -11,11 +13,15 @@ public enum Status
     
     CONTINUE(100),
     OK(200),
+    PARTIAL_CONTENT(206),
     NOT_MODIFIED(304),
     BAD_REQUEST(400),
     UNAUTHORIZED(401),
     FORBIDDEN(403),
     NOT_FOUND(404),
+    URI_TOO_LONG(414),
+    RANGE_NOT_SATISFIABLE(416),
+    REQUEST_HEADER_FIELDS_TOO_LARGE(431),
     INTERNAL_SERVER_ERROR(500),
     NOT_IMPLEMENTED(501),
     SERVICE_UNAVAILABLE(503),
@@ -25,6 +31,10 @@ public enum Status
     
     private final int value;
     
+    // The start line of a response with this status, encoded once up front since it never changes, which looks like this
+    // HTTP/1.1 200 OK
+    private final byte[] statusLine;
+    
     /**
      * Constructor
      * @param value response code
@@ -32,6 +42,7 @@ public enum Status
     Status(int value)
     {
         this.value = value;
+        this.statusLine = String.format("%s %d %s\r\n", Webserver.HTTP_VERSION, value, this.name()).getBytes(StandardCharsets.US_ASCII);
     }
     
     /**
@@ -42,4 +53,15 @@ public enum Status
     {
         return this.value;
     }
+    
+    /**
+     * Returns the encoded start line of a response with this status, including its line terminator
+     * <p>
+     * The same array is returned every time, so it must not be modified
+     * @return the encoded status line
+     */
+    byte[] getStatusLineBytes()
+    {
+        return this.statusLine;
+    }
 }
@@ -0,0 +1,252 @@
+package webserver;
+
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.util.Locale;
+
+/**
+ * @author Kieran Chin Cheong
+ * @version 1.0
+ * @since 1.0
+ */
+public class StatusPage
+{
+    // Static variables
+
+    // The Prometheus text format is served below the status path, and JSON at the status path itself
+    private static final String PROMETHEUS_SUFFIX = "/prometheus";
+    public static final String JSON_MIME_TYPE = "application/json";
+    public static final String PROMETHEUS_MIME_TYPE = "text/plain; version=0.0.4";
+
+    // Percentiles reported for each latency histogram
+    private static final double[] PERCENTILES = {50, 90, 99, 99.9};
+
+    // Static methods
+
+    /**
+     * Returns whether a request is for the status page rather than for a file
+     * @param requestTarget the target of the request
+     * @return true if the status page is enabled and requested
+     */
+    public static boolean IsStatusRequest(String requestTarget)
+    {
+        Configuration config = Configuration.GetConfiguration();
+
+        return config.isEnableStatusEndpoint() && requestTarget.startsWith(config.getStatusPath()) &&
+               (requestTarget.length() == config.getStatusPath().length() || StatusPage.IsPrometheusRequest(requestTarget));
+    }
+
+    /**
+     * @param requestTarget the target of a status page request
+     * @return true if the Prometheus text format is requested, false if JSON is
+     */
+    public static boolean IsPrometheusRequest(String requestTarget)
+    {
+        return requestTarget.equals(Configuration.GetConfiguration().getStatusPath() + PROMETHEUS_SUFFIX);
+    }
+
+    /**
+     * Renders the current metrics of the server
+     * <p>
+     * This is only done when the status page is requested, so it may allocate freely
+     * @param requestTarget the target of a status page request
+     * @return the encoded status page
+     */
+    public static byte[] Render(String requestTarget)
+    {
+        String page = StatusPage.IsPrometheusRequest(requestTarget) ? StatusPage.RenderPrometheus() : StatusPage.RenderJSON();
+        return page.getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * @return the metrics as a JSON object
+     */
+    private static String RenderJSON()
+    {
+        Metrics metrics = Metrics.GetMetrics();
+        FileContentCache contentCache = FileContentCache.GetCache();
+        CompressedContentCache compressedCache = CompressedContentCache.GetCache();
+        FileMetadataCache metadataCache = FileMetadataCache.GetCache();
+        ContentIndex contentIndex = ContentIndex.GetIndex();
+        BufferPool bufferPool = BufferPool.GetPool();
+        AdmissionControl admission = AdmissionControl.GetAdmissionControl();
+        StringBuilder json = new StringBuilder(2048);
+
+        json.append("{\n");
+        json.append(String.format("  \"uptimeSeconds\": %d,\n", (System.currentTimeMillis() - metrics.getStartedAt()) / 1000));
+        json.append(String.format("  \"connections\": {\"active\": %d, \"opened\": %d},\n", metrics.getActiveConnections(), metrics.getConnectionsOpened()));
+        json.append(String.format("  \"requests\": {\"total\": %d, \"keepAlive\": %d},\n", metrics.getRequests(), metrics.getKeepAliveRequests()));
+        json.append(String.format("  \"bytesSent\": %d,\n", metrics.getBytesSent()));
+
+        json.append("  \"responses\": {");
+        String separator = "";
+
+        for (Status status : Status.values())
+        {
+            json.append(String.format("%s\"%d\": %d", separator, status.toCode(), metrics.getResponses(status)));
+            separator = ", ";
+        }
+
+        json.append("},\n");
+
+        json.append("  \"latencyMicros\": {\n");
+        json.append(String.format("    \"parse\": %s,\n", StatusPage.RenderJSONHistogram(metrics.getParseLatency())));
+        json.append(String.format("    \"lookup\": %s,\n", StatusPage.RenderJSONHistogram(metrics.getLookupLatency())));
+        json.append(String.format("    \"send\": %s\n", StatusPage.RenderJSONHistogram(metrics.getSendLatency())));
+        json.append("  },\n");
+
+        json.append("  \"caches\": {\n");
+        json.append(String.format("    \"content\": {\"hits\": %d, \"misses\": %d, \"evictions\": %d, \"entries\": %d, \"bytes\": %d},\n",
+                                  contentCache.getHits(), contentCache.getMisses(), contentCache.getEvictions(), contentCache.getEntryCount(), contentCache.getCurrentSize()));
+        json.append(String.format("    \"compressed\": {\"hits\": %d, \"misses\": %d, \"evictions\": %d, \"entries\": %d, \"bytes\": %d},\n",
+                                  compressedCache.getHits(), compressedCache.getMisses(), compressedCache.getEvictions(), compressedCache.getEntryCount(), compressedCache.getCurrentSize()));
+        json.append(String.format("    \"metadata\": {\"hits\": %d, \"misses\": %d, \"invalidations\": %d, \"entries\": %d}\n",
+                                  metadataCache.getHits(), metadataCache.getMisses(), metadataCache.getInvalidations(), metadataCache.getEntries()));
+        json.append("  },\n");
+
+        json.append(String.format("  \"contentIndex\": {\"ready\": %s, \"files\": %d},\n", contentIndex.isReady(), contentIndex.getEntries()));
+
+        json.append(String.format("  \"bufferPool\": {\"leases\": %d, \"allocations\": %d, \"outstanding\": %d, \"pooledBytes\": %d, \"leaks\": %d},\n",
+                                  bufferPool.getLeases(), bufferPool.getAllocations(), bufferPool.getOutstanding(), bufferPool.getPooledBytes(), bufferPool.getLeaks()));
+        json.append(String.format("  \"admission\": {\"rejected\": %d, \"shed\": %d},\n", admission.getRejected(), admission.getShed()));
+        json.append(String.format("  \"tls\": {\"handshakes\": %d, \"resumed\": %d, \"failures\": %d},\n",
+                                  metrics.getTlsHandshakes(), metrics.getTlsResumedHandshakes(), metrics.getTlsHandshakeFailures()));
+        json.append(String.format("  \"log\": {\"droppedLines\": %d, \"blockedLines\": %d}\n", Logger.GetDroppedLines(), Logger.GetBlockedLines()));
+        json.append("}\n");
+
+        return json.toString();
+    }
+
+    /**
+     * @param histogram a latency histogram
+     * @return the histogram's count, mean, percentiles and maximum as a JSON object
+     */
+    private static String RenderJSONHistogram(LatencyHistogram histogram)
+    {
+        long count = histogram.getCount();
+        StringBuilder json = new StringBuilder(128);
+
+        json.append(String.format("{\"count\": %d, \"mean\": %d", count, count > 0 ? histogram.getSum() / count : 0));
+
+        for (double percentile : PERCENTILES)
+        {
+            json.append(String.format(", \"p%s\": %d", StatusPage.FormatPercentile(percentile).replace(".", ""), histogram.getPercentile(percentile)));
+        }
+
+        json.append(String.format(", \"max\": %d}", histogram.getMax()));
+
+        return json.toString();
+    }
+
+    /**
+     * @return the metrics in the Prometheus text exposition format
+     */
+    private static String RenderPrometheus()
+    {
+        Metrics metrics = Metrics.GetMetrics();
+        FileContentCache contentCache = FileContentCache.GetCache();
+        CompressedContentCache compressedCache = CompressedContentCache.GetCache();
+        FileMetadataCache metadataCache = FileMetadataCache.GetCache();
+        ContentIndex contentIndex = ContentIndex.GetIndex();
+        BufferPool bufferPool = BufferPool.GetPool();
+        AdmissionControl admission = AdmissionControl.GetAdmissionControl();
+        StringBuilder text = new StringBuilder(4096);
+
+        StatusPage.AppendMetric(text, "webserver_uptime_seconds", "gauge", "Time since the server started", (System.currentTimeMillis() - metrics.getStartedAt()) / 1000);
+        StatusPage.AppendMetric(text, "webserver_connections_active", "gauge", "Connections currently open", metrics.getActiveConnections());
+        StatusPage.AppendMetric(text, "webserver_connections_total", "counter", "Connections accepted", metrics.getConnectionsOpened());
+        StatusPage.AppendMetric(text, "webserver_requests_total", "counter", "Requests received", metrics.getRequests());
+        StatusPage.AppendMetric(text, "webserver_keepalive_requests_total", "counter", "Requests received on a connection which had already served one", metrics.getKeepAliveRequests());
+        StatusPage.AppendMetric(text, "webserver_sent_bytes_total", "counter", "Bytes of responses sent, including their heads", metrics.getBytesSent());
+
+        text.append("# HELP webserver_responses_total Responses sent, by status code\n");
+        text.append("# TYPE webserver_responses_total counter\n");
+
+        for (Status status : Status.values())
+        {
+            text.append(String.format("webserver_responses_total{code=\"%d\"} %d\n", status.toCode(), metrics.getResponses(status)));
+        }
+
+        text.append("# HELP webserver_latency_seconds Time taken by each phase of handling a request\n");
+        text.append("# TYPE webserver_latency_seconds summary\n");
+        StatusPage.AppendPrometheusHistogram(text, "parse", metrics.getParseLatency());
+        StatusPage.AppendPrometheusHistogram(text, "lookup", metrics.getLookupLatency());
+        StatusPage.AppendPrometheusHistogram(text, "send", metrics.getSendLatency());
+
+        text.append("# HELP webserver_cache_hits_total Lookups served from a cache\n");
+        text.append("# TYPE webserver_cache_hits_total counter\n");
+        text.append(String.format("webserver_cache_hits_total{cache=\"content\"} %d\n", contentCache.getHits()));
+        text.append(String.format("webserver_cache_hits_total{cache=\"compressed\"} %d\n", compressedCache.getHits()));
+        text.append(String.format("webserver_cache_hits_total{cache=\"metadata\"} %d\n", metadataCache.getHits()));
+        text.append("# HELP webserver_cache_misses_total Lookups which missed a cache\n");
+        text.append("# TYPE webserver_cache_misses_total counter\n");
+        text.append(String.format("webserver_cache_misses_total{cache=\"content\"} %d\n", contentCache.getMisses()));
+        text.append(String.format("webserver_cache_misses_total{cache=\"compressed\"} %d\n", compressedCache.getMisses()));
+        text.append(String.format("webserver_cache_misses_total{cache=\"metadata\"} %d\n", metadataCache.getMisses()));
+        text.append("# HELP webserver_cache_evictions_total Entries evicted from a cache\n");
+        text.append("# TYPE webserver_cache_evictions_total counter\n");
+        text.append(String.format("webserver_cache_evictions_total{cache=\"content\"} %d\n", contentCache.getEvictions()));
+        text.append(String.format("webserver_cache_evictions_total{cache=\"compressed\"} %d\n", compressedCache.getEvictions()));
+        text.append("# HELP webserver_cache_bytes Bytes held by a cache\n");
+        text.append("# TYPE webserver_cache_bytes gauge\n");
+        text.append(String.format("webserver_cache_bytes{cache=\"content\"} %d\n", contentCache.getCurrentSize()));
+        text.append(String.format("webserver_cache_bytes{cache=\"compressed\"} %d\n", compressedCache.getCurrentSize()));
+
+        StatusPage.AppendMetric(text, "webserver_metadata_cache_invalidations_total", "counter", "File metadata cache entries dropped because their path changed", metadataCache.getInvalidations());
+        StatusPage.AppendMetric(text, "webserver_content_index_files", "gauge", "Files held in the content index", contentIndex.getEntries());
+        StatusPage.AppendMetric(text, "webserver_buffer_pool_leases_total", "counter", "I/O buffers leased from the buffer pool", bufferPool.getLeases());
+        StatusPage.AppendMetric(text, "webserver_buffer_pool_allocations_total", "counter", "I/O buffers allocated because none of their size was pooled", bufferPool.getAllocations());
+        StatusPage.AppendMetric(text, "webserver_buffer_pool_outstanding", "gauge", "I/O buffers currently leased from the buffer pool", bufferPool.getOutstanding());
+        StatusPage.AppendMetric(text, "webserver_buffer_pool_pooled_bytes", "gauge", "Bytes of I/O buffers held in the buffer pool's shared stacks", bufferPool.getPooledBytes());
+        StatusPage.AppendMetric(text, "webserver_buffer_pool_leaks_total", "counter", "I/O buffers garbage collected without being released, in debug mode", bufferPool.getLeaks());
+        StatusPage.AppendMetric(text, "webserver_connections_rejected_total", "counter", "Connections turned away because the work queue was full", admission.getRejected());
+        StatusPage.AppendMetric(text, "webserver_connections_shed_total", "counter", "Connections turned away because they waited too long in the work queue", admission.getShed());
+        StatusPage.AppendMetric(text, "webserver_tls_handshakes_total", "counter", "TLS handshakes completed, including resumed ones", metrics.getTlsHandshakes());
+        StatusPage.AppendMetric(text, "webserver_tls_resumed_handshakes_total", "counter", "TLS handshakes which resumed an earlier session", metrics.getTlsResumedHandshakes());
+        StatusPage.AppendMetric(text, "webserver_tls_handshake_failures_total", "counter", "TLS handshakes which failed or were abandoned by the client", metrics.getTlsHandshakeFailures());
+        StatusPage.AppendMetric(text, "webserver_log_dropped_lines_total", "counter", "Log lines dropped because the log buffer was full", Logger.GetDroppedLines());
+        StatusPage.AppendMetric(text, "webserver_log_blocked_lines_total", "counter", "Log lines which waited for room in the log buffer", Logger.GetBlockedLines());
+
+        return text.toString();
+    }
+
+    /**
+     * Appends a metric with a single value, along with its help and type lines
+     * @param text the page being rendered
+     * @param name the name of the metric
+     * @param type the Prometheus type of the metric
+     * @param help the description of the metric
+     * @param value the value of the metric
+     */
+    private static void AppendMetric(StringBuilder text, String name, String type, String help, long value)
+    {
+        text.append(String.format("# HELP %s %s\n# TYPE %s %s\n%s %d\n", name, help, name, type, name, value));
+    }
+
+    /**
+     * Appends the quantiles, sum and count of a latency histogram as part of the webserver_latency_seconds summary
+     * @param text the page being rendered
+     * @param phase the phase of handling a request the histogram is for
+     * @param histogram the histogram
+     */
+    private static void AppendPrometheusHistogram(StringBuilder text, String phase, LatencyHistogram histogram)
+    {
+        for (double percentile : PERCENTILES)
+        {
+            text.append(String.format(Locale.ROOT, "webserver_latency_seconds{phase=\"%s\",quantile=\"%s\"} %.6f\n", phase, StatusPage.FormatPercentile(percentile / 100),
+                                      histogram.getPercentile(percentile) / 1e6));
+        }
+
+        text.append(String.format(Locale.ROOT, "webserver_latency_seconds_sum{phase=\"%s\"} %.6f\n", phase, histogram.getSum() / 1e6));
+        text.append(String.format("webserver_latency_seconds_count{phase=\"%s\"} %d\n", phase, histogram.getCount()));
+    }
+
+    /**
+     * @param value a percentile or quantile
+     * @return the value without any trailing zeros, such as 99.9 or 0.5
+     */
+    private static String FormatPercentile(double value)
+    {
+        return BigDecimal.valueOf(value).stripTrailingZeros().toPlainString();
+    }
+}
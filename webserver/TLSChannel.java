@@ -0,0 +1,417 @@
+package webserver;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ByteChannel;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.GatheringByteChannel;
+import java.nio.channels.SocketChannel;
+
+import javax.net.ssl.SSLEngine;
+import javax.net.ssl.SSLEngineResult;
+import javax.net.ssl.SSLEngineResult.HandshakeStatus;
+import javax.net.ssl.SSLException;
+import javax.net.ssl.SSLSession;
+
+/**
+ * A TLS connection over a blocking socket channel, which encrypts what is written to it and decrypts what is read from it
+ * <p>
+ * Requests and responses are read and written through this channel in place of the socket channel, so the rest of the server
+ * is unchanged. Every buffer is leased from the BufferPool. Records are encrypted into a buffer large enough for several of them,
+ * so that a large response goes to the socket in few writes, and gathering writes are encrypted straight from the buffers given
+ * rather than being copied together first. Files cannot be sent with sendfile, since they must pass through the JVM to be encrypted
+ * @author Kieran Chin Cheong
+ * @version 1.0
+ * @since 1.0
+ */
+public class TLSChannel implements ByteChannel, GatheringByteChannel
+{
+    // Static variables
+
+    // The number of records the outgoing buffer holds, so that they are written to the socket together
+    private static final int RECORDS_PER_WRITE = 3;
+
+    // The cipher suite of the session of an engine which has not completed a handshake
+    private static final String NULL_CIPHER_SUITE = "SSL_NULL_WITH_NULL_NULL";
+
+    // Static methods
+
+    /**
+     * @param buffers a sequence of buffers
+     * @param offset the index of the first buffer
+     * @param length the number of buffers
+     * @return true if any of the buffers has bytes remaining
+     */
+    private static boolean HasRemaining(ByteBuffer[] buffers, int offset, int length)
+    {
+        for (int i = offset; i < offset + length; i++)
+        {
+            if (buffers[i].hasRemaining())
+            {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    // Member variables
+
+    private SocketChannel channel;
+    private SSLEngine engine;
+
+    // Encrypted bytes received and not yet decrypted, ready to be filled from the socket
+    private ByteBuffer netIn;
+
+    // Decrypted bytes not yet read, ready to be filled by the engine
+    private ByteBuffer appIn;
+
+    // Encrypted bytes waiting to be written to the socket, ready to be filled by the engine
+    private ByteBuffer netOut;
+
+    private boolean isInboundDone;
+    private boolean isClosed;
+
+    /**
+     * Constructor
+     * @param channel the connection to the client, which must be in blocking mode
+     * @param engine the engine for the connection, from TLSContext.createEngine()
+     */
+    public TLSChannel(SocketChannel channel, SSLEngine engine)
+    {
+        this.channel = channel;
+        this.engine = engine;
+
+        SSLSession session = engine.getSession();
+        this.netIn = BufferPool.GetPool().lease(session.getPacketBufferSize());
+        this.appIn = BufferPool.GetPool().lease(session.getApplicationBufferSize());
+        this.netOut = BufferPool.GetPool().lease(session.getPacketBufferSize() * RECORDS_PER_WRITE);
+    }
+
+    /**
+     * Performs the TLS handshake with the client, which must be done before anything is read or written
+     * <p>
+     * A handshake is counted as resumed if its session was created before the handshake began, which is only the case when the
+     * client presented a session from the session cache or a session ticket
+     * @throws IOException if the handshake fails or the connection is closed before it completes
+     */
+    public void handshake() throws IOException
+    {
+        long startedAt = System.currentTimeMillis();
+
+        try
+        {
+            this.engine.beginHandshake();
+            this.completeHandshake();
+        }
+        finally
+        {
+            // The handshake has succeeded once the session is negotiated, even if the client goes away before the server's session
+            // tickets are sent. Until then the engine's session is a placeholder with no cipher suite
+            SSLSession session = this.engine.getSession();
+
+            if (NULL_CIPHER_SUITE.equals(session.getCipherSuite()))
+            {
+                Metrics.GetMetrics().tlsHandshakeFailed();
+            }
+            else
+            {
+                Metrics.GetMetrics().tlsHandshakeCompleted(session.getCreationTime() < startedAt);
+            }
+        }
+    }
+
+    /**
+     * Reads decrypted bytes from the connection, blocking until at least one is available
+     * @param dst the buffer to read into
+     * @return the number of bytes read, or -1 if the client has closed the connection
+     * @throws IOException
+     */
+    @Override
+    public int read(ByteBuffer dst) throws IOException
+    {
+        while (this.appIn.position() == 0)
+        {
+            if (this.isInboundDone)
+            {
+                return -1;
+            }
+
+            this.unwrap();
+
+            // Records received after the handshake, such as a key update, may ask for a reply
+            if (! this.isInboundDone && this.engine.getHandshakeStatus() != HandshakeStatus.NOT_HANDSHAKING)
+            {
+                this.completeHandshake();
+            }
+        }
+
+        this.appIn.flip();
+        int length = Math.min(this.appIn.remaining(), dst.remaining());
+        int limit = this.appIn.limit();
+
+        this.appIn.limit(this.appIn.position() + length);
+        dst.put(this.appIn);
+        this.appIn.limit(limit);
+        this.appIn.compact();
+
+        return length;
+    }
+
+    /**
+     * Encrypts and writes the whole of a buffer
+     * @param src the buffer to write
+     * @return the number of bytes written
+     * @throws IOException
+     */
+    @Override
+    public int write(ByteBuffer src) throws IOException
+    {
+        return (int) this.write(new ByteBuffer[] {src}, 0, 1);
+    }
+
+    /**
+     * Encrypts and writes the whole of a sequence of buffers, wrapping records straight from the buffers given
+     * @param srcs the buffers to write
+     * @return the number of bytes written
+     * @throws IOException
+     */
+    @Override
+    public long write(ByteBuffer[] srcs) throws IOException
+    {
+        return this.write(srcs, 0, srcs.length);
+    }
+
+    /**
+     * Encrypts and writes the whole of a sequence of buffers, wrapping records straight from the buffers given
+     * @param srcs the buffers to write
+     * @param offset the index of the first buffer to write
+     * @param length the number of buffers to write
+     * @return the number of bytes written
+     * @throws IOException
+     */
+    @Override
+    public long write(ByteBuffer[] srcs, int offset, int length) throws IOException
+    {
+        if (this.isClosed)
+        {
+            throw new ClosedChannelException();
+        }
+
+        long written = 0;
+
+        while (TLSChannel.HasRemaining(srcs, offset, length))
+        {
+            SSLEngineResult result = this.engine.wrap(srcs, offset, length, this.netOut);
+
+            switch (result.getStatus())
+            {
+                case OK:
+                    written += result.bytesConsumed();
+
+                    // Keep filling the outgoing buffer until another record might not fit
+                    if (this.netOut.remaining() < this.engine.getSession().getPacketBufferSize())
+                    {
+                        this.flush();
+                    }
+                    break;
+                case BUFFER_OVERFLOW:
+                    if (this.netOut.position() == 0)
+                    {
+                        throw new SSLException("TLS record larger than the outgoing buffer");
+                    }
+
+                    this.flush();
+                    break;
+                default:
+                    throw new SSLException("Cannot write to a TLS connection which has been closed");
+            }
+        }
+
+        this.flush();
+
+        return written;
+    }
+
+    /**
+     * @see java.nio.channels.Channel#isOpen()
+     */
+    @Override
+    public boolean isOpen()
+    {
+        return ! this.isClosed && this.channel.isOpen();
+    }
+
+    /**
+     * Sends the client a close_notify alert if the connection is still open, and releases the buffers. The socket channel itself
+     * is left for its owner to close. This may safely be called more than once
+     */
+    @Override
+    public void close()
+    {
+        if (this.isClosed)
+        {
+            return;
+        }
+
+        this.isClosed = true;
+
+        try
+        {
+            if (this.channel.isOpen())
+            {
+                this.engine.closeOutbound();
+
+                while (! this.engine.isOutboundDone())
+                {
+                    SSLEngineResult result = this.engine.wrap(ByteBuffer.allocate(0), this.netOut);
+
+                    if (result.getStatus() != SSLEngineResult.Status.OK && result.getStatus() != SSLEngineResult.Status.CLOSED)
+                    {
+                        break;
+                    }
+
+                    this.flush();
+                }
+            }
+        }
+        catch (IOException e)
+        {
+            // The client may already have gone, in which case it does not need telling
+            Logger.Log(Logger.INFORMATION, "Could not send close_notify to client : %s", e.toString());
+        }
+        finally
+        {
+            BufferPool.GetPool().release(this.netIn);
+            BufferPool.GetPool().release(this.appIn);
+            BufferPool.GetPool().release(this.netOut);
+            this.netIn = null;
+            this.appIn = null;
+            this.netOut = null;
+        }
+    }
+
+    /**
+     * Drives the engine through a handshake until it has nothing more to send or receive
+     * @throws IOException
+     */
+    private void completeHandshake() throws IOException
+    {
+        HandshakeStatus status = this.engine.getHandshakeStatus();
+
+        while (status != HandshakeStatus.FINISHED && status != HandshakeStatus.NOT_HANDSHAKING)
+        {
+            switch (status)
+            {
+                case NEED_WRAP:
+                    SSLEngineResult result = this.engine.wrap(ByteBuffer.allocate(0), this.netOut);
+
+                    if (result.getStatus() == SSLEngineResult.Status.BUFFER_OVERFLOW)
+                    {
+                        this.flush();
+                    }
+                    else if (result.getStatus() == SSLEngineResult.Status.CLOSED)
+                    {
+                        // The engine has sent an alert, which the client is told of before the handshake fails
+                        this.flush();
+                        throw new SSLException("TLS handshake failed");
+                    }
+
+                    status = result.getHandshakeStatus();
+                    break;
+                case NEED_TASK:
+                    // Delegated tasks are run on this Worker's thread, which would otherwise only be waiting for them
+                    Runnable task;
+
+                    while ((task = this.engine.getDelegatedTask()) != null)
+                    {
+                        task.run();
+                    }
+
+                    status = this.engine.getHandshakeStatus();
+                    break;
+                default:
+                    // The client's next message is needed, so send whatever it is waiting for first
+                    this.flush();
+                    status = this.unwrap().getHandshakeStatus();
+
+                    if (this.isInboundDone)
+                    {
+                        throw new SSLException("Connection closed by client during the TLS handshake");
+                    }
+                    break;
+            }
+        }
+
+        this.flush();
+    }
+
+    /**
+     * Decrypts the next record, reading from the socket until a whole record has been received
+     * @return the result of decrypting the record
+     * @throws IOException if the record cannot be decrypted or the connection is closed part way through it
+     */
+    private SSLEngineResult unwrap() throws IOException
+    {
+        while (true)
+        {
+            this.netIn.flip();
+            SSLEngineResult result;
+
+            try
+            {
+                result = this.engine.unwrap(this.netIn, this.appIn);
+            }
+            finally
+            {
+                this.netIn.compact();
+            }
+
+            switch (result.getStatus())
+            {
+                case OK:
+                    return result;
+                case CLOSED:
+                    this.isInboundDone = true;
+                    return result;
+                case BUFFER_UNDERFLOW:
+                    if (this.channel.read(this.netIn) < 0)
+                    {
+                        // Closing the connection without a close_notify is treated as closing it, as browsers commonly do
+                        this.isInboundDone = true;
+
+                        try
+                        {
+                            this.engine.closeInbound();
+                        }
+                        catch (SSLException e)
+                        {
+                            Logger.Log(Logger.INFORMATION, "Connection closed by client without a close_notify");
+                        }
+
+                        return result;
+                    }
+                    break;
+                default:
+                    // Decrypted bytes are only read into when the buffer is empty, and it holds a whole record
+                    throw new SSLException("TLS record larger than the incoming buffer");
+            }
+        }
+    }
+
+    /**
+     * Writes every encrypted byte waiting in the outgoing buffer to the socket
+     * @throws IOException
+     */
+    private void flush() throws IOException
+    {
+        this.netOut.flip();
+
+        while (this.netOut.hasRemaining())
+        {
+            this.channel.write(this.netOut);
+        }
+
+        this.netOut.clear();
+    }
+}
@@ -0,0 +1,183 @@
+package webserver;
+
+import java.io.FileInputStream;
+import java.io.InputStream;
+import java.security.KeyStore;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import javax.net.ssl.KeyManagerFactory;
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLEngine;
+import javax.net.ssl.SSLSessionContext;
+
+/**
+ * Holds the server's certificate and TLS settings, and creates the SSLEngine for each connection accepted on the TLS port
+ * <p>
+ * Every engine is created from the same SSLContext, so they share its session cache. A client which returns within the session
+ * timeout can resume its session with an abbreviated handshake, skipping the key exchange and certificate. With session tickets
+ * enabled the session state is sent to the client to hold instead, so resumption does not depend on the session still being cached
+ * @author Kieran Chin Cheong
+ * @version 1.0
+ * @since 1.0
+ */
+public class TLSContext
+{
+    // Static variables
+
+    // System property read by the JDK (13 or later) to decide whether the server issues session tickets (RFC 5077)
+    private static final String SESSION_TICKET_PROPERTY = "jdk.tls.server.enableSessionTicketExtension";
+
+    // This is the singleton instance
+    private static final TLSContext contextSingleton = new TLSContext();
+
+    // Static methods
+
+    /**
+     * Static singleton accessor
+     * @return the singleton TLSContext
+     */
+    public static TLSContext GetContext()
+    {
+        return contextSingleton;
+    }
+
+    /**
+     * Splits a comma separated list from the configuration, keeping only the entries which are supported
+     * @param list the configured list
+     * @param supported the entries supported by the runtime
+     * @param kind what the entries are, for logging
+     * @return the supported entries in the order configured, or null if the list is empty
+     */
+    private static String[] FilterSupported(String list, String[] supported, String kind)
+    {
+        if (list == null || list.trim().isEmpty())
+        {
+            return null;
+        }
+
+        List<String> supportedList = Arrays.asList(supported);
+        ArrayList<String> filtered = new ArrayList<String>();
+
+        for (String entry : list.split(","))
+        {
+            entry = entry.trim();
+
+            if (entry.isEmpty())
+            {
+                continue;
+            }
+
+            if (supportedList.contains(entry))
+            {
+                filtered.add(entry);
+            }
+            else
+            {
+                Logger.Log(Logger.WARNING, "Warning : TLS %s %s is not supported by this runtime, ignoring it", kind, entry);
+            }
+        }
+
+        return filtered.toArray(new String[filtered.size()]);
+    }
+
+    // Member variables
+
+    private SSLContext sslContext;
+    private String[] protocols;
+    private String[] cipherSuites;
+    private boolean enabled;
+
+    /**
+     * Private constructor. Loads the key store and creates the SSLContext if TLS is enabled
+     * <p>
+     * TLS is left disabled if anything about its configuration is wrong, so that the server still serves its cleartext port
+     */
+    private TLSContext()
+    {
+        Configuration config = Configuration.GetConfiguration();
+
+        if (! config.isEnableTLS())
+        {
+            return;
+        }
+
+        // The JDK reads this once, when the first SSLContext is created. A value given on the command line is left alone
+        if (System.getProperty(SESSION_TICKET_PROPERTY) == null)
+        {
+            System.setProperty(SESSION_TICKET_PROPERTY, Boolean.toString(config.isEnableTLSSessionTickets()));
+        }
+
+        try
+        {
+            KeyStore keyStore = KeyStore.getInstance(config.getTlsKeyStoreType());
+            char[] password = config.getTlsKeyStorePassword().toCharArray();
+
+            try (InputStream in = new FileInputStream(config.getTlsKeyStore()))
+            {
+                keyStore.load(in, password);
+            }
+
+            KeyManagerFactory keyManagers = KeyManagerFactory.getInstance(KeyManagerFactory.getDefaultAlgorithm());
+            keyManagers.init(keyStore, password);
+
+            this.sslContext = SSLContext.getInstance("TLS");
+            this.sslContext.init(keyManagers.getKeyManagers(), null, null);
+
+            // A size or timeout of 0 leaves the session cache unbounded
+            SSLSessionContext sessions = this.sslContext.getServerSessionContext();
+            sessions.setSessionCacheSize(config.getTlsSessionCacheSize());
+            sessions.setSessionTimeout(config.getTlsSessionTimeout());
+
+            // Check the configured protocols and cipher suites against what the runtime supports, once rather than per connection
+            SSLEngine engine = this.sslContext.createSSLEngine();
+            this.protocols = TLSContext.FilterSupported(config.getTlsProtocols(), engine.getSupportedProtocols(), "protocol");
+            this.cipherSuites = TLSContext.FilterSupported(config.getTlsCipherSuites(), engine.getSupportedCipherSuites(), "cipher suite");
+
+            if ((this.protocols != null && this.protocols.length == 0) || (this.cipherSuites != null && this.cipherSuites.length == 0))
+            {
+                Logger.Log(Logger.ERROR, "Error : none of the configured TLS protocols or cipher suites are supported, TLS is disabled");
+                return;
+            }
+
+            this.enabled = true;
+        }
+        catch (Exception e)
+        {
+            Logger.Log(Logger.ERROR, "Error : could not load TLS key store %s, TLS is disabled : %s", config.getTlsKeyStore(), e.toString());
+        }
+    }
+
+    /**
+     * Creates the engine for a connection accepted on the TLS port
+     * @return an engine in server mode, using the configured protocols and cipher suites
+     */
+    public SSLEngine createEngine()
+    {
+        SSLEngine engine = this.sslContext.createSSLEngine();
+        engine.setUseClientMode(false);
+
+        if (this.protocols != null)
+        {
+            engine.setEnabledProtocols(this.protocols);
+        }
+
+        if (this.cipherSuites != null)
+        {
+            engine.setEnabledCipherSuites(this.cipherSuites);
+        }
+
+        return engine;
+    }
+
+    // Simple getters
+
+    /**
+     * @return true if TLS is enabled and its key store was loaded
+     */
+    public boolean isEnabled()
+    {
+        return this.enabled;
+    }
+}
@@ -0,0 +1,97 @@
+package webserver;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * @author Kieran Chin Cheong
+ * @version 1.0
+ * @since 1.0
+ */
+public class Timeout
+{
+    // Static variables
+
+    // States of a timeout
+    static final int PENDING = 0;
+    static final int CANCELLED = 1;
+    static final int EXPIRED = 2;
+
+    // Member variables
+
+    private TimeoutWheel wheel;
+    private Runnable task;
+    private long deadline;
+    private AtomicInteger state;
+
+    // Position within the wheel. These are only ever used by the wheel's own thread
+    long remainingRounds;
+    Timeout previous;
+    Timeout next;
+    TimeoutBucket bucket;
+
+    /**
+     * Constructor. Only to be used by TimeoutWheel
+     * @param wheel the wheel this timeout has been scheduled on
+     * @param task the task to run when the timeout expires
+     * @param deadline the time at which the timeout expires, from System.nanoTime()
+     */
+    Timeout(TimeoutWheel wheel, Runnable task, long deadline)
+    {
+        this.wheel = wheel;
+        this.task = task;
+        this.deadline = deadline;
+        this.state = new AtomicInteger(PENDING);
+    }
+
+    /**
+     * Cancels the timeout, so that its task will not be run. This is a constant time operation
+     * @return true if the timeout was cancelled, false if it had already expired or been cancelled
+     */
+    public boolean cancel()
+    {
+        if (! this.state.compareAndSet(PENDING, CANCELLED))
+        {
+            return false;
+        }
+
+        // Let the wheel unlink the timeout from its bucket, rather than leave it there until its deadline
+        this.wheel.cancelled(this);
+        return true;
+    }
+
+    /**
+     * Runs the timeout's task, unless it has been cancelled
+     */
+    void expire()
+    {
+        if (! this.state.compareAndSet(PENDING, EXPIRED))
+        {
+            return;
+        }
+
+        try
+        {
+            this.task.run();
+        }
+        catch (Exception e)
+        {
+            Logger.Log(Logger.ERROR, "Error running timeout task : %s", e.toString());
+        }
+    }
+
+    /**
+     * @return
+     */
+    public boolean isCancelled()
+    {
+        return this.state.get() == CANCELLED;
+    }
+
+    /**
+     * @return
+     */
+    public long getDeadline()
+    {
+        return this.deadline;
+    }
+}
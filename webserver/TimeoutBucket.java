@@ -0,0 +1,90 @@
+package webserver;
+
+/**
+ * @author Kieran Chin Cheong
+ * @version 1.0
+ * @since 1.0
+ */
+class TimeoutBucket
+{
+    // Member variables
+
+    // Doubly linked list of the timeouts in this bucket. Only ever used by the wheel's own thread
+    private Timeout head;
+    private Timeout tail;
+
+    /**
+     * Adds a timeout to the bucket
+     * @param timeout the timeout to add
+     */
+    void add(Timeout timeout)
+    {
+        timeout.bucket = this;
+
+        if (this.head == null)
+        {
+            this.head = timeout;
+            this.tail = timeout;
+        }
+        else
+        {
+            this.tail.next = timeout;
+            timeout.previous = this.tail;
+            this.tail = timeout;
+        }
+    }
+
+    /**
+     * Removes a timeout from the bucket in constant time
+     * @param timeout the timeout to remove
+     */
+    void remove(Timeout timeout)
+    {
+        if (timeout.previous != null)
+        {
+            timeout.previous.next = timeout.next;
+        }
+        else
+        {
+            this.head = timeout.next;
+        }
+
+        if (timeout.next != null)
+        {
+            timeout.next.previous = timeout.previous;
+        }
+        else
+        {
+            this.tail = timeout.previous;
+        }
+
+        timeout.previous = null;
+        timeout.next = null;
+        timeout.bucket = null;
+    }
+
+    /**
+     * Expires every timeout in the bucket which is due in the current rotation of the wheel, and counts down the rest
+     */
+    void expireTimeouts()
+    {
+        Timeout timeout = this.head;
+
+        while (timeout != null)
+        {
+            Timeout next = timeout.next;
+
+            if (timeout.remainingRounds <= 0)
+            {
+                this.remove(timeout);
+                timeout.expire();
+            }
+            else
+            {
+                timeout.remainingRounds--;
+            }
+
+            timeout = next;
+        }
+    }
+}
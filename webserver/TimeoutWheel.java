@@ -0,0 +1,181 @@
+package webserver;
+
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * @author Kieran Chin Cheong
+ * @version 1.0
+ * @since 1.0
+ */
+public class TimeoutWheel implements Runnable
+{
+    // Static variables
+
+    // Resolution of the shared wheel, in milliseconds. Timeouts expire up to one tick after their deadline
+    private static final long TICK_DURATION = 100;
+
+    // Number of buckets in the shared wheel. Timeouts further away than one rotation wait a number of rounds
+    private static final int WHEEL_SIZE = 512;
+
+    // Maximum number of newly scheduled timeouts moved into the wheel per tick, so that a burst cannot delay expiry for too long
+    private static final int MAX_TRANSFERS_PER_TICK = 100000;
+
+    // This is the singleton instance
+    private static final TimeoutWheel wheelSingleton = new TimeoutWheel(TICK_DURATION, WHEEL_SIZE);
+
+    // Static methods
+
+    /**
+     * Static singleton accessor. The wheel's thread is started the first time this is called
+     * @return the singleton TimeoutWheel
+     */
+    public static TimeoutWheel GetWheel()
+    {
+        return wheelSingleton;
+    }
+
+    // Member variables
+
+    private TimeoutBucket[] buckets;
+    private long tickDuration;
+
+    // Times are taken from System.nanoTime(), so that the wheel keeps time when the wall clock is stepped
+    private long startTime;
+    private long tick;
+
+    // Timeouts are handed to the wheel's thread through these queues, so that scheduling and cancelling never block
+    private ConcurrentLinkedQueue<Timeout> scheduledTimeouts;
+    private ConcurrentLinkedQueue<Timeout> cancelledTimeouts;
+
+    /**
+     * Constructor. Creates the buckets and starts the wheel's thread. Everything but tests should use the shared wheel
+     * @param tickDuration the resolution of the wheel, in milliseconds
+     * @param wheelSize the number of buckets in the wheel. Must be a power of two
+     */
+    TimeoutWheel(long tickDuration, int wheelSize)
+    {
+        this.buckets = new TimeoutBucket[wheelSize];
+        this.tickDuration = TimeUnit.MILLISECONDS.toNanos(tickDuration);
+
+        for (int i = 0; i < wheelSize; i++)
+        {
+            this.buckets[i] = new TimeoutBucket();
+        }
+
+        this.scheduledTimeouts = new ConcurrentLinkedQueue<Timeout>();
+        this.cancelledTimeouts = new ConcurrentLinkedQueue<Timeout>();
+        this.startTime = System.nanoTime();
+
+        Thread thread = new Thread(this, "timeout-wheel");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Schedules a task to be run after a delay, unless the returned Timeout is cancelled first. This is a constant time operation
+     * <p>
+     * All tasks are run on the wheel's single thread, so they must be short. Closing a socket is fine; anything longer should
+     * be handed to another thread
+     * @param task the task to run
+     * @param delay the delay in milliseconds
+     * @return the Timeout, which can be used to cancel the task
+     */
+    public Timeout schedule(Runnable task, long delay)
+    {
+        Timeout timeout = new Timeout(this, task, System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(delay));
+        this.scheduledTimeouts.offer(timeout);
+        return timeout;
+    }
+
+    /**
+     * Called by a Timeout when it has been cancelled, so that it can be removed from its bucket
+     * @param timeout the cancelled Timeout
+     */
+    void cancelled(Timeout timeout)
+    {
+        this.cancelledTimeouts.offer(timeout);
+    }
+
+    /**
+     * This is the main execution loop of the TimeoutWheel
+     * <p>
+     * Once per tick, newly scheduled and cancelled timeouts are applied to the wheel, and the timeouts in the current bucket are expired
+     * @see java.lang.Runnable#run()
+     */
+    @Override
+    public void run()
+    {
+        while (true)
+        {
+            try
+            {
+                this.waitForNextTick();
+                this.transferScheduledTimeouts();
+                this.removeCancelledTimeouts();
+                this.buckets[(int) (this.tick & (this.buckets.length - 1))].expireTimeouts();
+                this.tick++;
+            }
+            catch (InterruptedException e)
+            {
+                // If the thread was interrupted while waiting. Simply continue
+                continue;
+            }
+            catch (Exception e)
+            {
+                Logger.Log(Logger.ERROR, "Error in timeout wheel : %s", e.toString());
+            }
+        }
+    }
+
+    /**
+     * Sleeps until the end of the current tick
+     * @throws InterruptedException
+     */
+    private void waitForNextTick() throws InterruptedException
+    {
+        long sleepTime = this.startTime + (this.tick + 1) * this.tickDuration - System.nanoTime();
+
+        if (sleepTime > 0)
+        {
+            TimeUnit.NANOSECONDS.sleep(sleepTime);
+        }
+    }
+
+    /**
+     * Places newly scheduled timeouts into the bucket for their deadline
+     */
+    private void transferScheduledTimeouts()
+    {
+        Timeout timeout;
+
+        for (int i = 0; i < MAX_TRANSFERS_PER_TICK && (timeout = this.scheduledTimeouts.poll()) != null; i++)
+        {
+            if (timeout.isCancelled())
+            {
+                continue;
+            }
+
+            // Timeouts whose deadline has already passed go into the current bucket, to expire at the end of this tick
+            long deadlineTick = Math.max((timeout.getDeadline() - this.startTime) / this.tickDuration, this.tick);
+            timeout.remainingRounds = (deadlineTick - this.tick) / this.buckets.length;
+            this.buckets[(int) (deadlineTick & (this.buckets.length - 1))].add(timeout);
+        }
+    }
+
+    /**
+     * Unlinks cancelled timeouts from their buckets, so that they do not stay referenced until their deadline
+     */
+    private void removeCancelledTimeouts()
+    {
+        Timeout timeout;
+
+        while ((timeout = this.cancelledTimeouts.poll()) != null)
+        {
+            if (timeout.bucket != null)
+            {
+                timeout.bucket.remove(timeout);
+            }
+        }
+    }
+}
@@ -1,10 +1,22 @@
 package webserver;
 
 import java.io.IOException;
-import java.net.ServerSocket;
+import java.lang.reflect.Method;
+import java.net.InetSocketAddress;
 import java.net.Socket;
+import java.net.SocketOption;
+import java.net.StandardSocketOptions;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 
 /**
  * @author Kieran Chin Cheong
@@ -18,10 +30,229 @@ public class Webserver
     public static final String HTTP_VERSION = "HTTP/1.1"; // Server's declared HTTP version
     public static final String SERVER_VERSION = "Kieran's Webserver 1.0"; // Server's version string
     
+    // I/O modes
+    public static final String IO_MODE_BLOCKING = "blocking"; // One Worker thread per connection, blocking on socket I/O
+    public static final String IO_MODE_NIO = "nio"; // A few selector threads servicing all connections as they become ready
+    
+    // Worker thread modes, used by the blocking I/O mode
+    public static final String WORKER_THREADS_PLATFORM = "platform"; // Workers run on platform threads, pooled if enableThreadPool is set
+    public static final String WORKER_THREADS_VIRTUAL = "virtual"; // Each Worker runs on its own virtual thread (Java 21 or later)
+    
+    // The SO_REUSEPORT socket option, or null if the runtime does not have it
+    private static final SocketOption<Boolean> SO_REUSEPORT = Webserver.FindReusePortOption();
+    
+    // Milliseconds an acceptor thread waits after accept() fails, such as when the process is out of file descriptors, before trying again
+    private static final long ACCEPT_RETRY_DELAY = 100;
+    
+    // Static methods
+    
+    /**
+     * Returns whether the server is configured to use the non-blocking selector based I/O mode
+     * @return true if non-blocking I/O is configured, false for the default blocking mode
+     */
+    public static boolean IsNonBlockingIO()
+    {
+        return Webserver.IO_MODE_NIO.equalsIgnoreCase(Configuration.GetConfiguration().getIoMode());
+    }
+    
+    /**
+     * Creates the ExecutorService that Workers are run on, according to the configured worker thread mode
+     * <p>
+     * In virtual mode every connection gets its own virtual thread, so there is no ceiling on the number of connections being
+     * served at once and numThreads is not used. Virtual threads require Java 21; on older runtimes this falls back to platform threads.
+     * In platform mode a fixed pool of numThreads threads is used if enableThreadPool is set, otherwise a new thread is started
+     * for each connection (idle threads are reused for a short while rather than discarded). Connections wait for a thread of
+     * the pool in a work queue of workQueueCapacity connections, or an unbounded one if that is 0
+     * @return the ExecutorService to submit Workers to
+     */
+    private static ExecutorService CreateWorkerExecutor()
+    {
+        Configuration config = Configuration.GetConfiguration();
+        
+        if (Webserver.WORKER_THREADS_VIRTUAL.equalsIgnoreCase(config.getWorkerThreadMode()))
+        {
+            try
+            {
+                // Looked up reflectively so that the server can still be built and run on runtimes without virtual threads
+                Method factory = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+                Logger.Log(Logger.INFORMATION, "Running Workers on virtual threads");
+                return (ExecutorService) factory.invoke(null);
+            }
+            catch (ReflectiveOperationException | UnsupportedOperationException e)
+            {
+                Logger.Log(Logger.WARNING, "Warning : virtual threads are not available on this runtime, falling back to platform threads : %s", e.toString());
+            }
+        }
+        
+        if (config.isEnableThreadPool())
+        {
+            Logger.Log(Logger.INFORMATION, "Running Workers on a pool of %d platform threads", config.getNumThreads());
+            
+            // When the queue is full, submit() throws a RejectedExecutionException, so the connection can be turned away at once
+            BlockingQueue<Runnable> workQueue = config.getWorkQueueCapacity() > 0 ? new ArrayBlockingQueue<Runnable>(config.getWorkQueueCapacity()) : new LinkedBlockingQueue<Runnable>();
+            return new ThreadPoolExecutor(config.getNumThreads(), config.getNumThreads(), 0L, TimeUnit.MILLISECONDS, workQueue);
+        }
+        else
+        {
+            Logger.Log(Logger.INFORMATION, "Running Workers on a platform thread per connection");
+            return Executors.newCachedThreadPool();
+        }
+    }
+    
+    /**
+     * Looks up the SO_REUSEPORT socket option, which was added in Java 9
+     * <p>
+     * It is looked up reflectively, as virtual threads are, so that the server can still be built and run on Java 8
+     * @return the option, or null if the runtime does not have it
+     */
+    @SuppressWarnings("unchecked")
+    private static SocketOption<Boolean> FindReusePortOption()
+    {
+        try
+        {
+            return (SocketOption<Boolean>) StandardSocketOptions.class.getField("SO_REUSEPORT").get(null);
+        }
+        catch (ReflectiveOperationException e)
+        {
+            return null;
+        }
+    }
+    
+    /**
+     * Returns whether listening sockets can share a port through SO_REUSEPORT, which depends on both the runtime and the platform
+     * @return true if SO_REUSEPORT is supported, false otherwise
+     * @throws IOException
+     */
+    private static boolean IsReusePortSupported() throws IOException
+    {
+        if (SO_REUSEPORT == null)
+        {
+            return false;
+        }
+        
+        try (ServerSocketChannel channel = ServerSocketChannel.open())
+        {
+            return channel.supportedOptions().contains(SO_REUSEPORT);
+        }
+    }
+    
+    /**
+     * Opens a channel to listen for connections on, applying the configured socket options
+     * <p>
+     * The receive buffer size is set on the listening socket, so that accepted sockets inherit it before their connection is
+     * established, which allows a large TCP window to be negotiated
+     * @param port the port to listen on
+     * @param isReusePort true to share the port with other listening sockets through SO_REUSEPORT
+     * @return the bound channel
+     * @throws IOException
+     */
+    private static ServerSocketChannel OpenListeningChannel(int port, boolean isReusePort) throws IOException
+    {
+        Configuration config = Configuration.GetConfiguration();
+        ServerSocketChannel channel = ServerSocketChannel.open();
+        
+        try
+        {
+            if (isReusePort)
+            {
+                channel.setOption(SO_REUSEPORT, true);
+            }
+            
+            if (config.getSocketReceiveBufferSize() > 0)
+            {
+                channel.setOption(StandardSocketOptions.SO_RCVBUF, config.getSocketReceiveBufferSize());
+            }
+            
+            // A backlog of 0 or less leaves it to the runtime's default
+            channel.bind(new InetSocketAddress(port), config.getAcceptBacklog());
+        }
+        catch (IOException e)
+        {
+            channel.close();
+            throw e;
+        }
+        
+        return channel;
+    }
+    
+    /**
+     * Applies the configured socket options to an accepted connection
+     * <p>
+     * The options only tune performance, so a connection is still served if they could not be applied, as when it has already
+     * been reset by the client
+     * @param channel the accepted connection
+     */
+    private static void ConfigureConnection(SocketChannel channel)
+    {
+        Configuration config = Configuration.GetConfiguration();
+        
+        try
+        {
+            // Responses are written whole, so there is nothing to gain from Nagle's algorithm holding back their last segment
+            if (config.isTcpNoDelay())
+            {
+                channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+            }
+            
+            if (config.getSocketSendBufferSize() > 0)
+            {
+                channel.setOption(StandardSocketOptions.SO_SNDBUF, config.getSocketSendBufferSize());
+            }
+        }
+        catch (IOException e)
+        {
+            Logger.Log(Logger.WARNING, "Warning : could not set socket options on accepted connection : %s", e.toString());
+        }
+    }
+    
+    /**
+     * Accepts the next connection from a listening socket
+     * <p>
+     * A failure which only lasts a moment, such as running out of file descriptors or a connection aborted before it was accepted,
+     * is logged and the caller tries again after a short delay. Giving up would leave a listening socket which is still bound, and
+     * with SO_REUSEPORT still given its share of new connections, but which nothing accepts from
+     * @param listeningChannel the listening socket to accept from
+     * @return the accepted connection, or null if accepting failed and should be tried again
+     * @throws ClosedChannelException if the listening socket has been closed, in which case the acceptor thread should stop
+     */
+    private static SocketChannel AcceptConnection(ServerSocketChannel listeningChannel) throws ClosedChannelException
+    {
+        try
+        {
+            return listeningChannel.accept();
+        }
+        catch (ClosedChannelException e)
+        {
+            throw e;
+        }
+        catch (IOException e)
+        {
+            Logger.Log(Logger.ERROR, "Error accepting connection, retrying : %s", e.toString());
+        }
+        
+        try
+        {
+            Thread.sleep(ACCEPT_RETRY_DELAY);
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+        }
+        
+        return null;
+    }
+    
     // Member variables
     
-    private ServerSocket listeningSocket;
     private ExecutorService workerThreadPool;
+    private SelectorEventLoop[] eventLoops;
+    
+    // Sockets listened on. With SO_REUSEPORT there is one per acceptor thread and the operating system spreads connections
+    // between them, otherwise every acceptor thread accepts from the same one
+    private ServerSocketChannel[] listeningChannels;
+    
+    // Socket listened on for TLS connections, or null if TLS is not enabled
+    private ServerSocketChannel tlsListeningChannel;
     
     /**
      * Constructor
@@ -32,34 +263,255 @@ public class Webserver
     }
     
     /**
-     * Method to initialize the Webserver object. Creates the thread pool and the ServerSocket to listen on
+     * Method to initialize the Webserver object. Creates either the Worker executor or the selector event loops, depending on the
+     * configured I/O mode, and the socket to listen on
      * @throws IOException
      */
     public void initialize() throws IOException
     {
-        this.workerThreadPool = Executors.newFixedThreadPool(Configuration.GetConfiguration().getNumThreads());
-        this.listeningSocket = new ServerSocket(Configuration.GetConfiguration().getPort());
+        // Index the content root and load the most requested files first, so that the server serves at full speed from the start
+        ContentIndex.GetIndex().build();
+        ContentIndex.GetIndex().prewarm();
+        
+        if (Webserver.IsNonBlockingIO())
+        {
+            // Start the selector event loops, which will service every connection between them
+            int numSelectorThreads = Configuration.GetConfiguration().getNumSelectorThreads();
+            this.eventLoops = new SelectorEventLoop[numSelectorThreads > 0 ? numSelectorThreads : Runtime.getRuntime().availableProcessors()];
+            
+            for (int i = 0; i < this.eventLoops.length; i++)
+            {
+                this.eventLoops[i] = new SelectorEventLoop();
+                new Thread(this.eventLoops[i], "selector-" + i).start();
+            }
+        }
+        else
+        {
+            this.workerThreadPool = Webserver.CreateWorkerExecutor();
+        }
+        
+        // Listen through a channel in both modes, so that accepted sockets have a channel that files can be transferred to directly
+        int numAcceptorThreads = Math.max(1, Configuration.GetConfiguration().getNumAcceptorThreads());
+        boolean isReusePort = numAcceptorThreads > 1 && Configuration.GetConfiguration().isEnableReusePort();
+        
+        if (isReusePort && ! Webserver.IsReusePortSupported())
+        {
+            Logger.Log(Logger.WARNING, "Warning : SO_REUSEPORT is not available on this platform, acceptor threads will share a single listening socket");
+            isReusePort = false;
+        }
+        
+        this.listeningChannels = new ServerSocketChannel[isReusePort ? numAcceptorThreads : 1];
+        
+        for (int i = 0; i < this.listeningChannels.length; i++)
+        {
+            this.listeningChannels[i] = Webserver.OpenListeningChannel(Configuration.GetConfiguration().getPort(), isReusePort);
+        }
+        
+        // TLS connections are always served by Workers, so in non-blocking I/O mode they get an executor of their own
+        if (TLSContext.GetContext().isEnabled())
+        {
+            if (this.workerThreadPool == null)
+            {
+                this.workerThreadPool = Webserver.CreateWorkerExecutor();
+            }
+            
+            this.tlsListeningChannel = Webserver.OpenListeningChannel(Configuration.GetConfiguration().getTlsPort(), false);
+        }
     }
     
     /**
      * Method to start operation of the Webserver object
+     * <p>
+     * The calling thread becomes the first acceptor thread, and any further acceptor threads are started alongside it, along with
+     * an acceptor thread for the TLS port if TLS is enabled
      * @throws Exception
      */
     public void run() throws Exception
     {
+        int numAcceptorThreads = Math.max(1, Configuration.GetConfiguration().getNumAcceptorThreads());
+        
+        if (this.tlsListeningChannel != null)
+        {
+            this.startAcceptorThread(this.tlsListeningChannel, -1, "tls-acceptor");
+        }
+        
+        for (int i = 1; i < numAcceptorThreads; i++)
+        {
+            this.startAcceptorThread(this.listeningChannels[i % this.listeningChannels.length], i, "acceptor-" + i);
+        }
+        
+        this.accept(this.listeningChannels[0], 0);
+    }
+    
+    /**
+     * Starts a thread which runs one of the acceptor loops
+     * <p>
+     * The loops only return by throwing once their listening socket has been closed. Anything else leaves a listening socket that
+     * nothing accepts from, so the process is stopped as the first acceptor thread's failure would stop it, rather than carrying on
+     * and looking healthy
+     * @param listeningChannel the listening socket to accept from
+     * @param acceptor the number of the acceptor thread, or -1 for the TLS acceptor thread
+     * @param name the name of the thread
+     */
+    private void startAcceptorThread(final ServerSocketChannel listeningChannel, final int acceptor, String name)
+    {
+        new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try
+                {
+                    if (acceptor < 0)
+                    {
+                        Webserver.this.acceptTLS(listeningChannel);
+                    }
+                    else
+                    {
+                        Webserver.this.accept(listeningChannel, acceptor);
+                    }
+                }
+                catch (ClosedChannelException e)
+                {
+                    Logger.Log(Logger.INFORMATION, "Listening socket closed, acceptor thread %s stopping", Thread.currentThread().getName());
+                }
+                catch (Exception e)
+                {
+                    System.err.println("Error in acceptor thread " + Thread.currentThread().getName() + ": \"" + e.toString() + "\"");
+                    Logger.Log(Logger.ERROR, "Error in acceptor thread %s : %s", Thread.currentThread().getName(), e.toString());
+                    System.exit(-2);
+                }
+            }
+        }, name).start();
+    }
+    
+    /**
+     * Accepts connections from a listening socket for as long as the server runs
+     * @param listeningChannel the listening socket to accept from
+     * @param acceptor the number of the acceptor thread
+     * @throws Exception
+     */
+    private void accept(ServerSocketChannel listeningChannel, int acceptor) throws Exception
+    {
+        if (Webserver.IsNonBlockingIO())
+        {
+            this.acceptNonBlocking(listeningChannel, acceptor);
+            return;
+        }
+        
         // This is the main execution loop of the Webserver
         // Since all of the processing done for the request/response mechanism is done by worker threads
         // all that needs to be done here is queuing the incoming requests
-        Logger.Log(Logger.INFORMATION, String.format("Webserver listening on address %s", this.listeningSocket.getLocalSocketAddress().toString()));
+        Logger.Log(Logger.INFORMATION, "Webserver listening on address %s", listeningChannel.getLocalAddress().toString());
+        
+        while (true)
+        {
+            // Block waiting on an incoming connection
+            SocketChannel connectionChannel = Webserver.AcceptConnection(listeningChannel);
+            
+            if (connectionChannel == null)
+            {
+                continue;
+            }
+            
+            Webserver.ConfigureConnection(connectionChannel);
+            Socket connectionSocket = connectionChannel.socket();
+            
+            // Queue a new work item, or turn the connection away if too many are already waiting for a Worker
+            Logger.Log(Logger.INFORMATION, "Queuing new incoming connection from remote address : %s", connectionSocket.getRemoteSocketAddress());
+            
+            try
+            {
+                this.workerThreadPool.submit(new Worker(connectionSocket));
+            }
+            catch (RejectedExecutionException e)
+            {
+                Logger.Log(Logger.INFORMATION, "Work queue full, turning away connection from remote address : %s", connectionSocket.getRemoteSocketAddress());
+                AdmissionControl.GetAdmissionControl().reject(connectionChannel, true);
+            }
+        }
+    }
+    
+    /**
+     * Main execution loop of the TLS acceptor thread
+     * <p>
+     * Connections are queued for a Worker as in blocking I/O mode, whatever the configured I/O mode. A connection turned away
+     * because the work queue is full is simply closed, since the client cannot read a response before the handshake
+     * @param listeningChannel the TLS listening socket to accept from
+     * @throws Exception
+     */
+    private void acceptTLS(ServerSocketChannel listeningChannel) throws Exception
+    {
+        Logger.Log(Logger.INFORMATION, "Webserver listening for TLS connections on address %s", listeningChannel.getLocalAddress().toString());
+        
+        while (true)
+        {
+            // Block waiting on an incoming connection
+            SocketChannel connectionChannel = Webserver.AcceptConnection(listeningChannel);
+            
+            if (connectionChannel == null)
+            {
+                continue;
+            }
+            
+            Webserver.ConfigureConnection(connectionChannel);
+            Socket connectionSocket = connectionChannel.socket();
+            
+            Logger.Log(Logger.INFORMATION, "Queuing new incoming TLS connection from remote address : %s", connectionSocket.getRemoteSocketAddress());
+            
+            try
+            {
+                this.workerThreadPool.submit(new Worker(connectionSocket, true));
+            }
+            catch (RejectedExecutionException e)
+            {
+                Logger.Log(Logger.INFORMATION, "Work queue full, turning away TLS connection from remote address : %s", connectionSocket.getRemoteSocketAddress());
+                AdmissionControl.GetAdmissionControl().drop(connectionChannel, true);
+            }
+        }
+    }
+    
+    /**
+     * Main execution loop of an acceptor thread when running in non-blocking I/O mode
+     * <p>
+     * Accepted connections are switched to non-blocking mode and handed to the selector event loops in turn. Each acceptor
+     * thread starts from a different event loop, so that bursts of connections accepted at once are spread between them
+     * @param listeningChannel the listening socket to accept from
+     * @param acceptor the number of the acceptor thread
+     * @throws Exception
+     */
+    private void acceptNonBlocking(ServerSocketChannel listeningChannel, int acceptor) throws Exception
+    {
+        Logger.Log(Logger.INFORMATION, "Webserver listening on address %s with %d selector threads", listeningChannel.getLocalAddress().toString(), this.eventLoops.length);
+        
+        int nextEventLoop = acceptor % this.eventLoops.length;
         
         while (true)
         {
             // Block waiting on an incoming connection
-            Socket connectionSocket = this.listeningSocket.accept();
+            SocketChannel connectionChannel = Webserver.AcceptConnection(listeningChannel);
+            
+            if (connectionChannel == null)
+            {
+                continue;
+            }
+            
+            Webserver.ConfigureConnection(connectionChannel);
+            
+            try
+            {
+                connectionChannel.configureBlocking(false);
+            }
+            catch (IOException e)
+            {
+                // The client may already have reset the connection
+                Logger.Log(Logger.WARNING, "Warning : could not switch accepted connection to non-blocking mode : %s", e.toString());
+                connectionChannel.close();
+                continue;
+            }
             
-            // Queue a new work item
-            Logger.Log(Logger.INFORMATION, String.format("Queuing new incoming connection from remote address : %s", connectionSocket.getRemoteSocketAddress()));
-            this.workerThreadPool.submit(new Worker(connectionSocket));
+            // Hand the connection over to the next event loop
+            Logger.Log(Logger.INFORMATION, "Registering new incoming connection from remote address : %s", connectionChannel.socket().getRemoteSocketAddress());
+            this.eventLoops[nextEventLoop].addConnection(connectionChannel);
+            nextEventLoop = (nextEventLoop + 1) % this.eventLoops.length;
         }
     }
 }
@@ -3,8 +3,10 @@ package webserver;
 import java.io.IOException;
 import java.net.Socket;
 import java.net.SocketException;
-import java.util.Timer;
-import java.util.TimerTask;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+
+import javax.net.ssl.SSLException;
 
 /**
  * @author Kieran Chin Cheong
@@ -16,22 +18,54 @@ public class Worker implements Runnable
     // Member variables
     
     private Socket connectionSocket;
+    private HTTPRequestParser parser;
     private int keepAliveTimeout;
+    private int requestReadTimeout;
+    private int responseWriteTimeout;
     private int keepAliveMax;
     private int requestCount;
+    private long queuedAt;
+    
+    // Responses waiting to be sent, so that those of pipelined requests can be sent together
+    private ResponseQueue responses;
+    
+    // Set for connections accepted on the TLS port, whose requests and responses pass through the TLS channel once it is created
+    private boolean isTLS;
+    private TLSChannel tlsChannel;
     
     /**
      * Constructor
      * @param connectionSocket the Socket object representing a connection to a client
      */
     public Worker(Socket connectionSocket)
+    {
+        this(connectionSocket, false);
+    }
+    
+    /**
+     * Constructor
+     * @param connectionSocket the Socket object representing a connection to a client
+     * @param isTLS true if the connection was accepted on the TLS port
+     */
+    public Worker(Socket connectionSocket, boolean isTLS)
     {
         this.connectionSocket = connectionSocket;
+        this.isTLS = isTLS;
+        this.queuedAt = System.nanoTime();
+        this.parser = new HTTPRequestParser();
         this.keepAliveTimeout = Configuration.GetConfiguration().getHttpKeepAliveTimeout();
+        this.requestReadTimeout = Configuration.GetConfiguration().getRequestReadTimeout();
+        this.responseWriteTimeout = Configuration.GetConfiguration().getResponseWriteTimeout();
         
         // Set this value to 1 if HTTP KeepAlive is not enabled, this will ensure only one request will be served in the lifetime of the connection
         this.keepAliveMax = Configuration.GetConfiguration().isEnableHTTPKeepAlive() ? Configuration.GetConfiguration().getHttpKeepAliveMax() : 1;
         this.requestCount = 0;
+        
+        // Responses can only be batched through the socket's channel, otherwise each is sent as soon as it is built
+        if (connectionSocket.getChannel() != null)
+        {
+            this.responses = new ResponseQueue(connectionSocket.getRemoteSocketAddress().toString(), connectionSocket.getLocalSocketAddress().toString());
+        }
     }
 
     /**
@@ -49,9 +83,45 @@ public class Worker implements Runnable
         // If the HTTP 1.1 KeepAlive feature is enabled, the connection will remain open for a defined window of time. If no new request is received
         // within that window, the connection is then closed. If HTTP 1.1 KeepAlive is not enabled, the connection is immediately closed.
         // Any errors detected in this process that necessitate a response to be returned to the client will be created including the appropriate HTTP status code
+        
+        // A connection which has waited too long for a Worker is turned away, so that those behind it are not kept waiting as well
+        if (this.connectionSocket.getChannel() != null && ! AdmissionControl.GetAdmissionControl().admit(this.queuedAt))
+        {
+            Logger.Log(Logger.INFORMATION, "Shedding connection from remote address %s after it waited too long for a Worker", this.connectionSocket.getRemoteSocketAddress());
+            
+            if (this.isTLS)
+            {
+                AdmissionControl.GetAdmissionControl().drop(this.connectionSocket.getChannel(), false);
+            }
+            else
+            {
+                AdmissionControl.GetAdmissionControl().reject(this.connectionSocket.getChannel(), false);
+            }
+            
+            return;
+        }
+        
+        Metrics.GetMetrics().connectionOpened();
+        
         try
         {
-            Logger.Log(Logger.INFORMATION, String.format("Handling HTTP request from remote address %s", this.connectionSocket.getRemoteSocketAddress().toString()));
+            Logger.Log(Logger.INFORMATION, "Handling HTTP request from remote address %s", this.connectionSocket.getRemoteSocketAddress());
+            
+            // The TLS handshake is made here rather than by the acceptor thread, so that a slow client only holds up its own Worker
+            if (this.isTLS)
+            {
+                this.tlsChannel = new TLSChannel(this.connectionSocket.getChannel(), TLSContext.GetContext().createEngine());
+                Timeout handshakeTimeout = this.scheduleClose(this.requestReadTimeout, "TLS handshake timeout hit");
+                
+                try
+                {
+                    this.tlsChannel.handshake();
+                }
+                finally
+                {
+                    this.cancelTimeout(handshakeTimeout);
+                }
+            }
             
             // Potentially loop while more requests may be served by the connection
             while (this.requestCount < this.keepAliveMax)
@@ -60,55 +130,63 @@ public class Worker implements Runnable
                 HTTPRequest request = null;
                 HTTPResponse response = null;
                 
-                // Declare the KeepAlive timer so that it is in scope to be cancelled if necessary
-                Timer keepAliveTimeoutTimer = new Timer();
+                // Declare the read timeout so that it is in scope to be cancelled if necessary
+                Timeout readTimeout = null;
                 
                 try
                 {
-                    // Attempt to parse the incoming HTTP request
-                    // If this is not the first request handled by this worker (e.g. in the HTTP KeepAlive scenario)
-                    // then set the timer to cause a timeout if no input is received from the client on this connection
-                    // within the specified window                  
-                    if (Configuration.GetConfiguration().isEnableHTTPKeepAlive() && this.requestCount > 0)
+                    // The connection's parser keeps any input received beyond the previous request, so a pipelined request
+                    // may already have been received in full. If so it is answered without waiting on the client
+                    request = this.parser.parse();
+                    
+                    if (request == null)
                     {
-                        final long workerThreadID = Thread.currentThread().getId();
+                        // The client may be waiting for the responses queued so far before it sends anything more
+                        this.sendResponses();
+                        
+                        // Attempt to parse the incoming HTTP request
+                        // If this is not the first request handled by this worker (e.g. in the HTTP KeepAlive scenario)
+                        // then schedule a timeout to close the connection if no request is received from the client on this
+                        // connection within the specified window. Otherwise the client has the request read timeout to send its request
+                        if (Configuration.GetConfiguration().isEnableHTTPKeepAlive() && this.requestCount > 0)
+                        {
+                            Logger.Log(Logger.INFORMATION, "Scheduling KeepAlive timeout for TID %d", Thread.currentThread().getId());
+                            readTimeout = this.scheduleClose(this.keepAliveTimeout, "KeepAlive timeout hit");
+                        }
+                        else
+                        {
+                            readTimeout = this.scheduleClose(this.requestReadTimeout, "Request read timeout hit");
+                        }
                         
-                        Logger.Log(Logger.INFORMATION, String.format("Scheduling KeepAlive timeout timer for TID %d", workerThreadID));
+                        // Attempt to read and parse the request
+                        request = HTTPRequest.BuildHTTPRequestFromInput(this.parser, this.getInputChannel());
                         
-                        // For simplicitly's sake use an anonymous inner class to close the connection socket since this is a simple operation
-                        keepAliveTimeoutTimer.schedule(new TimerTask() {
-                            @Override
-                            public void run() {
-                                Logger.Log(Logger.INFORMATION, String.format("KeepAlive timeout hit for TID %d", workerThreadID));
-                                
-                                try
-                                {
-                                    connectionSocket.close();
-                                }
-                                catch (IOException e)
-                                {
-                                    Logger.Log(Logger.ERROR, String.format("Error closing connected socket due to KeepAlive timeout : %s", e.toString()));
-                                }
-                            }
-                        }, this.keepAliveTimeout * 1000);
+                        // Valid input was received, so cancel the timeout
+                        this.cancelTimeout(readTimeout);
                     }
                     
-                    // Attempt to read and parse the request
-                    request = HTTPRequest.BuildHTTPRequestFromInput(this.connectionSocket.getInputStream());
-                    
                     Logger.Log(Logger.INFORMATION, "Successfully parsed incoming request");
+
+                    // HTTP/2 is only served over cleartext, since without ALPN a TLS client has no way to agree on it
+                    if (this.tlsChannel != null && request.isHTTP2Preface())
+                    {
+                        throw new RequestException(Status.HTTP_VERSION_NOT_SUPPORTED, "HTTP/2 is not served over TLS");
+                    }
                     
-                    // Valid input was received, so cancel the HTTP KeepAlive timeout timer if it was enabled
-                    if (Configuration.GetConfiguration().isEnableHTTPKeepAlive() && this.requestCount > 0)
+                    // A client speaking HTTP/2, either from the start or by upgrading, is served by an HTTP2Connection from now on
+                    // An upgrade is only made once the responses to any earlier requests have been sent, and nothing follows it
+                    if (this.connectionSocket.getChannel() != null && this.tlsChannel == null && (request.isHTTP2Preface() || (HTTP2Connection.IsUpgradeRequest(request) && ! this.parser.hasPartialRequest())))
                     {
-                        Logger.Log(Logger.INFORMATION, String.format("Cancelling KeepAlive timeout timer for TID %d", Thread.currentThread().getId()));
-                        keepAliveTimeoutTimer.cancel();
-                        keepAliveTimeoutTimer.purge();
+                        this.sendResponses();
+                        new HTTP2Connection(this.connectionSocket, this.parser, request.isHTTP2Preface() ? null : request).run();
+                        return;
                     }
 
                     // Attempt to build a response to the request
                     Logger.Log(Logger.INFORMATION, "Building response");
+                    long lookupStarted = System.nanoTime();
                     response = HTTPResponse.BuildHTTPResponseWithBody(request, request.isKeepAliveRequested() && Configuration.GetConfiguration().isEnableHTTPKeepAlive(), this.requestCount);
+                    Metrics.GetMetrics().responseBuilt(System.nanoTime() - lookupStarted);
                     Logger.Log(Logger.INFORMATION, "Response built");
 
                 }
@@ -125,32 +203,79 @@ public class Worker implements Runnable
                     // then the connection was unexpectedly closed by the peer.  Here we should just make sure to clean up our state
                     // and then return, since the connection has been closed
                     Logger.Log(Logger.WARNING, "Warning : Connection unexpectedly closed by peer");
-                    keepAliveTimeoutTimer.cancel();
-                    keepAliveTimeoutTimer.purge();
+                    this.cancelTimeout(readTimeout);
                     return;
                 }
                         
-                // Now we try to send the response to the client
-                Logger.Log(Logger.INFORMATION, "Sending response");
-                response.Send(this.connectionSocket.getOutputStream());
-                Logger.Log(Logger.INFORMATION, "Response sent");
-                
-                // Log the request/response connection line
-                Logger.LogConnection(request, response, this.connectionSocket.getRemoteSocketAddress().toString(), this.connectionSocket.getLocalSocketAddress().toString());
-                
+                // A request which failed part way through being read leaves its timeout armed
+                this.cancelTimeout(readTimeout);
+                        
                 // Increment the request counter
+                Metrics.GetMetrics().requestReceived(this.requestCount > 0);
                 this.requestCount++;
+                
+                if (this.responses != null)
+                {
+                    // Queue the response so that it is sent along with those of any further requests already received
+                    // It is sent straight away if the connection is about to be closed, or too many responses are waiting
+                    this.responses.add(request, response);
+                    
+                    if (this.responses.isFull() || ! response.isKeepAliveEnabled())
+                    {
+                        this.sendResponses();
+                    }
+                }
+                else
+                {
+                    // Now we try to send the response to the client, closing the connection if the client does not accept it in time
+                    Logger.Log(Logger.INFORMATION, "Sending response");
+                    Timeout writeTimeout = this.scheduleClose(this.responseWriteTimeout, "Response write timeout hit");
+                    
+                    try
+                    {
+                        response.Send(this.connectionSocket.getOutputStream());
+                    }
+                    finally
+                    {
+                        this.cancelTimeout(writeTimeout);
+                    }
+                    Logger.Log(Logger.INFORMATION, "Response sent");
+                    
+                    // Log the request/response connection line
+                    Logger.LogConnection(request, response, this.connectionSocket.getRemoteSocketAddress().toString(), this.connectionSocket.getLocalSocketAddress().toString());
+                }
+                
+                // No further requests are served once a response has said that the connection will be closed
+                if (! response.isKeepAliveEnabled())
+                {
+                    break;
+                }
             }
             
+            // Send whatever responses are still queued before closing the connection
+            this.sendResponses();
+            
             // We have reached the maximum number of requests that can be served for this connection
             // Close the connection to the client
-            Logger.Log(Logger.INFORMATION, String.format("Closing connection to clienet with remote address : %s", this.connectionSocket.getRemoteSocketAddress()));
+            Logger.Log(Logger.INFORMATION, "Closing connection to clienet with remote address : %s", this.connectionSocket.getRemoteSocketAddress());
+            
+            // Tell the client the TLS session is over before the socket is closed
+            if (this.tlsChannel != null)
+            {
+                this.tlsChannel.close();
+            }
+            
             this.connectionSocket.close();
         }
+        catch (SSLException se)
+        {
+            // The client could not agree on a TLS session, or sent something which was not TLS
+            Logger.Log(Logger.WARNING, "Warning : TLS error on connection from remote address %s : %s", this.connectionSocket.getRemoteSocketAddress(), se.toString());
+        }
         catch (IOException ioe)
         {
             // We could not read from or write to the socket
-            Logger.Log(Logger.ERROR, String.format("Error reading from or writing to socket %s", ioe.toString()));
+            Logger.Log(Logger.ERROR, "Error reading from or writing to socket %s", ioe.toString());
         }
         catch (HttpKeepAliveTimeoutException kae)
         {
@@ -158,15 +283,29 @@ public class Worker implements Runnable
         }
         catch (ResponseException re)
         {
-            Logger.Log(Logger.ERROR, String.format("Error responding to request, caught ResponseException : %s", re.toString()));
+            Logger.Log(Logger.ERROR, "Error responding to request, caught ResponseException : %s", re.toString());
         }
         catch (Exception e)
         {
             // We have hit an unhandled exception, log this
-            Logger.Log(Logger.ERROR, String.format("Error responding to request, unhandled exception : %s", e.toString()));
+            Logger.Log(Logger.ERROR, "Error responding to request, unhandled exception : %s", e.toString());
         }
         finally
         {
+            // Release anything held by responses which could not be sent, and the parser's buffer
+            if (this.responses != null)
+            {
+                this.responses.close();
+            }
+            
+            this.parser.close();
+            
+            // Release the TLS channel's buffers, if it was not already closed along with the connection
+            if (this.tlsChannel != null)
+            {
+                this.tlsChannel.close();
+            }
+            
             try
             {
                 // Ensure that in all cases when a Worker exits it attempts to close the connection socket
@@ -174,8 +313,95 @@ public class Worker implements Runnable
             }
             catch (IOException e)
             {
-                Logger.Log(Logger.WARNING, String.format("Warning : exiting Worker could not close connection : %s", e.toString()));
+                Logger.Log(Logger.WARNING, "Warning : exiting Worker could not close connection : %s", e.toString());
+            }
+            
+            Metrics.GetMetrics().connectionClosed();
+        }
+    }
+    
+    /**
+     * Sends every queued response, closing the connection if the client does not accept them in time
+     * @throws IOException
+     */
+    private void sendResponses() throws IOException
+    {
+        if (this.responses == null || this.responses.isEmpty())
+        {
+            return;
+        }
+        
+        Logger.Log(Logger.INFORMATION, "Sending response");
+        Timeout writeTimeout = this.scheduleClose(this.responseWriteTimeout, "Response write timeout hit");
+        
+        try
+        {
+            this.responses.writeTo(this.tlsChannel != null ? this.tlsChannel : this.connectionSocket.getChannel());
+        }
+        finally
+        {
+            this.cancelTimeout(writeTimeout);
+        }
+    }
+    
+    /**
+     * @return the channel requests are read from, which decrypts them first for a TLS connection
+     * @throws IOException
+     */
+    private ReadableByteChannel getInputChannel() throws IOException
+    {
+        if (this.tlsChannel != null)
+        {
+            return this.tlsChannel;
+        }
+        
+        return this.connectionSocket.getChannel() != null ? this.connectionSocket.getChannel() : Channels.newChannel(this.connectionSocket.getInputStream());
+    }
+    
+    /**
+     * Schedules the connection socket to be closed after a timeout, which unblocks this Worker if it is waiting on the client
+     * <p>
+     * The timeout is kept on the shared TimeoutWheel, so arming and cancelling it does not create a thread
+     * @param seconds the timeout in seconds. A value of 0 or less disables it
+     * @param message the message to log if the timeout is hit
+     * @return the scheduled Timeout, or null if it is disabled
+     */
+    private Timeout scheduleClose(int seconds, final String message)
+    {
+        if (seconds <= 0)
+        {
+            return null;
+        }
+        
+        final long workerThreadID = Thread.currentThread().getId();
+        
+        // For simplicitly's sake use an anonymous inner class to close the connection socket since this is a simple operation
+        return TimeoutWheel.GetWheel().schedule(new Runnable() {
+            @Override
+            public void run() {
+                Logger.Log(Logger.INFORMATION, "%s for TID %d", message, workerThreadID);
+                
+                try
+                {
+                    connectionSocket.close();
+                }
+                catch (IOException e)
+                {
+                    Logger.Log(Logger.ERROR, "Error closing connected socket due to timeout : %s", e.toString());
+                }
             }
+        }, seconds * 1000L);
+    }
+    
+    /**
+     * Cancels a timeout scheduled by scheduleClose(), if any
+     * @param timeout the timeout to cancel, may be null
+     */
+    private void cancelTimeout(Timeout timeout)
+    {
+        if (timeout != null)
+        {
+            timeout.cancel();
         }
     }
 }